@@ -0,0 +1,89 @@
+package com.jsecode.springboot.maven.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.loader.tools.Library;
+
+import com.jsecode.springboot.maven.helper.FileUtil;
+
+/**
+ * Benchmarks of the {@link FileUtil} routines that copy the libraries of a thin archive
+ * to the {@code lib} directory: one file at a time, as done while repackaging, and a
+ * whole directory, as done when the libraries are published to the distribution
+ * directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileUtilBenchmark {
+
+	@Param({ "40", "200" })
+	public int libraryCount;
+
+	@Param("150")
+	public int classCount;
+
+	@Param("0.5")
+	public double compressedRatio;
+
+	private File directory;
+
+	private File libraryDirectory;
+
+	private List<Library> libraries;
+
+	private File destination;
+
+	@Setup
+	public void setup() throws IOException {
+		this.directory = SyntheticProject.createTempDirectory("file-util-benchmark");
+		this.libraryDirectory = new File(this.directory, "libraries");
+		this.libraries = SyntheticProject.createLibraries(this.libraryDirectory,
+				this.libraryCount, this.classCount, this.compressedRatio);
+		this.destination = new File(this.directory, "lib");
+	}
+
+	@Setup(Level.Invocation)
+	public void clean() {
+		SyntheticProject.delete(this.destination);
+	}
+
+	@TearDown
+	public void tearDown() {
+		SyntheticProject.delete(this.directory);
+	}
+
+	@Benchmark
+	public File copyFileToDirectory() throws IOException {
+		for (Library library : this.libraries) {
+			FileUtil.copyFileToDirectory(library.getFile(), this.destination);
+		}
+		return this.destination;
+	}
+
+	@Benchmark
+	public File copyDirectory() throws IOException {
+		FileUtil.copyDirectory(this.libraryDirectory, this.destination);
+		return this.destination;
+	}
+
+}
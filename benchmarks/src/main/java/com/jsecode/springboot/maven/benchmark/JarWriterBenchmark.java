@@ -0,0 +1,127 @@
+package com.jsecode.springboot.maven.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.loader.tools.Library;
+
+import com.jsecode.springboot.maven.helper.JarWriter;
+
+/**
+ * Benchmarks of the {@link JarWriter} operations that a repackaging spends its time in:
+ * copying the entries of the source jar, nesting the libraries and writing the loader
+ * classes. Each operation writes a new jar so that the cost of opening and closing the
+ * writer is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JarWriterBenchmark {
+
+	@Param({ "2000", "20000" })
+	public int entryCount;
+
+	@Param("1500")
+	public int classCount;
+
+	@Param("40")
+	public int libraryCount;
+
+	@Param({ "0.0", "0.5" })
+	public double compressedRatio;
+
+	@Param({ "1", "4" })
+	public int compressionThreads;
+
+	private File directory;
+
+	private File source;
+
+	private List<Library> libraries;
+
+	private File output;
+
+	@Setup
+	public void setup() throws IOException {
+		this.directory = SyntheticProject.createTempDirectory("jar-writer-benchmark");
+		this.source = new File(this.directory, "source.jar");
+		SyntheticProject.createSourceJar(this.source, this.entryCount,
+				Math.min(this.classCount, this.entryCount), this.compressedRatio);
+		this.libraries = SyntheticProject.createLibraries(
+				new File(this.directory, "libraries"), this.libraryCount,
+				this.classCount / 10, this.compressedRatio);
+		this.output = new File(this.directory, "output.jar");
+	}
+
+	@TearDown
+	public void tearDown() {
+		SyntheticProject.delete(this.directory);
+	}
+
+	@Benchmark
+	public long writeEntries() throws IOException {
+		JarFile jarFile = new JarFile(this.source);
+		try {
+			JarWriter writer = createWriter();
+			try {
+				writer.writeEntries(jarFile);
+			}
+			finally {
+				writer.close();
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+		return this.output.length();
+	}
+
+	@Benchmark
+	public long writeNestedLibrary() throws IOException {
+		JarWriter writer = createWriter();
+		try {
+			for (Library library : this.libraries) {
+				writer.writeNestedLibrary("BOOT-INF/lib/", library);
+			}
+		}
+		finally {
+			writer.close();
+		}
+		return this.output.length();
+	}
+
+	@Benchmark
+	public long writeLoaderClasses() throws IOException {
+		JarWriter writer = createWriter();
+		try {
+			writer.writeLoaderClasses();
+		}
+		finally {
+			writer.close();
+		}
+		return this.output.length();
+	}
+
+	private JarWriter createWriter() throws IOException {
+		return new JarWriter(this.output, null, this.compressionThreads);
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.jsecode.springboot.maven.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.loader.tools.Libraries;
+
+import com.jsecode.springboot.maven.helper.FileUtil;
+import com.jsecode.springboot.maven.helper.Repackager;
+
+/**
+ * Benchmark of a complete {@link Repackager#repackage repackaging}, with the libraries
+ * nested in the archive ({@code allInOne}) or copied to the {@code lib} directory next
+ * to it. The repackaging moves the source jar to the distribution directory, so the
+ * output of the previous invocation is removed and the source jar copied again before
+ * each invocation. A repackaging takes long enough for this per-invocation setup not to
+ * distort the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RepackagerBenchmark {
+
+	@Param({ "2000", "20000" })
+	public int entryCount;
+
+	@Param("1500")
+	public int classCount;
+
+	@Param({ "40", "200" })
+	public int libraryCount;
+
+	@Param({ "0.0", "0.5" })
+	public double compressedRatio;
+
+	@Param({ "true", "false" })
+	public boolean allInOne;
+
+	@Param({ "0", "4" })
+	public int prefetchThreads;
+
+	private File directory;
+
+	private File template;
+
+	private File source;
+
+	private Libraries libraries;
+
+	private File destination;
+
+	private File distDir;
+
+	@Setup
+	public void setup() throws IOException {
+		this.directory = SyntheticProject.createTempDirectory("repackager-benchmark");
+		this.template = new File(this.directory, "app.jar");
+		this.source = new File(this.directory, "target/app.jar");
+		SyntheticProject.createSourceJar(this.template, this.entryCount,
+				Math.min(this.classCount, this.entryCount), this.compressedRatio);
+		this.libraries = SyntheticProject.asLibraries(SyntheticProject.createLibraries(
+				new File(this.directory, "repository"), this.libraryCount,
+				this.classCount / 10, this.compressedRatio));
+		this.destination = new File(this.directory, "target/app-repackaged.jar");
+		this.distDir = new File(this.directory, "dist");
+	}
+
+	@Setup(Level.Invocation)
+	public void clean() throws IOException {
+		SyntheticProject.delete(this.distDir);
+		SyntheticProject.delete(this.source.getParentFile());
+		this.distDir.mkdirs();
+		FileUtil.copyFile(this.template, this.source);
+	}
+
+	@TearDown
+	public void tearDown() {
+		SyntheticProject.delete(this.directory);
+	}
+
+	@Benchmark
+	public long repackage() throws IOException {
+		Repackager repackager = new Repackager(this.source);
+		repackager.setMainClass(SyntheticProject.MAIN_CLASS);
+		repackager.setBackupSource(false);
+		repackager.setPrefetchThreads(this.prefetchThreads);
+		repackager.repackage(this.destination, this.libraries, this.allInOne,
+				this.distDir);
+		return new File(this.distDir, this.destination.getName()).length();
+	}
+
+}
@@ -0,0 +1,211 @@
+package com.jsecode.springboot.maven.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.Library;
+import org.springframework.boot.loader.tools.LibraryCallback;
+import org.springframework.boot.loader.tools.LibraryScope;
+
+/**
+ * Generator of the synthetic inputs of the benchmarks: a source jar and a set of
+ * dependency jars. Content is generated from a fixed seed so that every run of a
+ * benchmark sees the same bytes. Classes and text resources are generated from a small
+ * vocabulary, so they deflate about as well as real class files, while already
+ * compressed resources, such as images, are random bytes that do not shrink at all.
+ */
+final class SyntheticProject {
+
+	/**
+	 * The main class that is written to the manifest of the source jar.
+	 */
+	static final String MAIN_CLASS = "com.example.app.Application";
+
+	private static final long SEED = 0x5EED;
+
+	private static final String[] WORDS = { "java/lang/Object", "java/lang/String",
+			"java/util/List", "java/util/Map", "<init>", "()V", "(Ljava/lang/String;)V",
+			"Code", "LineNumberTable", "LocalVariableTable", "this", "value", "get", "set",
+			"org/springframework/context/ApplicationContext", "SourceFile", "hashCode",
+			"equals", "toString", "RuntimeVisibleAnnotations" };
+
+	private static final int MIN_CONTENT_SIZE = 512;
+
+	private static final int MAX_CONTENT_SIZE = 8 * 1024;
+
+	private SyntheticProject() {
+	}
+
+	/**
+	 * Create a source jar as built by the jar plugin.
+	 * @param file the jar to create
+	 * @param entryCount the number of files in the jar
+	 * @param classCount how many of the files are classes
+	 * @param compressedRatio the ratio of the other files that are already compressed
+	 * @throws IOException if the jar cannot be written
+	 */
+	static void createSourceJar(File file, int entryCount, int classCount,
+			double compressedRatio) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, MAIN_CLASS);
+		writeJar(file, manifest, "com/example/app", entryCount, classCount,
+				compressedRatio, new Random(SEED));
+	}
+
+	/**
+	 * Create the given number of dependency jars.
+	 * @param directory the directory of the jars
+	 * @param libraryCount the number of jars
+	 * @param classCount the number of classes in each jar
+	 * @param compressedRatio the ratio of resources in each jar that are already
+	 * compressed
+	 * @return the libraries
+	 * @throws IOException if a jar cannot be written
+	 */
+	static List<Library> createLibraries(File directory, int libraryCount,
+			int classCount, double compressedRatio) throws IOException {
+		directory.mkdirs();
+		Random random = new Random(SEED + 1);
+		List<Library> libraries = new ArrayList<Library>(libraryCount);
+		for (int i = 0; i < libraryCount; i++) {
+			File file = new File(directory, "library-" + i + "-1.0.jar");
+			Manifest manifest = new Manifest();
+			manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+			int entryCount = classCount + Math.max(classCount / 10, 1);
+			writeJar(file, manifest, "org/example/library" + i, entryCount, classCount,
+					compressedRatio, random);
+			libraries.add(new Library(file, LibraryScope.COMPILE));
+		}
+		return libraries;
+	}
+
+	/**
+	 * Return {@link Libraries} for the given libraries.
+	 * @param libraries the libraries
+	 * @return the libraries
+	 */
+	static Libraries asLibraries(final List<Library> libraries) {
+		return new Libraries() {
+
+			@Override
+			public void doWithLibraries(LibraryCallback callback) throws IOException {
+				for (Library library : libraries) {
+					callback.library(library);
+				}
+			}
+
+		};
+	}
+
+	/**
+	 * Delete the given file or directory including its content.
+	 * @param file the file or directory
+	 */
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Create a temporary directory.
+	 * @param prefix the prefix of the name of the directory
+	 * @return the directory
+	 * @throws IOException if the directory cannot be created
+	 */
+	static File createTempDirectory(String prefix) throws IOException {
+		File directory = File.createTempFile(prefix, "");
+		if (!directory.delete() || !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+		return directory;
+	}
+
+	private static void writeJar(File file, Manifest manifest, String rootPackage,
+			int entryCount, int classCount, double compressedRatio, Random random)
+					throws IOException {
+		int resourceCount = Math.max(entryCount - classCount, 0);
+		int compressedCount = (int) Math.round(resourceCount * compressedRatio);
+		List<String> directories = new ArrayList<String>();
+		List<String> names = new ArrayList<String>(entryCount);
+		for (int i = 0; i < classCount; i++) {
+			String directory = rootPackage + "/package" + (i / 50) + "/";
+			addDirectory(directories, directory);
+			names.add(directory + "Class" + i + ".class");
+		}
+		for (int i = 0; i < resourceCount; i++) {
+			String directory = (i < compressedCount ? "static/images/" : "config/");
+			addDirectory(directories, directory);
+			names.add(directory + "resource" + i
+					+ (i < compressedCount ? ".png" : ".properties"));
+		}
+		JarOutputStream output = new JarOutputStream(new FileOutputStream(file),
+				manifest);
+		try {
+			for (String directory : directories) {
+				output.putNextEntry(new JarEntry(directory));
+				output.closeEntry();
+			}
+			for (String name : names) {
+				output.putNextEntry(new JarEntry(name));
+				output.write(name.endsWith(".png") ? randomContent(random)
+						: textContent(random));
+				output.closeEntry();
+			}
+		}
+		finally {
+			output.close();
+		}
+	}
+
+	private static void addDirectory(List<String> directories, String directory) {
+		int end = directory.indexOf('/');
+		while (end != -1) {
+			String parent = directory.substring(0, end + 1);
+			if (!directories.contains(parent)) {
+				directories.add(parent);
+			}
+			end = directory.indexOf('/', end + 1);
+		}
+	}
+
+	private static byte[] textContent(Random random) {
+		int size = contentSize(random);
+		StringBuilder content = new StringBuilder(size + 64);
+		while (content.length() < size) {
+			content.append(WORDS[random.nextInt(WORDS.length)]);
+			content.append((char) random.nextInt(16));
+		}
+		content.setLength(size);
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) content.charAt(i);
+		}
+		return bytes;
+	}
+
+	private static byte[] randomContent(Random random) {
+		byte[] bytes = new byte[contentSize(random)];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+	private static int contentSize(Random random) {
+		return MIN_CONTENT_SIZE + random.nextInt(MAX_CONTENT_SIZE - MIN_CONTENT_SIZE);
+	}
+
+}
@@ -0,0 +1,345 @@
+package com.jsecode.springboot.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+/**
+ * {@link URLClassLoader} that uses a package index to find classes and resources. A
+ * lookup in a package is only made in the jars that the index lists for the package,
+ * and fails straight away when the package is not in the index at all. Resources that
+ * are not in a package, such as {@code META-INF} and root resources, as well as
+ * directories are still searched for in all jars, except for
+ * {@code META-INF/spring.factories} and {@code META-INF/services} files when there is a
+ * service index: those are served from the merged resources of the index, and are not
+ * found at all when the index does not list them.
+ * <p>
+ * On Java 9 and later, jars are opened for the version of the running JVM so that the
+ * versioned entries of multi-release jars are used, and the URLs of their resources
+ * carry the {@code #runtime} fragment so that they are read the same way.
+ */
+public class PackageIndexClassLoader extends URLClassLoader {
+
+	static {
+		ClassLoader.registerAsParallelCapable();
+	}
+
+	/**
+	 * The location of the Spring factories, which are merged in a service index.
+	 */
+	public static final String SPRING_FACTORIES_LOCATION = "META-INF/spring.factories";
+
+	/**
+	 * The location of the {@code ServiceLoader} files, which are merged in a service
+	 * index.
+	 */
+	public static final String SERVICES_LOCATION = "META-INF/services/";
+
+	private static final String META_INF = "META-INF/";
+
+	private static final String RUNTIME_FRAGMENT = "#runtime";
+
+	private static final Constructor<JarFile> VERSIONED_JAR_FILE;
+
+	private static final Object RUNTIME_VERSION;
+
+	private static final Method IS_MULTI_RELEASE;
+
+	static {
+		Constructor<JarFile> constructor = null;
+		Object version = null;
+		Method isMultiRelease = null;
+		try {
+			Class<?> versionClass = Class.forName("java.lang.Runtime$Version");
+			version = Runtime.class.getMethod("version").invoke(null);
+			constructor = JarFile.class.getConstructor(File.class, boolean.class,
+					int.class, versionClass);
+			isMultiRelease = JarFile.class.getMethod("isMultiRelease");
+		}
+		catch (Exception ex) {
+			// Before Java 9, jars are not multi-release
+		}
+		VERSIONED_JAR_FILE = constructor;
+		RUNTIME_VERSION = version;
+		IS_MULTI_RELEASE = isMultiRelease;
+	}
+
+	private final Map<String, List<URL>> index;
+
+	private final Map<String, URL> services;
+
+	private final ConcurrentMap<URL, JarFile> jarFiles = new ConcurrentHashMap<URL, JarFile>();
+
+	/**
+	 * Create a new {@link PackageIndexClassLoader} instance.
+	 * @param urls the URLs of the roots, in class path order
+	 * @param index the roots of each package, using {@code /} as separator
+	 * @param parent the parent class loader
+	 */
+	public PackageIndexClassLoader(URL[] urls, Map<String, List<URL>> index,
+			ClassLoader parent) {
+		this(urls, index, null, parent);
+	}
+
+	/**
+	 * Create a new {@link PackageIndexClassLoader} instance.
+	 * @param urls the URLs of the roots, in class path order
+	 * @param index the roots of each package, using {@code /} as separator
+	 * @param services the merged resource of each name of a service index or
+	 * {@code null}
+	 * @param parent the parent class loader
+	 */
+	public PackageIndexClassLoader(URL[] urls, Map<String, List<URL>> index,
+			Map<String, URL> services, ClassLoader parent) {
+		super(urls, parent);
+		this.index = index;
+		this.services = services;
+	}
+
+	/**
+	 * Return if the resource with the given name is merged in a service index.
+	 * @param name the name of the resource
+	 * @return {@code true} for {@code META-INF/spring.factories} and
+	 * {@code META-INF/services} files
+	 */
+	public static boolean isServiceResource(String name) {
+		return name.equals(SPRING_FACTORIES_LOCATION)
+				|| (name.startsWith(SERVICES_LOCATION)
+						&& name.length() > SERVICES_LOCATION.length()
+						&& name.indexOf('/', SERVICES_LOCATION.length()) == -1);
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		String path = name.replace('.', '/').concat(".class");
+		if (path.indexOf('/') == -1) {
+			return super.findClass(name);
+		}
+		List<URL> roots = getRoots(path);
+		if (roots == null) {
+			throw new ClassNotFoundException(name);
+		}
+		try {
+			for (URL root : roots) {
+				JarFile jarFile = getJarFile(root);
+				JarEntry entry = jarFile.getJarEntry(path);
+				if (entry != null) {
+					return defineClass(name, root, jarFile, entry);
+				}
+			}
+		}
+		catch (IOException ex) {
+			throw new ClassNotFoundException(name, ex);
+		}
+		throw new ClassNotFoundException(name);
+	}
+
+	@Override
+	public URL findResource(String name) {
+		if (this.services != null && isServiceResource(name)) {
+			return this.services.get(name);
+		}
+		if (!isIndexed(name)) {
+			return super.findResource(name);
+		}
+		List<URL> roots = getRoots(name);
+		if (roots != null) {
+			for (URL root : roots) {
+				URL url = getResource(root, name);
+				if (url != null) {
+					return url;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Enumeration<URL> findResources(String name) throws IOException {
+		if (this.services != null && isServiceResource(name)) {
+			URL url = this.services.get(name);
+			return (url != null ? Collections.enumeration(Collections.singletonList(url))
+					: Collections.enumeration(Collections.<URL>emptyList()));
+		}
+		if (!isIndexed(name)) {
+			return super.findResources(name);
+		}
+		List<URL> urls = new ArrayList<URL>();
+		List<URL> roots = getRoots(name);
+		if (roots != null) {
+			for (URL root : roots) {
+				URL url = getResource(root, name);
+				if (url != null) {
+					urls.add(url);
+				}
+			}
+		}
+		return Collections.enumeration(urls);
+	}
+
+	private boolean isIndexed(String name) {
+		int lastSlash = name.lastIndexOf('/');
+		return lastSlash > 0 && lastSlash < name.length() - 1
+				&& !name.startsWith(META_INF);
+	}
+
+	private List<URL> getRoots(String name) {
+		int lastSlash = name.lastIndexOf('/');
+		return (lastSlash > 0 ? this.index.get(name.substring(0, lastSlash)) : null);
+	}
+
+	private URL getResource(URL root, String name) {
+		try {
+			JarFile jarFile = getJarFile(root);
+			if (jarFile.getJarEntry(name) == null) {
+				return null;
+			}
+			if ("file".equals(root.getProtocol())) {
+				// Without the fragment, the JDK reads the base entry of a multi-release jar
+				return new URL("jar:" + root + "!/" + name
+						+ (isMultiRelease(jarFile) ? RUNTIME_FRAGMENT : ""));
+			}
+			return new URL(root, name);
+		}
+		catch (IOException ex) {
+			return null;
+		}
+	}
+
+	private JarFile getJarFile(URL root) throws IOException {
+		JarFile jarFile = this.jarFiles.get(root);
+		if (jarFile != null) {
+			return jarFile;
+		}
+		jarFile = openJarFile(root);
+		JarFile existing = this.jarFiles.putIfAbsent(root, jarFile);
+		if (existing != null) {
+			// Opened concurrently by another thread, jars of other roots may be shared
+			if ("file".equals(root.getProtocol())) {
+				jarFile.close();
+			}
+			return existing;
+		}
+		return jarFile;
+	}
+
+	private JarFile openJarFile(URL root) throws IOException {
+		if ("file".equals(root.getProtocol())) {
+			try {
+				return openJarFile(new File(root.toURI()));
+			}
+			catch (URISyntaxException ex) {
+				throw new IOException(ex);
+			}
+		}
+		URLConnection connection = root.openConnection();
+		if (!(connection instanceof JarURLConnection)) {
+			throw new IOException("Unsupported root " + root);
+		}
+		return ((JarURLConnection) connection).getJarFile();
+	}
+
+	private JarFile openJarFile(File file) throws IOException {
+		if (VERSIONED_JAR_FILE == null) {
+			return new JarFile(file);
+		}
+		try {
+			return VERSIONED_JAR_FILE.newInstance(file, true, ZipFile.OPEN_READ,
+					RUNTIME_VERSION);
+		}
+		catch (InvocationTargetException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			throw new IllegalStateException(ex.getCause());
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private boolean isMultiRelease(JarFile jarFile) {
+		if (IS_MULTI_RELEASE == null) {
+			return false;
+		}
+		try {
+			return (Boolean) IS_MULTI_RELEASE.invoke(jarFile);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private Class<?> defineClass(String name, URL root, JarFile jarFile,
+			JarEntry entry) throws IOException {
+		byte[] bytes = read(jarFile, entry);
+		int lastDot = name.lastIndexOf('.');
+		if (lastDot != -1) {
+			definePackageIfNecessary(name.substring(0, lastDot), root, jarFile);
+		}
+		CodeSource codeSource = new CodeSource(root, entry.getCodeSigners());
+		return defineClass(name, bytes, 0, bytes.length, codeSource);
+	}
+
+	@SuppressWarnings("deprecation")
+	private void definePackageIfNecessary(String packageName, URL root,
+			JarFile jarFile) throws IOException {
+		if (getPackage(packageName) == null) {
+			Manifest manifest = jarFile.getManifest();
+			try {
+				if (manifest != null) {
+					definePackage(packageName, manifest, root);
+				}
+				else {
+					definePackage(packageName, null, null, null, null, null, null, null);
+				}
+			}
+			catch (IllegalArgumentException ex) {
+				// Defined concurrently by another thread
+				if (getPackage(packageName) == null) {
+					throw new IllegalStateException(
+							"Package " + packageName + " has already been defined");
+				}
+			}
+		}
+	}
+
+	private byte[] read(JarFile jarFile, JarEntry entry) throws IOException {
+		InputStream inputStream = jarFile.getInputStream(entry);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+					(int) Math.max(entry.getSize(), 1024));
+			byte[] buffer = new byte[4096];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				bytes.write(buffer, 0, bytesRead);
+			}
+			return bytes.toByteArray();
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,269 @@
+package com.jsecode.springboot.loader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Launcher for archives that contain a package index written by the repackage goal. The
+ * index lists the packages of {@code BOOT-INF/classes} and of every library, nested in
+ * the archive or copied next to it, so that the {@link PackageIndexClassLoader} can
+ * route each class and resource lookup straight to the jars that contain its package
+ * instead of searching all of them. The archive may also contain a service index of the
+ * {@code META-INF/spring.factories} and {@code META-INF/services} files of those jars,
+ * merged at build time, which the class loader serves instead of searching the jars.
+ * <p>
+ * Nested jars are read through the URL handler of the Spring Boot loader classes that
+ * are written to the archive alongside this launcher. Only JDK classes are used
+ * otherwise, so the launcher does not depend on a particular Spring Boot version.
+ */
+public class PackageIndexLauncher {
+
+	/**
+	 * The location of the package index in the archive.
+	 */
+	public static final String INDEX_LOCATION = "BOOT-INF/package.idx";
+
+	/**
+	 * The first line of the package index.
+	 */
+	public static final String INDEX_HEADER = "PackageIndex-Version: 1.0";
+
+	/**
+	 * The location of the service index in the archive, which lists the merged
+	 * resources.
+	 */
+	public static final String SERVICE_INDEX_LOCATION = "BOOT-INF/services.idx";
+
+	/**
+	 * The first line of the service index.
+	 */
+	public static final String SERVICE_INDEX_HEADER = "ServiceIndex-Version: 1.0";
+
+	/**
+	 * The location of the merged resources in the archive.
+	 */
+	public static final String SERVICES_LOCATION = "BOOT-INF/services/";
+
+	private static final String START_CLASS_ATTRIBUTE = "Start-Class";
+
+	private static final String UNPACK_MARKER = "UNPACK:";
+
+	private static final String BOOT_JAR_FILE = "org.springframework.boot.loader.jar.JarFile";
+
+	public static void main(String[] args) throws Exception {
+		new PackageIndexLauncher().launch(args);
+	}
+
+	/**
+	 * Launch the application.
+	 * @param args the incoming arguments
+	 * @throws Exception if the application fails to launch
+	 */
+	protected void launch(String[] args) throws Exception {
+		registerUrlProtocolHandler();
+		File archive = getArchive();
+		String startClass;
+		ClassLoader classLoader;
+		JarFile jarFile = new JarFile(archive);
+		try {
+			Manifest manifest = jarFile.getManifest();
+			startClass = (manifest != null
+					? manifest.getMainAttributes().getValue(START_CLASS_ATTRIBUTE)
+					: null);
+			if (startClass == null) {
+				throw new IllegalStateException(
+						"No '" + START_CLASS_ATTRIBUTE + "' manifest entry specified in "
+								+ archive);
+			}
+			classLoader = createClassLoader(archive, jarFile,
+					getClass().getClassLoader());
+		}
+		finally {
+			jarFile.close();
+		}
+		Thread.currentThread().setContextClassLoader(classLoader);
+		Class<?> mainClass = classLoader.loadClass(startClass);
+		Method mainMethod = mainClass.getDeclaredMethod("main", String[].class);
+		mainMethod.invoke(null, new Object[] { args });
+	}
+
+	/**
+	 * Create the class loader of the given archive from its package index and service
+	 * index.
+	 * @param archive the archive
+	 * @param jarFile the open archive
+	 * @param parent the parent class loader
+	 * @return the class loader
+	 * @throws IOException if the indexes cannot be read
+	 */
+	PackageIndexClassLoader createClassLoader(File archive, JarFile jarFile,
+			ClassLoader parent) throws IOException {
+		List<URL> urls = new ArrayList<URL>();
+		Map<String, List<URL>> index = new LinkedHashMap<String, List<URL>>();
+		readIndex(archive, jarFile, urls, index);
+		Map<String, URL> services = readServiceIndex(archive, jarFile);
+		return new PackageIndexClassLoader(urls.toArray(new URL[urls.size()]), index,
+				services, parent);
+	}
+
+	private void registerUrlProtocolHandler() throws Exception {
+		Class<?> jarFileClass = Class.forName(BOOT_JAR_FILE, true,
+				getClass().getClassLoader());
+		jarFileClass.getMethod("registerUrlProtocolHandler").invoke(null);
+	}
+
+	private File getArchive() throws URISyntaxException {
+		CodeSource codeSource = getClass().getProtectionDomain().getCodeSource();
+		URI location = (codeSource != null ? codeSource.getLocation().toURI() : null);
+		String path = (location != null ? location.getSchemeSpecificPart() : null);
+		if (path == null) {
+			throw new IllegalStateException("Unable to determine code source archive");
+		}
+		File archive = new File(path);
+		if (!archive.isFile()) {
+			throw new IllegalStateException(
+					"Unable to launch from " + archive + ", a jar file is required");
+		}
+		return archive.getAbsoluteFile();
+	}
+
+	private void readIndex(File archive, JarFile jarFile, List<URL> urls,
+			Map<String, List<URL>> index) throws IOException {
+		JarEntry indexEntry = jarFile.getJarEntry(INDEX_LOCATION);
+		if (indexEntry == null) {
+			throw new IllegalStateException("No package index found in " + archive);
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				jarFile.getInputStream(indexEntry), "UTF-8"));
+		try {
+			String line = reader.readLine();
+			if (!INDEX_HEADER.equals(line)) {
+				throw new IllegalStateException("Unsupported package index " + line);
+			}
+			URL root = null;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0) {
+					root = null;
+				}
+				else if (root == null) {
+					root = getRootUrl(archive, jarFile, line);
+					urls.add(root);
+				}
+				else {
+					List<URL> roots = index.get(line);
+					if (roots == null) {
+						roots = new ArrayList<URL>(1);
+						index.put(line, roots);
+					}
+					roots.add(root);
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private Map<String, URL> readServiceIndex(File archive, JarFile jarFile)
+			throws IOException {
+		JarEntry indexEntry = jarFile.getJarEntry(SERVICE_INDEX_LOCATION);
+		if (indexEntry == null) {
+			return null;
+		}
+		Map<String, URL> services = new LinkedHashMap<String, URL>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				jarFile.getInputStream(indexEntry), "UTF-8"));
+		try {
+			String line = reader.readLine();
+			if (!SERVICE_INDEX_HEADER.equals(line)) {
+				throw new IllegalStateException("Unsupported service index " + line);
+			}
+			URL root = getRootUrl(archive, jarFile, SERVICES_LOCATION);
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 0) {
+					services.put(line, new URL(root, line));
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return services;
+	}
+
+	/**
+	 * Return the URL of a root of the index: a directory or jar nested in the archive or
+	 * a jar relative to the directory of the archive.
+	 */
+	private URL getRootUrl(File archive, JarFile jarFile, String path)
+			throws IOException {
+		JarEntry entry = jarFile.getJarEntry(path);
+		if (entry == null) {
+			return new File(archive.getParentFile(), path).toURI().toURL();
+		}
+		String comment = entry.getComment();
+		if (comment != null && comment.startsWith(UNPACK_MARKER)) {
+			return unpack(archive, jarFile, entry,
+					comment.substring(UNPACK_MARKER.length())).toURI().toURL();
+		}
+		String name = (path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+		return new URL("jar:" + archive.toURI().toURL() + "!/" + name + "!/");
+	}
+
+	private File unpack(File archive, JarFile jarFile, JarEntry entry, String hash)
+			throws IOException {
+		String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+		File directory = new File(new File(System.getProperty("java.io.tmpdir"),
+				"spring-boot-libs"), hash);
+		File file = new File(directory, name);
+		if (file.isFile() && file.length() == entry.getSize()) {
+			return file;
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalStateException("Unable to create directory " + directory);
+		}
+		File temp = File.createTempFile(name, ".tmp", directory);
+		InputStream inputStream = jarFile.getInputStream(entry);
+		try {
+			OutputStream outputStream = new FileOutputStream(temp);
+			try {
+				byte[] buffer = new byte[32 * 1024];
+				int bytesRead;
+				while ((bytesRead = inputStream.read(buffer)) != -1) {
+					outputStream.write(buffer, 0, bytesRead);
+				}
+			}
+			finally {
+				outputStream.close();
+			}
+		}
+		finally {
+			inputStream.close();
+		}
+		if (!temp.renameTo(file) && !(file.isFile() && file.length() == entry.getSize())) {
+			temp.delete();
+			throw new IllegalStateException("Unable to unpack " + entry.getName()
+					+ " from " + archive);
+		}
+		temp.delete();
+		return file;
+	}
+
+}
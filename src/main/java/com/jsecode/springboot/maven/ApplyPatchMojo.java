@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jsecode.springboot.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.jsecode.springboot.maven.helper.PatchBundle;
+
+/**
+ * Apply a patch bundle created by the {@code patch} goal to a directory that contains
+ * the previous release, for example
+ * {@code mvn com.jsecode.springboot:ecode-springboot-maven-plugin:apply-patch -DpatchFile=app-patch.zip -Ddirectory=/opt/app}.
+ * The files of the previous release that the patch relies on are verified before the
+ * directory is modified, and every patched file is verified before it replaces the
+ * previous one. Files that are not part of either release are left alone.
+ *
+ * @since 1.1
+ */
+@Mojo(name = "apply-patch", requiresProject = false, threadSafe = true)
+public class ApplyPatchMojo extends AbstractMojo {
+
+	/**
+	 * The patch bundle to apply.
+	 */
+	@Parameter(property = "patchFile", required = true)
+	private File patchFile;
+
+	/**
+	 * The directory that contains the previous release and is patched in place.
+	 */
+	@Parameter(property = "directory", required = true)
+	private File directory;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (!this.patchFile.isFile()) {
+			throw new MojoFailureException("Patch " + this.patchFile + " does not exist");
+		}
+		try {
+			PatchBundle.Summary summary = PatchBundle.apply(this.patchFile,
+					this.directory);
+			getLog().info("Patched " + this.directory + ": " + summary.getAdded()
+					+ " added, " + summary.getChanged() + " changed, "
+					+ summary.getRemoved() + " removed");
+		}
+		catch (IOException ex) {
+			throw new MojoFailureException(
+					"Failed to apply patch " + this.patchFile + ": " + ex.getMessage(),
+					ex);
+		}
+	}
+
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2012-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jsecode.springboot.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import org.springframework.boot.loader.tools.JavaExecutable;
+import org.springframework.boot.loader.tools.RunProcess;
+
+/**
+ * Create an application class data sharing (AppCDS) archive of the repackaged archive
+ * in the dist directory, so that instances start faster. The archive is started once
+ * from the dist directory, like the {@code start} goal does, until the application is
+ * ready and then stopped through the same JMX lifecycle MBean as with {@code stop}. The
+ * classes loaded meanwhile are dumped to {@code <archive>.jsa} next to the archive, and
+ * the JVM options to use it are written to {@code <archive>.jvmargs}, so that
+ * instances are launched from the dist directory with
+ * {@code java @app.jvmargs -jar app.jar}.
+ * <p>
+ * Only classes loaded by the JVM's own class loaders from jar files on the class path
+ * are archived. Classes loaded by the Spring Boot class loader cannot be archived: with
+ * the thin layout the libraries, which are listed in the {@code Class-Path} of the
+ * archive, are shared but the application classes are not, and an {@code allInOne}
+ * archive, whose libraries are nested, only shares the classes of the JDK and of the
+ * launcher, for which a warning is logged. The JVM ignores the archive, with a
+ * warning, if the archive or one of its libraries changed since the archive was
+ * created, so run this goal after {@code repackage}. Requires Java 10 or later.
+ *
+ * @since 1.1
+ */
+@Mojo(name = "cds", defaultPhase = LifecyclePhase.PACKAGE, requiresProject = true)
+public class CdsMojo extends AbstractMojo {
+
+	private static final String ENABLE_MBEAN_PROPERTY = "--spring.application.admin.enabled=true";
+
+	private static final String JMX_NAME_PROPERTY_PREFIX = "--spring.application.admin.jmx-name=";
+
+	private static final String AUTO_MODE = "auto";
+
+	private static final String DYNAMIC_MODE = "dynamic";
+
+	private static final String STATIC_MODE = "static";
+
+	/**
+	 * The Maven project.
+	 */
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	/**
+	 * Directory containing the generated archive.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}", required = true)
+	private File outputDirectory;
+
+	/**
+	 * Name of the generated archive.
+	 */
+	@Parameter(defaultValue = "${project.build.finalName}", required = true)
+	private String finalName;
+
+	/**
+	 * Classifier of the repackaged archive, as configured for {@code repackage}.
+	 */
+	@Parameter
+	private String classifier;
+
+	/**
+	 * The dist directory that the archive was repackaged to. Defaults to the
+	 * {@code dist} directory in the {@link #outputDirectory}, like for
+	 * {@code repackage}.
+	 */
+	@Parameter
+	private String distDir;
+
+	/**
+	 * How the archive is created: {@code dynamic} dumps the classes loaded by the
+	 * training run when it exits ({@code -XX:ArchiveClassesAtExit}, Java 13 or later),
+	 * {@code static} records the classes loaded by the training run in a class list
+	 * and dumps them in a second run ({@code -Xshare:dump}). {@code auto} uses
+	 * {@code dynamic} when the JVM supports it.
+	 */
+	@Parameter(property = "cds.mode", defaultValue = AUTO_MODE)
+	private String mode;
+
+	/**
+	 * JVM arguments of the training run, for instance the heap settings used in
+	 * production. On command line, make sure to wrap multiple values between quotes.
+	 */
+	@Parameter(property = "cds.jvmArguments")
+	private String jvmArguments;
+
+	/**
+	 * Arguments of the application for the training run, for instance to activate a
+	 * profile that does not need external services. On command line, make sure to
+	 * wrap multiple values between quotes.
+	 */
+	@Parameter(property = "cds.arguments")
+	private String arguments;
+
+	/**
+	 * The JMX name of the automatically deployed MBean managing the lifecycle of the
+	 * spring application.
+	 */
+	@Parameter
+	private String jmxName = SpringApplicationAdminClient.DEFAULT_OBJECT_NAME;
+
+	/**
+	 * The port to use to expose the platform MBeanServer of the training run.
+	 */
+	@Parameter
+	private int jmxPort = 9001;
+
+	/**
+	 * The number of milli-seconds to wait between each attempt to check if the spring
+	 * application is ready or has stopped.
+	 */
+	@Parameter
+	private long wait = 500;
+
+	/**
+	 * The maximum number of attempts to check if the spring application is ready or
+	 * has stopped. Combined with the "wait" argument, this gives a global timeout value
+	 * (60 sec by default)
+	 */
+	@Parameter
+	private int maxAttempts = 120;
+
+	/**
+	 * Skip the execution.
+	 */
+	@Parameter(property = "skip", defaultValue = "false")
+	private boolean skip;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (this.project.getPackaging().equals("pom")) {
+			getLog().debug("cds goal could not be applied to pom project.");
+			return;
+		}
+		if (this.skip) {
+			getLog().debug("skipping cds as per configuration.");
+			return;
+		}
+		int javaVersion = getJavaVersion();
+		if (javaVersion < 10) {
+			throw new MojoExecutionException(
+					"Application class data sharing requires Java 10 or later");
+		}
+		String mode = getMode(javaVersion);
+		File directory = getDistDirFile();
+		String archive = getArchiveName();
+		if (!new File(directory, archive).isFile()) {
+			throw new MojoExecutionException("Archive " + archive + " not found in "
+					+ directory + ", run this goal after repackage");
+		}
+		if (!hasClassPath(new File(directory, archive))) {
+			getLog().warn(archive + " nests its libraries, which are loaded by the"
+					+ " Spring Boot class loader and cannot be archived. Repackage it"
+					+ " with allInOne set to false to share the classes of its libraries");
+		}
+		String baseName = archive.substring(0, archive.lastIndexOf('.'));
+		File sharedArchive = new File(directory, baseName + ".jsa");
+		File tempArchive = new File(directory, "." + sharedArchive.getName() + ".tmp");
+		File optionsFile = new File(directory, baseName + ".jvmargs");
+		List<String> options = new ArrayList<String>();
+		options.add("-XX:SharedArchiveFile=" + sharedArchive.getName());
+		options.add("-Xshare:auto");
+		if (javaVersion == 10) {
+			options.add(0, "-XX:+UseAppCDS");
+		}
+		tempArchive.delete();
+		try {
+			if (mode.equals(DYNAMIC_MODE)) {
+				train(directory, archive,
+						"-XX:ArchiveClassesAtExit=" + tempArchive.getName());
+			}
+			else {
+				File classList = new File(this.outputDirectory, baseName + ".classlist");
+				train(directory, archive,
+						"-XX:DumpLoadedClassList=" + classList.getAbsolutePath());
+				dump(directory, archive, classList, tempArchive, javaVersion);
+			}
+			if (!tempArchive.isFile()) {
+				throw new MojoExecutionException("Training run of " + archive
+						+ " did not create a shared archive");
+			}
+			sharedArchive.delete();
+			if (!tempArchive.renameTo(sharedArchive)) {
+				throw new MojoExecutionException("Unable to rename " + tempArchive
+						+ " to " + sharedArchive);
+			}
+			writeOptions(optionsFile, options);
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+		finally {
+			tempArchive.delete();
+		}
+		getLog().info("Created " + mode + " shared archive " + sharedArchive + " ("
+				+ sharedArchive.length() + " bytes), launch with: java @"
+				+ optionsFile.getName() + " -jar " + archive);
+	}
+
+	private void train(File directory, String archive, String option)
+			throws MojoExecutionException {
+		List<String> args = new ArrayList<String>();
+		args.add(option);
+		args.addAll(new RunArguments(this.jvmArguments).getArgs());
+		args.add("-Dcom.sun.management.jmxremote");
+		args.add("-Dcom.sun.management.jmxremote.port=" + this.jmxPort);
+		args.add("-Dcom.sun.management.jmxremote.authenticate=false");
+		args.add("-Dcom.sun.management.jmxremote.ssl=false");
+		args.add("-jar");
+		args.add(archive);
+		args.addAll(new RunArguments(this.arguments).getArgs());
+		args.add(ENABLE_MBEAN_PROPERTY);
+		args.add(JMX_NAME_PROPERTY_PREFIX + this.jmxName);
+		getLog().info("Training run of " + archive + " in " + directory);
+		RunProcess runProcess = new RunProcess(directory, new JavaExecutable().toString());
+		try {
+			runProcess.run(false, args.toArray(new String[args.size()]));
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Could not exec java", ex);
+		}
+		SpringApplicationLifecycle lifecycle = new SpringApplicationLifecycle(getLog(),
+				this.jmxName, this.wait, this.maxAttempts);
+		lifecycle.setProcess(runProcess.getRunningProcess());
+		try {
+			stopWhenReady(lifecycle);
+			int exitCode = lifecycle.waitForExit();
+			if (exitCode != 0) {
+				throw new MojoExecutionException(
+						"Training run failed with exit code " + exitCode);
+			}
+		}
+		finally {
+			runProcess.kill();
+		}
+	}
+
+	private void stopWhenReady(SpringApplicationLifecycle lifecycle)
+			throws MojoExecutionException {
+		JMXConnector connector;
+		try {
+			connector = lifecycle.connect(this.jmxPort);
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException(
+					"Failed to connect to MBean server at port " + this.jmxPort, ex);
+		}
+		try {
+			MBeanServerConnection connection = connector.getMBeanServerConnection();
+			lifecycle.waitUntilReady(connection);
+			getLog().debug("Spring application is ready, stopping it");
+			lifecycle.stop(connection);
+		}
+		catch (IOException ex) {
+			// The response won't be received as the server has died - ignoring
+			getLog().debug("Service is not reachable anymore (" + ex.getMessage() + ")");
+		}
+		finally {
+			try {
+				connector.close();
+			}
+			catch (IOException ex) {
+				// Ignore
+			}
+		}
+	}
+
+	private void dump(File directory, String archive, File classList,
+			File sharedArchive, int javaVersion) throws MojoExecutionException {
+		List<String> args = new ArrayList<String>();
+		if (javaVersion == 10) {
+			args.add("-XX:+UseAppCDS");
+		}
+		args.add("-Xshare:dump");
+		args.add("-XX:SharedClassListFile=" + classList.getAbsolutePath());
+		args.add("-XX:SharedArchiveFile=" + sharedArchive.getName());
+		args.add("-cp");
+		args.add(archive);
+		getLog().info("Dumping shared archive of " + archive);
+		try {
+			int exitCode = new RunProcess(directory, new JavaExecutable().toString())
+					.run(true, args.toArray(new String[args.size()]));
+			if (exitCode != 0) {
+				throw new MojoExecutionException(
+						"Dumping the shared archive failed with exit code " + exitCode);
+			}
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Could not exec java", ex);
+		}
+	}
+
+	private boolean hasClassPath(File archive) throws MojoExecutionException {
+		try {
+			JarFile jarFile = new JarFile(archive);
+			try {
+				Manifest manifest = jarFile.getManifest();
+				return manifest != null
+						&& manifest.getMainAttributes().getValue("Class-Path") != null;
+			}
+			finally {
+				jarFile.close();
+			}
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Unable to read " + archive, ex);
+		}
+	}
+
+	private void writeOptions(File file, List<String> options) throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (String option : options) {
+			content.append(option).append("\n");
+		}
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content.toString().getBytes("UTF-8"));
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private String getMode(int javaVersion) throws MojoExecutionException {
+		if (AUTO_MODE.equals(this.mode)) {
+			return (javaVersion >= 13 ? DYNAMIC_MODE : STATIC_MODE);
+		}
+		if (DYNAMIC_MODE.equals(this.mode) && javaVersion < 13) {
+			throw new MojoExecutionException(
+					"The dynamic mode requires Java 13 or later, use static instead");
+		}
+		if (!DYNAMIC_MODE.equals(this.mode) && !STATIC_MODE.equals(this.mode)) {
+			throw new MojoExecutionException("Unknown mode '" + this.mode
+					+ "', expected auto, dynamic or static");
+		}
+		return this.mode;
+	}
+
+	private int getJavaVersion() {
+		// The training run uses the JVM that runs Maven
+		String version = System.getProperty("java.specification.version");
+		if (version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+		try {
+			return Integer.parseInt(version);
+		}
+		catch (NumberFormatException ex) {
+			return 0;
+		}
+	}
+
+	private String getArchiveName() {
+		String classifier = (this.classifier == null ? "" : this.classifier.trim());
+		if (classifier.length() > 0 && !classifier.startsWith("-")) {
+			classifier = "-" + classifier;
+		}
+		return this.finalName + classifier + "."
+				+ this.project.getArtifact().getArtifactHandler().getExtension();
+	}
+
+	private File getDistDirFile() {
+		if (this.distDir == null) {
+			return new File(this.outputDirectory, "dist");
+		}
+		return new File(this.distDir);
+	}
+
+}
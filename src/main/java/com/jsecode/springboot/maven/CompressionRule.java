@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jsecode.springboot.maven;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * A model for the compression of the entries matching a pattern.
+ *
+ * @since 1.1
+ */
+public class CompressionRule {
+
+	/**
+	 * The pattern of the entries, for example {@code BOOT-INF/classes/**} or
+	 * {@code *.png}. Patterns without a {@code /} are matched against the file name of
+	 * the entry.
+	 */
+	@Parameter(required = true)
+	private String pattern;
+
+	/**
+	 * The compression level of the entries: 0 to store them, 1 to 9 to deflate them or
+	 * -1 for the default deflate level.
+	 */
+	@Parameter(required = true)
+	private int level;
+
+	public String getPattern() {
+		return this.pattern;
+	}
+
+	public void setPattern(String pattern) {
+		this.pattern = pattern;
+	}
+
+	public int getLevel() {
+		return this.level;
+	}
+
+	public void setLevel(int level) {
+		this.level = level;
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jsecode.springboot.maven;
+
+import java.util.List;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * A model for a custom layer of dependencies in a layered dist directory.
+ *
+ * @since 1.1
+ */
+public class DependencyLayer {
+
+	/**
+	 * The name of the layer, which is also the name of its directory or tar archive.
+	 */
+	@Parameter(required = true)
+	private String name;
+
+	/**
+	 * The dependencies to place in the layer. The {@link Include} element defines a
+	 * {@code groupId} and {@code artifactId} mandatory properties and an optional
+	 * {@code classifier} property.
+	 */
+	@Parameter
+	private List<Include> includes;
+
+	/**
+	 * The dependencies to leave out of the layer, even if they are included.
+	 */
+	@Parameter
+	private List<Exclude> excludes;
+
+	public String getName() {
+		return this.name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public List<Include> getIncludes() {
+		return this.includes;
+	}
+
+	public void setIncludes(List<Include> includes) {
+		this.includes = includes;
+	}
+
+	public List<Exclude> getExcludes() {
+		return this.excludes;
+	}
+
+	public void setExcludes(List<Exclude> excludes) {
+		this.excludes = excludes;
+	}
+
+}
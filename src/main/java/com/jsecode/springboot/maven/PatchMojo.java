@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jsecode.springboot.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import com.jsecode.springboot.maven.helper.DistributionManifest;
+import com.jsecode.springboot.maven.helper.PatchBundle;
+
+/**
+ * Create a patch bundle that turns a previous release of the dist directory into the
+ * current one. The bundle contains the files that were added or changed, an entry-level
+ * delta of the repackaged archive and the list of files to remove, and is applied on
+ * the target machines with the {@code apply-patch} goal. A manifest of the dist
+ * directory is written as well, so that it can be used as the baseline of the next
+ * release. Run this goal after {@code repackage}. Libraries placed in a shared
+ * {@code libPool} are outside of the dist directory and are not part of the patch.
+ *
+ * @since 1.1
+ */
+@Mojo(name = "patch", defaultPhase = LifecyclePhase.PACKAGE, requiresProject = true, threadSafe = true)
+public class PatchMojo extends AbstractMojo {
+
+	/**
+	 * The Maven project.
+	 */
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	/**
+	 * Directory containing the generated archive.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}", required = true)
+	private File outputDirectory;
+
+	/**
+	 * The dist directory that the archive was repackaged to. Defaults to the
+	 * {@code dist} directory in the {@link #outputDirectory}, like for
+	 * {@code repackage}.
+	 */
+	@Parameter
+	private String distDir;
+
+	/**
+	 * The previous release, either a copy of its dist directory or the manifest that
+	 * was written for it. Without a baseline only the manifest is written.
+	 */
+	@Parameter(property = "baseline")
+	private File baseline;
+
+	/**
+	 * The patch bundle to create.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/${project.build.finalName}-patch.zip", required = true)
+	private File patchFile;
+
+	/**
+	 * The manifest of the dist directory to write, with the size and SHA-1 hash of each
+	 * file and the hashes of the entries of the archive.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/${project.build.finalName}-dist.properties", required = true)
+	private File manifestFile;
+
+	/**
+	 * Skip the execution.
+	 */
+	@Parameter(property = "skip", defaultValue = "false")
+	private boolean skip;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (this.project.getPackaging().equals("pom")) {
+			getLog().debug("patch goal could not be applied to pom project.");
+			return;
+		}
+		if (this.skip) {
+			getLog().debug("skipping patch as per configuration.");
+			return;
+		}
+		if (this.baseline != null && !this.baseline.exists()) {
+			throw new MojoFailureException("Baseline " + this.baseline
+					+ " does not exist");
+		}
+		try {
+			File directory = getDistDirFile();
+			DistributionManifest manifest = DistributionManifest.scan(directory);
+			if (this.baseline == null) {
+				getLog().info("No baseline, only writing manifest " + this.manifestFile);
+			}
+			else {
+				PatchBundle.Summary summary = PatchBundle.create(
+						DistributionManifest.forBaseline(this.baseline), manifest,
+						directory, this.patchFile);
+				getLog().info("Patch " + this.patchFile + ": " + summary.getAdded()
+						+ " added, " + summary.getChanged() + " changed ("
+						+ summary.getDeltas() + " as delta), " + summary.getRemoved()
+						+ " removed, " + summary.getBundleSize() + " of "
+						+ summary.getSize() + " bytes");
+			}
+			manifest.save(this.manifestFile);
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+	}
+
+	private File getDistDirFile() {
+		if (this.distDir == null) {
+			return new File(this.outputDirectory, "dist");
+		}
+		return new File(this.distDir);
+	}
+
+}
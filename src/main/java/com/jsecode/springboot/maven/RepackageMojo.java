@@ -16,12 +16,19 @@
 
 package com.jsecode.springboot.maven;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Dependency;
@@ -35,7 +42,9 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
 import org.apache.maven.shared.artifact.filter.collection.ArtifactsFilter;
+import org.apache.maven.shared.artifact.filter.collection.FilterArtifacts;
 import org.apache.maven.shared.artifact.filter.collection.ScopeFilter;
+import org.sonatype.plexus.build.incremental.BuildContext;
 
 import org.springframework.boot.loader.tools.DefaultLaunchScript;
 import org.springframework.boot.loader.tools.LaunchScript;
@@ -43,7 +52,15 @@ import org.springframework.boot.loader.tools.Layout;
 import org.springframework.boot.loader.tools.LayoutFactory;
 import org.springframework.boot.loader.tools.Layouts;
 import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.Library;
 
+import com.jsecode.springboot.maven.helper.CompressionPolicy;
+import com.jsecode.springboot.maven.helper.LibraryChecksumCache;
+import com.jsecode.springboot.maven.helper.LibraryLayers;
+import com.jsecode.springboot.maven.helper.LibraryLinkMode;
+import com.jsecode.springboot.maven.helper.LibraryShrinker;
+import com.jsecode.springboot.maven.helper.LibraryUsageAnalyzer;
+import com.jsecode.springboot.maven.helper.RepackageFingerprint;
 import com.jsecode.springboot.maven.helper.Repackager;
 import com.jsecode.springboot.maven.helper.Repackager.MainClassTimeoutWarningListener;
 
@@ -74,6 +91,9 @@ public class RepackageMojo extends AbstractDependencyFilterMojo {
 	@Component
 	private MavenProjectHelper projectHelper;
 
+	@Component
+	private BuildContext buildContext;
+
 	/**
 	 * Directory containing the generated archive.
 	 * @since 1.0
@@ -199,6 +219,340 @@ public class RepackageMojo extends AbstractDependencyFilterMojo {
 	@Parameter(defaultValue = "true")
 	private boolean allInOne = true;
 
+	/**
+	 * How the libraries are placed in the {@code lib} directory when {@link #allInOne}
+	 * is disabled: {@code copy} copies them, {@code hardlink} and {@code symlink} link
+	 * them to the files in the local repository and {@code auto} creates hard links,
+	 * or symbolic links where hard links are not possible, for example because the
+	 * directory is on a different device. Libraries that cannot be linked are copied.
+	 * Hard links share their content with the local repository, so the libraries must
+	 * not be modified in place, and symbolic links only work where the local repository
+	 * is available.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "copy")
+	private String libLinkMode = "copy";
+
+	/**
+	 * Synchronize the {@code lib} directory in the dist directory with the libraries
+	 * when {@link #allInOne} is disabled, copying only new and changed libraries and
+	 * deleting those that are no longer required, instead of cleaning the directory
+	 * and copying all libraries again. The libraries in the directory are recorded in
+	 * a {@code .lib.state} file next to it, and files in the directory that are not
+	 * libraries are deleted.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean syncLibDirectory;
+
+	/**
+	 * Number of libraries copied to the {@code lib} directory at the same time when
+	 * {@link #allInOne} is disabled. Copies run on virtual threads on Java 21 and later
+	 * and on a pool of threads otherwise. A failed copy does not stop the others and
+	 * all failures are reported together.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "1")
+	private int copyThreads = 1;
+
+	/**
+	 * Directory of a content-addressed library pool shared by the modules of a reactor,
+	 * for example {@code ${maven.multiModuleProjectDirectory}/dist/lib-pool}. When set
+	 * and {@link #allInOne} is disabled, each library is placed in the pool once per
+	 * distinct content as {@code <sha1>/<name>.jar}, placed according to
+	 * {@link #libLinkMode}, and the {@code Class-Path} of the jar refers to the pool by
+	 * relative paths instead of a {@code lib} directory. The jar then has to be run
+	 * from a location with the same relative path to the pool.
+	 * @since 1.1
+	 */
+	@Parameter
+	private File libPool;
+
+	/**
+	 * Write the libraries to the {@code lib} directory under names that include a short
+	 * hash of their content, for example {@code spring-core-4.3.14.RELEASE-1a2b3c4d.jar},
+	 * when {@link #allInOne} is disabled. A library is then never overwritten in place,
+	 * which could break a running instance, and a new build only adds the libraries
+	 * that changed, so it can be rolled out or back by replacing the jar alone. The
+	 * libraries referenced by the last {@link #keepLibBuilds} builds are kept and the
+	 * others are deleted. Ignored when {@link #libPool} is set.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean hashLibNames;
+
+	/**
+	 * Number of builds, including the current one, whose libraries are kept in the
+	 * {@code lib} directory when {@link #hashLibNames} is enabled. The libraries of
+	 * each build are recorded in a {@code .lib.history} file next to the directory.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "3")
+	private int keepLibBuilds = 3;
+
+	/**
+	 * Publish {@link #distDir} atomically. Each build is written to a new release
+	 * directory in {@code <distDir>.releases} and {@code distDir}, which becomes a
+	 * symbolic link, is switched to it once the build is complete, so that a process
+	 * started from {@code distDir} never sees a partially written distribution. An
+	 * existing {@code distDir} directory is moved to the releases the first time.
+	 * Requires a file system that supports symbolic links.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean atomicPublish;
+
+	/**
+	 * Number of releases kept in {@code <distDir>.releases} when {@link #atomicPublish}
+	 * is enabled, including the published one. Older releases are deleted.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "3")
+	private int keepReleases = 3;
+
+	/**
+	 * Split the dist directory into layers for container builds, from the least to the
+	 * most frequently changing: {@code dependencies}, the custom {@link #layers},
+	 * {@code snapshot-dependencies}, {@code spring-boot-loader}, {@code resources} and
+	 * {@code application}. The archive is repackaged with its libraries nested, as with
+	 * {@link #allInOne}, and written to the output directory, and its entries are
+	 * written to {@code <distDir>/layers}, one directory or tar archive per layer, with
+	 * a {@code layers.idx} index. Extracting the layers on top of each other yields the
+	 * exploded archive, which is launched with {@code java -cp <dir>
+	 * org.springframework.boot.loader.JarLauncher}. Layers whose entries did not change
+	 * since the previous build are not written again. Requires the JAR layout.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean layered;
+
+	/**
+	 * Write each layer to a reproducible tar archive, {@code <layer>.tar}, rather than
+	 * to a directory when {@link #layered} is enabled. The digest of each archive is
+	 * recorded in {@code .layers.state} and reused while the layer does not change.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean layerArchives;
+
+	/**
+	 * Custom layers of dependencies when {@link #layered} is enabled, for example for
+	 * the modules of the project, which change more often than third party libraries.
+	 * Specify each layer as a <code>&lt;layer&gt;</code> with a
+	 * <code>&lt;name&gt;</code> and <code>&lt;includes&gt;</code> and
+	 * <code>&lt;excludes&gt;</code> like those of this goal. A dependency is placed in
+	 * the first layer that includes it and otherwise in {@code snapshot-dependencies} or
+	 * {@code dependencies}.
+	 * @since 1.1
+	 */
+	@Parameter
+	private List<DependencyLayer> layers;
+
+	/**
+	 * Write the application as an exploded distribution instead of an archive, for the
+	 * fastest startup: its classes and resources are written to {@code <distDir>/classes}
+	 * and its libraries to {@code <distDir>/lib} as with {@link #allInOne} disabled,
+	 * which is implied. {@code <finalName>.args} and {@code <finalName>.sh} launch the
+	 * main class with a plain class path, {@code java @app.args} or {@code ./app.sh},
+	 * without the Spring Boot loader. Unchanged files are not written again, so the
+	 * directory can be copied incrementally. The archive itself is not repackaged or
+	 * attached. Requires the JAR layout.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean exploded;
+
+	/**
+	 * Remove the classes that the application cannot reach from its libraries. A class
+	 * is reachable from the classes of the application, the classes named in text
+	 * resources such as {@code META-INF/spring.factories} and {@code META-INF/services}
+	 * files, and the classes matching one of the {@link #shrinkKeep} rules, through the
+	 * classes and class names in the constant pool of each reachable class. The shrunk
+	 * libraries are written to {@code ${project.build.directory}/shrunk-lib} and used
+	 * in place of the originals. Requires the JAR layout.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean shrink;
+
+	/**
+	 * The libraries that are shrunk when {@link #shrink} is enabled, specified as
+	 * <code>&lt;include&gt;</code> elements like the includes of this goal. All
+	 * libraries by default. The classes of the other libraries are all kept.
+	 * @since 1.1
+	 */
+	@Parameter
+	private List<Include> shrinkIncludes;
+
+	/**
+	 * The libraries that are not shrunk when {@link #shrink} is enabled, specified as
+	 * <code>&lt;exclude&gt;</code> elements like the excludes of this goal.
+	 * @since 1.1
+	 */
+	@Parameter
+	private List<Exclude> shrinkExcludes;
+
+	/**
+	 * Classes that are kept when {@link #shrink} is enabled, because they are only
+	 * found by reflection on a computed name or by scanning a package: a class, such
+	 * as {@code com.example.Foo}, the classes of a package, such as
+	 * {@code com.example.*}, or those of a package and its sub-packages, such as
+	 * {@code com.example.**}.
+	 * @since 1.1
+	 */
+	@Parameter
+	private List<String> shrinkKeep;
+
+	/**
+	 * Find the libraries that neither the application nor a used library refers to,
+	 * through the class names in the constant pools of their classes and in text
+	 * resources such as {@code META-INF/spring.factories}, and log a warning for each.
+	 * Libraries that register themselves with {@code META-INF/services} files or
+	 * {@code META-INF/spring.factories}, and libraries without classes, are always
+	 * used. A report of the libraries and what uses them is written to
+	 * {@link #unusedLibrariesReport}.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean analyzeLibraries;
+
+	/**
+	 * Exclude the libraries that are found to be unused, as with
+	 * {@link #analyzeLibraries}, which is implied, from the repackaged application.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean excludeUnusedLibraries;
+
+	/**
+	 * The libraries that are always used, because they are only loaded by reflection on
+	 * a computed name, specified as <code>&lt;include&gt;</code> elements like the
+	 * includes of this goal.
+	 * @since 1.1
+	 */
+	@Parameter
+	private List<Include> keepLibraries;
+
+	/**
+	 * The report of the library analysis.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/unused-libraries.txt")
+	private File unusedLibrariesReport;
+
+	/**
+	 * Number of threads used to compress the entries of the repackaged archive. Entries
+	 * are always written in the same order, so the archive does not depend on the
+	 * number of threads.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "1")
+	private int compressionThreads = 1;
+
+	/**
+	 * Number of threads used to read and hash the nested libraries of an
+	 * {@link #allInOne} archive ahead of writing them, so that reading libraries
+	 * overlaps with compressing and writing the archive. {@code 0} reads each library
+	 * when it is written. The archive does not depend on the number of threads.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "0")
+	private int prefetchThreads;
+
+	/**
+	 * Compression level of the entries of the repackaged archive that do not match one
+	 * of the {@link #compressionRules}: 0 to store them, 1 to 9 to deflate them or -1
+	 * for the default deflate level. Nested libraries are always stored, and entries
+	 * that the source archive stores are only deflated when a rule matches them.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "-1")
+	private int compressionLevel = -1;
+
+	/**
+	 * Rules that choose the compression level of the entries matching a pattern, for
+	 * example to store {@code BOOT-INF/classes/**} so that classes are not inflated
+	 * when they are loaded. Specify each rule as a <code>&lt;compressionRule&gt;</code>
+	 * with a <code>&lt;pattern&gt;</code> and a <code>&lt;level&gt;</code>. The first
+	 * matching rule applies.
+	 * @since 1.1
+	 */
+	@Parameter
+	private List<CompressionRule> compressionRules;
+
+	/**
+	 * Store entries, such as images or fonts, that do not shrink by at least 5% when
+	 * they are deflated.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean adaptiveCompression;
+
+	/**
+	 * Write an index of the packages in the application classes and each library and
+	 * launch the archive with a launcher that uses it to look up classes and resources
+	 * only in the jars that contain their package. Requires the JAR layout. With
+	 * {@link #allInOne} disabled the launcher builds the class path from the index,
+	 * so the libraries are not listed in the manifest.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean packageIndex;
+
+	/**
+	 * Merge the {@code META-INF/spring.factories} and {@code META-INF/services} files of
+	 * the application classes and the libraries at build time, without duplicates, and
+	 * write them to the archive so that the launcher serves each as a single resource
+	 * instead of searching every jar at startup. Requires {@link #packageIndex}.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean serviceIndex;
+
+	/**
+	 * Cache the checksums of library jars in {@link #checksumCache} so that libraries
+	 * that have not changed since a previous build are not hashed again. Cached entries
+	 * are trusted while the size and last modified time of the library are unchanged,
+	 * see {@link #verifyChecksumCache}.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean useChecksumCache;
+
+	/**
+	 * File in which the checksums of library jars are cached between builds. Entries are
+	 * keyed by path and only used while the size and last modified time of the library
+	 * are unchanged. Entries of libraries that are not part of the current build are
+	 * removed when the cache is saved, so the file should not be shared by projects.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/library-checksums.properties")
+	private File checksumCache;
+
+	/**
+	 * Also check the end of each library, which contains the central directory of a
+	 * jar, before using its cached checksums.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean verifyChecksumCache;
+
+	/**
+	 * Skip repackaging when the source archive, the libraries and the configuration are
+	 * the same as for the archive that was previously written to the dist directory, and
+	 * none of the files written then, in the dist directory and on the class path of
+	 * the archive, have been changed or removed since.
+	 * @since 1.1
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean upToDateCheck;
+
+	/**
+	 * The version of this plugin, which is part of the up-to-date check.
+	 */
+	@Parameter(defaultValue = "${plugin.version}", readonly = true)
+	private String pluginVersion;
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		if (this.project.getPackaging().equals("pom")) {
@@ -216,20 +570,220 @@ public class RepackageMojo extends AbstractDependencyFilterMojo {
 		File source = this.project.getArtifact().getFile();
 		File target = getTargetFile();
 		Repackager repackager = getRepackager(source);
+		repackager.setLibraryLinkMode(getLibraryLinkMode());
 		Set<Artifact> artifacts = filterDependencies(this.project.getArtifacts(),
 				getFilters(getAdditionalFilters()));
 		Libraries libraries = new ArtifactsLibraries(artifacts, this.requiresUnpack,
 				getLog());
+		LibraryChecksumCache checksumCache = getChecksumCache();
+		repackager.setChecksumCache(checksumCache);
+		LibraryLayers libraryLayers = (this.layered ? getLibraryLayers(artifacts) : null);
+		repackager.setLayers(libraryLayers);
+		if (this.exploded && this.layered) {
+			throw new MojoExecutionException(
+					"An exploded distribution cannot be layered");
+		}
+		repackager.setExploded(this.exploded);
+		LibraryUsageAnalyzer libraryUsageAnalyzer = (this.analyzeLibraries
+				|| this.excludeUnusedLibraries ? getLibraryUsageAnalyzer(artifacts)
+						: null);
+		repackager.setLibraryUsageAnalyzer(libraryUsageAnalyzer);
+		LibraryShrinker libraryShrinker = (this.shrink ? getLibraryShrinker(artifacts)
+				: null);
+		repackager.setLibraryShrinker(libraryShrinker);
+		File distDir = getDistDirFile();
+		// A layered archive is written to the output directory and split into distDir,
+		// an exploded distribution has no archive and is checked by its argument file
+		File archive = (this.layered ? target
+				: this.exploded ? new File(distDir, getExplodedName(target) + ".args")
+						: new File(distDir, target.getName()));
+		File stateFile = new File(distDir, "." + target.getName() + ".fingerprint");
 		try {
 			LaunchScript launchScript = getLaunchScript();
-			repackager.repackage(target, libraries, launchScript, this.allInOne, getDistDirFile());
+			RepackageFingerprint fingerprint = (this.upToDateCheck
+					? getFingerprint(target, libraries, launchScript, checksumCache,
+							libraryLayers, libraryUsageAnalyzer, libraryShrinker)
+					: null);
+			// The entries of the source jar are only read when the build context cannot
+			// tell that it is unchanged, the libraries and configuration are always checked
+			if (fingerprint != null && !(this.buildContext.isIncremental()
+					&& !this.buildContext.hasDelta(source))) {
+				fingerprint.addSourceJar(source);
+			}
+			if (fingerprint != null
+					&& fingerprint.isUpToDate(stateFile, getOutputs(archive, distDir))) {
+				getLog().info("Skipping repackaging, " + archive + " is up to date");
+			}
+			else {
+				stateFile.delete();
+				if (fingerprint != null && !fingerprint.hasSourceJar()) {
+					fingerprint.addSourceJar(source);
+				}
+				repackager.repackage(target, libraries, launchScript, isAllInOne(),
+						distDir);
+				if (fingerprint != null && archive.isFile()) {
+					fingerprint.save(stateFile, getOutputs(archive, distDir));
+				}
+				if (repackager.getLibrarySeedFailure() != null) {
+					getLog().warn("Unable to link the libraries of the published release,"
+							+ " all libraries were written again: "
+							+ repackager.getLibrarySeedFailure().getMessage());
+				}
+				if (libraryUsageAnalyzer != null) {
+					reportUnusedLibraries(libraryUsageAnalyzer);
+				}
+				if (libraryShrinker != null) {
+					getLog().info("Removed " + libraryShrinker.getRemovedClasses()
+							+ " unreachable classes (" + libraryShrinker.getRemovedBytes()
+							+ " bytes) from " + libraryShrinker.getShrunkLibraries()
+							+ " libraries");
+				}
+				this.buildContext.refresh(distDir);
+			}
 		}
 		catch (IOException ex) {
 			throw new MojoExecutionException(ex.getMessage(), ex);
 		}
-		updateArtifact(source, target, repackager.getBackupFile());
+		saveChecksumCache(checksumCache);
+		if (this.exploded) {
+			getLog().info("Exploded distribution written to " + distDir
+					+ ", launch with: java @" + archive.getName());
+		}
+		else {
+			updateArtifact(source, target, repackager.getBackupFile());
+		}
+	}
+
+	private boolean isAllInOne() {
+		return this.allInOne && !this.exploded;
+	}
+
+	private String getExplodedName(File target) {
+		String name = target.getName();
+		return name.substring(0, name.lastIndexOf('.'));
+	}
+
+	private RepackageFingerprint getFingerprint(File target, Libraries libraries, LaunchScript launchScript,
+			LibraryChecksumCache checksumCache, LibraryLayers libraryLayers,
+			LibraryUsageAnalyzer libraryUsageAnalyzer, LibraryShrinker libraryShrinker)
+					throws IOException {
+		RepackageFingerprint fingerprint = new RepackageFingerprint(checksumCache);
+		fingerprint.addValue("pluginVersion", this.pluginVersion);
+		fingerprint.addValue("project", this.project.getId());
+		fingerprint.addValue("target", target.getName());
+		fingerprint.addValue("layout", this.layout);
+		fingerprint.addValue("layoutFactory", (this.layoutFactory == null ? null
+				: this.layoutFactory.getClass().getName()));
+		fingerprint.addValue("mainClass", this.mainClass);
+		fingerprint.addValue("allInOne", isAllInOne());
+		fingerprint.addValue("exploded", this.exploded);
+		fingerprint.addValue("compression", getCompressionPolicy());
+		fingerprint.addValue("packageIndex", this.packageIndex);
+		fingerprint.addValue("serviceIndex", this.serviceIndex);
+		fingerprint.addValue("libLinkMode",
+				(isAllInOne() ? null : LibraryLinkMode.forName(this.libLinkMode)));
+		fingerprint.addValue("libPool", (isAllInOne() || this.libPool == null ? null
+				: this.libPool.getAbsolutePath()));
+		fingerprint.addValue("hashLibNames", (isAllInOne() ? null : this.hashLibNames));
+		fingerprint.addValue("keepLibBuilds", (isAllInOne() || !this.hashLibNames ? null
+				: this.keepLibBuilds));
+		fingerprint.addValue("syncLibDirectory",
+				(isAllInOne() ? null : this.syncLibDirectory));
+		fingerprint.addValue("atomicPublish", this.atomicPublish);
+		fingerprint.addValue("keepReleases",
+				(this.atomicPublish ? this.keepReleases : null));
+		fingerprint.addValue("layers", libraryLayers);
+		fingerprint.addValue("layerArchives",
+				(libraryLayers == null ? null : this.layerArchives));
+		fingerprint.addValue("unusedLibraries", (libraryUsageAnalyzer == null
+				|| !libraryUsageAnalyzer.isExcludeUnused() ? null : libraryUsageAnalyzer));
+		fingerprint.addValue("shrink", libraryShrinker);
+		fingerprint.addContent("launchScript",
+				(launchScript == null ? null : launchScript.toByteArray()));
+		fingerprint.addLibraries(libraries);
+		return fingerprint;
 	}
 	
+	/**
+	 * Return the outputs of the repackaging: the archive, the dist directory, which
+	 * holds the archive or its layers and the libraries of a thin archive, and the
+	 * libraries on the class path of the archive that are outside of it, such as those
+	 * of a library pool.
+	 */
+	private List<File> getOutputs(File archive, File distDir) throws IOException {
+		List<File> outputs = new ArrayList<File>();
+		outputs.add(archive);
+		outputs.add(distDir);
+		for (String path : getClassPath(archive)) {
+			if (!path.equals(".")) {
+				outputs.add(new File(archive.getParentFile(), path));
+			}
+		}
+		return outputs;
+	}
+
+	private List<String> getClassPath(File archive) throws IOException {
+		List<String> classPath = new ArrayList<String>();
+		if (!archive.isFile()) {
+			return classPath;
+		}
+		if (this.exploded) {
+			// The argument file is "-cp", the class path and the main class
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(archive), "UTF-8"));
+			try {
+				reader.readLine();
+				String path = reader.readLine();
+				if (path != null) {
+					classPath.addAll(Arrays.asList(path.replace("\"", "").split(":")));
+				}
+			}
+			finally {
+				reader.close();
+			}
+			return classPath;
+		}
+		JarFile jarFile = new JarFile(archive);
+		try {
+			Manifest manifest = jarFile.getManifest();
+			String value = (manifest != null
+					? manifest.getMainAttributes().getValue("Class-Path") : null);
+			if (value != null) {
+				for (String path : value.trim().split("\\s+")) {
+					if (path.length() > 0) {
+						classPath.add(path);
+					}
+				}
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+		return classPath;
+	}
+
+	private LibraryChecksumCache getChecksumCache() {
+		if (!this.useChecksumCache || this.checksumCache == null) {
+			return null;
+		}
+		LibraryChecksumCache checksumCache = new LibraryChecksumCache(
+				this.checksumCache, this.verifyChecksumCache);
+		checksumCache.load();
+		return checksumCache;
+	}
+
+	private void saveChecksumCache(LibraryChecksumCache checksumCache) {
+		if (checksumCache != null) {
+			try {
+				checksumCache.save();
+			}
+			catch (IOException ex) {
+				getLog().warn("Unable to save checksum cache " + this.checksumCache
+						+ ": " + ex.getMessage());
+			}
+		}
+	}
+
 	private File getDistDirFile() {
 		String distStr = this.distDir;
 		if (distStr == null) {
@@ -261,6 +815,17 @@ public class RepackageMojo extends AbstractDependencyFilterMojo {
 		repackager.addMainClassTimeoutWarningListener(
 				new LoggingMainClassTimeoutWarningListener());
 		repackager.setMainClass(this.mainClass);
+		repackager.setCompressionThreads(this.compressionThreads);
+		repackager.setPrefetchThreads(this.prefetchThreads);
+		repackager.setSyncLibraryDirectory(this.syncLibDirectory);
+		repackager.setCopyThreads(this.copyThreads);
+		repackager.setLibraryPool(this.libPool);
+		repackager.setHashedLibraryNames(this.hashLibNames ? Math.max(this.keepLibBuilds, 1) : 0);
+		repackager.setKeepReleases(this.atomicPublish ? Math.max(this.keepReleases, 1) : 0);
+		repackager.setCompressionPolicy(getCompressionPolicy());
+		repackager.setPackageIndex(this.packageIndex);
+		repackager.setServiceIndex(this.serviceIndex);
+		repackager.setLayerArchives(this.layerArchives);
 		if (this.layout != null) {
 			getLog().info("Layout: " + this.layout);
 			if (this.layout == LayoutType.MODULE) {
@@ -272,6 +837,123 @@ public class RepackageMojo extends AbstractDependencyFilterMojo {
 		return repackager;
 	}
 
+	private LibraryLinkMode getLibraryLinkMode() throws MojoExecutionException {
+		try {
+			return LibraryLinkMode.forName(this.libLinkMode);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+	}
+
+	private LibraryLayers getLibraryLayers(Set<Artifact> artifacts)
+			throws MojoExecutionException {
+		LibraryLayers libraryLayers = new LibraryLayers();
+		Set<Artifact> remaining = new LinkedHashSet<Artifact>(artifacts);
+		try {
+			if (this.layers != null) {
+				for (DependencyLayer layer : this.layers) {
+					libraryLayers.addLayer(layer.getName());
+					if (layer.getIncludes() == null || layer.getIncludes().isEmpty()) {
+						continue;
+					}
+					FilterArtifacts filters = new FilterArtifacts();
+					filters.addFilter(new IncludeFilter(layer.getIncludes()));
+					if (layer.getExcludes() != null && !layer.getExcludes().isEmpty()) {
+						filters.addFilter(new ExcludeFilter(layer.getExcludes()));
+					}
+					for (Artifact artifact : filterDependencies(remaining, filters)) {
+						libraryLayers.setLayer(artifact.getFile(), layer.getName());
+						remaining.remove(artifact);
+					}
+				}
+			}
+			for (Artifact artifact : remaining) {
+				if (artifact.isSnapshot()) {
+					libraryLayers.setLayer(artifact.getFile(),
+							LibraryLayers.SNAPSHOT_DEPENDENCIES);
+				}
+			}
+		}
+		catch (IllegalArgumentException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+		return libraryLayers;
+	}
+
+	private LibraryUsageAnalyzer getLibraryUsageAnalyzer(Set<Artifact> artifacts)
+			throws MojoExecutionException {
+		LibraryUsageAnalyzer libraryUsageAnalyzer = new LibraryUsageAnalyzer();
+		libraryUsageAnalyzer.setExcludeUnused(this.excludeUnusedLibraries);
+		if (this.keepLibraries != null && !this.keepLibraries.isEmpty()) {
+			FilterArtifacts filters = new FilterArtifacts();
+			filters.addFilter(new IncludeFilter(this.keepLibraries));
+			List<File> files = new ArrayList<File>();
+			for (Artifact artifact : filterDependencies(artifacts, filters)) {
+				files.add(artifact.getFile());
+			}
+			libraryUsageAnalyzer.setKeptLibraries(files);
+		}
+		return libraryUsageAnalyzer;
+	}
+
+	private void reportUnusedLibraries(LibraryUsageAnalyzer libraryUsageAnalyzer)
+			throws IOException {
+		for (Library library : libraryUsageAnalyzer.getUnusedLibraries()) {
+			getLog().warn((libraryUsageAnalyzer.isExcludeUnused() ? "Excluded" : "Found")
+					+ " unused library " + library.getName());
+		}
+		libraryUsageAnalyzer.writeReport(this.unusedLibrariesReport);
+		getLog().info(libraryUsageAnalyzer.getUnusedLibraries().size()
+				+ " unused libraries, see " + this.unusedLibrariesReport);
+	}
+
+	private LibraryShrinker getLibraryShrinker(Set<Artifact> artifacts)
+			throws MojoExecutionException {
+		LibraryShrinker libraryShrinker = new LibraryShrinker(
+				new File(this.outputDirectory, "shrunk-lib"));
+		try {
+			if (this.shrinkKeep != null) {
+				for (String rule : this.shrinkKeep) {
+					libraryShrinker.addKeepRule(rule);
+				}
+			}
+		}
+		catch (IllegalArgumentException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+		boolean hasIncludes = (this.shrinkIncludes != null
+				&& !this.shrinkIncludes.isEmpty());
+		boolean hasExcludes = (this.shrinkExcludes != null
+				&& !this.shrinkExcludes.isEmpty());
+		if (hasIncludes || hasExcludes) {
+			FilterArtifacts filters = new FilterArtifacts();
+			if (hasIncludes) {
+				filters.addFilter(new IncludeFilter(this.shrinkIncludes));
+			}
+			if (hasExcludes) {
+				filters.addFilter(new ExcludeFilter(this.shrinkExcludes));
+			}
+			List<File> files = new ArrayList<File>();
+			for (Artifact artifact : filterDependencies(artifacts, filters)) {
+				files.add(artifact.getFile());
+			}
+			libraryShrinker.setLibraries(files);
+		}
+		return libraryShrinker;
+	}
+
+	private CompressionPolicy getCompressionPolicy() {
+		CompressionPolicy policy = new CompressionPolicy(this.compressionLevel,
+				this.adaptiveCompression);
+		if (this.compressionRules != null) {
+			for (CompressionRule rule : this.compressionRules) {
+				policy.addRule(rule.getPattern(), rule.getLevel());
+			}
+		}
+		return policy;
+	}
+
 	private ArtifactsFilter[] getAdditionalFilters() {
 		List<ArtifactsFilter> filters = new ArrayList<ArtifactsFilter>();
 		if (this.excludeDevtools) {
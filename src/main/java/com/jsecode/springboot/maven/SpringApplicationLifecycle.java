@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jsecode.springboot.maven;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Waits for a Spring application that exposes the {@code SpringApplicationAdmin} MBean
+ * to be reachable and ready, and stops it, on behalf of the goals that manage the
+ * lifecycle of an application. Attempts are retried at a fixed interval up to a maximum
+ * number of attempts. When the process of the application is known, waiting fails as
+ * soon as the process exits.
+ */
+class SpringApplicationLifecycle {
+
+	private final Log log;
+
+	private final String jmxName;
+
+	private final long wait;
+
+	private final int maxAttempts;
+
+	private final Object lock = new Object();
+
+	private Process process;
+
+	/**
+	 * Create a new {@link SpringApplicationLifecycle} instance that does not wait.
+	 * @param log the log for progress messages
+	 * @param jmxName the JMX name of the {@code SpringApplicationAdmin} MBean
+	 */
+	SpringApplicationLifecycle(Log log, String jmxName) {
+		this(log, jmxName, 0, 1);
+	}
+
+	/**
+	 * Create a new {@link SpringApplicationLifecycle} instance.
+	 * @param log the log for progress messages
+	 * @param jmxName the JMX name of the {@code SpringApplicationAdmin} MBean
+	 * @param wait the number of milliseconds to wait between two attempts
+	 * @param maxAttempts the maximum number of attempts
+	 */
+	SpringApplicationLifecycle(Log log, String jmxName, long wait, int maxAttempts) {
+		this.log = log;
+		this.jmxName = jmxName;
+		this.wait = wait;
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Set the process of the application, so that waiting for it fails once it exited.
+	 * @param process the process or {@code null}
+	 */
+	void setProcess(Process process) {
+		this.process = process;
+	}
+
+	/**
+	 * Connect to the MBean server exposed on the given port of the current machine,
+	 * retrying while it is not up yet.
+	 * @param port the port of the MBean server
+	 * @return the connector
+	 * @throws IOException if the connection fails for another reason than the server not
+	 * being up
+	 * @throws MojoExecutionException if the server is not up before the timeout
+	 */
+	JMXConnector connect(int port) throws IOException, MojoExecutionException {
+		this.log.debug("Connecting to local MBeanServer at port " + port);
+		for (int i = 0; i < this.maxAttempts; i++) {
+			try {
+				JMXConnector connector = SpringApplicationAdminClient.connect(port);
+				this.log.debug("Connected to local MBeanServer at port " + port);
+				return connector;
+			}
+			catch (IOException ex) {
+				if (!hasCauseWithType(ex, ConnectException.class)) {
+					throw ex;
+				}
+				this.log.debug("MBean server at port " + port + " is not up yet...");
+			}
+			sleep();
+		}
+		throw new MojoExecutionException(
+				"JMX MBean server was not reachable before the configured timeout ("
+						+ getTimeout() + "ms)");
+	}
+
+	/**
+	 * Wait for the application to be ready.
+	 * @param connection the connection to the MBean server of the application
+	 * @throws MojoExecutionException if the application is not ready before the
+	 * timeout or its readiness cannot be checked
+	 */
+	void waitUntilReady(MBeanServerConnection connection)
+			throws MojoExecutionException {
+		SpringApplicationAdminClient client = new SpringApplicationAdminClient(
+				connection, this.jmxName);
+		this.log.debug("Waiting for spring application to start...");
+		for (int i = 0; i < this.maxAttempts; i++) {
+			if (client.isReady()) {
+				return;
+			}
+			this.log.debug("Spring application is not ready yet, waiting " + this.wait
+					+ "ms (attempt " + (i + 1) + ")");
+			sleep();
+		}
+		throw new MojoExecutionException(
+				"Spring application did not start before the configured timeout ("
+						+ getTimeout() + "ms)");
+	}
+
+	/**
+	 * Stop the application.
+	 * @param connection the connection to the MBean server of the application
+	 * @throws IOException if the MBean server cannot be contacted, which is also the
+	 * case when the application exited before it replied
+	 * @throws MojoExecutionException if the lifecycle MBean is not found or cannot be
+	 * invoked
+	 */
+	void stop(MBeanServerConnection connection)
+			throws IOException, MojoExecutionException {
+		try {
+			new SpringApplicationAdminClient(connection, this.jmxName).stop();
+		}
+		catch (InstanceNotFoundException ex) {
+			throw new MojoExecutionException(
+					"Spring application lifecycle JMX bean not found. Could not stop "
+							+ "application gracefully",
+					ex);
+		}
+	}
+
+	/**
+	 * Wait for the process of the application to exit.
+	 * @return the exit code of the process
+	 * @throws MojoExecutionException if the process does not exit before the timeout
+	 */
+	int waitForExit() throws MojoExecutionException {
+		for (int i = 0; i < this.maxAttempts; i++) {
+			try {
+				return this.process.exitValue();
+			}
+			catch (IllegalThreadStateException ex) {
+				pause();
+			}
+		}
+		throw new MojoExecutionException(
+				"Spring application did not stop before the configured timeout ("
+						+ getTimeout() + "ms)");
+	}
+
+	private long getTimeout() {
+		return this.wait * this.maxAttempts;
+	}
+
+	private void sleep() throws MojoExecutionException {
+		if (this.process != null) {
+			try {
+				throw new MojoExecutionException(
+						"Spring application exited with exit code "
+								+ this.process.exitValue());
+			}
+			catch (IllegalThreadStateException ex) {
+				// Still running
+			}
+		}
+		pause();
+	}
+
+	private void pause() {
+		synchronized (this.lock) {
+			try {
+				this.lock.wait(this.wait);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+						"Interrupted while waiting for Spring Boot app.");
+			}
+		}
+	}
+
+	private static boolean hasCauseWithType(Throwable t,
+			Class<? extends Exception> type) {
+		return type.isAssignableFrom(t.getClass())
+				|| t.getCause() != null && hasCauseWithType(t.getCause(), type);
+	}
+
+}
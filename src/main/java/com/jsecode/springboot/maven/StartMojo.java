@@ -19,14 +19,10 @@ package com.jsecode.springboot.maven;
 import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
-import java.net.ConnectException;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
 
-import javax.management.MBeanServerConnection;
-import javax.management.ReflectionException;
 import javax.management.remote.JMXConnector;
 
 import org.apache.maven.plugin.MojoExecutionException;
@@ -85,8 +81,6 @@ public class StartMojo extends AbstractRunMojo {
 	@Parameter
 	private int maxAttempts = 60;
 
-	private final Object lock = new Object();
-
 	@Override
 	protected void runWithForkedJvm(File workingDirectory, List<String> args)
 			throws MojoExecutionException, MojoFailureException {
@@ -150,175 +144,35 @@ public class StartMojo extends AbstractRunMojo {
 				new LaunchRunner(startClassName, arguments), startClassName + ".main()");
 		launchThread.setContextClassLoader(new URLClassLoader(getClassPathUrls()));
 		launchThread.start();
-		waitForSpringApplication(this.wait, this.maxAttempts);
-	}
-
-	private void waitForSpringApplication(long wait, int maxAttempts)
-			throws MojoExecutionException {
-		SpringApplicationAdminClient client = new SpringApplicationAdminClient(
-				ManagementFactory.getPlatformMBeanServer(), this.jmxName);
-		getLog().debug("Waiting for spring application to start...");
-		for (int i = 0; i < maxAttempts; i++) {
-			if (client.isReady()) {
-				return;
-			}
-			String message = "Spring application is not ready yet, waiting " + wait
-					+ "ms (attempt " + (i + 1) + ")";
-			getLog().debug(message);
-			synchronized (this.lock) {
-				try {
-					this.lock.wait(wait);
-				}
-				catch (InterruptedException ex) {
-					Thread.currentThread().interrupt();
-					throw new IllegalStateException(
-							"Interrupted while waiting for Spring Boot app to start.");
-				}
-			}
-		}
-		throw new MojoExecutionException(
-				"Spring application did not start before the configured timeout ("
-						+ (wait * maxAttempts) + "ms");
+		createLifecycle().waitUntilReady(ManagementFactory.getPlatformMBeanServer());
 	}
 
 	private void waitForSpringApplication()
 			throws MojoFailureException, MojoExecutionException {
+		SpringApplicationLifecycle lifecycle = createLifecycle();
 		try {
 			if (isFork()) {
-				waitForForkedSpringApplication();
+				JMXConnector connector = lifecycle.connect(this.jmxPort);
+				try {
+					lifecycle.waitUntilReady(connector.getMBeanServerConnection());
+				}
+				finally {
+					connector.close();
+				}
 			}
 			else {
-				doWaitForSpringApplication(ManagementFactory.getPlatformMBeanServer());
+				lifecycle.waitUntilReady(ManagementFactory.getPlatformMBeanServer());
 			}
 		}
 		catch (IOException ex) {
 			throw new MojoFailureException("Could not contact Spring Boot application",
 					ex);
 		}
-		catch (Exception ex) {
-			throw new MojoExecutionException(
-					"Could not figure out if the application has started", ex);
-		}
-	}
-
-	private void waitForForkedSpringApplication()
-			throws IOException, MojoFailureException, MojoExecutionException {
-		try {
-			getLog().debug("Connecting to local MBeanServer at port " + this.jmxPort);
-			JMXConnector connector = execute(this.wait, this.maxAttempts,
-					new CreateJmxConnector(this.jmxPort));
-			if (connector == null) {
-				throw new MojoExecutionException(
-						"JMX MBean server was not reachable before the configured "
-								+ "timeout (" + (this.wait * this.maxAttempts) + "ms");
-			}
-			getLog().debug("Connected to local MBeanServer at port " + this.jmxPort);
-			try {
-				MBeanServerConnection connection = connector.getMBeanServerConnection();
-				doWaitForSpringApplication(connection);
-			}
-			finally {
-				connector.close();
-			}
-		}
-		catch (IOException ex) {
-			throw ex;
-		}
-		catch (Exception ex) {
-			throw new MojoExecutionException(
-					"Failed to connect to MBean server at port " + this.jmxPort, ex);
-		}
-	}
-
-	private void doWaitForSpringApplication(MBeanServerConnection connection)
-			throws IOException, MojoExecutionException, MojoFailureException {
-		final SpringApplicationAdminClient client = new SpringApplicationAdminClient(
-				connection, this.jmxName);
-		try {
-			execute(this.wait, this.maxAttempts, new Callable<Boolean>() {
-
-				@Override
-				public Boolean call() throws Exception {
-					return (client.isReady() ? true : null);
-				}
-
-			});
-		}
-		catch (ReflectionException ex) {
-			throw new MojoExecutionException("Unable to retrieve 'ready' attribute",
-					ex.getCause());
-		}
-		catch (Exception ex) {
-			throw new MojoFailureException("Could not invoke shutdown operation", ex);
-		}
 	}
 
-	/**
-	 * Execute a task, retrying it on failure.
-	 * @param <T> the result type
-	 * @param wait the wait time
-	 * @param maxAttempts the maximum number of attempts
-	 * @param callback the task to execute (possibly multiple times). The callback should
-	 * return {@code null} to indicate that another attempt should be made
-	 * @return the result
-	 * @throws Exception in case of execution errors
-	 */
-	public <T> T execute(long wait, int maxAttempts, Callable<T> callback)
-			throws Exception {
-		getLog().debug("Waiting for spring application to start...");
-		for (int i = 0; i < maxAttempts; i++) {
-			T result = callback.call();
-			if (result != null) {
-				return result;
-			}
-			String message = "Spring application is not ready yet, waiting " + wait
-					+ "ms (attempt " + (i + 1) + ")";
-			getLog().debug(message);
-			synchronized (this.lock) {
-				try {
-					this.lock.wait(wait);
-				}
-				catch (InterruptedException ex) {
-					Thread.currentThread().interrupt();
-					throw new IllegalStateException(
-							"Interrupted while waiting for Spring Boot app to start.");
-				}
-			}
-		}
-		throw new MojoExecutionException(
-				"Spring application did not start before the configured " + "timeout ("
-						+ (wait * maxAttempts) + "ms");
-	}
-
-	private class CreateJmxConnector implements Callable<JMXConnector> {
-
-		private final int port;
-
-		CreateJmxConnector(int port) {
-			this.port = port;
-		}
-
-		@Override
-		public JMXConnector call() throws Exception {
-			try {
-				return SpringApplicationAdminClient.connect(this.port);
-			}
-			catch (IOException ex) {
-				if (hasCauseWithType(ex, ConnectException.class)) {
-					String message = "MBean server at port " + this.port
-							+ " is not up yet...";
-					getLog().debug(message);
-					return null;
-				}
-				throw ex;
-			}
-		}
-
-		private boolean hasCauseWithType(Throwable t, Class<? extends Exception> type) {
-			return type.isAssignableFrom(t.getClass())
-					|| t.getCause() != null && hasCauseWithType(t.getCause(), type);
-		}
-
+	private SpringApplicationLifecycle createLifecycle() {
+		return new SpringApplicationLifecycle(getLog(), this.jmxName, this.wait,
+				this.maxAttempts);
 	}
 
 }
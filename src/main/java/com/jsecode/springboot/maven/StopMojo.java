@@ -19,7 +19,6 @@ package com.jsecode.springboot.maven;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 
-import javax.management.InstanceNotFoundException;
 import javax.management.MBeanServerConnection;
 import javax.management.remote.JMXConnector;
 
@@ -126,15 +125,7 @@ public class StopMojo extends AbstractMojo {
 
 	private void doStop(MBeanServerConnection connection)
 			throws IOException, MojoExecutionException {
-		try {
-			new SpringApplicationAdminClient(connection, this.jmxName).stop();
-		}
-		catch (InstanceNotFoundException ex) {
-			throw new MojoExecutionException(
-					"Spring application lifecycle JMX bean not found (fork is " + ""
-							+ this.fork + "). Could not stop application gracefully",
-					ex);
-		}
+		new SpringApplicationLifecycle(getLog(), this.jmxName).stop(connection);
 	}
 
 }
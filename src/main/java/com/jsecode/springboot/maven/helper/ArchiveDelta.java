@@ -0,0 +1,284 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Entry-level binary delta between two versions of an archive. An archive is split into
+ * segments: the prefix, such as a launch script, the local record of each entry and the
+ * central directory. Each segment is identified by the SHA-1 hash of its bytes, so a
+ * delta consists of the hashes of the segments that are found in the base archive and
+ * the bytes of the others. Since the local record of an entry does not contain its
+ * offset, an entry that did not change is found in the base archive even when entries
+ * before it were added or removed, and applying the delta reproduces the archive byte
+ * for byte.
+ */
+class ArchiveDelta {
+
+	private static final String LITERAL_PREFIX = "+";
+
+	private static final String SEPARATOR = ",";
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private final List<String> operations = new ArrayList<String>();
+
+	private long literalSize;
+
+	private ArchiveDelta() {
+	}
+
+	/**
+	 * Return the hashes of the segments of the given archive, in file order.
+	 * @param archive the archive
+	 * @return the hashes or {@code null} if the archive cannot be read as a zip file
+	 * @throws IOException if the archive cannot be read
+	 */
+	static List<String> getSegmentHashes(File archive) throws IOException {
+		List<Segment> segments = getSegments(archive);
+		if (segments == null) {
+			return null;
+		}
+		List<String> hashes = new ArrayList<String>();
+		for (Segment segment : segments) {
+			hashes.add(segment.sha1);
+		}
+		return hashes;
+	}
+
+	/**
+	 * Create a delta of the given archive against a base archive with the given segment
+	 * hashes.
+	 * @param archive the archive
+	 * @param baseHashes the segment hashes of the base archive
+	 * @return the delta or {@code null} if the archive cannot be read as a zip file
+	 * @throws IOException if the archive cannot be read
+	 */
+	static ArchiveDelta create(File archive, Collection<String> baseHashes)
+			throws IOException {
+		List<Segment> segments = getSegments(archive);
+		if (segments == null) {
+			return null;
+		}
+		Set<String> base = new HashSet<String>(baseHashes);
+		ArchiveDelta delta = new ArchiveDelta();
+		for (Segment segment : segments) {
+			if (base.contains(segment.sha1)) {
+				delta.operations.add(segment.sha1);
+			}
+			else {
+				delta.operations.add(LITERAL_PREFIX + segment.length);
+				delta.literalSize += segment.length;
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * Return the operations of this delta, for {@link #apply(File, String, InputStream,
+	 * File) applying} it.
+	 * @return the comma separated operations
+	 */
+	String getOperations() {
+		StringBuilder operations = new StringBuilder();
+		for (String operation : this.operations) {
+			operations.append(operations.length() > 0 ? SEPARATOR : "").append(operation);
+		}
+		return operations.toString();
+	}
+
+	/**
+	 * Return the number of bytes of the archive that are not found in the base archive.
+	 * @return the size of the literal bytes
+	 */
+	long getLiteralSize() {
+		return this.literalSize;
+	}
+
+	/**
+	 * Write the bytes of the archive that are not found in the base archive.
+	 * @param archive the archive that this delta was created from
+	 * @param outputStream the stream to write to
+	 * @throws IOException if the archive cannot be read
+	 */
+	void writeLiterals(File archive, OutputStream outputStream) throws IOException {
+		List<Segment> segments = getSegments(archive);
+		if (segments == null || segments.size() != this.operations.size()) {
+			throw new IOException("Archive " + archive + " changed while creating a delta");
+		}
+		FileChannel channel = new FileInputStream(archive).getChannel();
+		WritableByteChannel target = Channels.newChannel(outputStream);
+		try {
+			for (int i = 0; i < segments.size(); i++) {
+				if (this.operations.get(i).startsWith(LITERAL_PREFIX)) {
+					Segment segment = segments.get(i);
+					transfer(channel, segment.offset, segment.length, target);
+				}
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Rebuild an archive from its base archive and a delta.
+	 * @param base the base archive
+	 * @param operations the operations of the delta
+	 * @param literals the literal bytes of the delta
+	 * @param target the archive to write
+	 * @throws IOException if the base archive does not contain a segment of the delta
+	 * or the archive cannot be written
+	 */
+	static void apply(File base, String operations, InputStream literals, File target)
+			throws IOException {
+		List<Segment> segments = getSegments(base);
+		if (segments == null) {
+			throw new IOException("Base archive " + base + " is not a zip file");
+		}
+		Map<String, Segment> baseSegments = new HashMap<String, Segment>();
+		for (Segment segment : segments) {
+			baseSegments.put(segment.sha1, segment);
+		}
+		FileChannel channel = new FileInputStream(base).getChannel();
+		FileOutputStream outputStream = new FileOutputStream(target);
+		try {
+			for (String operation : operations.split(SEPARATOR)) {
+				if (operation.startsWith(LITERAL_PREFIX)) {
+					copy(literals, outputStream,
+							Long.parseLong(operation.substring(LITERAL_PREFIX.length())));
+				}
+				else if (operation.length() > 0) {
+					Segment segment = baseSegments.get(operation);
+					if (segment == null) {
+						throw new IOException("Base archive " + base
+								+ " does not contain segment " + operation);
+					}
+					transfer(channel, segment.offset, segment.length,
+							outputStream.getChannel());
+				}
+			}
+		}
+		finally {
+			outputStream.close();
+			channel.close();
+		}
+	}
+
+	private static List<Segment> getSegments(File archive) throws IOException {
+		RawZipFile zipFile = RawZipFile.open(archive);
+		if (zipFile == null) {
+			return null;
+		}
+		try {
+			long[] boundaries = zipFile.getRecordBoundaries();
+			FileChannel channel = zipFile.getChannel();
+			List<Segment> segments = new ArrayList<Segment>();
+			long start = 0;
+			for (long boundary : boundaries) {
+				if (boundary > start) {
+					segments.add(new Segment(channel, start, boundary - start));
+				}
+				start = boundary;
+			}
+			segments.add(new Segment(channel, start, channel.size() - start));
+			return segments;
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	private static void transfer(FileChannel channel, long position, long length,
+			WritableByteChannel target) throws IOException {
+		long transferred = 0;
+		while (transferred < length) {
+			long count = channel.transferTo(position + transferred,
+					length - transferred, target);
+			if (count <= 0) {
+				throw new IOException("Unexpected end of file");
+			}
+			transferred += count;
+		}
+	}
+
+	private static void copy(InputStream inputStream, OutputStream outputStream,
+			long length) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long remaining = length;
+		while (remaining > 0) {
+			int bytesRead = inputStream.read(buffer, 0,
+					(int) Math.min(buffer.length, remaining));
+			if (bytesRead == -1) {
+				throw new IOException("Unexpected end of delta");
+			}
+			outputStream.write(buffer, 0, bytesRead);
+			remaining -= bytesRead;
+		}
+	}
+
+	/**
+	 * A region of an archive.
+	 */
+	private static final class Segment {
+
+		private final long offset;
+
+		private final long length;
+
+		private final String sha1;
+
+		Segment(FileChannel channel, long offset, long length) throws IOException {
+			this.offset = offset;
+			this.length = length;
+			this.sha1 = hash(channel, offset, length);
+		}
+
+		private static String hash(FileChannel channel, long offset, long length)
+				throws IOException {
+			MessageDigest digest = createSha1Digest();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			long position = offset;
+			long end = offset + length;
+			while (position < end) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - position));
+				int read = channel.read(buffer, position);
+				if (read == -1) {
+					throw new IOException("Unexpected end of file");
+				}
+				digest.update(buffer.array(), 0, read);
+				position += read;
+			}
+			return NestedLibraryContent.bytesToHex(digest.digest());
+		}
+
+		private static MessageDigest createSha1Digest() {
+			try {
+				return MessageDigest.getInstance("SHA-1");
+			}
+			catch (NoSuchAlgorithmException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+	}
+
+}
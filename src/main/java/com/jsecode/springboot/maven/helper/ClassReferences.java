@@ -0,0 +1,262 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the names of the classes that a class file or a text resource refers to. The
+ * names of a class file are read from its constant pool: its class constants and any
+ * type in a descriptor or signature, as well as strings that are the binary name of a
+ * class, such as the argument of {@code Class.forName} or the value of an
+ * {@code @ConditionalOnClass(name = ...)} annotation. The names of a text resource are
+ * its tokens that are the binary name of a class. Names are only reported if they are
+ * accepted by a {@link Filter}, so that unknown classes do not pile up.
+ */
+final class ClassReferences {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final String CLASS_EXTENSION = ".class";
+
+	private static final String VERSIONS_LOCATION = "META-INF/versions/";
+
+	private static final String SERVICES_LOCATION = "META-INF/services/";
+
+	private static final String[] RESOURCE_EXTENSIONS = { ".factories", ".imports",
+			".handlers", ".properties", ".xml", ".yml", ".yaml", ".json", ".conf" };
+
+	private static final long MAX_RESOURCE_SIZE = FileUtil.ONE_MB;
+
+	private ClassReferences() {
+	}
+
+	/**
+	 * Add the names of the classes that the given entry refers to, if it is a class
+	 * file or a {@link #isReferencingResource(JarEntry) referencing resource}.
+	 * @param jarFile the jar file
+	 * @param entry the entry
+	 * @param filter the filter of the names
+	 * @param names the names, using {@code /} as separator
+	 * @throws IOException if the entry cannot be read or parsed
+	 */
+	static void addEntryReferences(JarFile jarFile, JarEntry entry, Filter filter,
+			Set<String> names) throws IOException {
+		if (getClassName(entry) != null) {
+			try {
+				addClassReferences(read(jarFile, entry), filter, names);
+			}
+			catch (IOException ex) {
+				throw new IOException("Unable to read " + entry.getName() + " of "
+						+ jarFile.getName() + ": " + ex.getMessage(), ex);
+			}
+		}
+		else if (isReferencingResource(entry)) {
+			addResourceReferences(read(jarFile, entry), filter, names);
+		}
+	}
+
+	/**
+	 * Return the name of the class of the given entry. The classes of a multi-release
+	 * jar have the name of their base class.
+	 * @param entry the entry
+	 * @return the name, using {@code /} as separator, or {@code null} if the entry is
+	 * not a class file
+	 */
+	static String getClassName(JarEntry entry) {
+		String name = entry.getName();
+		if (entry.isDirectory() || !name.endsWith(CLASS_EXTENSION)) {
+			return null;
+		}
+		if (name.startsWith(VERSIONS_LOCATION)) {
+			int slash = name.indexOf('/', VERSIONS_LOCATION.length());
+			if (slash == -1) {
+				return null;
+			}
+			name = name.substring(slash + 1);
+		}
+		return name.substring(0, name.length() - CLASS_EXTENSION.length());
+	}
+
+	/**
+	 * Return if the given entry is a text resource that may name classes, such as
+	 * {@code META-INF/spring.factories}, a {@code META-INF/services} file or Spring XML.
+	 * @param entry the entry
+	 * @return {@code true} for a referencing resource
+	 */
+	static boolean isReferencingResource(JarEntry entry) {
+		String name = entry.getName();
+		if (entry.isDirectory() || entry.getSize() > MAX_RESOURCE_SIZE) {
+			return false;
+		}
+		if (name.startsWith(SERVICES_LOCATION)) {
+			return true;
+		}
+		for (String extension : RESOURCE_EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add the names of the classes that the given class file refers to.
+	 * @param classFile the content of the class file
+	 * @param filter the filter of the names
+	 * @param names the names, using {@code /} as separator
+	 * @throws IOException if the class file cannot be parsed
+	 */
+	static void addClassReferences(byte[] classFile, Filter filter, Set<String> names)
+			throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(classFile));
+		if (input.readInt() != MAGIC) {
+			throw new IOException("Not a class file");
+		}
+		input.readUnsignedShort();
+		input.readUnsignedShort();
+		int count = input.readUnsignedShort();
+		for (int i = 1; i < count; i++) {
+			int tag = input.readUnsignedByte();
+			switch (tag) {
+			case 1:
+				addNames(input.readUTF(), filter, names);
+				break;
+			case 7:
+			case 8:
+			case 16:
+			case 19:
+			case 20:
+				// Class, String, MethodType, Module and Package refer to a Utf8 entry
+				input.skipBytes(2);
+				break;
+			case 15:
+				input.skipBytes(3);
+				break;
+			case 3:
+			case 4:
+			case 9:
+			case 10:
+			case 11:
+			case 12:
+			case 17:
+			case 18:
+				input.skipBytes(4);
+				break;
+			case 5:
+			case 6:
+				// Long and Double take two entries
+				input.skipBytes(8);
+				i++;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+	}
+
+	/**
+	 * Add the names of the classes that the given text resource refers to.
+	 * @param resource the content of the resource
+	 * @param filter the filter of the names
+	 * @param names the names, using {@code /} as separator
+	 */
+	static void addResourceReferences(byte[] resource, Filter filter,
+			Set<String> names) {
+		String content = new String(resource, UTF_8);
+		int start = -1;
+		for (int i = 0; i <= content.length(); i++) {
+			char c = (i < content.length() ? content.charAt(i) : ' ');
+			if (Character.isJavaIdentifierPart(c) || c == '.') {
+				if (start == -1) {
+					start = i;
+				}
+			}
+			else if (start != -1) {
+				int end = i;
+				while (content.charAt(end - 1) == '.' && end - 1 > start) {
+					end--;
+				}
+				addBinaryName(content.substring(start, end), filter, names);
+				start = -1;
+			}
+		}
+	}
+
+	private static byte[] read(JarFile jarFile, JarEntry entry) throws IOException {
+		InputStream inputStream = jarFile.getInputStream(entry);
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+					(int) Math.max(entry.getSize(), 32));
+			byte[] buffer = new byte[32 * 1024];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, bytesRead);
+			}
+			return outputStream.toByteArray();
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+	private static void addNames(String value, Filter filter, Set<String> names) {
+		if (filter.accept(value)) {
+			names.add(value);
+		}
+		addBinaryName(value, filter, names);
+		// Types in descriptors and signatures, such as Ljava/lang/String; or
+		// Ljava/util/List<Lcom/example/Foo;>;
+		int index = value.indexOf('L');
+		while (index != -1) {
+			int end = index + 1;
+			while (end < value.length() && isNameCharacter(value.charAt(end))) {
+				end++;
+			}
+			if (end < value.length() && end > index + 1
+					&& (value.charAt(end) == ';' || value.charAt(end) == '<')) {
+				String name = value.substring(index + 1, end);
+				if (filter.accept(name)) {
+					names.add(name);
+				}
+			}
+			index = value.indexOf('L', index + 1);
+		}
+	}
+
+	private static void addBinaryName(String value, Filter filter, Set<String> names) {
+		if (value.indexOf('.') > 0 && value.indexOf('/') == -1) {
+			String name = value.replace('.', '/');
+			if (filter.accept(name)) {
+				names.add(name);
+			}
+		}
+	}
+
+	private static boolean isNameCharacter(char c) {
+		return c == '/' || Character.isJavaIdentifierPart(c);
+	}
+
+	/**
+	 * Filter of the names of classes.
+	 */
+	interface Filter {
+
+		/**
+		 * Return if the class with the given name is of interest.
+		 * @param name the name, using {@code /} as separator
+		 * @return {@code true} to report the name
+		 */
+		boolean accept(String name);
+
+	}
+
+}
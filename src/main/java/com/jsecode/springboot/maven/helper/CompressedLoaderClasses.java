@@ -0,0 +1,163 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * The classes of a nested loader jar, read and deflated once and kept ready to be
+ * written as raw entries. Instances are cached for the lifetime of the class loader of
+ * the plugin, so every archive that a reactor build or a long-lived Maven daemon
+ * repackages reuses the same compressed classes instead of inflating the loader jar and
+ * deflating its classes again.
+ */
+class CompressedLoaderClasses {
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private static final ConcurrentMap<String, CompressedLoaderClasses> cache = new ConcurrentHashMap<String, CompressedLoaderClasses>();
+
+	private final List<LoaderClass> classes;
+
+	private CompressedLoaderClasses(List<LoaderClass> classes) {
+		this.classes = Collections.unmodifiableList(classes);
+	}
+
+	/**
+	 * Return the compressed classes of the given loader jar, reading it if it has not
+	 * been read before.
+	 * @param loaderJar the URL of the loader jar
+	 * @return the compressed classes
+	 * @throws IOException if the loader jar cannot be read
+	 */
+	static CompressedLoaderClasses get(URL loaderJar) throws IOException {
+		String key = loaderJar.toString();
+		CompressedLoaderClasses classes = cache.get(key);
+		if (classes == null) {
+			classes = read(loaderJar);
+			CompressedLoaderClasses existing = cache.putIfAbsent(key, classes);
+			classes = (existing != null ? existing : classes);
+		}
+		return classes;
+	}
+
+	/**
+	 * Return the classes in the order of the loader jar.
+	 * @return the classes
+	 */
+	List<LoaderClass> getClasses() {
+		return this.classes;
+	}
+
+	private static CompressedLoaderClasses read(URL loaderJar) throws IOException {
+		List<LoaderClass> classes = new ArrayList<LoaderClass>();
+		JarInputStream inputStream = new JarInputStream(
+				new BufferedInputStream(loaderJar.openStream()));
+		try {
+			JarEntry entry;
+			while ((entry = inputStream.getNextJarEntry()) != null) {
+				if (entry.getName().endsWith(".class")) {
+					classes.add(new LoaderClass(entry, readContent(inputStream)));
+				}
+			}
+		}
+		finally {
+			inputStream.close();
+		}
+		return new CompressedLoaderClasses(classes);
+	}
+
+	private static byte[] readContent(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int bytesRead;
+		while ((bytesRead = inputStream.read(buffer)) != -1) {
+			content.write(buffer, 0, bytesRead);
+		}
+		return content.toByteArray();
+	}
+
+	/**
+	 * A class of the loader jar together with its content deflated using the default
+	 * level.
+	 */
+	static final class LoaderClass {
+
+		private final JarEntry entry;
+
+		private final byte[] content;
+
+		private final byte[] deflated;
+
+		private LoaderClass(JarEntry entry, byte[] content) {
+			CRC32 crc = new CRC32();
+			crc.update(content, 0, content.length);
+			this.content = content;
+			this.deflated = DeflatedEntry.deflate(content, Deflater.DEFAULT_COMPRESSION);
+			this.entry = new JarEntry(entry);
+			this.entry.setMethod(ZipEntry.DEFLATED);
+			this.entry.setCrc(crc.getValue());
+			this.entry.setSize(content.length);
+			this.entry.setCompressedSize(this.deflated.length);
+		}
+
+		/**
+		 * Return the name of the class entry.
+		 * @return the name
+		 */
+		String getName() {
+			return this.entry.getName();
+		}
+
+		/**
+		 * Return a new entry for the class with its method, CRC and sizes set to match
+		 * the {@link #getDeflated() deflated content}.
+		 * @return the entry
+		 */
+		JarEntry createDeflatedEntry() {
+			return new JarEntry(this.entry);
+		}
+
+		/**
+		 * Return a new entry for the class as it was read from the loader jar, without
+		 * CRC or sizes.
+		 * @return the entry
+		 */
+		JarEntry createEntry() {
+			JarEntry entry = new JarEntry(this.entry.getName());
+			entry.setTime(this.entry.getTime());
+			entry.setExtra(this.entry.getExtra());
+			return entry;
+		}
+
+		/**
+		 * Return the uncompressed content of the class.
+		 * @return the content, which must not be modified
+		 */
+		byte[] getContent() {
+			return this.content;
+		}
+
+		/**
+		 * Return the content of the class deflated using the default level.
+		 * @return the deflated content, which must not be modified
+		 */
+		byte[] getDeflated() {
+			return this.deflated;
+		}
+
+	}
+
+}
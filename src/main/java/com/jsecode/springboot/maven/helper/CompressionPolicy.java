@@ -0,0 +1,197 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+/**
+ * Policy that decides how the entries of a repackaged archive are compressed. Rules are
+ * matched in the order in which they were added against the name of the entry in the
+ * archive; the first matching rule determines the compression level. Level {@code 0}
+ * stores the entry, levels {@code 1} to {@code 9} deflate it and {@code -1} uses the
+ * default deflate level.
+ * <p>
+ * Entries that a source jar already stores are only deflated when a rule matches them,
+ * the default level does not apply to them. Nested zips are always stored.
+ * <p>
+ * In adaptive mode entries that deflate to more than {@link #ADAPTIVE_MAX_RATIO} of their
+ * size are stored instead, which avoids inflating already compressed content such as
+ * images or fonts when it is read.
+ */
+public class CompressionPolicy {
+
+	/**
+	 * The compression level that stores entries.
+	 */
+	public static final int STORED = 0;
+
+	/**
+	 * The largest ratio of compressed to uncompressed size for which an entry is
+	 * deflated in adaptive mode.
+	 */
+	static final double ADAPTIVE_MAX_RATIO = 0.95;
+
+	private final int defaultLevel;
+
+	private final boolean adaptive;
+
+	private final List<Rule> rules = new ArrayList<Rule>();
+
+	/**
+	 * Create a new {@link CompressionPolicy} that deflates all entries using the default
+	 * level.
+	 */
+	public CompressionPolicy() {
+		this(Deflater.DEFAULT_COMPRESSION, false);
+	}
+
+	/**
+	 * Create a new {@link CompressionPolicy} instance.
+	 * @param defaultLevel the level of entries that do not match a rule
+	 * @param adaptive if entries that do not shrink when deflated should be stored
+	 */
+	public CompressionPolicy(int defaultLevel, boolean adaptive) {
+		this.defaultLevel = checkLevel(defaultLevel);
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * Add a rule for the entries matching the given pattern. A pattern that contains a
+	 * {@code /} is matched against the full name of the entry, other patterns against
+	 * the last segment of the name, so {@code *.png} matches all PNG images. {@code **}
+	 * matches any number of directories, {@code *} any characters within a directory
+	 * and {@code ?} a single character.
+	 * @param pattern the pattern
+	 * @param level the compression level of matching entries
+	 */
+	public void addRule(String pattern, int level) {
+		if (pattern == null || pattern.length() == 0) {
+			throw new IllegalArgumentException("Pattern must not be empty");
+		}
+		this.rules.add(new Rule(pattern, checkLevel(level)));
+	}
+
+	/**
+	 * Return the compression level of the entry with the given name.
+	 * @param name the name of the entry
+	 * @return the compression level, {@link #STORED} if the entry should be stored
+	 */
+	public int getLevel(String name) {
+		String fileName = name.substring(name.lastIndexOf('/', name.length() - 2) + 1);
+		for (Rule rule : this.rules) {
+			if (rule.matches(name, fileName)) {
+				return rule.level;
+			}
+		}
+		return this.defaultLevel;
+	}
+
+	/**
+	 * Return if a rule matches the entry with the given name.
+	 * @param name the name of the entry
+	 * @return if the level of the entry is set by a rule
+	 */
+	boolean hasRule(String name) {
+		String fileName = name.substring(name.lastIndexOf('/', name.length() - 2) + 1);
+		for (Rule rule : this.rules) {
+			if (rule.matches(name, fileName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return if entries that do not shrink when deflated should be stored.
+	 * @return if the policy is adaptive
+	 */
+	public boolean isAdaptive() {
+		return this.adaptive;
+	}
+
+	/**
+	 * Return if the given compressed size is too large for the entry to be deflated in
+	 * adaptive mode.
+	 * @param size the uncompressed size
+	 * @param compressedSize the compressed size
+	 * @return if the entry should be stored
+	 */
+	boolean isIncompressible(long size, long compressedSize) {
+		return this.adaptive && compressedSize > size * ADAPTIVE_MAX_RATIO;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append("level=").append(this.defaultLevel).append(",adaptive=")
+				.append(this.adaptive);
+		for (Rule rule : this.rules) {
+			result.append(",").append(rule.pattern).append("=").append(rule.level);
+		}
+		return result.toString();
+	}
+
+	private static int checkLevel(int level) {
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		return level;
+	}
+
+	/**
+	 * A compression rule.
+	 */
+	private static final class Rule {
+
+		private final String pattern;
+
+		private final Pattern regex;
+
+		private final boolean fileName;
+
+		private final int level;
+
+		private Rule(String pattern, int level) {
+			this.pattern = pattern;
+			this.regex = Pattern.compile(toRegex(pattern));
+			this.fileName = pattern.indexOf('/') == -1;
+			this.level = level;
+		}
+
+		boolean matches(String name, String fileName) {
+			return this.regex.matcher(this.fileName ? fileName : name).matches();
+		}
+
+		private static String toRegex(String pattern) {
+			StringBuilder regex = new StringBuilder();
+			int i = 0;
+			while (i < pattern.length()) {
+				char c = pattern.charAt(i);
+				if (pattern.startsWith("**/", i)) {
+					regex.append("(?:.*/)?");
+					i += 3;
+				}
+				else if (pattern.startsWith("**", i)) {
+					regex.append(".*");
+					i += 2;
+				}
+				else if (c == '*') {
+					regex.append("[^/]*");
+					i++;
+				}
+				else if (c == '?') {
+					regex.append("[^/]");
+					i++;
+				}
+				else {
+					regex.append(Pattern.quote(String.valueOf(c)));
+					i++;
+				}
+			}
+			return regex.toString();
+		}
+
+	}
+
+}
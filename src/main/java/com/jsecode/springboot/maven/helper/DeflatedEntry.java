@@ -0,0 +1,99 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * An entry whose content has been compressed into memory, ready to be written as a raw
+ * entry. The entry is stored rather than deflated when its {@link CompressionPolicy}
+ * level is {@link CompressionPolicy#STORED} or when the policy is adaptive and the
+ * content does not shrink.
+ */
+class DeflatedEntry {
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private final ZipEntry entry;
+
+	private final long size;
+
+	private final byte[] data;
+
+	/**
+	 * Compress the given content.
+	 * @param entry the entry, which is updated with the method, CRC and sizes
+	 * @param content the uncompressed content
+	 * @param level the compression level
+	 * @param policy the compression policy
+	 */
+	DeflatedEntry(ZipEntry entry, byte[] content, int level, CompressionPolicy policy) {
+		CRC32 crc = new CRC32();
+		crc.update(content, 0, content.length);
+		byte[] compressed = (level == CompressionPolicy.STORED ? null
+				: deflate(content, level));
+		if (compressed != null
+				&& policy.isIncompressible(content.length, compressed.length)) {
+			compressed = null;
+		}
+		this.entry = entry;
+		this.size = content.length;
+		this.data = (compressed != null ? compressed : content);
+		entry.setMethod(compressed != null ? ZipEntry.DEFLATED : ZipEntry.STORED);
+		entry.setCrc(crc.getValue());
+		entry.setSize(content.length);
+		entry.setCompressedSize(this.data.length);
+	}
+
+	/**
+	 * Create an entry whose data is already compressed using the method of the entry.
+	 * @param entry the entry, which must have its CRC and sizes set
+	 * @param data the compressed data
+	 */
+	DeflatedEntry(ZipEntry entry, byte[] data) {
+		this.entry = entry;
+		this.size = entry.getSize();
+		this.data = data;
+	}
+
+	/**
+	 * Return the uncompressed size of the entry.
+	 * @return the size
+	 */
+	long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Write the entry to the given output.
+	 * @param output the output
+	 * @throws IOException in case of I/O errors
+	 */
+	void writeTo(RawJarOutputStream output) throws IOException {
+		output.putNextRawEntry(this.entry);
+		output.write(this.data);
+		output.closeEntry();
+	}
+
+	static byte[] deflate(byte[] content, int level) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+					Math.max(content.length / 2, 64));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			deflater.setInput(content);
+			deflater.finish();
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				compressed.write(buffer, 0, count);
+			}
+			return compressed.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+}
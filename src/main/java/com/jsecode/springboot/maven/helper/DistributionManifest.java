@@ -0,0 +1,200 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The files of a distribution directory together with their size and SHA-1 hash. For the
+ * archives in the root of the directory, the hashes of their segments are recorded as
+ * well, so that a later release can ship an {@link ArchiveDelta entry-level delta} of
+ * them against a manifest alone. Hidden files, such as the state files of the
+ * repackaging, are not part of the distribution.
+ * <p>
+ * A manifest is stored as a properties file.
+ */
+public class DistributionManifest {
+
+	private static final String HEADER = "Distribution manifest written by ecode-springboot-maven-plugin";
+
+	private static final String FILE_PREFIX = "file.";
+
+	private static final String ARCHIVE_PREFIX = "archive.";
+
+	private final Map<String, String> files = new TreeMap<String, String>();
+
+	private final Map<String, List<String>> archives = new TreeMap<String, List<String>>();
+
+	private DistributionManifest() {
+	}
+
+	/**
+	 * Return the manifest of the given baseline, which is either a distribution
+	 * directory or a {@link #save(File) saved} manifest.
+	 * @param baseline the baseline directory or manifest file
+	 * @return the manifest
+	 * @throws IOException if the baseline cannot be read
+	 */
+	public static DistributionManifest forBaseline(File baseline) throws IOException {
+		return (baseline.isDirectory() ? scan(baseline) : load(baseline));
+	}
+
+	/**
+	 * Create the manifest of the given distribution directory.
+	 * @param directory the distribution directory
+	 * @return the manifest
+	 * @throws IOException if a file cannot be read
+	 */
+	public static DistributionManifest scan(File directory) throws IOException {
+		if (!directory.isDirectory()) {
+			throw new IOException("Distribution directory " + directory
+					+ " does not exist");
+		}
+		DistributionManifest manifest = new DistributionManifest();
+		manifest.scan(directory, "");
+		return manifest;
+	}
+
+	/**
+	 * Load a manifest that has been {@link #save(File) saved}.
+	 * @param file the manifest file
+	 * @return the manifest
+	 * @throws IOException if the file cannot be read
+	 */
+	public static DistributionManifest load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			properties.load(inputStream);
+		}
+		finally {
+			inputStream.close();
+		}
+		DistributionManifest manifest = new DistributionManifest();
+		for (String key : properties.stringPropertyNames()) {
+			String value = properties.getProperty(key);
+			if (key.startsWith(FILE_PREFIX)) {
+				manifest.files.put(key.substring(FILE_PREFIX.length()), value);
+			}
+			else if (key.startsWith(ARCHIVE_PREFIX)) {
+				manifest.archives.put(key.substring(ARCHIVE_PREFIX.length()),
+						Arrays.asList(value.split(",")));
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Save this manifest, so that it can be used as the baseline of a later release.
+	 * @param file the manifest file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		Properties properties = new Properties();
+		for (Map.Entry<String, String> entry : this.files.entrySet()) {
+			properties.setProperty(FILE_PREFIX + entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, List<String>> entry : this.archives.entrySet()) {
+			StringBuilder hashes = new StringBuilder();
+			for (String hash : entry.getValue()) {
+				hashes.append(hashes.length() > 0 ? "," : "").append(hash);
+			}
+			properties.setProperty(ARCHIVE_PREFIX + entry.getKey(), hashes.toString());
+		}
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			properties.store(outputStream, HEADER);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Return the paths of the files, relative to the distribution directory and using
+	 * {@code /} as separator.
+	 * @return the paths, in ascending order
+	 */
+	public Set<String> getPaths() {
+		return this.files.keySet();
+	}
+
+	/**
+	 * Return the checksum of the file with the given path.
+	 * @param path the path of the file
+	 * @return the size and SHA-1 hash of the file or {@code null} if there is no such
+	 * file
+	 */
+	String getChecksum(String path) {
+		return this.files.get(path);
+	}
+
+	/**
+	 * Return the segment hashes of the archive with the given path.
+	 * @param path the path of the archive
+	 * @return the hashes or {@code null} if the file is not an archive in the root of
+	 * the distribution
+	 */
+	List<String> getSegmentHashes(String path) {
+		return this.archives.get(path);
+	}
+
+	/**
+	 * Return the checksum of the given file, for comparison with the checksums of a
+	 * manifest.
+	 * @param file the file
+	 * @return the size and SHA-1 hash of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	static String getChecksum(File file) throws IOException {
+		return file.length() + "," + NestedLibraryContent.getSha1(file, null);
+	}
+
+	/**
+	 * Return whether the given path is that of an archive in the root of a
+	 * distribution.
+	 * @param path the path of the file
+	 * @return {@code true} for an archive in the root
+	 */
+	static boolean isRootArchive(String path) {
+		return path.indexOf('/') == -1 && (path.endsWith(".jar") || path.endsWith(".war"));
+	}
+
+	private void scan(File directory, String prefix) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Unable to list files in directory " + directory);
+		}
+		for (File file : files) {
+			String path = prefix + file.getName();
+			if (file.getName().startsWith(".")) {
+				continue;
+			}
+			if (file.isDirectory()) {
+				scan(file, path + "/");
+			}
+			else if (file.isFile()) {
+				this.files.put(path, getChecksum(file));
+				List<String> hashes = (isRootArchive(path)
+						? ArchiveDelta.getSegmentHashes(file) : null);
+				if (hashes != null) {
+					this.archives.put(path, hashes);
+				}
+			}
+		}
+	}
+
+}
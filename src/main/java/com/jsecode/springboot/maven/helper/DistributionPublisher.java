@@ -0,0 +1,261 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.lang.UsesJava7;
+
+/**
+ * Publishes a distribution directory atomically. Each build is written to a staging
+ * directory under {@code <distDir>.releases} and, once complete, {@code distDir} is
+ * switched to it by replacing the symbolic link {@code distDir} with a single rename.
+ * A process that starts from {@code distDir} therefore always sees a complete release
+ * and a failed build leaves the published release untouched. The most recent releases
+ * are kept, so switching back to one of them is a matter of pointing the link at it.
+ * <p>
+ * The libraries of the published release can be hard linked into the staging directory
+ * before the build, so that a synchronized library directory only has to write the
+ * libraries that changed. Libraries are always replaced rather than modified in place,
+ * so releases that share a library are not affected by each other. When a library
+ * cannot be linked, the staging directory is left without libraries and all of them
+ * are written again, see {@link #getSeedFailure()}.
+ */
+class DistributionPublisher {
+
+	private static final String RELEASES_SUFFIX = ".releases";
+
+	private static final String STAGING_SUFFIX = ".staging";
+
+	private final File distDir;
+
+	private final File releasesDir;
+
+	private final int keepReleases;
+
+	private IOException seedFailure;
+
+	/**
+	 * Create a new {@link DistributionPublisher} instance.
+	 * @param distDir the distribution directory, which is published as a symbolic link
+	 * @param keepReleases the number of releases to keep, including the published one
+	 */
+	DistributionPublisher(File distDir, int keepReleases) {
+		this.distDir = distDir.getAbsoluteFile();
+		this.releasesDir = new File(this.distDir.getParentFile(),
+				this.distDir.getName() + RELEASES_SUFFIX);
+		this.keepReleases = Math.max(keepReleases, 1);
+	}
+
+	/**
+	 * Create a staging directory for a new release, seeded with the library directory
+	 * of the published release if it is given. Only a library directory that the build
+	 * reuses is worth seeding, others are cleaned before being written.
+	 * @param libraryDirectoryName the name of the library directory to seed or
+	 * {@code null}
+	 * @return the staging directory
+	 * @throws IOException if the staging directory cannot be created
+	 */
+	@UsesJava7
+	File stage(String libraryDirectoryName) throws IOException {
+		this.seedFailure = null;
+		deleteStagingDirectories();
+		File staging = new File(this.releasesDir,
+				createReleaseId(new Date()) + STAGING_SUFFIX);
+		Files.createDirectories(staging.toPath());
+		File published = getPublishedRelease();
+		if (published != null && libraryDirectoryName != null) {
+			seedLibraries(new File(published, libraryDirectoryName),
+					new File(staging, libraryDirectoryName));
+		}
+		return staging;
+	}
+
+	/**
+	 * Return why the library directory of the published release could not be linked
+	 * into the last staging directory.
+	 * @return the failure or {@code null} if the libraries were seeded or there was
+	 * nothing to seed
+	 */
+	IOException getSeedFailure() {
+		return this.seedFailure;
+	}
+
+	/**
+	 * Publish the given staging directory as {@code distDir} and delete the releases
+	 * that are no longer kept.
+	 * @param staging the staging directory
+	 * @return the published release directory
+	 * @throws IOException if the release cannot be published
+	 */
+	@UsesJava7
+	File publish(File staging) throws IOException {
+		String name = staging.getName();
+		File release = new File(this.releasesDir,
+				name.substring(0, name.length() - STAGING_SUFFIX.length()));
+		Files.move(staging.toPath(), release.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		Path link = this.distDir.toPath();
+		Path target = link.getParent().relativize(release.toPath());
+		Path newLink = new File(this.distDir.getParentFile(),
+				"." + this.distDir.getName() + "-" + release.getName() + ".link").toPath();
+		Files.deleteIfExists(newLink);
+		try {
+			Files.createSymbolicLink(newLink, target);
+		}
+		catch (UnsupportedOperationException ex) {
+			throw new IOException("Unable to publish " + this.distDir
+					+ ", symbolic links are not supported", ex);
+		}
+		try {
+			migrateDistDir();
+			Files.move(newLink, link, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(newLink);
+		}
+		deleteOldReleases(release);
+		return release;
+	}
+
+	/**
+	 * Delete the given staging directory of a failed build.
+	 * @param staging the staging directory
+	 */
+	void discard(File staging) {
+		FileUtil.deleteQuietly(staging);
+	}
+
+	/**
+	 * Return the release that {@code distDir} links to.
+	 * @return the published release or {@code null}
+	 * @throws IOException if the link cannot be read
+	 */
+	@UsesJava7
+	File getPublishedRelease() throws IOException {
+		Path link = this.distDir.toPath();
+		if (!Files.isSymbolicLink(link)) {
+			return null;
+		}
+		File release = link.getParent().resolve(Files.readSymbolicLink(link)).toFile();
+		return (release.isDirectory() ? release : null);
+	}
+
+	/**
+	 * Move an existing {@code distDir} that is a directory rather than a link to the
+	 * releases, so that it can be replaced by a link. This is only required the first
+	 * time a distribution is published. A link cannot be renamed over a directory, so
+	 * {@code distDir} is missing between this rename and the rename of the link, which
+	 * has already been created.
+	 */
+	@UsesJava7
+	private void migrateDistDir() throws IOException {
+		Path path = this.distDir.toPath();
+		if (Files.isSymbolicLink(path) || !this.distDir.isDirectory()) {
+			return;
+		}
+		String[] children = this.distDir.list();
+		if (children == null || children.length == 0) {
+			Files.delete(path);
+			return;
+		}
+		// Named after its last modification so that it is ordered before newer releases
+		File release = new File(this.releasesDir,
+				createReleaseId(new Date(this.distDir.lastModified())) + "-previous");
+		Files.move(path, release.toPath());
+	}
+
+	@UsesJava7
+	private void seedLibraries(File source, File destination) throws IOException {
+		File[] files = source.listFiles();
+		if (files == null) {
+			return;
+		}
+		Files.createDirectories(destination.toPath());
+		for (File file : files) {
+			Path link = new File(destination, file.getName()).toPath();
+			Path existing = file.toPath();
+			try {
+				if (Files.isSymbolicLink(existing)) {
+					Files.createSymbolicLink(link, Files.readSymbolicLink(existing));
+				}
+				else if (file.isFile()) {
+					Files.createLink(link, existing);
+				}
+			}
+			catch (IOException ex) {
+				// Not supported by the file system, all libraries will be written again
+				discardSeed(destination, ex);
+				return;
+			}
+			catch (UnsupportedOperationException ex) {
+				discardSeed(destination, new IOException(ex.getMessage(), ex));
+				return;
+			}
+		}
+		// The state of a synchronized or hashed library directory is kept next to it
+		File state = LibraryDirectorySync.getStateFile(source);
+		if (state.isFile()) {
+			FileUtil.copyFile(state, LibraryDirectorySync.getStateFile(destination));
+		}
+		File history = HashedLibraryDirectory.getHistoryFile(source);
+		if (history.isFile()) {
+			FileUtil.copyFile(history, HashedLibraryDirectory.getHistoryFile(destination));
+		}
+	}
+
+	/**
+	 * Delete a partially seeded library directory, which has no state, so that the
+	 * library directory of the new release is written from scratch.
+	 */
+	private void discardSeed(File destination, IOException failure) {
+		FileUtil.deleteQuietly(destination);
+		this.seedFailure = failure;
+	}
+
+	private void deleteStagingDirectories() {
+		File[] files = this.releasesDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(STAGING_SUFFIX)) {
+					FileUtil.deleteQuietly(file);
+				}
+			}
+		}
+	}
+
+	private void deleteOldReleases(File published) {
+		File[] files = this.releasesDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		List<File> releases = new ArrayList<File>();
+		for (File file : files) {
+			if (file.isDirectory() && !file.getName().endsWith(STAGING_SUFFIX)
+					&& !file.equals(published)) {
+				releases.add(file);
+			}
+		}
+		for (int i = 0; i < releases.size() - (this.keepReleases - 1); i++) {
+			FileUtil.deleteQuietly(releases.get(i));
+		}
+	}
+
+	private String createReleaseId(Date date) {
+		String id = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(date);
+		String unique = id;
+		for (int i = 1; new File(this.releasesDir, unique).exists()
+				|| new File(this.releasesDir, unique + STAGING_SUFFIX).exists(); i++) {
+			unique = id + "-" + i;
+		}
+		return unique;
+	}
+
+}
@@ -0,0 +1,206 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Writes the entries of an application jar to the {@code classes} directory of an
+ * exploded distribution, together with an argument file and a shell script that launch
+ * the main class with a plain {@code java -cp} class path of the directory and the
+ * libraries, without the Spring Boot loader.
+ * <p>
+ * The directory is synchronized with the jar: a file is only written if its size or
+ * last modified time differ from those of its entry, files are given the last modified
+ * time of their entry and files without an entry are deleted. The launch files are only
+ * written when their content changes. Unchanged builds therefore leave the distribution
+ * untouched, which keeps copies made with {@code rsync} incremental.
+ */
+class ExplodedDistributionWriter {
+
+	/**
+	 * The name of the directory of the classes and resources of the application.
+	 */
+	static final String CLASSES_DIRECTORY = "classes";
+
+	/**
+	 * The extension of the argument file, used as {@code java @app.args}.
+	 */
+	static final String ARGUMENTS_EXTENSION = ".args";
+
+	/**
+	 * The extension of the launch script.
+	 */
+	static final String SCRIPT_EXTENSION = ".sh";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File directory;
+
+	/**
+	 * Create a new {@link ExplodedDistributionWriter} instance.
+	 * @param directory the distribution directory
+	 */
+	ExplodedDistributionWriter(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Write the entries of the given jar to the {@code classes} directory.
+	 * @param jarFile the application jar
+	 * @throws IOException if an entry cannot be written
+	 */
+	void writeClasses(JarFile jarFile) throws IOException {
+		File classes = new File(this.directory, CLASSES_DIRECTORY).getCanonicalFile();
+		Set<File> files = new HashSet<File>();
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while (entries.hasMoreElements()) {
+			JarEntry entry = entries.nextElement();
+			if (entry.isDirectory()) {
+				continue;
+			}
+			File file = new File(classes, entry.getName()).getCanonicalFile();
+			if (!file.getPath().startsWith(classes.getPath() + File.separator)) {
+				throw new IOException("Entry " + entry.getName()
+						+ " is outside of the classes directory");
+			}
+			files.add(file);
+			if (file.isFile() && file.length() == entry.getSize()
+					&& file.lastModified() == entry.getTime()) {
+				continue;
+			}
+			File parent = file.getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs()) {
+				throw new IOException("Unable to create directory " + parent);
+			}
+			InputStream inputStream = jarFile.getInputStream(entry);
+			try {
+				write(inputStream, file);
+			}
+			finally {
+				inputStream.close();
+			}
+			file.setLastModified(entry.getTime());
+		}
+		deleteStaleFiles(classes, files);
+	}
+
+	/**
+	 * Write the argument file and the launch script of the distribution, which use
+	 * {@code /} and {@code :} as separators, like the Unix-like systems that the
+	 * distribution is deployed to.
+	 * @param name the base name of the files
+	 * @param classPath the entries of the class path, relative to the distribution
+	 * directory
+	 * @param mainClass the main class
+	 * @throws IOException if a file cannot be written
+	 */
+	void writeLaunchFiles(String name, List<String> classPath, String mainClass)
+			throws IOException {
+		StringBuilder path = new StringBuilder();
+		for (String entry : classPath) {
+			path.append(path.length() > 0 ? ":" : "").append(entry);
+		}
+		StringBuilder arguments = new StringBuilder();
+		arguments.append("-cp\n").append(quote(path.toString(), '"')).append("\n");
+		arguments.append(mainClass).append("\n");
+		writeIfChanged(new File(this.directory, name + ARGUMENTS_EXTENSION),
+				arguments.toString());
+		StringBuilder script = new StringBuilder();
+		script.append("#!/bin/sh\n");
+		script.append("cd \"$(dirname \"$0\")\" || exit 1\n");
+		script.append("exec \"${JAVA_HOME:+$JAVA_HOME/bin/}java\" $JAVA_OPTS -cp ")
+				.append(quote(path.toString(), '\'')).append(" ").append(mainClass)
+				.append(" \"$@\"\n");
+		File scriptFile = new File(this.directory, name + SCRIPT_EXTENSION);
+		writeIfChanged(scriptFile, script.toString());
+		scriptFile.setExecutable(true, false);
+	}
+
+	private String quote(String value, char quote) {
+		for (char c : value.toCharArray()) {
+			if (Character.isWhitespace(c) || c == '"' || c == '\'' || c == '$') {
+				return quote + value + quote;
+			}
+		}
+		return value;
+	}
+
+	private void deleteStaleFiles(File directory, Set<File> files) throws IOException {
+		File[] children = directory.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory() && !FileUtil.isSymlink(child)) {
+				deleteStaleFiles(child, files);
+				String[] remaining = child.list();
+				if (remaining != null && remaining.length == 0) {
+					child.delete();
+				}
+			}
+			else if (!files.contains(child)) {
+				FileUtil.forceDelete(child);
+			}
+		}
+	}
+
+	private void writeIfChanged(File file, String content) throws IOException {
+		byte[] bytes = content.getBytes(UTF_8);
+		if (file.isFile() && file.length() == bytes.length
+				&& Arrays.equals(read(file), bytes)) {
+			return;
+		}
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(bytes);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private byte[] read(File file) throws IOException {
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			write(inputStream, outputStream);
+			return outputStream.toByteArray();
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+	private void write(InputStream inputStream, File file) throws IOException {
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			write(inputStream, outputStream);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private void write(InputStream inputStream, OutputStream outputStream)
+			throws IOException {
+		byte[] buffer = new byte[32 * 1024];
+		int bytesRead;
+		while ((bytesRead = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, bytesRead);
+		}
+	}
+
+}
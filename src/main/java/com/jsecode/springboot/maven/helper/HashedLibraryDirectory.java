@@ -0,0 +1,196 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.lang.UsesJava7;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@code lib} directory whose libraries are named after their content, for example
+ * {@code lib/spring-core-4.3.14.RELEASE-1a2b3c4d.jar}. A library file is written once
+ * and never modified, so a new build only adds the libraries that changed and cannot
+ * break a running instance that still has the libraries of an earlier build open.
+ * <p>
+ * The libraries referenced by the {@code Class-Path} of the last builds are recorded in
+ * a history file next to the directory. Libraries that none of the kept builds refer to
+ * are deleted, so switching back to one of the kept archives only requires the archive
+ * itself. Libraries may be placed concurrently.
+ */
+class HashedLibraryDirectory {
+
+	private static final String HEADER = "Library history written by ecode-springboot-maven-plugin";
+
+	private static final String BUILD_PREFIX = "build.";
+
+	private static final int HASH_LENGTH = 8;
+
+	private final File directory;
+
+	private final File historyFile;
+
+	private final int keepBuilds;
+
+	private final LibraryLinkMode linkMode;
+
+	private final LibraryChecksumCache checksumCache;
+
+	private final Map<File, String> names = new ConcurrentHashMap<File, String>();
+
+	private final Set<String> placed = Collections.synchronizedSet(new LinkedHashSet<String>());
+
+	/**
+	 * Create a new {@link HashedLibraryDirectory} instance.
+	 * @param directory the library directory
+	 * @param keepBuilds the number of builds whose libraries are kept, including the
+	 * current one
+	 * @param linkMode how libraries are placed in the directory
+	 * @param checksumCache the cache used to look up the hashes of libraries or
+	 * {@code null}
+	 */
+	HashedLibraryDirectory(File directory, int keepBuilds, LibraryLinkMode linkMode,
+			LibraryChecksumCache checksumCache) {
+		this.directory = directory;
+		this.historyFile = getHistoryFile(directory);
+		this.keepBuilds = Math.max(keepBuilds, 1);
+		this.linkMode = linkMode;
+		this.checksumCache = checksumCache;
+	}
+
+	/**
+	 * Return the history file of the given library directory.
+	 * @param directory the library directory
+	 * @return the history file
+	 */
+	static File getHistoryFile(File directory) {
+		return new File(directory.getAbsoluteFile().getParentFile(),
+				"." + directory.getName() + ".history");
+	}
+
+	/**
+	 * Return the path of the given library relative to the directory of the archive.
+	 * @param library the library file
+	 * @return the path, using {@code /} as separator
+	 * @throws IOException if the library cannot be read
+	 */
+	String getPath(File library) throws IOException {
+		return this.directory.getName() + "/" + getName(library);
+	}
+
+	/**
+	 * Place the given library in the directory unless it is already there.
+	 * @param library the library file
+	 * @return {@code true} if the library was copied or linked
+	 * @throws IOException if the library cannot be read or placed
+	 */
+	@UsesJava7
+	boolean place(File library) throws IOException {
+		String name = getName(library);
+		this.placed.add(name);
+		File file = new File(this.directory, name);
+		if (file.isFile() && file.length() == library.length()) {
+			return false;
+		}
+		// Unique, as libraries are placed concurrently and builds may share the directory
+		Files.createDirectories(this.directory.toPath());
+		File temp = File.createTempFile("." + name + ".", ".tmp", this.directory);
+		try {
+			this.linkMode.place(library, temp);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			temp.delete();
+		}
+		return true;
+	}
+
+	/**
+	 * Record the libraries of this build in the history and delete the libraries that
+	 * are not referenced by any of the kept builds.
+	 * @throws IOException if a library cannot be deleted or the history cannot be saved
+	 */
+	void finish() throws IOException {
+		Properties previous = loadHistory();
+		// Without a readable history the libraries of earlier builds are unknown
+		boolean delete = (previous != null);
+		previous = (previous != null ? previous : new Properties());
+		Properties history = new Properties();
+		Set<String> referenced = new HashSet<String>();
+		history.setProperty(BUILD_PREFIX + 1,
+				StringUtils.collectionToCommaDelimitedString(this.placed));
+		referenced.addAll(this.placed);
+		for (int i = 1; i < this.keepBuilds; i++) {
+			String names = previous.getProperty(BUILD_PREFIX + i);
+			if (names == null) {
+				break;
+			}
+			history.setProperty(BUILD_PREFIX + (i + 1), names);
+			referenced.addAll(StringUtils.commaDelimitedListToSet(names));
+		}
+		File[] files = (delete ? this.directory.listFiles() : null);
+		if (files != null) {
+			for (File file : files) {
+				if (!referenced.contains(file.getName())) {
+					FileUtil.forceDelete(file);
+				}
+			}
+		}
+		OutputStream outputStream = new FileOutputStream(this.historyFile);
+		try {
+			history.store(outputStream, HEADER);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private String getName(File library) throws IOException {
+		String name = this.names.get(library);
+		if (name == null) {
+			String sha1 = NestedLibraryContent.getSha1(library, this.checksumCache);
+			String fileName = library.getName();
+			int extension = fileName.lastIndexOf('.');
+			name = (extension > 0
+					? fileName.substring(0, extension) + "-"
+							+ sha1.substring(0, HASH_LENGTH) + fileName.substring(extension)
+					: fileName + "-" + sha1.substring(0, HASH_LENGTH));
+			this.names.put(library, name);
+		}
+		return name;
+	}
+
+	private Properties loadHistory() {
+		if (!this.historyFile.isFile()) {
+			return null;
+		}
+		Properties history = new Properties();
+		try {
+			InputStream inputStream = new FileInputStream(this.historyFile);
+			try {
+				history.load(inputStream);
+			}
+			finally {
+				inputStream.close();
+			}
+			return history;
+		}
+		catch (IOException ex) {
+			return null;
+		}
+	}
+
+}
@@ -1,8 +1,8 @@
 package com.jsecode.springboot.maven.helper;
 
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -12,22 +12,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 
-import org.springframework.boot.loader.tools.FileUtils;
 import org.springframework.boot.loader.tools.LaunchScript;
 import org.springframework.boot.loader.tools.Library;
 import org.springframework.boot.loader.tools.LoaderClassesWriter;
@@ -46,10 +47,22 @@ public class JarWriter implements LoaderClassesWriter {
 
 	private static final int BUFFER_SIZE = 32 * 1024;
 
-	private final JarOutputStream jarOutput;
+	private static final long MAX_BUFFERED_ENTRY_SIZE = 16 * FileUtil.ONE_MB;
+
+	private static final long MAX_QUEUED_RAW_ENTRY_SIZE = FileUtil.ONE_MB;
+
+	private final RawJarOutputStream jarOutput;
+
+	private final ParallelDeflater parallelDeflater;
 
 	private final Set<String> writtenEntries = new HashSet<String>();
 
+	private LibraryChecksumCache checksumCache;
+
+	private CompressionPolicy compressionPolicy = new CompressionPolicy();
+
+	private LibraryPrefetcher libraryPrefetcher;
+
 	/**
 	 * Create a new {@link JarWriter} instance.
 	 * @param file the file to write
@@ -69,12 +82,72 @@ public class JarWriter implements LoaderClassesWriter {
 	 */
 	public JarWriter(File file, LaunchScript launchScript)
 			throws FileNotFoundException, IOException {
+		this(file, launchScript, 1);
+	}
+
+	/**
+	 * Create a new {@link JarWriter} instance.
+	 * @param file the file to write
+	 * @param launchScript an optional launch script to prepend to the front of the jar
+	 * @param compressionThreads the number of threads used to compress entries. Entries
+	 * are always written in the same order, so the jar does not depend on the number of
+	 * threads
+	 * @throws IOException if the file cannot be opened
+	 * @throws FileNotFoundException if the file cannot be found
+	 */
+	public JarWriter(File file, LaunchScript launchScript, int compressionThreads)
+			throws FileNotFoundException, IOException {
 		FileOutputStream fileOutputStream = new FileOutputStream(file);
 		if (launchScript != null) {
 			fileOutputStream.write(launchScript.toByteArray());
 			setExecutableFilePermission(file);
 		}
-		this.jarOutput = new JarOutputStream(fileOutputStream);
+		this.jarOutput = new RawJarOutputStream(fileOutputStream);
+		this.parallelDeflater = (compressionThreads > 1
+				? new ParallelDeflater(this.jarOutput, compressionThreads) : null);
+	}
+
+	/**
+	 * Set the cache used to look up and store the checksums of nested libraries.
+	 * Libraries whose checksums are cached are copied without being hashed.
+	 * @param checksumCache the checksum cache or {@code null}
+	 */
+	public void setChecksumCache(LibraryChecksumCache checksumCache) {
+		this.checksumCache = checksumCache;
+	}
+
+	/**
+	 * Set the policy that decides how entries are compressed. Nested libraries are
+	 * always stored.
+	 * @param compressionPolicy the compression policy
+	 */
+	public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+		this.compressionPolicy = (compressionPolicy != null ? compressionPolicy
+				: new CompressionPolicy());
+	}
+
+	/**
+	 * Start reading and hashing the given nested libraries on a pool of threads ahead
+	 * of the calls to {@link #writeNestedLibrary(String, Library)} that write them, so
+	 * that reading libraries overlaps with writing the jar. The jar does not depend on
+	 * the number of threads.
+	 * @param libraries the libraries in the order in which they will be written
+	 * @param threads the number of threads that read libraries
+	 */
+	public void prefetchNestedLibraries(List<Library> libraries, int threads) {
+		if (this.libraryPrefetcher == null) {
+			this.libraryPrefetcher = new LibraryPrefetcher(
+					new LibraryPrefetcher.ContentReader() {
+
+						@Override
+						public NestedLibraryContent read(Library library)
+								throws IOException {
+							return readNestedLibrary(library);
+						}
+
+					}, threads);
+		}
+		this.libraryPrefetcher.prefetch(libraries);
 	}
 
 	@UsesJava7
@@ -117,28 +190,113 @@ public class JarWriter implements LoaderClassesWriter {
 
 	void writeEntries(JarFile jarFile, EntryTransformer entryTransformer)
 			throws IOException {
-		Enumeration<JarEntry> entries = jarFile.entries();
-		while (entries.hasMoreElements()) {
-			JarEntry entry = entries.nextElement();
-			ZipHeaderPeekInputStream inputStream = new ZipHeaderPeekInputStream(
-					jarFile.getInputStream(entry));
+		RawZipFile rawZipFile = RawZipFile.open(new File(jarFile.getName()));
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				writeEntry(jarFile, rawZipFile, entries.nextElement(), entryTransformer);
+			}
+		}
+		finally {
+			if (rawZipFile != null) {
+				rawZipFile.close();
+			}
+		}
+	}
+
+	/**
+	 * Write an entry of the given jar file. Unless the entry is a nested zip that has to
+	 * be stored or the compression policy asks for a different compression, its
+	 * compressed data is copied as-is from the raw zip file. Deflated entries are stored
+	 * when the policy stores them, stored entries are deflated when a rule of the policy
+	 * deflates them, except for nested zips which always stay stored.
+	 */
+	private void writeEntry(JarFile jarFile, RawZipFile rawZipFile, JarEntry entry,
+			EntryTransformer entryTransformer) throws IOException {
+		boolean storeNestedZip = entry.getMethod() != ZipEntry.STORED
+				&& hasZipHeader(jarFile, entry);
+		if (storeNestedZip) {
+			InputStream inputStream = jarFile.getInputStream(entry);
 			try {
-				if (inputStream.hasZipHeader() && entry.getMethod() != ZipEntry.STORED) {
-					new CrcAndSize(inputStream).setupStoredEntry(entry);
-					inputStream.close();
-					inputStream = new ZipHeaderPeekInputStream(
-							jarFile.getInputStream(entry));
-				}
-				EntryWriter entryWriter = new InputStreamEntryWriter(inputStream, true);
-				JarEntry transformedEntry = entryTransformer.transform(entry);
-				if (transformedEntry != null) {
-					writeEntry(transformedEntry, entryWriter);
-				}
+				new CrcAndSize(inputStream).setupStoredEntry(entry);
 			}
 			finally {
 				inputStream.close();
 			}
 		}
+		JarEntry transformedEntry = entryTransformer.transform(entry);
+		if (transformedEntry == null) {
+			return;
+		}
+		if (isStoredByPolicy(transformedEntry)) {
+			transformedEntry.setMethod(ZipEntry.STORED);
+			transformedEntry.setCompressedSize(transformedEntry.getSize());
+			writeEntry(transformedEntry,
+					new InputStreamEntryWriter(jarFile.getInputStream(entry), true));
+			return;
+		}
+		if (!storeNestedZip && isDeflatedByRule(transformedEntry)
+				&& !hasZipHeader(jarFile, entry)) {
+			transformedEntry.setMethod(ZipEntry.DEFLATED);
+			transformedEntry.setCompressedSize(-1);
+			writeEntry(transformedEntry,
+					new InputStreamEntryWriter(jarFile.getInputStream(entry), true));
+			return;
+		}
+		RawZipFile.RawEntry rawEntry = (rawZipFile != null && !storeNestedZip
+				&& isRawCopyable(transformedEntry) ? rawZipFile.getEntry(entry.getName())
+						: null);
+		if (rawEntry != null && rawEntry.setupRawEntry(transformedEntry)) {
+			writeEntry(transformedEntry, new InputStreamEntryWriter(
+					rawZipFile.getRawInputStream(rawEntry), true), true);
+		}
+		else {
+			writeEntry(transformedEntry,
+					new InputStreamEntryWriter(jarFile.getInputStream(entry), true));
+		}
+	}
+
+	/**
+	 * Return if a deflated entry of a source jar should be stored, either because of
+	 * its compression level or because it did not shrink when it was deflated.
+	 */
+	private boolean isStoredByPolicy(JarEntry entry) {
+		return entry.getMethod() == ZipEntry.DEFLATED && entry.getSize() != -1
+				&& entry.getCrc() != -1 && entry.getCompressedSize() != -1
+				&& (this.compressionPolicy.getLevel(entry.getName()) == CompressionPolicy.STORED
+						|| this.compressionPolicy.isIncompressible(entry.getSize(),
+								entry.getCompressedSize()));
+	}
+
+	/**
+	 * Return if a stored entry of a source jar should be deflated because a rule of the
+	 * compression policy gives it a deflate level. Stored entries that only match the
+	 * default level are kept as they are.
+	 */
+	private boolean isDeflatedByRule(JarEntry entry) {
+		return entry.getMethod() == ZipEntry.STORED
+				&& this.compressionPolicy.hasRule(entry.getName())
+				&& this.compressionPolicy.getLevel(entry.getName()) != CompressionPolicy.STORED;
+	}
+
+	/**
+	 * Return if the data of an entry of a source jar can be copied as-is. Deflated data
+	 * is only copied when it would be deflated using the default level anyway.
+	 */
+	private boolean isRawCopyable(JarEntry entry) {
+		return entry.getMethod() != ZipEntry.DEFLATED || this.compressionPolicy
+				.getLevel(entry.getName()) == Deflater.DEFAULT_COMPRESSION;
+	}
+
+	private boolean hasZipHeader(JarFile jarFile, JarEntry entry) throws IOException {
+		ZipHeaderPeekInputStream inputStream = new ZipHeaderPeekInputStream(
+				jarFile.getInputStream(entry));
+		try {
+			return inputStream.hasZipHeader();
+		}
+		finally {
+			inputStream.close();
+		}
 	}
 
 	/**
@@ -161,36 +319,42 @@ public class JarWriter implements LoaderClassesWriter {
 	 */
 	public void writeNestedLibrary(String destination, Library library)
 			throws IOException {
-		File file = library.getFile();
+		NestedLibraryContent content = (this.libraryPrefetcher != null
+				? this.libraryPrefetcher.take(library) : readNestedLibrary(library));
 		JarEntry entry = new JarEntry(destination + library.getName());
-		entry.setTime(getNestedLibraryTime(file));
+		entry.setTime(content.getTime());
 		if (library.isUnpackRequired()) {
-			entry.setComment("UNPACK:" + FileUtils.sha1Hash(file));
+			entry.setComment("UNPACK:" + content.getSha1());
+		}
+		content.setupStoredEntry(entry);
+		// Spooled content matches its checksums, so it is written without computing
+		// its CRC again. Files that are unchanged since their checksums were computed
+		// are transferred straight from disk, other files are checked while written
+		if (content.isSpooled()) {
+			writeEntry(entry, new InputStreamEntryWriter(content.openStream(), true),
+					true);
+		}
+		else if (content.isUnchanged()) {
+			writeEntry(entry, new FileEntryWriter(library.getFile()), true);
+		}
+		else {
+			writeEntry(entry, new InputStreamEntryWriter(content.openStream(), true));
 		}
-		new CrcAndSize(file).setupStoredEntry(entry);
-		writeEntry(entry, new InputStreamEntryWriter(new FileInputStream(file), true));
 	}
 
-	private long getNestedLibraryTime(File file) {
-		try {
-			JarFile jarFile = new JarFile(file);
-			try {
-				Enumeration<JarEntry> entries = jarFile.entries();
-				while (entries.hasMoreElements()) {
-					JarEntry entry = entries.nextElement();
-					if (!entry.isDirectory()) {
-						return entry.getTime();
-					}
-				}
-			}
-			finally {
-				jarFile.close();
-			}
+	private NestedLibraryContent readNestedLibrary(Library library) throws IOException {
+		File file = library.getFile();
+		if (this.checksumCache == null) {
+			return NestedLibraryContent.read(file, library.isUnpackRequired());
 		}
-		catch (Exception ex) {
-			// Ignore and just use the source file timestamp
+		LibraryChecksumCache.Checksums checksums = this.checksumCache.get(file);
+		if (checksums != null && checksums.hasContentChecksums()) {
+			return NestedLibraryContent.fromCache(file, checksums);
 		}
-		return file.lastModified();
+		NestedLibraryContent content = NestedLibraryContent.read(file, true);
+		this.checksumCache.put(file, content.getCrc(), content.getSha1(),
+				content.getTime());
+		return content;
 	}
 
 	/**
@@ -203,7 +367,9 @@ public class JarWriter implements LoaderClassesWriter {
 	}
 
 	/**
-	 * Write the required spring-boot-loader classes to the JAR.
+	 * Write the required spring-boot-loader classes to the JAR. The classes are read and
+	 * deflated once per class loader of the plugin and written as raw entries, unless
+	 * the compression policy requires a level other than the default for them.
 	 * @param loaderJarResourceName the name of the resource containing the loader classes
 	 * to be written
 	 * @throws IOException if the classes cannot be written
@@ -211,15 +377,25 @@ public class JarWriter implements LoaderClassesWriter {
 	@Override
 	public void writeLoaderClasses(String loaderJarResourceName) throws IOException {
 		URL loaderJar = getClass().getClassLoader().getResource(loaderJarResourceName);
-		JarInputStream inputStream = new JarInputStream(
-				new BufferedInputStream(loaderJar.openStream()));
-		JarEntry entry;
-		while ((entry = inputStream.getNextJarEntry()) != null) {
-			if (entry.getName().endsWith(".class")) {
-				writeEntry(entry, new InputStreamEntryWriter(inputStream, false));
+		for (CompressedLoaderClasses.LoaderClass loaderClass : CompressedLoaderClasses
+				.get(loaderJar).getClasses()) {
+			if (isDeflatedByPolicy(loaderClass)) {
+				writeEntry(loaderClass.createDeflatedEntry(), new InputStreamEntryWriter(
+						new ByteArrayInputStream(loaderClass.getDeflated()), true), true);
+			}
+			else {
+				writeEntry(loaderClass.createEntry(), new InputStreamEntryWriter(
+						new ByteArrayInputStream(loaderClass.getContent()), true));
 			}
 		}
-		inputStream.close();
+	}
+
+	private boolean isDeflatedByPolicy(CompressedLoaderClasses.LoaderClass loaderClass) {
+		return this.compressionPolicy.getLevel(
+				loaderClass.getName()) == Deflater.DEFAULT_COMPRESSION
+				&& !this.compressionPolicy.isIncompressible(
+						loaderClass.getContent().length,
+						loaderClass.getDeflated().length);
 	}
 
 	/**
@@ -227,7 +403,17 @@ public class JarWriter implements LoaderClassesWriter {
 	 * @throws IOException if the file cannot be closed
 	 */
 	public void close() throws IOException {
-		this.jarOutput.close();
+		try {
+			if (this.libraryPrefetcher != null) {
+				this.libraryPrefetcher.close();
+			}
+			if (this.parallelDeflater != null) {
+				this.parallelDeflater.close();
+			}
+		}
+		finally {
+			this.jarOutput.close();
+		}
 	}
 
 	/**
@@ -238,6 +424,19 @@ public class JarWriter implements LoaderClassesWriter {
 	 * @throws IOException in case of I/O errors
 	 */
 	private void writeEntry(JarEntry entry, EntryWriter entryWriter) throws IOException {
+		writeEntry(entry, entryWriter, false);
+	}
+
+	/**
+	 * Perform the actual write of a {@link JarEntry}.
+	 * @param entry the entry to write
+	 * @param entryWriter the entry writer or {@code null} if there is no content
+	 * @param raw if the entry writer provides data that is already compressed using the
+	 * method of the entry
+	 * @throws IOException in case of I/O errors
+	 */
+	private void writeEntry(JarEntry entry, EntryWriter entryWriter, boolean raw)
+			throws IOException {
 		String parent = entry.getName();
 		if (parent.endsWith("/")) {
 			parent = parent.substring(0, parent.length() - 1);
@@ -250,14 +449,117 @@ public class JarWriter implements LoaderClassesWriter {
 		}
 
 		if (this.writtenEntries.add(entry.getName())) {
+			if (!raw && entry.getMethod() != ZipEntry.STORED) {
+				writeCompressedEntry(entry, entryWriter);
+				return;
+			}
+			if (this.parallelDeflater != null) {
+				// Small raw entries, such as classes copied from the source jar, are
+				// queued behind the entries being compressed rather than waiting for them
+				if (raw && entry.getCompressedSize() <= MAX_QUEUED_RAW_ENTRY_SIZE) {
+					this.parallelDeflater.submitRaw(entry, getContent(entryWriter));
+					return;
+				}
+				this.parallelDeflater.drain();
+			}
+			if (raw) {
+				this.jarOutput.putNextRawEntry(entry);
+			}
+			else {
+				this.jarOutput.putNextEntry(entry);
+			}
+			if (entryWriter != null) {
+				entryWriter.write(this.jarOutput);
+			}
+			this.jarOutput.closeEntry();
+		}
+	}
+
+	/**
+	 * Write an entry that is compressed according to the compression policy. Entries
+	 * that fit in memory are compressed on the parallel deflater when there is one, and
+	 * in memory when they may have to be stored; larger entries are deflated while they
+	 * are written, or stored as described in {@link #writeLargeStoredEntry}.
+	 */
+	private void writeCompressedEntry(JarEntry entry, EntryWriter entryWriter)
+			throws IOException {
+		int level = this.compressionPolicy.getLevel(entry.getName());
+		if (entry.getSize() <= MAX_BUFFERED_ENTRY_SIZE) {
+			if (this.parallelDeflater != null) {
+				this.parallelDeflater.submit(entry, getContent(entryWriter), level,
+						this.compressionPolicy);
+				return;
+			}
+			if (level == CompressionPolicy.STORED || this.compressionPolicy.isAdaptive()) {
+				new DeflatedEntry(entry, getContent(entryWriter), level,
+						this.compressionPolicy).writeTo(this.jarOutput);
+				return;
+			}
+		}
+		else if (this.parallelDeflater != null) {
+			this.parallelDeflater.drain();
+		}
+		if (level == CompressionPolicy.STORED) {
+			writeLargeStoredEntry(entry, entryWriter);
+			return;
+		}
+		this.jarOutput.setLevel(level);
+		this.jarOutput.putNextEntry(entry);
+		if (entryWriter != null) {
+			entryWriter.write(this.jarOutput);
+		}
+		this.jarOutput.closeEntry();
+	}
+
+	/**
+	 * Store an entry that is too large to be buffered in memory. An entry of which the
+	 * CRC is known is written directly, the content of other entries is first spooled to
+	 * a temporary file while its CRC is computed.
+	 */
+	private void writeLargeStoredEntry(JarEntry entry, EntryWriter entryWriter)
+			throws IOException {
+		if (entry.getCrc() != -1 || entryWriter == null) {
+			entry.setMethod(ZipEntry.STORED);
+			entry.setCompressedSize(entry.getSize());
 			this.jarOutput.putNextEntry(entry);
 			if (entryWriter != null) {
 				entryWriter.write(this.jarOutput);
 			}
 			this.jarOutput.closeEntry();
+			return;
+		}
+		File spool = File.createTempFile("entry", ".tmp");
+		try {
+			CRC32 crc = new CRC32();
+			OutputStream outputStream = new CheckedOutputStream(
+					new FileOutputStream(spool), crc);
+			try {
+				entryWriter.write(outputStream);
+			}
+			finally {
+				outputStream.close();
+			}
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(spool.length());
+			entry.setCompressedSize(spool.length());
+			entry.setCrc(crc.getValue());
+			this.jarOutput.putNextRawEntry(entry);
+			new FileEntryWriter(spool).write(this.jarOutput);
+			this.jarOutput.closeEntry();
+		}
+		finally {
+			spool.delete();
 		}
 	}
 
+	private byte[] getContent(EntryWriter entryWriter) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		if (entryWriter != null) {
+			entryWriter.write(content);
+		}
+		return content.toByteArray();
+	}
+
 	/**
 	 * Interface used to write jar entry date.
 	 */
@@ -301,6 +603,38 @@ public class JarWriter implements LoaderClassesWriter {
 
 	}
 
+	/**
+	 * {@link EntryWriter} that writes the content of a file, transferring it directly
+	 * into the jar file when writing to a {@link RawJarOutputStream}.
+	 */
+	private static class FileEntryWriter implements EntryWriter {
+
+		private final File file;
+
+		FileEntryWriter(File file) {
+			this.file = file;
+		}
+
+		@Override
+		public void write(OutputStream outputStream) throws IOException {
+			FileInputStream inputStream = new FileInputStream(this.file);
+			try {
+				if (outputStream instanceof RawJarOutputStream) {
+					FileChannel channel = inputStream.getChannel();
+					((RawJarOutputStream) outputStream).transferFrom(channel, 0,
+							channel.size());
+				}
+				else {
+					new InputStreamEntryWriter(inputStream, false).write(outputStream);
+				}
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+
+	}
+
 	/**
 	 * {@link InputStream} that can peek ahead at zip header bytes.
 	 */
@@ -360,16 +694,6 @@ public class JarWriter implements LoaderClassesWriter {
 
 		private long size;
 
-		CrcAndSize(File file) throws IOException {
-			FileInputStream inputStream = new FileInputStream(file);
-			try {
-				load(inputStream);
-			}
-			finally {
-				inputStream.close();
-			}
-		}
-
 		CrcAndSize(InputStream inputStream) throws IOException {
 			load(inputStream);
 		}
@@ -0,0 +1,293 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Splits a repackaged archive into the layers of a {@link LibraryLayers} and writes each
+ * layer to its own directory or tar archive in a {@code layers} directory, together with
+ * a {@code layers.idx} index that lists the entries of each layer. Extracting the layers
+ * on top of each other yields the exploded archive, which is launched with
+ * {@code java -cp <dir> org.springframework.boot.loader.JarLauncher}.
+ * <p>
+ * The name, size and CRC-32 of the entries of each layer are recorded in a state file,
+ * so that a layer whose entries did not change is neither written nor hashed again and
+ * keeps its digest. Tar archives are {@link TarWriter reproducible}, so the digest of
+ * a layer only changes with its content, which lets container builds reuse the large
+ * dependency layers.
+ */
+class LayeredDistributionWriter {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String INDEX_NAME = "layers.idx";
+
+	private static final String STATE_NAME = ".layers.state";
+
+	private static final String HEADER = "Layer state written by ecode-springboot-maven-plugin";
+
+	private static final String TAR_EXTENSION = ".tar";
+
+	private static final String LOADER_LOCATION = "org/springframework/boot/loader/";
+
+	private final File directory;
+
+	private final boolean tar;
+
+	private final LibraryLayers layers;
+
+	private final Map<String, String> libraryLayers;
+
+	private final String classesLocation;
+
+	/**
+	 * Create a new {@link LayeredDistributionWriter} instance.
+	 * @param directory the directory to write the layers to
+	 * @param tar if each layer is written to a tar archive rather than a directory
+	 * @param layers the layers
+	 * @param libraryLayers the layer of each library, keyed by the name of its entry in
+	 * the archive
+	 * @param classesLocation the location of the classes in the archive
+	 */
+	LayeredDistributionWriter(File directory, boolean tar, LibraryLayers layers,
+			Map<String, String> libraryLayers, String classesLocation) {
+		this.directory = directory;
+		this.tar = tar;
+		this.layers = layers;
+		this.libraryLayers = libraryLayers;
+		this.classesLocation = classesLocation;
+	}
+
+	/**
+	 * Write the layers of the given archive.
+	 * @param archive the repackaged archive
+	 * @throws IOException if the archive cannot be read or a layer cannot be written
+	 */
+	void write(File archive) throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + this.directory);
+		}
+		File stateFile = new File(this.directory, STATE_NAME);
+		Properties previousState = loadState(stateFile);
+		Properties state = new Properties();
+		JarFile jarFile = new JarFile(archive);
+		try {
+			Map<String, List<JarEntry>> entries = getLayerEntries(jarFile);
+			for (Map.Entry<String, List<JarEntry>> layer : entries.entrySet()) {
+				String name = layer.getKey();
+				String fingerprint = getFingerprint(layer.getValue());
+				File output = getOutput(name);
+				String digest = previousState.getProperty(name + ".digest");
+				if (!fingerprint.equals(previousState.getProperty(name + ".fingerprint"))
+						|| !output.exists()) {
+					digest = writeLayer(jarFile, layer.getValue(), output);
+				}
+				state.setProperty(name + ".fingerprint", fingerprint);
+				if (digest != null) {
+					state.setProperty(name + ".digest", digest);
+				}
+			}
+			deleteStaleOutputs(entries.keySet());
+			writeIndex(entries);
+		}
+		finally {
+			jarFile.close();
+		}
+		OutputStream outputStream = new FileOutputStream(stateFile);
+		try {
+			state.store(outputStream, HEADER);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private Map<String, List<JarEntry>> getLayerEntries(JarFile jarFile) {
+		Map<String, List<JarEntry>> entries = new LinkedHashMap<String, List<JarEntry>>();
+		for (String name : this.layers.getNames()) {
+			entries.put(name, new ArrayList<JarEntry>());
+		}
+		Enumeration<JarEntry> jarEntries = jarFile.entries();
+		while (jarEntries.hasMoreElements()) {
+			JarEntry entry = jarEntries.nextElement();
+			if (!entry.isDirectory()) {
+				entries.get(getLayer(entry.getName())).add(entry);
+			}
+		}
+		return entries;
+	}
+
+	private String getLayer(String name) {
+		String layer = this.libraryLayers.get(name);
+		if (layer != null) {
+			return layer;
+		}
+		if (name.startsWith(LOADER_LOCATION)) {
+			return LibraryLayers.SPRING_BOOT_LOADER;
+		}
+		for (String launcherClass : PackageIndex.LAUNCHER_CLASSES) {
+			if (name.equals(launcherClass)) {
+				return LibraryLayers.SPRING_BOOT_LOADER;
+			}
+		}
+		if (name.startsWith(this.classesLocation) && !name.endsWith(".class")) {
+			return LibraryLayers.RESOURCES;
+		}
+		return LibraryLayers.APPLICATION;
+	}
+
+	private String getFingerprint(List<JarEntry> entries) {
+		MessageDigest digest = createDigest("SHA-1");
+		for (JarEntry entry : entries) {
+			digest.update((entry.getName() + "," + entry.getSize() + "," + entry.getCrc()
+					+ "\n").getBytes(UTF_8));
+		}
+		digest.update(String.valueOf(this.tar).getBytes(UTF_8));
+		return NestedLibraryContent.bytesToHex(digest.digest());
+	}
+
+	private File getOutput(String layer) {
+		return new File(this.directory, (this.tar ? layer + TAR_EXTENSION : layer));
+	}
+
+	private String writeLayer(JarFile jarFile, List<JarEntry> entries, File output)
+			throws IOException {
+		FileUtil.deleteQuietly(output);
+		if (!this.tar) {
+			for (JarEntry entry : entries) {
+				File file = new File(output, entry.getName());
+				File parent = file.getParentFile();
+				if (!parent.isDirectory() && !parent.mkdirs()) {
+					throw new IOException("Unable to create directory " + parent);
+				}
+				InputStream inputStream = jarFile.getInputStream(entry);
+				try {
+					copy(inputStream, file);
+				}
+				finally {
+					inputStream.close();
+				}
+				file.setLastModified(entry.getTime());
+			}
+			return null;
+		}
+		File temp = new File(this.directory, "." + output.getName() + ".tmp");
+		MessageDigest digest = createDigest("SHA-256");
+		TarWriter writer = new TarWriter(
+				new DigestOutputStream(new FileOutputStream(temp), digest));
+		try {
+			for (JarEntry entry : entries) {
+				InputStream inputStream = jarFile.getInputStream(entry);
+				try {
+					writer.writeEntry(entry.getName(), entry.getSize(), inputStream);
+				}
+				finally {
+					inputStream.close();
+				}
+			}
+			writer.close();
+			FileUtil.moveFile(temp, output);
+		}
+		finally {
+			FileUtil.closeQuietly(writer);
+			temp.delete();
+		}
+		return "sha256:" + NestedLibraryContent.bytesToHex(digest.digest());
+	}
+
+	private void deleteStaleOutputs(Set<String> layers) {
+		Set<String> outputs = new HashSet<String>();
+		for (String layer : layers) {
+			outputs.add(getOutput(layer).getName());
+		}
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (!outputs.contains(name) && !name.equals(INDEX_NAME)
+						&& !name.equals(STATE_NAME)) {
+					FileUtil.deleteQuietly(file);
+				}
+			}
+		}
+	}
+
+	private void writeIndex(Map<String, List<JarEntry>> entries) throws IOException {
+		StringBuilder index = new StringBuilder();
+		for (Map.Entry<String, List<JarEntry>> layer : entries.entrySet()) {
+			index.append("- \"").append(layer.getKey()).append("\":\n");
+			for (JarEntry entry : layer.getValue()) {
+				index.append("  - \"").append(entry.getName()).append("\"\n");
+			}
+		}
+		OutputStream outputStream = new FileOutputStream(
+				new File(this.directory, INDEX_NAME));
+		try {
+			outputStream.write(index.toString().getBytes(UTF_8));
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private Properties loadState(File stateFile) {
+		Properties state = new Properties();
+		if (stateFile.isFile()) {
+			try {
+				InputStream inputStream = new FileInputStream(stateFile);
+				try {
+					state.load(inputStream);
+				}
+				finally {
+					inputStream.close();
+				}
+			}
+			catch (IOException ex) {
+				state.clear();
+			}
+		}
+		return state;
+	}
+
+	private void copy(InputStream inputStream, File file) throws IOException {
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			byte[] buffer = new byte[32 * 1024];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, bytesRead);
+			}
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private static MessageDigest createDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
@@ -0,0 +1,324 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of the checksums of library files, so that libraries that have not
+ * changed since a previous build do not have to be read and hashed again. Entries are
+ * keyed by the path of the library and are only used when the size and last modified
+ * time of the file still match. When {@link #LibraryChecksumCache(File, boolean)
+ * verification} is enabled, the CRC-32 of the end of the file, which contains the
+ * central directory of a jar, must match as well.
+ * <p>
+ * The cache is stored as a properties file. Only the entries of the libraries that
+ * were looked up since the cache was {@link #load() loaded} are {@link #save() saved},
+ * so that entries of libraries that a build no longer uses do not accumulate. A cache
+ * file is therefore meant to be used by a single project; concurrent builds of that
+ * project merge the entries they both use.
+ */
+public class LibraryChecksumCache {
+
+	private static final int TAIL_SIZE = 64 * 1024;
+
+	private static final String HEADER = "Library checksums cached by ecode-springboot-maven-plugin";
+
+	private final File file;
+
+	private final boolean verify;
+
+	private final Map<String, Checksums> entries = new HashMap<String, Checksums>();
+
+	private final Set<String> used = new HashSet<String>();
+
+	private boolean modified;
+
+	/**
+	 * Create a new {@link LibraryChecksumCache} backed by the given file.
+	 * @param file the cache file
+	 * @param verify if cached entries should be verified against the end of the file
+	 */
+	public LibraryChecksumCache(File file, boolean verify) {
+		this.file = file;
+		this.verify = verify;
+	}
+
+	/**
+	 * Load the cache file, ignoring it if it does not exist or cannot be read.
+	 */
+	public synchronized void load() {
+		for (Map.Entry<String, Checksums> entry : read().entrySet()) {
+			if (!this.entries.containsKey(entry.getKey())) {
+				this.entries.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Save the cache file if entries have been added or are no longer used, merging
+	 * the entries with those saved by other builds in the meantime. Only the entries of
+	 * libraries that have been looked up since the cache was loaded and that still
+	 * exist are kept.
+	 * @throws IOException if the cache file cannot be written
+	 */
+	public synchronized void save() throws IOException {
+		Map<String, Checksums> merged = read();
+		if (!this.modified && this.used.containsAll(merged.keySet())) {
+			return;
+		}
+		merged.putAll(this.entries);
+		Properties properties = new Properties();
+		for (Map.Entry<String, Checksums> entry : merged.entrySet()) {
+			if (this.used.contains(entry.getKey()) && new File(entry.getKey()).isFile()) {
+				properties.setProperty(entry.getKey(), entry.getValue().toString());
+			}
+		}
+		File parent = this.file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+		File temp = File.createTempFile(this.file.getName(), ".tmp", parent);
+		try {
+			OutputStream outputStream = new FileOutputStream(temp);
+			try {
+				properties.store(outputStream, HEADER);
+			}
+			finally {
+				outputStream.close();
+			}
+			FileUtil.moveFile(temp, this.file);
+		}
+		finally {
+			temp.delete();
+		}
+		this.modified = false;
+	}
+
+	/**
+	 * Return the cached checksums of the given file.
+	 * @param file the library file
+	 * @return the checksums or {@code null} if the file is not cached or has changed
+	 */
+	public synchronized Checksums get(File file) {
+		String key = getKey(file);
+		this.used.add(key);
+		Checksums checksums = this.entries.get(key);
+		if (checksums == null) {
+			return null;
+		}
+		if (checksums.size != file.length()
+				|| checksums.lastModified != file.lastModified()
+				|| (this.verify && checksums.tailCrc != getTailCrc(file))) {
+			this.entries.remove(key);
+			return null;
+		}
+		return checksums;
+	}
+
+	/**
+	 * Return if the given file is a zip file, caching the result.
+	 * @param file the library file
+	 * @param zip the callback used to find out if the file is a zip if not cached
+	 * @return if the file is a zip file
+	 */
+	public boolean isZip(File file, ZipCheck zip) {
+		Checksums checksums = get(file);
+		if (checksums != null) {
+			return checksums.zip;
+		}
+		boolean result = zip.isZip(file);
+		put(file, new Checksums(file, result, -1, null, -1, getTailCrc(file)));
+		return result;
+	}
+
+	/**
+	 * Cache the checksums of the given file, as computed from its content.
+	 * @param file the library file
+	 * @param crc the CRC-32 of the content
+	 * @param sha1 the SHA-1 hash of the content
+	 * @param time the time of the first file entry of the library
+	 */
+	public void put(File file, long crc, String sha1, long time) {
+		Checksums existing = get(file);
+		boolean zip = (existing == null || existing.zip);
+		put(file, new Checksums(file, zip, crc, sha1, time, getTailCrc(file)));
+	}
+
+	private synchronized void put(File file, Checksums checksums) {
+		String key = getKey(file);
+		this.used.add(key);
+		this.entries.put(key, checksums);
+		this.modified = true;
+	}
+
+	private Map<String, Checksums> read() {
+		Map<String, Checksums> result = new HashMap<String, Checksums>();
+		if (!this.file.isFile()) {
+			return result;
+		}
+		Properties properties = new Properties();
+		try {
+			InputStream inputStream = new FileInputStream(this.file);
+			try {
+				properties.load(inputStream);
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+		catch (IOException ex) {
+			// Ignore and start with an empty cache
+			return result;
+		}
+		for (String key : properties.stringPropertyNames()) {
+			Checksums checksums = Checksums.parse(properties.getProperty(key));
+			if (checksums != null) {
+				result.put(key, checksums);
+			}
+		}
+		return result;
+	}
+
+	private String getKey(File file) {
+		return file.getAbsolutePath();
+	}
+
+	private long getTailCrc(File file) {
+		if (!this.verify) {
+			return -1;
+		}
+		try {
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+			try {
+				long length = randomAccessFile.length();
+				byte[] tail = new byte[(int) Math.min(length, TAIL_SIZE)];
+				randomAccessFile.seek(length - tail.length);
+				randomAccessFile.readFully(tail);
+				CRC32 crc = new CRC32();
+				crc.update(tail);
+				return crc.getValue();
+			}
+			finally {
+				randomAccessFile.close();
+			}
+		}
+		catch (IOException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Callback used to find out if a file is a zip file.
+	 */
+	public interface ZipCheck {
+
+		/**
+		 * Return if the given file is a zip file.
+		 * @param file the file to check
+		 * @return if the file is a zip file
+		 */
+		boolean isZip(File file);
+
+	}
+
+	/**
+	 * The cached checksums of a library file.
+	 */
+	public static final class Checksums {
+
+		private final long size;
+
+		private final long lastModified;
+
+		private final boolean zip;
+
+		private final long crc;
+
+		private final String sha1;
+
+		private final long time;
+
+		private final long tailCrc;
+
+		private Checksums(long size, long lastModified, boolean zip, long crc,
+				String sha1, long time, long tailCrc) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.zip = zip;
+			this.crc = crc;
+			this.sha1 = sha1;
+			this.time = time;
+			this.tailCrc = tailCrc;
+		}
+
+		private Checksums(File file, boolean zip, long crc, String sha1, long time,
+				long tailCrc) {
+			this(file.length(), file.lastModified(), zip, crc, sha1, time, tailCrc);
+		}
+
+		/**
+		 * Return if the CRC-32, SHA-1 hash and entry time are known. They are not
+		 * known when only the {@link #isZip() zip check} has been cached.
+		 * @return if the content checksums are known
+		 */
+		public boolean hasContentChecksums() {
+			return this.crc != -1 && this.sha1 != null;
+		}
+
+		public long getSize() {
+			return this.size;
+		}
+
+		public boolean isZip() {
+			return this.zip;
+		}
+
+		public long getCrc() {
+			return this.crc;
+		}
+
+		public String getSha1() {
+			return this.sha1;
+		}
+
+		public long getTime() {
+			return this.time;
+		}
+
+		@Override
+		public String toString() {
+			return this.size + "," + this.lastModified + "," + this.zip + "," + this.crc
+					+ "," + (this.sha1 == null ? "" : this.sha1) + "," + this.time + ","
+					+ this.tailCrc;
+		}
+
+		static Checksums parse(String value) {
+			String[] parts = value.split(",", -1);
+			if (parts.length != 7) {
+				return null;
+			}
+			try {
+				return new Checksums(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+						Boolean.parseBoolean(parts[2]), Long.parseLong(parts[3]),
+						(parts[4].length() == 0 ? null : parts[4]),
+						Long.parseLong(parts[5]), Long.parseLong(parts[6]));
+			}
+			catch (NumberFormatException ex) {
+				return null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,170 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Synchronizes the libraries of a thin jar with its {@code lib} directory. A library is
+ * only copied or linked when it is new or has changed since it was last placed in the
+ * directory, and files that are no longer libraries are deleted. The path, size and last
+ * modified time of each placed library are recorded with its SHA-1 hash in a state file
+ * next to the directory, so a library whose file did not change is recognized without
+ * being hashed, and one that is hashed again is only copied when its content changed.
+ * <p>
+ * Libraries may be placed concurrently.
+ */
+class LibraryDirectorySync {
+
+	private static final String HEADER = "Library directory state written by ecode-springboot-maven-plugin";
+
+	private static final String LINK_MODE = "linkMode";
+
+	private static final String LIBRARY_PREFIX = "lib.";
+
+	private static final int FIELDS = 6;
+
+	private static final int SHA1_FIELD = 4;
+
+	private final File directory;
+
+	private final File stateFile;
+
+	private final LibraryLinkMode linkMode;
+
+	private final LibraryChecksumCache checksumCache;
+
+	private final Properties previousState = new Properties();
+
+	private final Properties state = new Properties();
+
+	private final Set<String> names = Collections.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * Create a new {@link LibraryDirectorySync} instance and load the state recorded by
+	 * the previous synchronization.
+	 * @param directory the library directory
+	 * @param linkMode how libraries are placed in the directory
+	 * @param checksumCache the cache used to look up the hashes of libraries or
+	 * {@code null}
+	 */
+	LibraryDirectorySync(File directory, LibraryLinkMode linkMode,
+			LibraryChecksumCache checksumCache) {
+		this.directory = directory;
+		this.stateFile = getStateFile(directory);
+		this.linkMode = linkMode;
+		this.checksumCache = checksumCache;
+		loadPreviousState();
+		this.state.setProperty(LINK_MODE, linkMode.name());
+	}
+
+	/**
+	 * Return the state file of the given library directory.
+	 * @param directory the library directory
+	 * @return the state file
+	 */
+	static File getStateFile(File directory) {
+		return new File(directory.getAbsoluteFile().getParentFile(),
+				"." + directory.getName() + ".state");
+	}
+
+	/**
+	 * Place the given library in the directory unless it is already there.
+	 * @param library the library file
+	 * @return {@code true} if the library was copied or linked
+	 * @throws IOException if the library cannot be read or placed
+	 */
+	boolean place(File library) throws IOException {
+		String name = library.getName();
+		String key = LIBRARY_PREFIX + name;
+		this.names.add(name);
+		File destination = new File(this.directory, name);
+		String previous = this.previousState.getProperty(key);
+		String[] fields = (previous != null ? previous.split(",", FIELDS) : null);
+		String previousSha1 = (fields != null && fields.length == FIELDS
+				? fields[SHA1_FIELD] : null);
+		if (previousSha1 != null
+				&& previous.equals(getValue(library, destination, previousSha1))) {
+			this.state.setProperty(key, previous);
+			return false;
+		}
+		String sha1 = NestedLibraryContent.getSha1(library, this.checksumCache);
+		if (sha1.equals(previousSha1) && isPlaced(destination, fields)) {
+			// The library file changed but its content did not, for example because it
+			// was downloaded again
+			this.state.setProperty(key, getValue(library, destination, sha1));
+			return false;
+		}
+		destination = this.linkMode.apply(library, this.directory);
+		this.state.setProperty(key, getValue(library, destination, sha1));
+		return true;
+	}
+
+	/**
+	 * Delete the files in the directory that are not one of the placed libraries and
+	 * record the state of the directory.
+	 * @throws IOException if a file cannot be deleted or the state cannot be saved
+	 */
+	void finish() throws IOException {
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!this.names.contains(file.getName())) {
+					FileUtil.forceDelete(file);
+				}
+			}
+		}
+		OutputStream outputStream = new FileOutputStream(this.stateFile);
+		try {
+			this.state.store(outputStream, HEADER);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private String getValue(File library, File destination, String sha1) {
+		if (!destination.isFile()) {
+			return null;
+		}
+		return library.length() + "," + library.lastModified() + ","
+				+ destination.length() + "," + destination.lastModified() + "," + sha1
+				+ "," + library.getAbsolutePath();
+	}
+
+	private boolean isPlaced(File destination, String[] fields) {
+		return destination.isFile()
+				&& fields[2].equals(String.valueOf(destination.length()))
+				&& fields[3].equals(String.valueOf(destination.lastModified()));
+	}
+
+	private void loadPreviousState() {
+		if (!this.stateFile.isFile()) {
+			return;
+		}
+		try {
+			InputStream inputStream = new FileInputStream(this.stateFile);
+			try {
+				this.previousState.load(inputStream);
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+		catch (IOException ex) {
+			this.previousState.clear();
+		}
+		// Libraries placed using another mode have to be placed again
+		if (!this.linkMode.name().equals(this.previousState.getProperty(LINK_MODE))) {
+			this.previousState.clear();
+		}
+	}
+
+}
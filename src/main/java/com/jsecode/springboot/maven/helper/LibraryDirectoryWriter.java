@@ -0,0 +1,128 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the libraries of a thin jar to its {@code lib} directory, copying or linking
+ * each library according to a {@link LibraryLinkMode}. Libraries that are already in a
+ * {@link LibraryDirectorySync synchronized} directory are skipped and libraries may be
+ * written concurrently by a {@link ParallelFileCopier}. When a {@link LibraryPool} is
+ * used the libraries are written to the pool instead of the directory, and a
+ * {@link HashedLibraryDirectory} writes them under names that include their hash.
+ */
+class LibraryDirectoryWriter {
+
+	private final File directory;
+
+	private final LibraryLinkMode linkMode;
+
+	private final LibraryDirectorySync sync;
+
+	private final LibraryPool pool;
+
+	private final HashedLibraryDirectory hashed;
+
+	private final ParallelFileCopier copier;
+
+	/**
+	 * Create a new {@link LibraryDirectoryWriter} instance.
+	 * @param directory the library directory
+	 * @param linkMode how libraries are placed in the directory
+	 * @param sync the synchronization of the directory or {@code null} if all libraries
+	 * should be written
+	 * @param pool the pool that libraries are written to instead of the directory or
+	 * {@code null}
+	 * @param hashed the directory that writes libraries under hashed names or
+	 * {@code null}
+	 * @param threads the number of libraries written concurrently
+	 */
+	LibraryDirectoryWriter(File directory, LibraryLinkMode linkMode,
+			LibraryDirectorySync sync, LibraryPool pool, HashedLibraryDirectory hashed,
+			int threads) {
+		this.directory = directory;
+		this.linkMode = linkMode;
+		this.sync = sync;
+		this.pool = pool;
+		this.hashed = hashed;
+		this.copier = (threads > 1 ? new ParallelFileCopier(threads) : null);
+	}
+
+	/**
+	 * Return the path of the given library relative to the directory of the archive.
+	 * @param library the library file
+	 * @return the path, using {@code /} as separator
+	 * @throws IOException if the library cannot be read
+	 */
+	String getPath(File library) throws IOException {
+		if (this.pool != null) {
+			return this.pool.getPath(library);
+		}
+		if (this.hashed != null) {
+			return this.hashed.getPath(library);
+		}
+		return this.directory.getName() + "/" + library.getName();
+	}
+
+	/**
+	 * Write the given library to the directory.
+	 * @param library the library file
+	 * @throws IOException if the library cannot be written
+	 */
+	void write(final File library) throws IOException {
+		if (this.copier == null) {
+			place(library);
+			return;
+		}
+		this.copier.submit(library, new ParallelFileCopier.Copy() {
+
+			@Override
+			public void run() throws IOException {
+				place(library);
+			}
+
+		});
+	}
+
+	/**
+	 * Wait for all libraries to be written and finish the synchronization of the
+	 * directory.
+	 * @throws IOException if a library could not be written
+	 */
+	void finish() throws IOException {
+		if (this.copier != null) {
+			this.copier.await();
+		}
+		if (this.sync != null) {
+			this.sync.finish();
+		}
+		if (this.hashed != null) {
+			this.hashed.finish();
+		}
+	}
+
+	/**
+	 * Stop writing libraries.
+	 */
+	void close() {
+		if (this.copier != null) {
+			this.copier.close();
+		}
+	}
+
+	private void place(File library) throws IOException {
+		if (this.pool != null) {
+			this.pool.place(library);
+		}
+		else if (this.hashed != null) {
+			this.hashed.place(library);
+		}
+		else if (this.sync != null) {
+			this.sync.place(library);
+		}
+		else {
+			this.linkMode.apply(library, this.directory);
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layers that a layered distribution is split into, in the order in which they are
+ * applied, from the least to the most frequently changing: {@code dependencies}, any
+ * custom dependency layers, {@code snapshot-dependencies}, {@code spring-boot-loader},
+ * {@code resources} and {@code application}. Each library is assigned to one of the
+ * dependency layers, by default {@code dependencies}.
+ */
+public class LibraryLayers {
+
+	/**
+	 * The layer of the release dependencies.
+	 */
+	public static final String DEPENDENCIES = "dependencies";
+
+	/**
+	 * The layer of the snapshot dependencies.
+	 */
+	public static final String SNAPSHOT_DEPENDENCIES = "snapshot-dependencies";
+
+	/**
+	 * The layer of the Spring Boot loader classes.
+	 */
+	public static final String SPRING_BOOT_LOADER = "spring-boot-loader";
+
+	/**
+	 * The layer of the resources of the application.
+	 */
+	public static final String RESOURCES = "resources";
+
+	/**
+	 * The layer of the classes of the application and any other entries.
+	 */
+	public static final String APPLICATION = "application";
+
+	private final List<String> names = new ArrayList<String>();
+
+	private final Map<File, String> libraries = new HashMap<File, String>();
+
+	public LibraryLayers() {
+		Collections.addAll(this.names, DEPENDENCIES, SNAPSHOT_DEPENDENCIES,
+				SPRING_BOOT_LOADER, RESOURCES, APPLICATION);
+	}
+
+	/**
+	 * Add a custom dependency layer, which is placed after the layers added before and
+	 * ahead of {@code snapshot-dependencies}.
+	 * @param name the name of the layer
+	 * @throws IllegalArgumentException if the name is invalid or already used
+	 */
+	public void addLayer(String name) {
+		if (name == null || !name.matches("[A-Za-z0-9][A-Za-z0-9._-]*")) {
+			throw new IllegalArgumentException("Invalid layer name '" + name + "'");
+		}
+		if (this.names.contains(name)) {
+			throw new IllegalArgumentException("Duplicate layer '" + name + "'");
+		}
+		this.names.add(this.names.indexOf(SNAPSHOT_DEPENDENCIES), name);
+	}
+
+	/**
+	 * Assign the given library to a dependency layer.
+	 * @param library the library file
+	 * @param layer the name of the layer
+	 * @throws IllegalArgumentException if there is no such dependency layer
+	 */
+	public void setLayer(File library, String layer) {
+		if (!this.names.contains(layer) || this.names.indexOf(layer) > this.names
+				.indexOf(SNAPSHOT_DEPENDENCIES)) {
+			throw new IllegalArgumentException("Unknown dependency layer '" + layer + "'");
+		}
+		this.libraries.put(library, layer);
+	}
+
+	/**
+	 * Return the layer of the given library.
+	 * @param library the library file
+	 * @return the name of the layer
+	 */
+	public String getLayer(File library) {
+		String layer = this.libraries.get(library);
+		return (layer != null ? layer : DEPENDENCIES);
+	}
+
+	/**
+	 * Return the names of the layers.
+	 * @return the names, in order
+	 */
+	public List<String> getNames() {
+		return Collections.unmodifiableList(this.names);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder value = new StringBuilder(this.names.toString());
+		List<String> assignments = new ArrayList<String>();
+		for (Map.Entry<File, String> entry : this.libraries.entrySet()) {
+			assignments.add(entry.getKey().getName() + "=" + entry.getValue());
+		}
+		Collections.sort(assignments);
+		return value.append(assignments).toString();
+	}
+
+}
@@ -0,0 +1,131 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import org.springframework.lang.UsesJava7;
+
+/**
+ * How the libraries of a thin archive are placed in its {@code lib} directory. Linking
+ * avoids copying the content of every library out of the local repository, falling back
+ * to a copy where the file system does not support the link, for example when the
+ * directory is on a different device than the repository.
+ * <p>
+ * A hard link shares its content with the library in the local repository, so it must
+ * not be modified in place; a symbolic link only works as long as the local repository
+ * is available, which makes it unsuitable for a directory that is shipped elsewhere.
+ */
+public enum LibraryLinkMode {
+
+	/**
+	 * Copy the libraries.
+	 */
+	COPY,
+
+	/**
+	 * Create hard links to the libraries, copying them where that is not possible.
+	 */
+	HARDLINK,
+
+	/**
+	 * Create symbolic links to the libraries, copying them where that is not possible.
+	 */
+	SYMLINK,
+
+	/**
+	 * Create hard links to the libraries, falling back to symbolic links where hard
+	 * links are not possible, for example across devices, and to copies where neither
+	 * kind of link is supported.
+	 */
+	AUTO;
+
+	/**
+	 * Return the mode with the given name, ignoring case.
+	 * @param name the name of the mode, {@code copy}, {@code hardlink}, {@code symlink}
+	 * or {@code auto}
+	 * @return the mode
+	 * @throws IllegalArgumentException if there is no mode with the given name
+	 */
+	public static LibraryLinkMode forName(String name) {
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+		}
+		catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("Unknown library link mode '" + name
+					+ "', expected copy, hardlink, symlink or auto");
+		}
+	}
+
+	/**
+	 * Place the given library in the given directory, replacing any file with the same
+	 * name. An existing file is deleted first rather than overwritten, as it may be a
+	 * link to a library in the local repository.
+	 * @param library the library
+	 * @param directory the directory, which is created if necessary
+	 * @return the file in the directory
+	 * @throws IOException if the library can neither be linked nor copied
+	 */
+	public File apply(File library, File directory) throws IOException {
+		File destination = new File(directory, library.getName());
+		place(library, destination);
+		return destination;
+	}
+
+	/**
+	 * Place the given library at the given destination, replacing any existing file.
+	 * @param library the library
+	 * @param destination the destination, whose directory is created if necessary
+	 * @throws IOException if the library can neither be linked nor copied
+	 */
+	void place(File library, File destination) throws IOException {
+		delete(destination);
+		if (this == COPY || !link(library, destination)) {
+			FileUtil.copyFile(library, destination);
+		}
+	}
+
+	@UsesJava7
+	private void delete(File destination) throws IOException {
+		Path path = destination.toPath();
+		Files.createDirectories(path.getParent());
+		Files.deleteIfExists(path);
+	}
+
+	@UsesJava7
+	private boolean link(File library, File destination) {
+		Path link = destination.toPath();
+		Path target = library.getAbsoluteFile().toPath();
+		if (this == SYMLINK) {
+			return createLink(link, target, true);
+		}
+		return createLink(link, target, false)
+				|| (this == AUTO && createLink(link, target, true));
+	}
+
+	@UsesJava7
+	private boolean createLink(Path link, Path target, boolean symbolic) {
+		try {
+			if (symbolic) {
+				Files.createSymbolicLink(link, target);
+			}
+			else {
+				Files.createLink(link, target);
+			}
+			return true;
+		}
+		catch (IOException ex) {
+			// Different devices or no support for links, copy instead
+			return false;
+		}
+		catch (UnsupportedOperationException ex) {
+			return false;
+		}
+		catch (SecurityException ex) {
+			return false;
+		}
+	}
+
+}
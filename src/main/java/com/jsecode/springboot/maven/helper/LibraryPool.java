@@ -0,0 +1,113 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.lang.UsesJava7;
+
+/**
+ * A content-addressed pool of libraries shared by the thin archives of several modules.
+ * Each library is placed in the pool once, as {@code <pool>/<sha1>/<name>}, and the
+ * archives refer to it by a path relative to their own directory, so disk usage and
+ * copy time depend on the number of distinct libraries rather than on the number of
+ * archives that use them.
+ * <p>
+ * The content of a library in the pool never changes. A library is placed under a
+ * temporary name and renamed once complete, so builds that share a pool may place the
+ * same library concurrently.
+ */
+class LibraryPool {
+
+	private static final AtomicInteger tempNumber = new AtomicInteger();
+
+	private final File directory;
+
+	private final File baseDirectory;
+
+	private final LibraryLinkMode linkMode;
+
+	private final LibraryChecksumCache checksumCache;
+
+	private final Map<File, File> files = new ConcurrentHashMap<File, File>();
+
+	/**
+	 * Create a new {@link LibraryPool} instance.
+	 * @param directory the pool directory
+	 * @param baseDirectory the directory that the archive is written to, which the
+	 * paths of libraries are relative to
+	 * @param linkMode how libraries are placed in the pool
+	 * @param checksumCache the cache used to look up the hashes of libraries or
+	 * {@code null}
+	 */
+	LibraryPool(File directory, File baseDirectory, LibraryLinkMode linkMode,
+			LibraryChecksumCache checksumCache) {
+		this.directory = directory.getAbsoluteFile();
+		this.baseDirectory = baseDirectory.getAbsoluteFile();
+		this.linkMode = linkMode;
+		this.checksumCache = checksumCache;
+	}
+
+	/**
+	 * Return the path of the given library in the pool, relative to the directory of
+	 * the archive, for use in its {@code Class-Path}. Symbolic links are resolved first,
+	 * like the JVM does for the path of the archive that it runs, so the path also
+	 * works when the archive is run through a link to its directory.
+	 * @param library the library file
+	 * @return the relative path, using {@code /} as separator
+	 * @throws IOException if the library cannot be read
+	 */
+	@UsesJava7
+	String getPath(File library) throws IOException {
+		Path base = this.baseDirectory.getCanonicalFile().toPath();
+		Path file = getFile(library).getCanonicalFile().toPath();
+		try {
+			return base.relativize(file).toString().replace(File.separatorChar, '/');
+		}
+		catch (IllegalArgumentException ex) {
+			throw new IllegalStateException("Library pool " + this.directory
+					+ " must be on the same file system root as " + this.baseDirectory);
+		}
+	}
+
+	/**
+	 * Place the given library in the pool unless it is already there.
+	 * @param library the library file
+	 * @return {@code true} if the library was copied or linked
+	 * @throws IOException if the library cannot be read or placed
+	 */
+	@UsesJava7
+	boolean place(File library) throws IOException {
+		File file = getFile(library);
+		if (file.isFile() && file.length() == library.length()) {
+			return false;
+		}
+		File temp = new File(file.getParentFile(), "." + file.getName() + "."
+				+ tempNumber.incrementAndGet() + "-" + System.nanoTime() + ".tmp");
+		try {
+			this.linkMode.place(library, temp);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			temp.delete();
+		}
+		return true;
+	}
+
+	private File getFile(File library) throws IOException {
+		File file = this.files.get(library);
+		if (file == null) {
+			String sha1 = NestedLibraryContent.getSha1(library, this.checksumCache);
+			file = new File(new File(this.directory, sha1), library.getName());
+			this.files.put(library, file);
+		}
+		return file;
+	}
+
+}
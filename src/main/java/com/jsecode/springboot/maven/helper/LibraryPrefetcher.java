@@ -0,0 +1,180 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.boot.loader.tools.Library;
+
+/**
+ * Reads and hashes nested libraries on a pool of worker threads ahead of the point
+ * where they are written, so that reading the next libraries overlaps with compressing
+ * and writing the archive. Libraries are read in the order in which they will be
+ * written.
+ * <p>
+ * The number of libraries and bytes that have been read ahead but not yet taken is
+ * bounded: more libraries are only read ahead as earlier ones are taken. A library that
+ * was not read ahead is read by the caller.
+ */
+class LibraryPrefetcher {
+
+	private static final long MAX_PENDING_BYTES = 128 * FileUtil.ONE_MB;
+
+	private static final AtomicInteger poolNumber = new AtomicInteger();
+
+	private final ContentReader reader;
+
+	private final ExecutorService executor;
+
+	private final int maxPendingLibraries;
+
+	private final Deque<Library> queue = new ArrayDeque<Library>();
+
+	private final Map<File, Future<NestedLibraryContent>> pending = new HashMap<File, Future<NestedLibraryContent>>();
+
+	private long pendingBytes;
+
+	/**
+	 * Create a new {@link LibraryPrefetcher} instance.
+	 * @param reader the reader of library content
+	 * @param threads the number of reader threads
+	 */
+	LibraryPrefetcher(ContentReader reader, int threads) {
+		this.reader = reader;
+		this.executor = Executors.newFixedThreadPool(threads,
+				new PrefetcherThreadFactory());
+		this.maxPendingLibraries = threads * 2;
+	}
+
+	/**
+	 * Start reading the given libraries ahead.
+	 * @param libraries the libraries in the order in which they will be taken
+	 */
+	void prefetch(List<Library> libraries) {
+		this.queue.addAll(libraries);
+		submitNext();
+	}
+
+	/**
+	 * Return the content of the given library, waiting for it to be read if it was read
+	 * ahead and reading it otherwise.
+	 * @param library the library
+	 * @return the content of the library
+	 * @throws IOException if the library cannot be read
+	 */
+	NestedLibraryContent take(Library library) throws IOException {
+		Future<NestedLibraryContent> future = this.pending.remove(library.getFile());
+		if (future == null) {
+			this.queue.remove(library);
+			return this.reader.read(library);
+		}
+		try {
+			return get(future);
+		}
+		finally {
+			this.pendingBytes -= library.getFile().length();
+			submitNext();
+		}
+	}
+
+	/**
+	 * Stop the reader threads, discarding libraries that have not been taken.
+	 */
+	void close() {
+		this.queue.clear();
+		this.pending.clear();
+		this.executor.shutdownNow();
+	}
+
+	private void submitNext() {
+		while (!this.queue.isEmpty()
+				&& this.pending.size() < this.maxPendingLibraries) {
+			final Library library = this.queue.peekFirst();
+			long length = library.getFile().length();
+			if (!this.pending.isEmpty()
+					&& this.pendingBytes + length > MAX_PENDING_BYTES) {
+				return;
+			}
+			this.queue.removeFirst();
+			if (!this.pending.containsKey(library.getFile())) {
+				this.pending.put(library.getFile(), this.executor
+						.submit(new Callable<NestedLibraryContent>() {
+
+							@Override
+							public NestedLibraryContent call() throws Exception {
+								return LibraryPrefetcher.this.reader.read(library);
+							}
+
+						}));
+				this.pendingBytes += length;
+			}
+		}
+	}
+
+	private NestedLibraryContent get(Future<NestedLibraryContent> future)
+			throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading libraries", ex);
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Strategy used to read the content of a library.
+	 */
+	interface ContentReader {
+
+		/**
+		 * Read the content of the given library.
+		 * @param library the library
+		 * @return the content
+		 * @throws IOException if the library cannot be read
+		 */
+		NestedLibraryContent read(Library library) throws IOException;
+
+	}
+
+	/**
+	 * {@link ThreadFactory} that creates daemon reader threads.
+	 */
+	private static class PrefetcherThreadFactory implements ThreadFactory {
+
+		private final int pool = poolNumber.incrementAndGet();
+
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "library-prefetcher-" + this.pool + "-"
+					+ this.threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
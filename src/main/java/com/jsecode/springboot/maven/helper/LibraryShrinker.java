@@ -0,0 +1,467 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipException;
+
+import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.Library;
+import org.springframework.boot.loader.tools.LibraryCallback;
+
+/**
+ * Removes the classes that the application cannot reach from its libraries. Starting
+ * from the classes of the application, the classes of the libraries that are not
+ * shrunk, the classes named in text resources such as {@code META-INF/spring.factories},
+ * {@code META-INF/services} files and Spring XML, and the classes matching a keep rule,
+ * every class that a reachable class refers to is reachable as well. The references of
+ * a class are read from its constant pool, so they include the classes it names in
+ * strings, for example for {@code Class.forName}. Classes that are only looked up by a
+ * computed name or found by scanning a package, for example with
+ * {@code @ComponentScan}, have to be kept with a keep rule.
+ * <p>
+ * Each library that loses classes is written to the work directory, with the remaining
+ * entries copied as they are, and replaces the original library for the repackaging.
+ * The copy is only replaced when its content changes. Signed libraries are not shrunk.
+ */
+public class LibraryShrinker {
+
+	private final File workDirectory;
+
+	private final List<String> keepRules = new ArrayList<String>();
+
+	private Set<File> libraries;
+
+	private final Map<File, File> originals = new HashMap<File, File>();
+
+	private int shrunkLibraries;
+
+	private int removedClasses;
+
+	private long removedBytes;
+
+	/**
+	 * Create a new {@link LibraryShrinker} instance.
+	 * @param workDirectory the directory that shrunk libraries are written to
+	 */
+	public LibraryShrinker(File workDirectory) {
+		this.workDirectory = workDirectory;
+	}
+
+	/**
+	 * Add a rule for classes that are always kept: the name of a class, such as
+	 * {@code com.example.Foo}, the classes of a package, such as {@code com.example.*},
+	 * or the classes of a package and its sub-packages, such as {@code com.example.**}.
+	 * @param rule the rule
+	 * @throws IllegalArgumentException if the rule is invalid
+	 */
+	public void addKeepRule(String rule) {
+		if (rule == null || !rule.trim()
+				.matches("[\\p{javaJavaIdentifierPart}$]+(\\.[\\p{javaJavaIdentifierPart}$]+)*(\\.\\*\\*?)?")) {
+			throw new IllegalArgumentException("Invalid keep rule '" + rule + "'");
+		}
+		this.keepRules.add(rule.trim().replace('.', '/'));
+	}
+
+	/**
+	 * Set the libraries that are shrunk. The classes of the other libraries are all
+	 * kept.
+	 * @param libraries the library files or {@code null} to shrink all libraries
+	 */
+	public void setLibraries(Collection<File> libraries) {
+		this.libraries = (libraries != null ? new HashSet<File>(libraries) : null);
+	}
+
+	/**
+	 * Return the number of libraries that lost classes in the last run.
+	 * @return the number of libraries
+	 */
+	public int getShrunkLibraries() {
+		return this.shrunkLibraries;
+	}
+
+	/**
+	 * Return the number of classes that were removed in the last run.
+	 * @return the number of classes
+	 */
+	public int getRemovedClasses() {
+		return this.removedClasses;
+	}
+
+	/**
+	 * Return the uncompressed size of the classes that were removed in the last run.
+	 * @return the size in bytes
+	 */
+	public long getRemovedBytes() {
+		return this.removedBytes;
+	}
+
+	/**
+	 * Shrink the given libraries of the given application.
+	 * @param application the application jar
+	 * @param libraries the libraries
+	 * @return the libraries, with the shrunk libraries in place of the originals
+	 * @throws IOException if a library cannot be read or written
+	 */
+	Libraries shrink(File application, Libraries libraries) throws IOException {
+		this.shrunkLibraries = 0;
+		this.removedClasses = 0;
+		this.removedBytes = 0;
+		this.originals.clear();
+		final List<Library> all = new ArrayList<Library>();
+		libraries.doWithLibraries(new LibraryCallback() {
+
+			@Override
+			public void library(Library library) throws IOException {
+				all.add(library);
+			}
+
+		});
+		List<JarFile> roots = new ArrayList<JarFile>();
+		Map<Library, JarFile> candidates = new LinkedHashMap<Library, JarFile>();
+		final Map<String, List<ClassEntry>> classes = new HashMap<String, List<ClassEntry>>();
+		try {
+			roots.add(new JarFile(application));
+			for (Library library : all) {
+				JarFile jarFile = open(library.getFile());
+				if (jarFile == null) {
+					continue;
+				}
+				if (isCandidate(library) && !isSigned(jarFile)) {
+					candidates.put(library, jarFile);
+					addClasses(jarFile, classes);
+				}
+				else {
+					roots.add(jarFile);
+				}
+			}
+			if (candidates.isEmpty()) {
+				return libraries;
+			}
+			Set<String> reachable = findReachableClasses(roots, candidates.values(),
+					classes);
+			List<Library> result = new ArrayList<Library>();
+			Set<String> written = new HashSet<String>();
+			for (Library library : all) {
+				JarFile jarFile = candidates.get(library);
+				Library shrunk = (jarFile != null ? write(library, jarFile, reachable)
+						: null);
+				if (shrunk != null) {
+					written.add(library.getName());
+					this.originals.put(shrunk.getFile(), library.getFile());
+				}
+				result.add(shrunk != null ? shrunk : library);
+			}
+			deleteStaleLibraries(written);
+			return new ShrunkLibraries(result);
+		}
+		finally {
+			for (JarFile jarFile : roots) {
+				jarFile.close();
+			}
+			for (JarFile jarFile : candidates.values()) {
+				jarFile.close();
+			}
+		}
+	}
+
+	/**
+	 * Return the original of the given library.
+	 * @param library the library file, which may be a shrunk library
+	 * @return the original library file
+	 */
+	File getOriginal(File library) {
+		File original = this.originals.get(library);
+		return (original != null ? original : library);
+	}
+
+	private boolean isCandidate(Library library) {
+		return this.libraries == null || this.libraries.contains(library.getFile());
+	}
+
+	private Set<String> findReachableClasses(List<JarFile> roots,
+			Collection<JarFile> candidates, final Map<String, List<ClassEntry>> classes)
+					throws IOException {
+		ClassReferences.Filter filter = new ClassReferences.Filter() {
+
+			@Override
+			public boolean accept(String name) {
+				return classes.containsKey(name);
+			}
+
+		};
+		Set<String> names = new HashSet<String>();
+		for (JarFile jarFile : roots) {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				ClassReferences.addEntryReferences(jarFile, entries.nextElement(),
+						filter, names);
+			}
+		}
+		for (JarFile jarFile : candidates) {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (ClassReferences.isReferencingResource(entry)) {
+					ClassReferences.addEntryReferences(jarFile, entry, filter, names);
+				}
+			}
+		}
+		for (String name : classes.keySet()) {
+			if (isKept(name)) {
+				names.add(name);
+			}
+		}
+		Set<String> reachable = new HashSet<String>();
+		Deque<String> queue = new ArrayDeque<String>();
+		while (true) {
+			for (String name : names) {
+				if (reachable.add(name)) {
+					queue.add(name);
+				}
+			}
+			names.clear();
+			String name = queue.poll();
+			if (name == null) {
+				return reachable;
+			}
+			for (ClassEntry classEntry : classes.get(name)) {
+				ClassReferences.addEntryReferences(classEntry.jarFile, classEntry.entry,
+						filter, names);
+			}
+		}
+	}
+
+	private boolean isKept(String name) {
+		if (name.equals("module-info") || name.endsWith("/package-info")) {
+			return true;
+		}
+		for (String rule : this.keepRules) {
+			if (rule.endsWith("/**")) {
+				if (name.startsWith(rule.substring(0, rule.length() - 2))) {
+					return true;
+				}
+			}
+			else if (rule.endsWith("/*")) {
+				String prefix = rule.substring(0, rule.length() - 1);
+				if (name.startsWith(prefix) && name.indexOf('/', prefix.length()) == -1) {
+					return true;
+				}
+			}
+			else if (name.equals(rule)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addClasses(JarFile jarFile, Map<String, List<ClassEntry>> classes) {
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while (entries.hasMoreElements()) {
+			JarEntry entry = entries.nextElement();
+			String name = ClassReferences.getClassName(entry);
+			if (name != null) {
+				List<ClassEntry> classEntries = classes.get(name);
+				if (classEntries == null) {
+					classEntries = new ArrayList<ClassEntry>(1);
+					classes.put(name, classEntries);
+				}
+				classEntries.add(new ClassEntry(jarFile, entry));
+			}
+		}
+	}
+
+	private Library write(Library library, JarFile jarFile, Set<String> reachable)
+			throws IOException {
+		Set<String> removed = new HashSet<String>();
+		long removedBytes = 0;
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while (entries.hasMoreElements()) {
+			JarEntry entry = entries.nextElement();
+			String name = ClassReferences.getClassName(entry);
+			if (name != null && !reachable.contains(name)) {
+				removed.add(entry.getName());
+				removedBytes += Math.max(entry.getSize(), 0);
+			}
+		}
+		if (removed.isEmpty()) {
+			return null;
+		}
+		File directory = new File(this.workDirectory, library.getName());
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+		File target = new File(directory, library.getFile().getName());
+		File temp = new File(directory, "." + target.getName() + ".tmp");
+		try {
+			writeEntries(jarFile, removed, temp);
+			if (target.isFile() && target.length() == temp.length()
+					&& NestedLibraryContent.getSha1(target, null)
+							.equals(NestedLibraryContent.getSha1(temp, null))) {
+				// Keep the unchanged library, and its last modified time
+				temp.delete();
+			}
+			else {
+				target.delete();
+				if (!temp.renameTo(target)) {
+					throw new IOException("Unable to rename " + temp + " to " + target);
+				}
+			}
+		}
+		finally {
+			temp.delete();
+		}
+		this.shrunkLibraries++;
+		this.removedClasses += removed.size();
+		this.removedBytes += removedBytes;
+		return new Library(library.getName(), target, library.getScope(),
+				library.isUnpackRequired());
+	}
+
+	private void writeEntries(JarFile jarFile, Set<String> removed, File file)
+			throws IOException {
+		RawZipFile rawZipFile = RawZipFile.open(new File(jarFile.getName()));
+		RawJarOutputStream output = new RawJarOutputStream(file);
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (removed.contains(entry.getName())) {
+					continue;
+				}
+				JarEntry copy = new JarEntry(entry);
+				RawZipFile.RawEntry rawEntry = (rawZipFile != null
+						? rawZipFile.getEntry(entry.getName()) : null);
+				InputStream inputStream;
+				if (rawEntry != null && rawEntry.setupRawEntry(copy)) {
+					output.putNextRawEntry(copy);
+					inputStream = rawZipFile.getRawInputStream(rawEntry);
+				}
+				else {
+					copy.setCompressedSize(-1);
+					output.putNextEntry(copy);
+					inputStream = jarFile.getInputStream(entry);
+				}
+				try {
+					copy(inputStream, output);
+				}
+				finally {
+					inputStream.close();
+				}
+				output.closeEntry();
+			}
+		}
+		finally {
+			output.close();
+			if (rawZipFile != null) {
+				rawZipFile.close();
+			}
+		}
+	}
+
+	private void deleteStaleLibraries(Set<String> written) {
+		File[] files = this.workDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!written.contains(file.getName())) {
+					FileUtil.deleteQuietly(file);
+				}
+			}
+		}
+	}
+
+	private JarFile open(File file) throws IOException {
+		try {
+			return new JarFile(file);
+		}
+		catch (ZipException ex) {
+			// Not a jar, nothing to shrink or to refer to classes
+			return null;
+		}
+	}
+
+	private boolean isSigned(JarFile jarFile) {
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while (entries.hasMoreElements()) {
+			String name = entries.nextElement().getName();
+			if (name.startsWith("META-INF/") && name.indexOf('/', 9) == -1
+					&& name.toUpperCase().endsWith(".SF")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void copy(InputStream inputStream, OutputStream outputStream)
+			throws IOException {
+		byte[] buffer = new byte[32 * 1024];
+		int bytesRead;
+		while ((bytesRead = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, bytesRead);
+		}
+	}
+
+	@Override
+	public String toString() {
+		List<String> names = new ArrayList<String>();
+		if (this.libraries != null) {
+			for (File library : this.libraries) {
+				names.add(library.getName());
+			}
+			Collections.sort(names);
+		}
+		return this.keepRules + (this.libraries != null ? names.toString() : "[*]");
+	}
+
+	/**
+	 * An entry of a class in a library that may be shrunk.
+	 */
+	private static final class ClassEntry {
+
+		private final JarFile jarFile;
+
+		private final JarEntry entry;
+
+		ClassEntry(JarFile jarFile, JarEntry entry) {
+			this.jarFile = jarFile;
+			this.entry = entry;
+		}
+
+	}
+
+	/**
+	 * {@link Libraries} with the shrunk libraries in place of the originals.
+	 */
+	private static final class ShrunkLibraries implements Libraries {
+
+		private final List<Library> libraries;
+
+		ShrunkLibraries(List<Library> libraries) {
+			this.libraries = libraries;
+		}
+
+		@Override
+		public void doWithLibraries(LibraryCallback callback) throws IOException {
+			for (Library library : this.libraries) {
+				callback.library(library);
+			}
+		}
+
+	}
+
+}
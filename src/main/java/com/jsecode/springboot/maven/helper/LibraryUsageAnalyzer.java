@@ -0,0 +1,306 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipException;
+
+import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.Library;
+import org.springframework.boot.loader.tools.LibraryCallback;
+
+/**
+ * Finds the libraries that no class of the application or of a used library refers
+ * to. A library is used if the application refers to one of its classes, through the
+ * constant pool of its classes or a class name in a text resource such as
+ * {@code META-INF/spring.factories}, or if a used library does. Libraries that register
+ * themselves, with {@code META-INF/services} files, {@code META-INF/spring.factories}
+ * or {@code META-INF/spring/*.imports}, libraries without classes and libraries that
+ * are set to be kept are always used. The other libraries are unused, and may be
+ * excluded from the repackaged application.
+ * <p>
+ * Like {@link LibraryShrinker}, the analysis cannot see classes that are only looked
+ * up by a computed name, so a library that is only loaded that way has to be kept.
+ */
+public class LibraryUsageAnalyzer {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String APPLICATION = "application";
+
+	private final Set<File> keptLibraries = new HashSet<File>();
+
+	private boolean excludeUnused;
+
+	private final Map<Library, String> usages = new LinkedHashMap<Library, String>();
+
+	private final List<Library> unusedLibraries = new ArrayList<Library>();
+
+	/**
+	 * Set the libraries that are always used.
+	 * @param libraries the library files
+	 */
+	public void setKeptLibraries(Collection<File> libraries) {
+		this.keptLibraries.clear();
+		if (libraries != null) {
+			this.keptLibraries.addAll(libraries);
+		}
+	}
+
+	/**
+	 * Set whether unused libraries are excluded from the repackaged application or
+	 * only reported.
+	 * @param excludeUnused if unused libraries are excluded
+	 */
+	public void setExcludeUnused(boolean excludeUnused) {
+		this.excludeUnused = excludeUnused;
+	}
+
+	/**
+	 * Return if unused libraries are excluded from the repackaged application.
+	 * @return {@code true} if unused libraries are excluded
+	 */
+	public boolean isExcludeUnused() {
+		return this.excludeUnused;
+	}
+
+	/**
+	 * Return the libraries that were found to be unused in the last run.
+	 * @return the unused libraries
+	 */
+	public List<Library> getUnusedLibraries() {
+		return Collections.unmodifiableList(this.unusedLibraries);
+	}
+
+	/**
+	 * Analyze the given libraries of the given application.
+	 * @param application the application archive
+	 * @param libraries the libraries
+	 * @return the libraries, without the unused libraries if they are excluded
+	 * @throws IOException if a library cannot be read
+	 */
+	Libraries analyze(File application, Libraries libraries) throws IOException {
+		this.usages.clear();
+		this.unusedLibraries.clear();
+		final List<Library> all = new ArrayList<Library>();
+		libraries.doWithLibraries(new LibraryCallback() {
+
+			@Override
+			public void library(Library library) throws IOException {
+				all.add(library);
+			}
+
+		});
+		Map<Library, JarFile> jarFiles = new LinkedHashMap<Library, JarFile>();
+		final Map<String, List<Library>> owners = new HashMap<String, List<Library>>();
+		JarFile applicationJarFile = new JarFile(application);
+		try {
+			Deque<Library> queue = new ArrayDeque<Library>();
+			for (Library library : all) {
+				JarFile jarFile = open(library.getFile());
+				String usage = (jarFile == null ? "not a jar" : null);
+				if (jarFile != null) {
+					jarFiles.put(library, jarFile);
+					if (!addClasses(library, jarFile, owners)) {
+						usage = "no classes";
+					}
+					else if (this.keptLibraries.contains(library.getFile())) {
+						usage = "kept";
+					}
+					else if (isSelfRegistering(jarFile)) {
+						usage = "registers itself";
+					}
+				}
+				if (usage != null) {
+					this.usages.put(library, usage);
+					queue.add(library);
+				}
+			}
+			ClassReferences.Filter filter = new ClassReferences.Filter() {
+
+				@Override
+				public boolean accept(String name) {
+					List<Library> libraries = owners.get(name);
+					if (libraries != null) {
+						for (Library library : libraries) {
+							if (!LibraryUsageAnalyzer.this.usages.containsKey(library)) {
+								return true;
+							}
+						}
+					}
+					return false;
+				}
+
+			};
+			addUsages(applicationJarFile, APPLICATION, filter, owners, queue);
+			Library library = queue.poll();
+			while (library != null) {
+				JarFile jarFile = jarFiles.get(library);
+				if (jarFile != null) {
+					addUsages(jarFile, library.getName(), filter, owners, queue);
+				}
+				library = queue.poll();
+			}
+		}
+		finally {
+			applicationJarFile.close();
+			for (JarFile jarFile : jarFiles.values()) {
+				jarFile.close();
+			}
+		}
+		List<Library> result = new ArrayList<Library>();
+		for (Library library : all) {
+			if (!this.usages.containsKey(library)) {
+				this.unusedLibraries.add(library);
+				if (this.excludeUnused) {
+					continue;
+				}
+			}
+			result.add(library);
+		}
+		return (this.excludeUnused ? new UsedLibraries(result) : libraries);
+	}
+
+	/**
+	 * Write a report of the last run, with a line for each library that tells if it is
+	 * unused or what uses it.
+	 * @param file the report file
+	 * @throws IOException if the report cannot be written
+	 */
+	public void writeReport(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+		try {
+			writer.write("# Unused libraries: " + this.unusedLibraries.size()
+					+ (this.excludeUnused ? ", excluded" : "") + "\n");
+			for (Library library : this.unusedLibraries) {
+				writer.write(library.getName() + "\tunused\n");
+			}
+			for (Map.Entry<Library, String> entry : this.usages.entrySet()) {
+				writer.write(entry.getKey().getName() + "\tused: " + entry.getValue()
+						+ "\n");
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private void addUsages(JarFile jarFile, String user, ClassReferences.Filter filter,
+			Map<String, List<Library>> owners, Deque<Library> queue) throws IOException {
+		Set<String> names = new HashSet<String>();
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while (entries.hasMoreElements()) {
+			ClassReferences.addEntryReferences(jarFile, entries.nextElement(), filter,
+					names);
+		}
+		for (String name : names) {
+			for (Library library : owners.get(name)) {
+				if (!this.usages.containsKey(library)) {
+					this.usages.put(library, "referenced by " + user + " ("
+							+ name.replace('/', '.') + ")");
+					queue.add(library);
+				}
+			}
+		}
+	}
+
+	private boolean addClasses(Library library, JarFile jarFile,
+			Map<String, List<Library>> owners) {
+		boolean found = false;
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while (entries.hasMoreElements()) {
+			String name = ClassReferences.getClassName(entries.nextElement());
+			if (name != null && !name.equals("module-info")
+					&& !name.endsWith("/package-info")) {
+				List<Library> libraries = owners.get(name);
+				if (libraries == null) {
+					libraries = new ArrayList<Library>(1);
+					owners.put(name, libraries);
+				}
+				if (!libraries.contains(library)) {
+					libraries.add(library);
+				}
+				found = true;
+			}
+		}
+		return found;
+	}
+
+	private boolean isSelfRegistering(JarFile jarFile) {
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while (entries.hasMoreElements()) {
+			JarEntry entry = entries.nextElement();
+			String name = entry.getName();
+			if (entry.isDirectory()) {
+				continue;
+			}
+			if (name.startsWith("META-INF/services/")
+					|| name.equals("META-INF/spring.factories")
+					|| (name.startsWith("META-INF/spring/") && name.endsWith(".imports"))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private JarFile open(File file) throws IOException {
+		try {
+			return new JarFile(file);
+		}
+		catch (ZipException ex) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		List<String> names = new ArrayList<String>();
+		for (File library : this.keptLibraries) {
+			names.add(library.getName());
+		}
+		Collections.sort(names);
+		return "excludeUnused=" + this.excludeUnused + ", kept=" + names;
+	}
+
+	/**
+	 * {@link Libraries} without the unused libraries.
+	 */
+	private static final class UsedLibraries implements Libraries {
+
+		private final List<Library> libraries;
+
+		UsedLibraries(List<Library> libraries) {
+			this.libraries = libraries;
+		}
+
+		@Override
+		public void doWithLibraries(LibraryCallback callback) throws IOException {
+			for (Library library : this.libraries) {
+				callback.library(library);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,260 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * The content of a nested library together with the CRC-32, size, SHA-1 hash and entry
+ * time required to write it as a {@link ZipEntry#STORED stored} entry. Libraries up to
+ * {@link #MAX_SPOOL_SIZE} are read exactly once: the bytes are spooled in memory while
+ * the checksums are computed. Larger libraries are {@link #isUnchanged() transferred} or
+ * streamed from disk again when written. The entry time of every library is taken from
+ * its central directory, which is cheap to read right after the library.
+ */
+class NestedLibraryContent {
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	/**
+	 * The largest library (64 MB) that is held in memory between reading and writing.
+	 */
+	static final long MAX_SPOOL_SIZE = 64 * FileUtil.ONE_MB;
+
+	private final File file;
+
+	private final byte[] content;
+
+	private final long size;
+
+	private final long crc;
+
+	private final String sha1;
+
+	private final long time;
+
+	private final boolean cached;
+
+	private final long lastModified;
+
+	private NestedLibraryContent(File file, byte[] content, long size, long crc,
+			String sha1, long time, boolean cached, long lastModified) {
+		this.file = file;
+		this.content = content;
+		this.size = size;
+		this.crc = crc;
+		this.sha1 = sha1;
+		this.time = time;
+		this.cached = cached;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Read the given library file.
+	 * @param file the library file
+	 * @param sha1 if the SHA-1 hash of the content is required
+	 * @return the library content
+	 * @throws IOException if the file cannot be read
+	 */
+	static NestedLibraryContent read(File file, boolean sha1) throws IOException {
+		long lastModified = file.lastModified();
+		long length = file.length();
+		byte[] content = (length <= MAX_SPOOL_SIZE ? new byte[(int) length] : null);
+		CRC32 crc = new CRC32();
+		MessageDigest digest = (sha1 ? createSha1Digest() : null);
+		long size = 0;
+		FileInputStream inputStream = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				crc.update(buffer, 0, bytesRead);
+				if (digest != null) {
+					digest.update(buffer, 0, bytesRead);
+				}
+				if (content != null) {
+					if (size + bytesRead > content.length) {
+						// The file grew while being read, stop spooling
+						content = null;
+					}
+					else {
+						System.arraycopy(buffer, 0, content, (int) size, bytesRead);
+					}
+				}
+				size += bytesRead;
+			}
+		}
+		finally {
+			inputStream.close();
+		}
+		if (content != null && size != content.length) {
+			content = null;
+		}
+		return new NestedLibraryContent(file, content, size, crc.getValue(),
+				(digest != null ? bytesToHex(digest.digest()) : null),
+				getNestedLibraryTime(file), false, lastModified);
+	}
+
+	/**
+	 * Return the SHA-1 hash of the given library file, taking it from the checksum cache
+	 * when possible and adding it to the cache otherwise.
+	 * @param file the library file
+	 * @param checksumCache the checksum cache or {@code null}
+	 * @return the hex encoded SHA-1 hash
+	 * @throws IOException if the file cannot be read
+	 */
+	static String getSha1(File file, LibraryChecksumCache checksumCache)
+			throws IOException {
+		if (checksumCache != null) {
+			LibraryChecksumCache.Checksums checksums = checksumCache.get(file);
+			if (checksums != null && checksums.hasContentChecksums()) {
+				return checksums.getSha1();
+			}
+		}
+		NestedLibraryContent content = read(file, true);
+		if (checksumCache != null) {
+			checksumCache.put(file, content.getCrc(), content.getSha1(),
+					content.getTime());
+		}
+		return content.getSha1();
+	}
+
+	/**
+	 * Create a {@link NestedLibraryContent} for a library whose checksums have been
+	 * cached by an earlier build. The content is streamed from disk when written.
+	 * @param file the library file
+	 * @param checksums the cached checksums
+	 * @return the library content
+	 */
+	static NestedLibraryContent fromCache(File file,
+			LibraryChecksumCache.Checksums checksums) {
+		return new NestedLibraryContent(file, null, checksums.getSize(),
+				checksums.getCrc(), checksums.getSha1(), checksums.getTime(), true,
+				file.lastModified());
+	}
+
+	/**
+	 * Return the CRC-32 of the content.
+	 * @return the CRC-32
+	 */
+	long getCrc() {
+		return this.crc;
+	}
+
+	/**
+	 * Return the SHA-1 hash of the content or {@code null} if it was not computed.
+	 * @return the SHA-1 hash
+	 */
+	String getSha1() {
+		return this.sha1;
+	}
+
+	/**
+	 * Return the time of the first file entry in the library, or the time the library
+	 * was last modified if it cannot be read as a jar.
+	 * @return the entry time
+	 */
+	long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * Setup the given entry so that it is stored using the size and CRC of the content.
+	 * @param entry the entry to setup
+	 */
+	void setupStoredEntry(ZipEntry entry) {
+		entry.setSize(this.size);
+		entry.setCompressedSize(this.size);
+		entry.setCrc(this.crc);
+		entry.setMethod(ZipEntry.STORED);
+	}
+
+	/**
+	 * Return if the content is held in memory, in which case it is known to match the
+	 * CRC-32 and size.
+	 * @return if the content is held in memory
+	 */
+	boolean isSpooled() {
+		return this.content != null;
+	}
+
+	/**
+	 * Return if the checksums were taken from a {@link LibraryChecksumCache}.
+	 * @return if the checksums are cached
+	 */
+	boolean isCached() {
+		return this.cached;
+	}
+
+	/**
+	 * Return if the library file still has the size and last modified time it had when
+	 * its checksums were computed or looked up, in which case it can be copied without
+	 * computing its CRC again.
+	 * @return if the file is unchanged
+	 */
+	boolean isUnchanged() {
+		return this.file.length() == this.size
+				&& this.file.lastModified() == this.lastModified;
+	}
+
+	/**
+	 * Open a stream to the content, reading from memory when the content was spooled.
+	 * @return the content stream
+	 * @throws IOException if the stream cannot be opened
+	 */
+	InputStream openStream() throws IOException {
+		if (this.content != null) {
+			return new ByteArrayInputStream(this.content);
+		}
+		return new FileInputStream(this.file);
+	}
+
+	private static long getNestedLibraryTime(File file) {
+		try {
+			JarFile jarFile = new JarFile(file);
+			try {
+				Enumeration<JarEntry> entries = jarFile.entries();
+				while (entries.hasMoreElements()) {
+					JarEntry entry = entries.nextElement();
+					if (!entry.isDirectory()) {
+						return entry.getTime();
+					}
+				}
+			}
+			finally {
+				jarFile.close();
+			}
+		}
+		catch (Exception ex) {
+			// Ignore and just use the source file timestamp
+		}
+		return file.lastModified();
+	}
+
+	private static MessageDigest createSha1Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	static String bytesToHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+}
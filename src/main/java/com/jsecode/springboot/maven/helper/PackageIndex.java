@@ -0,0 +1,150 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.jsecode.springboot.loader.PackageIndexClassLoader;
+import com.jsecode.springboot.loader.PackageIndexLauncher;
+
+/**
+ * Index of the packages contained in the classes directory and the libraries of a
+ * repackaged archive, read by the {@link PackageIndexLauncher} at startup. The index
+ * lists each root, in class path order, followed by its packages and a blank line.
+ * {@code META-INF} and resources that are not in a package are not indexed, except for
+ * the versioned entries of multi-release jars which are indexed under their package. The
+ * libraries may also be added to a {@link ServiceIndex} while they are read.
+ */
+class PackageIndex {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String VERSIONS = "META-INF/versions/";
+
+	/**
+	 * The name of the class that launches an archive with a package index.
+	 */
+	static final String LAUNCHER_CLASS_NAME = PackageIndexLauncher.class.getName();
+
+	/**
+	 * The class files of the launcher, written to the root of the archive.
+	 */
+	static final String[] LAUNCHER_CLASSES = { toClassFile(PackageIndexLauncher.class),
+			toClassFile(PackageIndexClassLoader.class) };
+
+	private final Map<String, Set<String>> roots = new LinkedHashMap<String, Set<String>>();
+
+	private ServiceIndex serviceIndex;
+
+	/**
+	 * Set the service index that the entries of libraries are added to.
+	 * @param serviceIndex the service index or {@code null}
+	 */
+	void setServiceIndex(ServiceIndex serviceIndex) {
+		this.serviceIndex = serviceIndex;
+	}
+
+	/**
+	 * Return the service index that the entries of libraries are added to.
+	 * @return the service index or {@code null}
+	 */
+	ServiceIndex getServiceIndex() {
+		return this.serviceIndex;
+	}
+
+	/**
+	 * Add a root, which is placed on the class path after the roots added before.
+	 * @param root the location of the root
+	 */
+	void addRoot(String root) {
+		getPackages(root);
+	}
+
+	/**
+	 * Add an entry of a root that is a directory of the archive.
+	 * @param root the root directory, ending with {@code /}
+	 * @param name the name of the entry in the archive
+	 */
+	void addEntry(String root, String name) {
+		if (name.startsWith(root)) {
+			addPackage(root, name.substring(root.length()));
+		}
+	}
+
+	/**
+	 * Add the entries of a library.
+	 * @param root the location of the library, relative to the archive or to the
+	 * directory containing the archive
+	 * @param file the library file
+	 * @throws IOException if the library cannot be read
+	 */
+	void addLibrary(String root, File file) throws IOException {
+		addRoot(root);
+		JarFile jarFile = new JarFile(file);
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				addPackage(root, entry.getName());
+				if (this.serviceIndex != null) {
+					this.serviceIndex.addEntry(jarFile, entry, entry.getName());
+				}
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	/**
+	 * Return the content of the index.
+	 * @return the index bytes
+	 */
+	byte[] toByteArray() {
+		StringBuilder index = new StringBuilder();
+		index.append(PackageIndexLauncher.INDEX_HEADER).append('\n');
+		for (Map.Entry<String, Set<String>> root : this.roots.entrySet()) {
+			index.append('\n').append(root.getKey()).append('\n');
+			for (String packageName : root.getValue()) {
+				index.append(packageName).append('\n');
+			}
+		}
+		return index.toString().getBytes(UTF_8);
+	}
+
+	private void addPackage(String root, String name) {
+		if (name.startsWith(VERSIONS)) {
+			int versionEnd = name.indexOf('/', VERSIONS.length());
+			if (versionEnd == -1) {
+				return;
+			}
+			name = name.substring(versionEnd + 1);
+		}
+		int lastSlash = name.lastIndexOf('/');
+		if (lastSlash > 0 && lastSlash < name.length() - 1
+				&& !name.startsWith("META-INF/")) {
+			getPackages(root).add(name.substring(0, lastSlash));
+		}
+	}
+
+	private Set<String> getPackages(String root) {
+		Set<String> packages = this.roots.get(root);
+		if (packages == null) {
+			packages = new TreeSet<String>();
+			this.roots.put(root, packages);
+		}
+		return packages;
+	}
+
+	private static String toClassFile(Class<?> type) {
+		return type.getName().replace('.', '/') + ".class";
+	}
+
+}
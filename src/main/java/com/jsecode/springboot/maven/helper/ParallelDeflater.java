@@ -0,0 +1,177 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+
+/**
+ * Compresses entries on a pool of worker threads and writes them to a
+ * {@link RawJarOutputStream} in the order in which they were submitted. Each entry is
+ * deflated into its own buffer and then written as a raw entry, so the archive is
+ * identical to one written on a single thread. Entries whose data is already compressed
+ * are queued between them, so that copying them does not have to wait for the entries
+ * that were submitted before to be compressed.
+ * <p>
+ * The number of entries and bytes waiting to be written is bounded: submitting an entry
+ * when the limits are reached first writes the oldest entries.
+ */
+class ParallelDeflater {
+
+	private static final long MAX_PENDING_BYTES = 64 * FileUtil.ONE_MB;
+
+	private static final AtomicInteger poolNumber = new AtomicInteger();
+
+	private final RawJarOutputStream output;
+
+	private final ExecutorService executor;
+
+	private final int maxPendingEntries;
+
+	private final Deque<Future<DeflatedEntry>> pending = new ArrayDeque<Future<DeflatedEntry>>();
+
+	private long pendingBytes;
+
+	/**
+	 * Create a new {@link ParallelDeflater} instance.
+	 * @param output the output that entries are written to
+	 * @param threads the number of compression threads
+	 */
+	ParallelDeflater(RawJarOutputStream output, int threads) {
+		this.output = output;
+		this.executor = Executors.newFixedThreadPool(threads,
+				new DeflaterThreadFactory());
+		this.maxPendingEntries = threads * 16;
+	}
+
+	/**
+	 * Submit an entry to be deflated and written once all previously submitted entries
+	 * have been written.
+	 * @param entry the entry
+	 * @param data the uncompressed data of the entry
+	 * @param level the compression level
+	 * @param policy the compression policy
+	 * @throws IOException if writing previously submitted entries fails
+	 */
+	void submit(final ZipEntry entry, final byte[] data, final int level,
+			final CompressionPolicy policy) throws IOException {
+		while (!this.pending.isEmpty()
+				&& (this.pending.size() >= this.maxPendingEntries
+						|| this.pendingBytes + data.length > MAX_PENDING_BYTES)) {
+			writeNext();
+		}
+		this.pending.add(this.executor.submit(new Callable<DeflatedEntry>() {
+
+			@Override
+			public DeflatedEntry call() throws Exception {
+				return new DeflatedEntry(entry, data, level, policy);
+			}
+
+		}));
+		this.pendingBytes += data.length;
+	}
+
+	/**
+	 * Submit an entry whose data is already compressed using the method of the entry to
+	 * be written once all previously submitted entries have been written.
+	 * @param entry the entry, which must have its CRC and sizes set
+	 * @param data the compressed data of the entry
+	 * @throws IOException if writing previously submitted entries fails
+	 */
+	void submitRaw(final ZipEntry entry, final byte[] data) throws IOException {
+		while (!this.pending.isEmpty()
+				&& (this.pending.size() >= this.maxPendingEntries
+						|| this.pendingBytes + entry.getSize() > MAX_PENDING_BYTES)) {
+			writeNext();
+		}
+		FutureTask<DeflatedEntry> task = new FutureTask<DeflatedEntry>(
+				new Callable<DeflatedEntry>() {
+
+					@Override
+					public DeflatedEntry call() throws Exception {
+						return new DeflatedEntry(entry, data);
+					}
+
+				});
+		task.run();
+		this.pending.add(task);
+		this.pendingBytes += entry.getSize();
+	}
+
+	/**
+	 * Write all submitted entries.
+	 * @throws IOException if an entry cannot be written
+	 */
+	void drain() throws IOException {
+		while (!this.pending.isEmpty()) {
+			writeNext();
+		}
+	}
+
+	/**
+	 * Write all submitted entries and stop the worker threads.
+	 * @throws IOException if an entry cannot be written
+	 */
+	void close() throws IOException {
+		try {
+			drain();
+		}
+		finally {
+			this.executor.shutdownNow();
+		}
+	}
+
+	private void writeNext() throws IOException {
+		DeflatedEntry deflated = get(this.pending.removeFirst());
+		this.pendingBytes -= deflated.getSize();
+		deflated.writeTo(this.output);
+	}
+
+	private DeflatedEntry get(Future<DeflatedEntry> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing entries", ex);
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * {@link ThreadFactory} that creates daemon compression threads.
+	 */
+	private static class DeflaterThreadFactory implements ThreadFactory {
+
+		private final int pool = poolNumber.incrementAndGet();
+
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jar-deflater-" + this.pool + "-"
+					+ this.threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies files concurrently. At most the configured number of copies run at the same
+ * time: on Java 21 and later each copy runs on a virtual thread, on earlier versions on
+ * a fixed pool of threads. A failed copy does not stop the others; the failures of all
+ * files are reported together once every copy has finished.
+ */
+class ParallelFileCopier {
+
+	private static final AtomicInteger poolNumber = new AtomicInteger();
+
+	private final ExecutorService executor;
+
+	private final Semaphore permits;
+
+	private final Map<File, Future<?>> copies = new LinkedHashMap<File, Future<?>>();
+
+	/**
+	 * Create a new {@link ParallelFileCopier} instance.
+	 * @param threads the maximum number of concurrent copies
+	 */
+	ParallelFileCopier(int threads) {
+		this.executor = createExecutor(threads);
+		this.permits = new Semaphore(threads);
+	}
+
+	/**
+	 * Submit a copy, waiting while the maximum number of copies are running.
+	 * @param file the file that is copied, used to report failures
+	 * @param copy the copy
+	 * @throws IOException if interrupted while waiting
+	 */
+	void submit(File file, final Copy copy) throws IOException {
+		try {
+			this.permits.acquire();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while copying files", ex);
+		}
+		try {
+			this.copies.put(file, this.executor.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					try {
+						copy.run();
+						return null;
+					}
+					finally {
+						ParallelFileCopier.this.permits.release();
+					}
+				}
+
+			}));
+		}
+		catch (RuntimeException ex) {
+			this.permits.release();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Wait for all submitted copies to finish.
+	 * @throws IOException if one or more copies failed
+	 */
+	void await() throws IOException {
+		List<String> failures = new ArrayList<String>();
+		Throwable firstFailure = null;
+		for (Map.Entry<File, Future<?>> copy : this.copies.entrySet()) {
+			try {
+				copy.getValue().get();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while copying files", ex);
+			}
+			catch (ExecutionException ex) {
+				failures.add(copy.getKey() + " (" + ex.getCause().getMessage() + ")");
+				firstFailure = (firstFailure != null ? firstFailure : ex.getCause());
+			}
+		}
+		this.copies.clear();
+		if (firstFailure != null) {
+			throw new IOException("Failed to copy " + failures.size() + " file(s): "
+					+ failures, firstFailure);
+		}
+	}
+
+	/**
+	 * Stop the copy threads, abandoning copies that have not finished.
+	 */
+	void close() {
+		this.executor.shutdownNow();
+	}
+
+	private static ExecutorService createExecutor(int threads) {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (Exception ex) {
+			// Virtual threads require Java 21
+			return Executors.newFixedThreadPool(threads, new CopierThreadFactory());
+		}
+	}
+
+	/**
+	 * A copy of a file.
+	 */
+	interface Copy {
+
+		/**
+		 * Perform the copy.
+		 * @throws IOException if the file cannot be copied
+		 */
+		void run() throws IOException;
+
+	}
+
+	/**
+	 * {@link ThreadFactory} that creates daemon copy threads.
+	 */
+	private static class CopierThreadFactory implements ThreadFactory {
+
+		private final int pool = poolNumber.incrementAndGet();
+
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "file-copier-" + this.pool + "-"
+					+ this.threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
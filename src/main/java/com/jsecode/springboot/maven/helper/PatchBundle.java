@@ -0,0 +1,446 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.springframework.lang.UsesJava7;
+
+/**
+ * A patch that turns one release of a distribution directory into the next. The bundle
+ * is a zip file that contains the files that were added or changed, an
+ * {@link ArchiveDelta entry-level delta} of the archives in the root of the directory
+ * that changed, and a {@code patch.properties} file with the checksums of the base and
+ * target releases. Files of the base release that are not part of the target release
+ * are removed when the patch is applied.
+ * <p>
+ * A patch is applied in place. The files of the base release that the patch relies on
+ * are verified first and the new files are written under temporary names and verified
+ * before any of them replaces a file of the base release. Files that are not part of
+ * either release, such as configuration or logs, are left alone.
+ */
+public class PatchBundle {
+
+	private static final String PROPERTIES_ENTRY = "patch.properties";
+
+	private static final String FILES_PREFIX = "files/";
+
+	private static final String DELTA_PREFIX = "delta/";
+
+	private static final String HEADER = "Patch written by ecode-springboot-maven-plugin";
+
+	private static final String FORMAT = "format";
+
+	private static final String FORMAT_VERSION = "1";
+
+	private static final String BASE_PREFIX = "base.";
+
+	private static final String TARGET_PREFIX = "target.";
+
+	private static final String DELTA_BASE_PREFIX = "delta.base.";
+
+	private static final String DELTA_OPERATIONS_PREFIX = "delta.operations.";
+
+	private static final String TEMP_SUFFIX = ".patch";
+
+	private PatchBundle() {
+	}
+
+	/**
+	 * Create a patch from the given base release to the given distribution directory.
+	 * @param base the manifest of the base release
+	 * @param target the manifest of the distribution directory
+	 * @param directory the distribution directory
+	 * @param bundle the patch bundle to write
+	 * @return a summary of the patch
+	 * @throws IOException if a file cannot be read or the bundle cannot be written
+	 */
+	public static Summary create(DistributionManifest base, DistributionManifest target,
+			File directory, File bundle) throws IOException {
+		Summary summary = new Summary();
+		Properties properties = new Properties();
+		properties.setProperty(FORMAT, FORMAT_VERSION);
+		for (String path : base.getPaths()) {
+			properties.setProperty(BASE_PREFIX + path, base.getChecksum(path));
+			if (target.getChecksum(path) == null) {
+				summary.removed++;
+			}
+		}
+		File parent = bundle.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+		ZipOutputStream outputStream = new ZipOutputStream(new FileOutputStream(bundle));
+		try {
+			for (String path : target.getPaths()) {
+				String checksum = target.getChecksum(path);
+				properties.setProperty(TARGET_PREFIX + path, checksum);
+				summary.size += getSize(checksum);
+				String baseChecksum = base.getChecksum(path);
+				if (checksum.equals(baseChecksum)) {
+					continue;
+				}
+				if (baseChecksum == null) {
+					summary.added++;
+				}
+				else {
+					summary.changed++;
+				}
+				File file = new File(directory, path);
+				String basePath = getDeltaBase(base, target, path);
+				ArchiveDelta delta = (basePath != null
+						? ArchiveDelta.create(file, base.getSegmentHashes(basePath))
+						: null);
+				if (delta != null && delta.getLiteralSize() < file.length()) {
+					properties.setProperty(DELTA_BASE_PREFIX + path, basePath);
+					properties.setProperty(DELTA_OPERATIONS_PREFIX + path,
+							delta.getOperations());
+					outputStream.putNextEntry(new ZipEntry(DELTA_PREFIX + path));
+					delta.writeLiterals(file, outputStream);
+					summary.deltas++;
+				}
+				else {
+					outputStream.putNextEntry(new ZipEntry(FILES_PREFIX + path));
+					copy(file, outputStream);
+				}
+				outputStream.closeEntry();
+			}
+			outputStream.putNextEntry(new ZipEntry(PROPERTIES_ENTRY));
+			properties.store(outputStream, HEADER);
+			outputStream.closeEntry();
+		}
+		finally {
+			outputStream.close();
+		}
+		summary.bundleSize = bundle.length();
+		return summary;
+	}
+
+	/**
+	 * Apply the given patch to a distribution directory that contains its base release.
+	 * @param bundle the patch bundle
+	 * @param directory the distribution directory
+	 * @return a summary of the patch
+	 * @throws IOException if the directory does not contain the base release of the
+	 * patch or the patched directory cannot be verified
+	 */
+	@UsesJava7
+	public static Summary apply(File bundle, File directory) throws IOException {
+		ZipFile zipFile = new ZipFile(bundle);
+		List<File> written = new ArrayList<File>();
+		try {
+			Properties properties = loadProperties(zipFile);
+			verifyPaths(properties, directory);
+			Map<String, String> base = getChecksums(properties, BASE_PREFIX);
+			Map<String, String> target = getChecksums(properties, TARGET_PREFIX);
+			Summary summary = new Summary();
+			verifyBase(properties, base, target, directory);
+			Map<String, File> files = new LinkedHashMap<String, File>();
+			for (Map.Entry<String, String> entry : target.entrySet()) {
+				String path = entry.getKey();
+				summary.size += getSize(entry.getValue());
+				File file = new File(directory, path);
+				File temp = new File(file.getParentFile(), "." + file.getName() + TEMP_SUFFIX);
+				if (!writeFile(zipFile, properties, directory, path, temp)) {
+					continue;
+				}
+				written.add(temp);
+				if (!entry.getValue().equals(DistributionManifest.getChecksum(temp))) {
+					throw new IOException("Patched file " + path
+							+ " does not match the patch");
+				}
+				if (base.containsKey(path)) {
+					summary.changed++;
+				}
+				else {
+					summary.added++;
+				}
+				files.put(path, temp);
+			}
+			// Replace the libraries before the archives that refer to them
+			for (int pass = 0; pass < 2; pass++) {
+				for (Map.Entry<String, File> entry : files.entrySet()) {
+					if (DistributionManifest.isRootArchive(entry.getKey()) == (pass == 1)) {
+						Files.move(entry.getValue().toPath(),
+								new File(directory, entry.getKey()).toPath(),
+								StandardCopyOption.ATOMIC_MOVE,
+								StandardCopyOption.REPLACE_EXISTING);
+					}
+				}
+			}
+			for (String path : base.keySet()) {
+				File file = new File(directory, path);
+				if (!target.containsKey(path) && file.exists()) {
+					FileUtil.forceDelete(file);
+					summary.removed++;
+				}
+			}
+			return summary;
+		}
+		finally {
+			zipFile.close();
+			for (File file : written) {
+				file.delete();
+			}
+		}
+	}
+
+	private static String getDeltaBase(DistributionManifest base,
+			DistributionManifest target, String path) {
+		if (!DistributionManifest.isRootArchive(path)) {
+			return null;
+		}
+		if (base.getSegmentHashes(path) != null) {
+			return path;
+		}
+		if (base.getChecksum(path) != null) {
+			return null;
+		}
+		// An archive whose name changed, for example because it contains the version,
+		// is compared with the one archive of the base release that was removed
+		String candidate = null;
+		for (String basePath : base.getPaths()) {
+			if (base.getSegmentHashes(basePath) != null
+					&& target.getChecksum(basePath) == null) {
+				if (candidate != null) {
+					return null;
+				}
+				candidate = basePath;
+			}
+		}
+		for (String targetPath : target.getPaths()) {
+			if (DistributionManifest.isRootArchive(targetPath) && !targetPath.equals(path)
+					&& base.getChecksum(targetPath) == null) {
+				return null;
+			}
+		}
+		return candidate;
+	}
+
+	/**
+	 * Verify that every path of the patch, including the bases of its deltas, resolves
+	 * to a file in the given directory, so that a patch cannot touch files elsewhere.
+	 */
+	private static void verifyPaths(Properties properties, File directory)
+			throws IOException {
+		// Normalized rather than canonical, libraries may be links to other directories
+		Path root = directory.getAbsoluteFile().toPath().normalize();
+		for (String key : properties.stringPropertyNames()) {
+			String[] paths = null;
+			if (key.startsWith(BASE_PREFIX) || key.startsWith(TARGET_PREFIX)) {
+				paths = new String[] { key.substring(key.indexOf('.') + 1) };
+			}
+			else if (key.startsWith(DELTA_BASE_PREFIX)) {
+				paths = new String[] { key.substring(DELTA_BASE_PREFIX.length()),
+						properties.getProperty(key) };
+			}
+			else if (key.startsWith(DELTA_OPERATIONS_PREFIX)) {
+				paths = new String[] { key.substring(DELTA_OPERATIONS_PREFIX.length()) };
+			}
+			for (int i = 0; paths != null && i < paths.length; i++) {
+				Path path = root.resolve(paths[i]).normalize();
+				if (!path.startsWith(root) || path.equals(root)) {
+					throw new IOException("Path " + paths[i]
+							+ " of the patch is outside of " + directory);
+				}
+			}
+		}
+	}
+
+	private static void verifyBase(Properties properties, Map<String, String> base,
+			Map<String, String> target, File directory) throws IOException {
+		Map<String, String> required = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> entry : target.entrySet()) {
+			if (entry.getValue().equals(base.get(entry.getKey()))) {
+				required.put(entry.getKey(), entry.getValue());
+			}
+			String basePath = properties.getProperty(DELTA_BASE_PREFIX + entry.getKey());
+			if (basePath != null) {
+				required.put(basePath, base.get(basePath));
+			}
+		}
+		for (Map.Entry<String, String> entry : required.entrySet()) {
+			File file = new File(directory, entry.getKey());
+			if (!file.isFile()
+					|| !DistributionManifest.getChecksum(file).equals(entry.getValue())) {
+				throw new IOException("File " + file
+						+ " does not match the base release of the patch");
+			}
+		}
+	}
+
+	private static boolean writeFile(ZipFile zipFile, Properties properties,
+			File directory, String path, File temp) throws IOException {
+		ZipEntry file = zipFile.getEntry(FILES_PREFIX + path);
+		ZipEntry delta = zipFile.getEntry(DELTA_PREFIX + path);
+		if (file == null && delta == null) {
+			return false;
+		}
+		File parent = temp.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+		InputStream inputStream = zipFile.getInputStream(file != null ? file : delta);
+		try {
+			if (file != null) {
+				OutputStream outputStream = new FileOutputStream(temp);
+				try {
+					copy(inputStream, outputStream);
+				}
+				finally {
+					outputStream.close();
+				}
+			}
+			else {
+				String basePath = properties.getProperty(DELTA_BASE_PREFIX + path);
+				String operations = properties.getProperty(DELTA_OPERATIONS_PREFIX + path);
+				if (basePath == null || operations == null) {
+					throw new IOException("Invalid delta of " + path);
+				}
+				ArchiveDelta.apply(new File(directory, basePath), operations,
+						inputStream, temp);
+			}
+		}
+		finally {
+			inputStream.close();
+		}
+		return true;
+	}
+
+	private static Properties loadProperties(ZipFile zipFile) throws IOException {
+		ZipEntry entry = zipFile.getEntry(PROPERTIES_ENTRY);
+		if (entry == null) {
+			throw new IOException(zipFile.getName() + " is not a patch bundle");
+		}
+		Properties properties = new Properties();
+		InputStream inputStream = zipFile.getInputStream(entry);
+		try {
+			properties.load(inputStream);
+		}
+		finally {
+			inputStream.close();
+		}
+		if (!FORMAT_VERSION.equals(properties.getProperty(FORMAT))) {
+			throw new IOException("Unsupported patch bundle format "
+					+ properties.getProperty(FORMAT));
+		}
+		return properties;
+	}
+
+	private static Map<String, String> getChecksums(Properties properties,
+			String prefix) {
+		Map<String, String> checksums = new TreeMap<String, String>();
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(prefix)) {
+				checksums.put(key.substring(prefix.length()), properties.getProperty(key));
+			}
+		}
+		return checksums;
+	}
+
+	private static long getSize(String checksum) {
+		return Long.parseLong(checksum.substring(0, checksum.indexOf(',')));
+	}
+
+	private static void copy(File file, OutputStream outputStream) throws IOException {
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			copy(inputStream, outputStream);
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+	private static void copy(InputStream inputStream, OutputStream outputStream)
+			throws IOException {
+		byte[] buffer = new byte[32 * 1024];
+		int bytesRead;
+		while ((bytesRead = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, bytesRead);
+		}
+	}
+
+	/**
+	 * A summary of a patch.
+	 */
+	public static final class Summary {
+
+		private int added;
+
+		private int changed;
+
+		private int removed;
+
+		private int deltas;
+
+		private long size;
+
+		private long bundleSize;
+
+		/**
+		 * Return the number of files that the patch adds.
+		 * @return the number of added files
+		 */
+		public int getAdded() {
+			return this.added;
+		}
+
+		/**
+		 * Return the number of files that the patch changes.
+		 * @return the number of changed files
+		 */
+		public int getChanged() {
+			return this.changed;
+		}
+
+		/**
+		 * Return the number of files that the patch removes.
+		 * @return the number of removed files
+		 */
+		public int getRemoved() {
+			return this.removed;
+		}
+
+		/**
+		 * Return the number of archives that are shipped as a delta.
+		 * @return the number of deltas
+		 */
+		public int getDeltas() {
+			return this.deltas;
+		}
+
+		/**
+		 * Return the total size of the files of the target release.
+		 * @return the size of the target release
+		 */
+		public long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * Return the size of the bundle.
+		 * @return the size of the bundle or {@code 0} for an applied patch
+		 */
+		public long getBundleSize() {
+			return this.bundleSize;
+		}
+
+	}
+
+}
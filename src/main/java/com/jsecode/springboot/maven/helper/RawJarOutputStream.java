@@ -0,0 +1,595 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Replacement for {@link java.util.jar.JarOutputStream} that writes the zip framing
+ * itself. In addition to the usual {@link #putNextEntry(ZipEntry) compressed} and
+ * {@link ZipEntry#STORED stored} entries it accepts {@link #putNextRawEntry(ZipEntry)
+ * raw} entries whose data is already compressed, so that entries can be copied from
+ * another archive without being inflated and deflated again.
+ * <p>
+ * Local headers are written before the data and patched once the CRC and sizes of the
+ * entry are known, so no data descriptors are used.
+ */
+class RawJarOutputStream extends OutputStream {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int LOCSIG = 0x04034b50;
+
+	private static final int CENSIG = 0x02014b50;
+
+	private static final int ENDSIG = 0x06054b50;
+
+	private static final int ZIP64_ENDSIG = 0x06064b50;
+
+	private static final int ZIP64_LOCSIG = 0x07064b50;
+
+	private static final int ZIP64_EXTID = 0x0001;
+
+	private static final int JAR_MAGIC = 0xCAFE;
+
+	private static final int EFS_FLAG = 0x800;
+
+	private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+
+	private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileOutputStream fileOutput;
+
+	private final FileChannel channel;
+
+	private final long base;
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE)
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+	private final byte[] deflateBuffer = new byte[BUFFER_SIZE];
+
+	private final CRC32 crc = new CRC32();
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	private int level = Deflater.DEFAULT_COMPRESSION;
+
+	private long flushed;
+
+	private Entry current;
+
+	private boolean closed;
+
+	/**
+	 * Create a new {@link RawJarOutputStream} that writes to the given file, after any
+	 * content that is already present in the file.
+	 * @param fileOutput the file output
+	 * @throws IOException if the file position cannot be determined
+	 */
+	RawJarOutputStream(FileOutputStream fileOutput) throws IOException {
+		this.fileOutput = fileOutput;
+		this.channel = fileOutput.getChannel();
+		this.base = this.channel.position();
+		this.flushed = this.base;
+	}
+
+	/**
+	 * Create a new {@link RawJarOutputStream} that writes to the given file.
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be opened
+	 */
+	RawJarOutputStream(File file) throws IOException {
+		this(new FileOutputStream(file));
+	}
+
+	/**
+	 * Set the compression level of subsequent {@link ZipEntry#DEFLATED deflated}
+	 * entries.
+	 * @param level the compression level (0-9) or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public void setLevel(int level) {
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		this.level = level;
+	}
+
+	/**
+	 * Begin writing an entry whose data will be compressed (or stored) by this stream.
+	 * {@link ZipEntry#STORED Stored} entries must have their size and CRC set.
+	 * @param entry the entry to write
+	 * @throws IOException in case of I/O errors
+	 */
+	public void putNextEntry(ZipEntry entry) throws IOException {
+		int method = (entry.getMethod() == -1 ? ZipEntry.DEFLATED : entry.getMethod());
+		if (method == ZipEntry.STORED && (entry.getSize() == -1 || entry.getCrc() == -1)) {
+			throw new ZipException(
+					"STORED entry missing size or crc: " + entry.getName());
+		}
+		startEntry(entry, method, false);
+	}
+
+	/**
+	 * Begin writing an entry whose data is already compressed using the method of the
+	 * entry. The entry must have its CRC, size and compressed size set and exactly the
+	 * compressed size must be written before the entry is closed.
+	 * @param entry the entry to write
+	 * @throws IOException in case of I/O errors
+	 */
+	public void putNextRawEntry(ZipEntry entry) throws IOException {
+		if (entry.getMethod() == -1 || entry.getCrc() == -1 || entry.getSize() == -1
+				|| entry.getCompressedSize() == -1) {
+			throw new ZipException("Raw entry missing method, size or crc: "
+					+ entry.getName());
+		}
+		startEntry(entry, entry.getMethod(), true);
+	}
+
+	private void startEntry(ZipEntry zipEntry, int method, boolean raw)
+			throws IOException {
+		ensureOpen();
+		if (this.current != null) {
+			closeEntry();
+		}
+		Entry entry = new Entry(zipEntry, method, raw, this.entries.isEmpty());
+		entry.offset = position();
+		writeLocalHeader(entry);
+		this.entries.add(entry);
+		this.current = entry;
+		this.crc.reset();
+		this.deflater.reset();
+		this.deflater.setLevel(this.level);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (this.current == null) {
+			throw new ZipException("No current entry");
+		}
+		if (len == 0) {
+			return;
+		}
+		Entry entry = this.current;
+		if (entry.raw) {
+			entry.compressedSize += len;
+			writeBytes(b, off, len);
+			return;
+		}
+		this.crc.update(b, off, len);
+		entry.size += len;
+		if (entry.method == ZipEntry.STORED) {
+			entry.compressedSize += len;
+			writeBytes(b, off, len);
+			return;
+		}
+		this.deflater.setInput(b, off, len);
+		while (!this.deflater.needsInput()) {
+			deflate(entry);
+		}
+	}
+
+	/**
+	 * Write data of the current raw entry directly from the given channel. The bytes are
+	 * transferred by the operating system without being copied through the heap.
+	 * @param source the source channel
+	 * @param position the position of the data in the source channel
+	 * @param count the number of bytes to transfer
+	 * @throws IOException in case of I/O errors
+	 */
+	public void transferFrom(FileChannel source, long position, long count)
+			throws IOException {
+		ensureOpen();
+		Entry entry = this.current;
+		if (entry == null || !entry.raw) {
+			throw new ZipException("No current raw entry");
+		}
+		flushBuffer();
+		long transferred = 0;
+		while (transferred < count) {
+			long n = source.transferTo(position + transferred, count - transferred,
+					this.channel);
+			if (n <= 0 && position + transferred >= source.size()) {
+				throw new EOFException("Unexpected end of data for entry "
+						+ entry.zipEntry.getName());
+			}
+			transferred += n;
+			this.flushed += n;
+			entry.compressedSize += n;
+		}
+	}
+
+	private void deflate(Entry entry) throws IOException {
+		int count = this.deflater.deflate(this.deflateBuffer, 0,
+				this.deflateBuffer.length);
+		if (count > 0) {
+			entry.compressedSize += count;
+			writeBytes(this.deflateBuffer, 0, count);
+		}
+	}
+
+	/**
+	 * Finish writing the current entry, updating its local header with the actual CRC
+	 * and sizes.
+	 * @throws IOException in case of I/O errors
+	 */
+	public void closeEntry() throws IOException {
+		ensureOpen();
+		Entry entry = this.current;
+		if (entry == null) {
+			return;
+		}
+		this.current = null;
+		if (entry.raw) {
+			if (entry.compressedSize != entry.zipEntry.getCompressedSize()) {
+				throw new ZipException("Invalid raw entry compressed size (expected "
+						+ entry.zipEntry.getCompressedSize() + " but got "
+						+ entry.compressedSize + " bytes): " + entry.zipEntry.getName());
+			}
+			entry.size = entry.zipEntry.getSize();
+			entry.crc = entry.zipEntry.getCrc();
+			return;
+		}
+		if (entry.method == ZipEntry.DEFLATED) {
+			this.deflater.finish();
+			while (!this.deflater.finished()) {
+				deflate(entry);
+			}
+		}
+		entry.crc = this.crc.getValue();
+		if (entry.method == ZipEntry.STORED) {
+			if (entry.size != entry.zipEntry.getSize()) {
+				throw new ZipException("Invalid entry size (expected "
+						+ entry.zipEntry.getSize() + " but got " + entry.size
+						+ " bytes): " + entry.zipEntry.getName());
+			}
+			if (entry.crc != entry.zipEntry.getCrc()) {
+				throw new ZipException("Invalid entry crc-32 (expected 0x"
+						+ Long.toHexString(entry.zipEntry.getCrc()) + " but got 0x"
+						+ Long.toHexString(entry.crc) + "): " + entry.zipEntry.getName());
+			}
+			return;
+		}
+		if (entry.size >= ZIP64_MAGICVAL || entry.compressedSize >= ZIP64_MAGICVAL) {
+			throw new ZipException("Entry too large: " + entry.zipEntry.getName());
+		}
+		ByteBuffer patch = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+		patch.putInt((int) entry.crc);
+		patch.putInt((int) entry.compressedSize);
+		patch.putInt((int) entry.size);
+		patch.flip();
+		writeAt(entry.offset + 14, patch);
+	}
+
+	/**
+	 * Finish the archive by writing the central directory and close the file.
+	 * @throws IOException in case of I/O errors
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		try {
+			if (this.current != null) {
+				closeEntry();
+			}
+			writeCentralDirectory();
+			flushBuffer();
+		}
+		finally {
+			this.closed = true;
+			this.deflater.end();
+			this.fileOutput.close();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		// Data is flushed to the file when the buffer is full or the stream is closed
+	}
+
+	private void writeLocalHeader(Entry entry) throws IOException {
+		boolean known = (entry.method == ZipEntry.STORED || entry.raw);
+		long size = (known ? entry.zipEntry.getSize() : 0);
+		long compressedSize = (known ? (entry.raw ? entry.zipEntry.getCompressedSize()
+				: entry.zipEntry.getSize()) : 0);
+		boolean zip64 = (size >= ZIP64_MAGICVAL || compressedSize >= ZIP64_MAGICVAL);
+		byte[] extra = entry.extra;
+		int extraLength = extra.length + (zip64 ? 20 : 0);
+		putInt(LOCSIG);
+		putShort(zip64 ? 45 : entry.version());
+		putShort(EFS_FLAG);
+		putShort(entry.method);
+		putInt((int) entry.dosTime);
+		putInt((int) (known ? entry.zipEntry.getCrc() : 0));
+		putInt((int) (zip64 ? ZIP64_MAGICVAL : compressedSize));
+		putInt((int) (zip64 ? ZIP64_MAGICVAL : size));
+		putShort(entry.name.length);
+		putShort(extraLength);
+		putBytes(entry.name);
+		if (zip64) {
+			putShort(ZIP64_EXTID);
+			putShort(16);
+			putLong(size);
+			putLong(compressedSize);
+		}
+		putBytes(extra);
+	}
+
+	private void writeCentralDirectory() throws IOException {
+		long start = position();
+		for (Entry entry : this.entries) {
+			writeCentralDirectoryHeader(entry);
+		}
+		long size = position() - start;
+		long offset = start - this.base;
+		int count = this.entries.size();
+		if (offset >= ZIP64_MAGICVAL || size >= ZIP64_MAGICVAL
+				|| count >= ZIP64_MAGICCOUNT) {
+			long zip64End = position() - this.base;
+			putInt(ZIP64_ENDSIG);
+			putLong(44);
+			putShort(45);
+			putShort(45);
+			putInt(0);
+			putInt(0);
+			putLong(count);
+			putLong(count);
+			putLong(size);
+			putLong(offset);
+			putInt(ZIP64_LOCSIG);
+			putInt(0);
+			putLong(zip64End);
+			putInt(1);
+		}
+		putInt(ENDSIG);
+		putShort(0);
+		putShort(0);
+		putShort(Math.min(count, ZIP64_MAGICCOUNT));
+		putShort(Math.min(count, ZIP64_MAGICCOUNT));
+		putInt((int) Math.min(size, ZIP64_MAGICVAL));
+		putInt((int) Math.min(offset, ZIP64_MAGICVAL));
+		putShort(0);
+	}
+
+	private void writeCentralDirectoryHeader(Entry entry) throws IOException {
+		long offset = entry.offset - this.base;
+		int zip64Length = (entry.size >= ZIP64_MAGICVAL ? 8 : 0)
+				+ (entry.compressedSize >= ZIP64_MAGICVAL ? 8 : 0)
+				+ (offset >= ZIP64_MAGICVAL ? 8 : 0);
+		byte[] extra = entry.extra;
+		byte[] comment = (entry.zipEntry.getComment() != null
+				? entry.zipEntry.getComment().getBytes(UTF_8) : new byte[0]);
+		int version = (zip64Length > 0 ? 45 : entry.version());
+		putInt(CENSIG);
+		putShort(version);
+		putShort(version);
+		putShort(EFS_FLAG);
+		putShort(entry.method);
+		putInt((int) entry.dosTime);
+		putInt((int) entry.crc);
+		putInt((int) Math.min(entry.compressedSize, ZIP64_MAGICVAL));
+		putInt((int) Math.min(entry.size, ZIP64_MAGICVAL));
+		putShort(entry.name.length);
+		putShort(extra.length + (zip64Length > 0 ? zip64Length + 4 : 0));
+		putShort(comment.length);
+		putShort(0);
+		putShort(0);
+		putInt(0);
+		putInt((int) Math.min(offset, ZIP64_MAGICVAL));
+		putBytes(entry.name);
+		if (zip64Length > 0) {
+			putShort(ZIP64_EXTID);
+			putShort(zip64Length);
+			if (entry.size >= ZIP64_MAGICVAL) {
+				putLong(entry.size);
+			}
+			if (entry.compressedSize >= ZIP64_MAGICVAL) {
+				putLong(entry.compressedSize);
+			}
+			if (offset >= ZIP64_MAGICVAL) {
+				putLong(offset);
+			}
+		}
+		putBytes(extra);
+		putBytes(comment);
+	}
+
+	private long position() {
+		return this.flushed + this.buffer.position();
+	}
+
+	private void writeAt(long position, ByteBuffer data) throws IOException {
+		if (position >= this.flushed) {
+			int index = (int) (position - this.flushed);
+			for (int i = 0; i < data.remaining(); i++) {
+				this.buffer.put(index + i, data.get(data.position() + i));
+			}
+			return;
+		}
+		if (position + data.remaining() > this.flushed) {
+			flushBuffer();
+		}
+		while (data.hasRemaining()) {
+			position += this.channel.write(data, position);
+		}
+	}
+
+	private void writeBytes(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (!this.buffer.hasRemaining()) {
+				flushBuffer();
+			}
+			int count = Math.min(len, this.buffer.remaining());
+			this.buffer.put(b, off, count);
+			off += count;
+			len -= count;
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.flushed += this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	private void ensureCapacity(int length) throws IOException {
+		if (this.buffer.remaining() < length) {
+			flushBuffer();
+		}
+	}
+
+	private void putShort(int value) throws IOException {
+		ensureCapacity(2);
+		this.buffer.putShort((short) value);
+	}
+
+	private void putInt(int value) throws IOException {
+		ensureCapacity(4);
+		this.buffer.putInt(value);
+	}
+
+	private void putLong(long value) throws IOException {
+		ensureCapacity(8);
+		this.buffer.putLong(value);
+	}
+
+	private void putBytes(byte[] bytes) throws IOException {
+		writeBytes(bytes, 0, bytes.length);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	/**
+	 * Convert a Java time to an MS-DOS date and time.
+	 * @param time the Java time
+	 * @return the MS-DOS date and time
+	 */
+	static long javaToDosTime(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		if (year > 2107) {
+			year = 2107;
+		}
+		return ((year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21)
+				| (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+				| (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+				| (calendar.get(Calendar.MINUTE) << 5)
+				| (calendar.get(Calendar.SECOND) >> 1);
+	}
+
+	/**
+	 * Return the extra data of the given entry without any ZIP64 extended information,
+	 * which is written by this stream when required.
+	 * @param extra the extra data or {@code null}
+	 * @param jarMagic if the jar magic header should be added
+	 * @return the extra data to write
+	 */
+	static byte[] getExtra(byte[] extra, boolean jarMagic) {
+		ByteBuffer result = ByteBuffer
+				.allocate((extra == null ? 0 : extra.length) + (jarMagic ? 4 : 0))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		boolean hasMagic = false;
+		if (extra != null) {
+			ByteBuffer source = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+			while (source.remaining() >= 4) {
+				int id = source.getShort() & 0xFFFF;
+				int length = source.getShort() & 0xFFFF;
+				if (length > source.remaining()) {
+					break;
+				}
+				hasMagic = hasMagic || (id == JAR_MAGIC);
+				if (id != ZIP64_EXTID) {
+					result.putShort((short) id);
+					result.putShort((short) length);
+					result.put(extra, source.position(), length);
+				}
+				source.position(source.position() + length);
+			}
+		}
+		if (jarMagic && !hasMagic) {
+			result.putShort((short) JAR_MAGIC);
+			result.putShort((short) 0);
+		}
+		byte[] bytes = new byte[result.position()];
+		result.flip();
+		result.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * An entry that has been written.
+	 */
+	private static final class Entry {
+
+		private final ZipEntry zipEntry;
+
+		private final int method;
+
+		private final boolean raw;
+
+		private final byte[] name;
+
+		private final byte[] extra;
+
+		private final long dosTime;
+
+		private long offset;
+
+		private long crc;
+
+		private long size;
+
+		private long compressedSize;
+
+		Entry(ZipEntry zipEntry, int method, boolean raw, boolean first) {
+			this.zipEntry = zipEntry;
+			this.method = method;
+			this.raw = raw;
+			this.name = zipEntry.getName().getBytes(UTF_8);
+			this.extra = getExtra(zipEntry.getExtra(), first);
+			long time = zipEntry.getTime();
+			this.dosTime = javaToDosTime(time == -1 ? System.currentTimeMillis() : time);
+		}
+
+		int version() {
+			return (this.method == ZipEntry.STORED ? 10 : 20);
+		}
+
+	}
+
+}
@@ -0,0 +1,386 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+
+/**
+ * Read-only view of a zip file that provides the raw, still compressed, data of its
+ * entries. Only the central directory is read when the file is opened; local headers are
+ * read on demand to locate the data of an entry.
+ */
+class RawZipFile implements Closeable {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int LOCSIG = 0x04034b50;
+
+	private static final int CENSIG = 0x02014b50;
+
+	private static final int ENDSIG = 0x06054b50;
+
+	private static final int ZIP64_ENDSIG = 0x06064b50;
+
+	private static final int ZIP64_LOCSIG = 0x07064b50;
+
+	private static final int ENDHDR = 22;
+
+	private static final int ZIP64_LOCHDR = 20;
+
+	private static final int LOCHDR = 30;
+
+	private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+	private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+
+	private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+
+	private static final int ENCRYPTED_FLAG = 0x1;
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final Map<String, RawEntry> entries = new HashMap<String, RawEntry>();
+
+	private final SortedSet<Long> recordOffsets = new TreeSet<Long>();
+
+	private long prefix;
+
+	private long centralDirectoryOffset;
+
+	private RawZipFile(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+	}
+
+	/**
+	 * Open the given zip file.
+	 * @param file the zip file
+	 * @return the raw zip file or {@code null} if its central directory cannot be read
+	 * @throws IOException if the file cannot be opened
+	 */
+	static RawZipFile open(File file) throws IOException {
+		RawZipFile zipFile = new RawZipFile(file);
+		try {
+			if (zipFile.readCentralDirectory()) {
+				return zipFile;
+			}
+		}
+		catch (IOException ex) {
+			// Fall through, the caller will read the entries through java.util.zip
+		}
+		catch (RuntimeException ex) {
+			// Fall through, the caller will read the entries through java.util.zip
+		}
+		zipFile.close();
+		return null;
+	}
+
+	/**
+	 * Return the entry with the given name.
+	 * @param name the name of the entry
+	 * @return the entry or {@code null} if there is no such entry or its data cannot be
+	 * copied raw
+	 */
+	RawEntry getEntry(String name) {
+		return this.entries.get(name);
+	}
+
+	/**
+	 * Open a stream to the raw data of the given entry.
+	 * @param entry the entry
+	 * @return a stream of exactly {@link RawEntry#getCompressedSize()} bytes
+	 * @throws IOException if the local header of the entry cannot be read
+	 */
+	InputStream getRawInputStream(RawEntry entry) throws IOException {
+		return new RegionInputStream(this.channel, getDataOffset(entry),
+				entry.getCompressedSize());
+	}
+
+	/**
+	 * Return the absolute file offset of the data of the given entry.
+	 * @param entry the entry
+	 * @return the offset of the data
+	 * @throws IOException if the local header of the entry cannot be read
+	 */
+	long getDataOffset(RawEntry entry) throws IOException {
+		ByteBuffer header = read(this.prefix + entry.localHeaderOffset, LOCHDR);
+		if (header.getInt(0) != LOCSIG) {
+			throw new IOException("Invalid local header for entry " + entry.name);
+		}
+		int nameLength = header.getShort(26) & 0xFFFF;
+		int extraLength = header.getShort(28) & 0xFFFF;
+		return this.prefix + entry.localHeaderOffset + LOCHDR + nameLength
+				+ extraLength;
+	}
+
+	/**
+	 * Return the boundaries of the regions of the file: the absolute offset of the
+	 * local record of each entry, in file order, followed by the offset of the central
+	 * directory. A record extends to the next boundary, so it includes the local header,
+	 * the data and any data descriptor of the entry. Anything before the first boundary,
+	 * such as a launch script, is the prefix of the file.
+	 * @return the boundaries, in ascending order
+	 */
+	long[] getRecordBoundaries() {
+		long[] boundaries = new long[this.recordOffsets.size() + 1];
+		int i = 0;
+		for (long offset : this.recordOffsets) {
+			boundaries[i++] = offset;
+		}
+		boundaries[i] = this.centralDirectoryOffset;
+		return boundaries;
+	}
+
+	/**
+	 * Return the channel of the file, which must not be closed by the caller.
+	 * @return the channel
+	 */
+	FileChannel getChannel() {
+		return this.channel;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.file.close();
+	}
+
+	private boolean readCentralDirectory() throws IOException {
+		long length = this.channel.size();
+		if (length < ENDHDR) {
+			return false;
+		}
+		int tailLength = (int) Math.min(length, ENDHDR + MAX_COMMENT_LENGTH);
+		ByteBuffer tail = read(length - tailLength, tailLength);
+		int end = -1;
+		for (int i = tailLength - ENDHDR; i >= 0; i--) {
+			if (tail.getInt(i) == ENDSIG
+					&& i + ENDHDR + (tail.getShort(i + 20) & 0xFFFF) == tailLength) {
+				end = i;
+				break;
+			}
+		}
+		if (end == -1) {
+			return false;
+		}
+		long endPosition = length - tailLength + end;
+		long count = tail.getShort(end + 10) & 0xFFFF;
+		long size = tail.getInt(end + 12) & ZIP64_MAGICVAL;
+		long offset = tail.getInt(end + 16) & ZIP64_MAGICVAL;
+		long directoryEnd = endPosition;
+		if (count == ZIP64_MAGICCOUNT || size == ZIP64_MAGICVAL
+				|| offset == ZIP64_MAGICVAL) {
+			if (endPosition < ZIP64_LOCHDR) {
+				return false;
+			}
+			ByteBuffer locator = read(endPosition - ZIP64_LOCHDR, ZIP64_LOCHDR);
+			if (locator.getInt(0) == ZIP64_LOCSIG) {
+				long zip64EndPosition = endPosition - ZIP64_LOCHDR - 56;
+				ByteBuffer zip64End = read(zip64EndPosition, 56);
+				if (zip64End.getInt(0) != ZIP64_ENDSIG) {
+					return false;
+				}
+				count = zip64End.getLong(32);
+				size = zip64End.getLong(40);
+				offset = zip64End.getLong(48);
+				directoryEnd = zip64EndPosition;
+			}
+		}
+		this.prefix = directoryEnd - size - offset;
+		if (this.prefix < 0 || size > Integer.MAX_VALUE) {
+			return false;
+		}
+		this.centralDirectoryOffset = this.prefix + offset;
+		ByteBuffer directory = read(this.centralDirectoryOffset, (int) size);
+		for (long i = 0; i < count; i++) {
+			if (!readEntry(directory)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean readEntry(ByteBuffer directory) {
+		int position = directory.position();
+		if (directory.getInt(position) != CENSIG) {
+			return false;
+		}
+		int flags = directory.getShort(position + 8) & 0xFFFF;
+		int method = directory.getShort(position + 10) & 0xFFFF;
+		long crc = directory.getInt(position + 16) & ZIP64_MAGICVAL;
+		long compressedSize = directory.getInt(position + 20) & ZIP64_MAGICVAL;
+		long size = directory.getInt(position + 24) & ZIP64_MAGICVAL;
+		int nameLength = directory.getShort(position + 28) & 0xFFFF;
+		int extraLength = directory.getShort(position + 30) & 0xFFFF;
+		int commentLength = directory.getShort(position + 32) & 0xFFFF;
+		long localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGICVAL;
+		byte[] name = new byte[nameLength];
+		directory.position(position + 46);
+		directory.get(name);
+		int extraStart = directory.position();
+		int extraEnd = extraStart + extraLength;
+		while (extraStart + 4 <= extraEnd) {
+			int id = directory.getShort(extraStart) & 0xFFFF;
+			int dataLength = directory.getShort(extraStart + 2) & 0xFFFF;
+			if (id == 0x0001) {
+				int data = extraStart + 4;
+				if (size == ZIP64_MAGICVAL) {
+					size = directory.getLong(data);
+					data += 8;
+				}
+				if (compressedSize == ZIP64_MAGICVAL) {
+					compressedSize = directory.getLong(data);
+					data += 8;
+				}
+				if (localHeaderOffset == ZIP64_MAGICVAL) {
+					localHeaderOffset = directory.getLong(data);
+				}
+			}
+			extraStart += 4 + dataLength;
+		}
+		directory.position(extraEnd + commentLength);
+		String entryName = new String(name, UTF_8);
+		if (this.prefix + localHeaderOffset >= this.centralDirectoryOffset) {
+			return false;
+		}
+		this.recordOffsets.add(this.prefix + localHeaderOffset);
+		if ((flags & ENCRYPTED_FLAG) == 0
+				&& (method == ZipEntry.STORED || method == ZipEntry.DEFLATED)
+				&& !this.entries.containsKey(entryName)) {
+			this.entries.put(entryName, new RawEntry(entryName, method, crc,
+					compressedSize, size, localHeaderOffset));
+		}
+		return true;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			int read = this.channel.read(buffer, position + buffer.position());
+			if (read == -1) {
+				throw new EOFException();
+			}
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * An entry of a {@link RawZipFile}.
+	 */
+	static final class RawEntry {
+
+		private final String name;
+
+		private final int method;
+
+		private final long crc;
+
+		private final long compressedSize;
+
+		private final long size;
+
+		private final long localHeaderOffset;
+
+		private RawEntry(String name, int method, long crc, long compressedSize,
+				long size, long localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		int getMethod() {
+			return this.method;
+		}
+
+		long getCrc() {
+			return this.crc;
+		}
+
+		long getCompressedSize() {
+			return this.compressedSize;
+		}
+
+		long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * Setup the given entry so that the raw data of this entry can be written for
+		 * it. The entry must not already use a different compression method, CRC or
+		 * size.
+		 * @param entry the entry to setup
+		 * @return {@code true} if the raw data can be written for the entry
+		 */
+		boolean setupRawEntry(ZipEntry entry) {
+			if ((entry.getMethod() != -1 && entry.getMethod() != this.method)
+					|| (entry.getCrc() != -1 && entry.getCrc() != this.crc)
+					|| (entry.getSize() != -1 && entry.getSize() != this.size)) {
+				return false;
+			}
+			entry.setMethod(this.method);
+			entry.setCrc(this.crc);
+			entry.setSize(this.size);
+			entry.setCompressedSize(this.compressedSize);
+			return true;
+		}
+
+	}
+
+	/**
+	 * {@link InputStream} over a region of a {@link FileChannel}.
+	 */
+	private static class RegionInputStream extends InputStream {
+
+		private final FileChannel channel;
+
+		private long position;
+
+		private long remaining;
+
+		RegionInputStream(FileChannel channel, long position, long length) {
+			this.channel = channel;
+			this.position = position;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int count = (int) Math.min(len, this.remaining);
+			int read = this.channel.read(ByteBuffer.wrap(b, off, count), this.position);
+			if (read == -1) {
+				throw new EOFException();
+			}
+			this.position += read;
+			this.remaining -= read;
+			return read;
+		}
+
+	}
+
+}
@@ -0,0 +1,286 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.Library;
+import org.springframework.boot.loader.tools.LibraryCallback;
+
+/**
+ * Fingerprint of the inputs of a repackaging: the entries of the source jar, the
+ * libraries with the hashes of their content and any configuration values that affect
+ * the repackaged archive. The fingerprint is {@link #save(File, Collection) saved} next
+ * to the output, together with the path, size and last modified time of every output
+ * file, so that a later build with the same inputs can detect that the output is
+ * {@link #isUpToDate(File, Collection) up to date} and skip repackaging.
+ */
+public class RepackageFingerprint {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String CONFIGURATION = "configuration";
+
+	private static final String SOURCE = "source";
+
+	private static final String LIBRARIES = "libraries";
+
+	private static final String OUTPUTS = "outputs";
+
+	private static final String HEADER = "Repackage fingerprint written by ecode-springboot-maven-plugin";
+
+	private final MessageDigest configurationDigest = createSha1Digest();
+
+	private final MessageDigest librariesDigest = createSha1Digest();
+
+	private final LibraryChecksumCache checksumCache;
+
+	private String configuration;
+
+	private String source;
+
+	private String libraries;
+
+	/**
+	 * Create a new {@link RepackageFingerprint} instance.
+	 * @param checksumCache the cache used to look up the hashes of libraries or
+	 * {@code null}
+	 */
+	public RepackageFingerprint(LibraryChecksumCache checksumCache) {
+		this.checksumCache = checksumCache;
+	}
+
+	/**
+	 * Add a configuration value.
+	 * @param name the name of the value
+	 * @param value the value, may be {@code null}
+	 */
+	public void addValue(String name, Object value) {
+		update(this.configurationDigest, name + "=" + value);
+	}
+
+	/**
+	 * Add the hash of the given content, for example a launch script.
+	 * @param name the name of the content
+	 * @param content the content, may be {@code null}
+	 */
+	public void addContent(String name, byte[] content) {
+		addValue(name, (content == null ? null
+				: NestedLibraryContent.bytesToHex(createSha1Digest().digest(content))));
+	}
+
+	/**
+	 * Add the entries of the source jar. Entries are identified by their name, size and
+	 * CRC-32, so a jar that is rebuilt from the same classes and resources has the same
+	 * fingerprint. The {@code pom.properties} files written by Maven are ignored as they
+	 * contain the time of the build. A fingerprint without the source jar, used when the
+	 * build is known not to have changed it, is only compared on the other inputs.
+	 * @param source the source jar
+	 * @throws IOException if the jar cannot be read
+	 */
+	public void addSourceJar(File source) throws IOException {
+		MessageDigest digest = createSha1Digest();
+		JarFile jarFile = new JarFile(source);
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (!isMavenPomProperties(entry.getName())) {
+					update(digest, "entry=" + entry.getName() + "," + entry.getSize() + ","
+							+ entry.getCrc());
+				}
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+		this.source = NestedLibraryContent.bytesToHex(digest.digest());
+	}
+
+	/**
+	 * Return if the entries of the source jar have been added.
+	 * @return {@code true} if the source jar has been added
+	 */
+	public boolean hasSourceJar() {
+		return this.source != null;
+	}
+
+	/**
+	 * Add the libraries together with the SHA-1 hashes of their content. Hashes are
+	 * taken from the checksum cache when possible and are added to it otherwise.
+	 * @param libraries the libraries
+	 * @throws IOException if a library cannot be read
+	 */
+	public void addLibraries(Libraries libraries) throws IOException {
+		libraries.doWithLibraries(new LibraryCallback() {
+
+			@Override
+			public void library(Library library) throws IOException {
+				update(RepackageFingerprint.this.librariesDigest,
+						"library=" + library.getName() + "," + library.getScope() + ","
+								+ library.isUnpackRequired() + ","
+								+ getSha1(library.getFile()));
+			}
+
+		});
+	}
+
+	/**
+	 * Return if the output recorded in the given state file matches this fingerprint
+	 * and none of its files have been changed, added or removed since.
+	 * @param stateFile the state file written by a previous build
+	 * @param outputs the output files and directories, which may contain the state
+	 * file
+	 * @return if the output is up to date
+	 * @throws IOException if the outputs cannot be listed
+	 */
+	public boolean isUpToDate(File stateFile, Collection<File> outputs)
+			throws IOException {
+		Properties state = loadState(stateFile);
+		if (state == null || state.getProperty(SOURCE) == null) {
+			return false;
+		}
+		return getConfiguration().equals(state.getProperty(CONFIGURATION))
+				&& getLibraries().equals(state.getProperty(LIBRARIES))
+				&& (this.source == null || this.source.equals(state.getProperty(SOURCE)))
+				&& getOutputs(stateFile, outputs).equals(state.getProperty(OUTPUTS));
+	}
+
+	/**
+	 * Save this fingerprint together with the path, size and last modified time of the
+	 * files of the given outputs.
+	 * @param stateFile the state file
+	 * @param outputs the output files and directories, which may contain the state
+	 * file
+	 * @throws IOException if the state file cannot be written
+	 */
+	public void save(File stateFile, Collection<File> outputs) throws IOException {
+		if (this.source == null) {
+			throw new IllegalStateException("The source jar has not been added");
+		}
+		Properties state = new Properties();
+		state.setProperty(CONFIGURATION, getConfiguration());
+		state.setProperty(SOURCE, this.source);
+		state.setProperty(LIBRARIES, getLibraries());
+		state.setProperty(OUTPUTS, getOutputs(stateFile, outputs));
+		OutputStream outputStream = new FileOutputStream(stateFile);
+		try {
+			state.store(outputStream, HEADER);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private String getConfiguration() {
+		if (this.configuration == null) {
+			this.configuration = NestedLibraryContent
+					.bytesToHex(this.configurationDigest.digest());
+		}
+		return this.configuration;
+	}
+
+	private String getLibraries() {
+		if (this.libraries == null) {
+			this.libraries = NestedLibraryContent
+					.bytesToHex(this.librariesDigest.digest());
+		}
+		return this.libraries;
+	}
+
+	private String getOutputs(File stateFile, Collection<File> outputs)
+			throws IOException {
+		MessageDigest digest = createSha1Digest();
+		Set<File> files = new TreeSet<File>();
+		for (File output : outputs) {
+			files.add(output.getAbsoluteFile());
+		}
+		File excluded = stateFile.getAbsoluteFile();
+		for (File file : files) {
+			addOutput(digest, file, excluded, true);
+		}
+		return NestedLibraryContent.bytesToHex(digest.digest());
+	}
+
+	private void addOutput(MessageDigest digest, File file, File excluded,
+			boolean root) throws IOException {
+		if (file.equals(excluded)) {
+			return;
+		}
+		if (file.isDirectory() && (root || !FileUtil.isSymlink(file))) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (File child : children) {
+					addOutput(digest, child, excluded, false);
+				}
+			}
+		}
+		else {
+			update(digest, "output=" + file.getPath() + ","
+					+ (file.exists() ? file.length() + "," + file.lastModified()
+							: "missing"));
+		}
+	}
+
+	private Properties loadState(File stateFile) {
+		if (!stateFile.isFile()) {
+			return null;
+		}
+		Properties state = new Properties();
+		try {
+			InputStream inputStream = new FileInputStream(stateFile);
+			try {
+				state.load(inputStream);
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+		catch (IOException ex) {
+			return null;
+		}
+		return state;
+	}
+
+	private String getSha1(File file) throws IOException {
+		if (!file.isFile()) {
+			return String.valueOf(file.lastModified());
+		}
+		return NestedLibraryContent.getSha1(file, this.checksumCache);
+	}
+
+	private boolean isMavenPomProperties(String name) {
+		return name.startsWith("META-INF/maven/") && name.endsWith("/pom.properties");
+	}
+
+	private void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(UTF_8));
+		digest.update((byte) '\n');
+	}
+
+	private static MessageDigest createSha1Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
@@ -1,13 +1,17 @@
 package com.jsecode.springboot.maven.helper;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
@@ -19,6 +23,7 @@ import org.springframework.boot.loader.tools.DefaultLayoutFactory;
 import org.springframework.boot.loader.tools.LaunchScript;
 import org.springframework.boot.loader.tools.Layout;
 import org.springframework.boot.loader.tools.LayoutFactory;
+import org.springframework.boot.loader.tools.Layouts;
 import org.springframework.boot.loader.tools.Libraries;
 import org.springframework.boot.loader.tools.Library;
 import org.springframework.boot.loader.tools.LibraryCallback;
@@ -30,6 +35,7 @@ import org.springframework.lang.UsesJava8;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.jsecode.springboot.loader.PackageIndexLauncher;
 import com.jsecode.springboot.maven.helper.JarWriter.EntryTransformer;
 
 /**
@@ -64,6 +70,42 @@ public class Repackager {
 
 	private boolean backupSource = true;
 
+	private int compressionThreads = 1;
+
+	private int prefetchThreads;
+
+	private LibraryLinkMode libraryLinkMode = LibraryLinkMode.COPY;
+
+	private boolean syncLibraryDirectory;
+
+	private int copyThreads = 1;
+
+	private int keepReleases;
+
+	private File libraryPool;
+
+	private int keepLibraryBuilds;
+
+	private LibraryChecksumCache checksumCache;
+
+	private CompressionPolicy compressionPolicy;
+
+	private boolean packageIndex;
+
+	private boolean serviceIndex;
+
+	private LibraryLayers layers;
+
+	private boolean layerArchives;
+
+	private boolean exploded;
+
+	private LibraryUsageAnalyzer libraryUsageAnalyzer;
+
+	private LibraryShrinker libraryShrinker;
+
+	private IOException librarySeedFailure;
+
 	private final File source;
 
 	private Layout layout;
@@ -114,6 +156,186 @@ public class Repackager {
 		this.backupSource = backupSource;
 	}
 
+	/**
+	 * Sets the number of threads used to compress the entries of the archive. The
+	 * archive does not depend on the number of threads.
+	 * @param compressionThreads the number of compression threads
+	 */
+	public void setCompressionThreads(int compressionThreads) {
+		this.compressionThreads = compressionThreads;
+	}
+
+	/**
+	 * Sets the number of threads used to read and hash nested libraries ahead of
+	 * writing them. The archive does not depend on the number of threads.
+	 * @param prefetchThreads the number of prefetch threads or {@code 0} to read each
+	 * library when it is written
+	 */
+	public void setPrefetchThreads(int prefetchThreads) {
+		this.prefetchThreads = prefetchThreads;
+	}
+
+	/**
+	 * Sets how the libraries of a thin jar are placed in its {@code lib} directory.
+	 * @param libraryLinkMode the library link mode or {@code null} to copy them
+	 */
+	public void setLibraryLinkMode(LibraryLinkMode libraryLinkMode) {
+		this.libraryLinkMode = (libraryLinkMode != null ? libraryLinkMode
+				: LibraryLinkMode.COPY);
+	}
+
+	/**
+	 * Sets if the {@code lib} directory of a thin jar in the dist directory should be
+	 * synchronized with the libraries rather than cleaned and written again. Only new
+	 * and changed libraries are then copied and libraries that are no longer required
+	 * are deleted.
+	 * @param syncLibraryDirectory if the library directory should be synchronized
+	 */
+	public void setSyncLibraryDirectory(boolean syncLibraryDirectory) {
+		this.syncLibraryDirectory = syncLibraryDirectory;
+	}
+
+	/**
+	 * Sets the number of libraries of a thin jar that are copied to its {@code lib}
+	 * directory at the same time. Copies run on virtual threads on Java 21 and later.
+	 * @param copyThreads the number of concurrent copies
+	 */
+	public void setCopyThreads(int copyThreads) {
+		this.copyThreads = copyThreads;
+	}
+
+	/**
+	 * Sets the number of releases of the dist directory to keep when it is published
+	 * atomically. The distribution is then written to a staging directory under
+	 * {@code <distDir>.releases} and the dist directory, which becomes a symbolic link,
+	 * is switched to it once complete.
+	 * @param keepReleases the number of releases to keep, including the published one,
+	 * or {@code 0} to write the dist directory in place
+	 */
+	public void setKeepReleases(int keepReleases) {
+		this.keepReleases = keepReleases;
+	}
+
+	/**
+	 * Sets the directory of a content-addressed library pool that is shared by the thin
+	 * archives of several modules. Libraries are then placed in the pool, once per
+	 * distinct content, and the {@code Class-Path} of the archive refers to them
+	 * relative to the directory of the archive, rather than copying them to its
+	 * {@code lib} directory.
+	 * @param libraryPool the pool directory or {@code null} to use the {@code lib}
+	 * directory
+	 */
+	public void setLibraryPool(File libraryPool) {
+		this.libraryPool = libraryPool;
+	}
+
+	/**
+	 * Sets whether the libraries of a thin archive are written to its {@code lib}
+	 * directory under names that include a hash of their content. Libraries are then
+	 * never overwritten in place and those referenced by the last builds are kept, so
+	 * a new build can be rolled out or back by replacing the archive alone. Libraries
+	 * that no kept build refers to are deleted. Has no effect when a
+	 * {@link #setLibraryPool(File) library pool} is used.
+	 * @param keepLibraryBuilds the number of builds whose libraries are kept, including
+	 * the current one, or {@code 0} to use the plain names of the libraries
+	 */
+	public void setHashedLibraryNames(int keepLibraryBuilds) {
+		this.keepLibraryBuilds = keepLibraryBuilds;
+	}
+
+	/**
+	 * Sets the policy that decides how the entries of the jar are compressed.
+	 * @param compressionPolicy the compression policy or {@code null} to deflate all
+	 * entries using the default level
+	 */
+	public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+		this.compressionPolicy = compressionPolicy;
+	}
+
+	/**
+	 * Sets if a package index should be written to the jar. The jar is then launched
+	 * by a launcher that uses the index to find the jar containing each class and
+	 * resource. Requires the JAR layout.
+	 * @param packageIndex if a package index should be written
+	 */
+	public void setPackageIndex(boolean packageIndex) {
+		this.packageIndex = packageIndex;
+	}
+
+	/**
+	 * Sets if a service index should be written to the jar, with the
+	 * {@code META-INF/spring.factories} and {@code META-INF/services} files of the
+	 * classes and the libraries merged, which the launcher serves instead of searching
+	 * the jars for them. Requires a package index.
+	 * @param serviceIndex if a service index should be written
+	 */
+	public void setServiceIndex(boolean serviceIndex) {
+		this.serviceIndex = serviceIndex;
+	}
+
+	/**
+	 * Sets the layers that the dist directory is split into. The archive is then
+	 * repackaged with its libraries nested, like {@code allInOne}, and its entries are
+	 * written to a {@code layers} directory in the dist directory, one directory or tar
+	 * archive per layer, together with a {@code layers.idx} index. Layers whose entries
+	 * did not change are not written again. Requires the JAR layout.
+	 * @param layers the layers or {@code null} to write the archive itself
+	 */
+	public void setLayers(LibraryLayers layers) {
+		this.layers = layers;
+	}
+
+	/**
+	 * Sets whether each layer is written to a reproducible tar archive rather than to a
+	 * directory.
+	 * @param layerArchives if the layers are written to tar archives
+	 */
+	public void setLayerArchives(boolean layerArchives) {
+		this.layerArchives = layerArchives;
+	}
+
+	/**
+	 * Sets whether the application is written as an exploded distribution rather than
+	 * as an archive: its entries are written to a {@code classes} directory in the dist
+	 * directory, its libraries to the {@code lib} directory like for a thin jar, and
+	 * {@code <name>.args} and {@code <name>.sh} launch the main class with a plain
+	 * class path of both, without the Spring Boot loader. The source archive is left
+	 * as it is. Requires the JAR layout.
+	 * @param exploded if an exploded distribution is written
+	 */
+	public void setExploded(boolean exploded) {
+		this.exploded = exploded;
+	}
+
+	/**
+	 * Sets the analyzer that finds the libraries that the application does not use, and
+	 * may exclude them, before the libraries are shrunk and written.
+	 * @param libraryUsageAnalyzer the library usage analyzer or {@code null} to write
+	 * all libraries
+	 */
+	public void setLibraryUsageAnalyzer(LibraryUsageAnalyzer libraryUsageAnalyzer) {
+		this.libraryUsageAnalyzer = libraryUsageAnalyzer;
+	}
+
+	/**
+	 * Sets the shrinker that removes the classes that the application cannot reach from
+	 * its libraries before they are written. Requires the JAR layout.
+	 * @param libraryShrinker the library shrinker or {@code null} to write the
+	 * libraries as they are
+	 */
+	public void setLibraryShrinker(LibraryShrinker libraryShrinker) {
+		this.libraryShrinker = libraryShrinker;
+	}
+
+	/**
+	 * Sets the cache used to look up and store the checksums of libraries, so that
+	 * unchanged libraries are not hashed again.
+	 * @param checksumCache the checksum cache or {@code null}
+	 */
+	public void setChecksumCache(LibraryChecksumCache checksumCache) {
+		this.checksumCache = checksumCache;
+	}
+
 	/**
 	 * Sets the layout to use for the jar. Defaults to {@link Layouts#forFile(File)}.
 	 * @param layout the layout
@@ -183,48 +405,280 @@ public class Repackager {
 		if (alreadyRepackaged()) {
 			return;
 		}
+		if (this.serviceIndex && !this.packageIndex) {
+			throw new IllegalStateException("A service index requires a package index");
+		}
 		destination = destination.getAbsoluteFile();
+		if (this.libraryUsageAnalyzer != null) {
+			libraries = this.libraryUsageAnalyzer.analyze(this.source, libraries);
+		}
+		if (this.libraryShrinker != null) {
+			if (!(this.layout instanceof Layouts.Jar)) {
+				throw new IllegalStateException(
+						"Shrinking libraries requires the JAR layout, not " + this.layout);
+			}
+			libraries = this.libraryShrinker.shrink(this.source, libraries);
+		}
+		if (distDir != null && this.keepReleases > 0) {
+			publish(destination, libraries, launchScript, allInOne, distDir);
+		}
+		else if (this.layers != null) {
+			repackageLayered(destination, libraries, launchScript, distDir);
+		}
+		else if (this.exploded) {
+			repackageExploded(destination, libraries, distDir);
+		}
+		else {
+			repackageTo(destination, libraries, launchScript, allInOne, distDir);
+		}
+	}
+
+	/**
+	 * Write the classes of the source and its libraries to the given dist directory as
+	 * an exploded distribution.
+	 */
+	private void repackageExploded(File destination, Libraries libraries, File distDir)
+			throws IOException {
+		if (!(this.layout instanceof Layouts.Jar)) {
+			throw new IllegalStateException(
+					"An exploded distribution requires the JAR layout, not "
+							+ this.layout);
+		}
+		if (this.packageIndex) {
+			throw new IllegalStateException(
+					"An exploded distribution cannot be combined with a package index");
+		}
+		if (distDir == null) {
+			distDir = destination.getParentFile();
+		}
+		// A thin jar of an earlier build would still find its classes in the archive
+		File archive = new File(distDir, destination.getName()).getAbsoluteFile();
+		if (!archive.equals(this.source.getAbsoluteFile())) {
+			archive.delete();
+		}
+		List<Library> unpackLibraries = new ArrayList<Library>();
+		List<Library> standardLibraries = new ArrayList<Library>();
+		collectLibraries(libraries, unpackLibraries, standardLibraries);
+		LibraryDirectoryWriter libraryWriter = createLibraryWriter(
+				getLibraryDirectory(distDir), distDir.isDirectory(), archive);
+		JarFile sourceJar = new JarFile(this.source);
+		try {
+			List<String> classPath = new ArrayList<String>();
+			classPath.add(ExplodedDistributionWriter.CLASSES_DIRECTORY);
+			Set<String> seen = new HashSet<String>();
+			copyNestedLibraries(unpackLibraries, libraryWriter, seen, null);
+			copyNestedLibraries(standardLibraries, libraryWriter, seen, null);
+			for (Library library : unpackLibraries) {
+				classPath.add(libraryWriter.getPath(library.getFile()));
+			}
+			for (Library library : standardLibraries) {
+				classPath.add(libraryWriter.getPath(library.getFile()));
+			}
+			ExplodedDistributionWriter writer = new ExplodedDistributionWriter(distDir);
+			writer.writeClasses(sourceJar);
+			libraryWriter.finish();
+			String name = destination.getName();
+			Manifest manifest = sourceJar.getManifest();
+			String startClass = getStartClass(sourceJar,
+					(manifest != null ? manifest : new Manifest()));
+			if (startClass == null) {
+				throw new IllegalStateException("Unable to find main class");
+			}
+			writer.writeLaunchFiles(name.substring(0, name.lastIndexOf('.')), classPath,
+					startClass);
+		}
+		finally {
+			sourceJar.close();
+			libraryWriter.close();
+		}
+	}
+
+	/**
+	 * Repackage to the given destination with nested libraries and split it into the
+	 * layers in the given dist directory.
+	 */
+	private void repackageLayered(File destination, final Libraries libraries,
+			LaunchScript launchScript, File distDir) throws IOException {
+		if (!(this.layout instanceof Layouts.Jar)) {
+			throw new IllegalStateException(
+					"Layers require the JAR layout, not " + this.layout);
+		}
+		if (this.packageIndex) {
+			throw new IllegalStateException(
+					"Layers cannot be combined with a package index");
+		}
+		repackageTo(destination, libraries, launchScript, true, null);
+		if (distDir == null) {
+			distDir = destination.getParentFile();
+		}
+		final Map<String, String> libraryLayers = new HashMap<String, String>();
+		libraries.doWithLibraries(new LibraryCallback() {
+
+			@Override
+			public void library(Library library) throws IOException {
+				String location = Repackager.this.layout
+						.getLibraryDestination(library.getName(), library.getScope());
+				if (location != null) {
+					File file = library.getFile();
+					if (Repackager.this.libraryShrinker != null) {
+						file = Repackager.this.libraryShrinker.getOriginal(file);
+					}
+					libraryLayers.put(location + library.getName(),
+							Repackager.this.layers.getLayer(file));
+				}
+			}
+
+		});
+		new LayeredDistributionWriter(new File(distDir, "layers"), this.layerArchives,
+				this.layers, libraryLayers,
+				((RepackagingLayout) this.layout).getRepackagedClassesLocation())
+						.write(destination);
+	}
+
+	/**
+	 * Repackage to a staging directory of the given dist directory and atomically
+	 * publish it once complete.
+	 */
+	private void publish(File destination, Libraries libraries,
+			LaunchScript launchScript, boolean allInOne, File distDir)
+					throws IOException {
+		DistributionPublisher publisher = new DistributionPublisher(distDir,
+				this.keepReleases);
+		File staging = publisher.stage(
+				isLibraryDirectoryReused(allInOne) ? getLibraryDest() : null);
+		this.librarySeedFailure = publisher.getSeedFailure();
+		boolean published = false;
+		try {
+			if (this.layers != null) {
+				repackageLayered(destination, libraries, launchScript, staging);
+			}
+			else if (this.exploded) {
+				repackageExploded(destination, libraries, staging);
+			}
+			else {
+				repackageTo(destination, libraries, launchScript, allInOne, staging);
+			}
+			publisher.publish(staging);
+			published = true;
+		}
+		finally {
+			if (!published) {
+				// Keep the source that was moved to the staging directory
+				File workingSource = (this.source.equals(destination) ? getBackupFile()
+						: this.source);
+				File staged = new File(staging, workingSource.getName());
+				if (staged.isFile() && !workingSource.exists()) {
+					renameFile(staged, workingSource);
+				}
+				publisher.discard(staging);
+			}
+		}
+	}
+
+	/**
+	 * Return if the library directory of the dist directory is reused by the next build,
+	 * rather than cleaned, deleted in favor of the library pool or not written at all.
+	 */
+	private boolean isLibraryDirectoryReused(boolean allInOne) {
+		return this.layers == null && !allInOne && this.libraryPool == null
+				&& (this.syncLibraryDirectory || this.keepLibraryBuilds > 0);
+	}
+
+	private void repackageTo(File destination, Libraries libraries,
+			LaunchScript launchScript, boolean allInOne, File distDir)
+					throws IOException {
 		File workingSource = this.source;
 		if (this.source.equals(destination)) {
 			workingSource = getBackupFile();
 			workingSource.delete();
 			renameFile(this.source, workingSource);
 		}
+		// The jar and the libraries of a thin jar are written straight to the dist
+		// directory rather than moved or copied there afterwards
+		boolean toDistDir = (distDir != null && distDir.isDirectory());
+		File archive = (toDistDir
+				? new File(distDir, destination.getName()).getAbsoluteFile() : destination);
+		File libraryDirectory = (allInOne ? null : getLibraryDirectory(distDir));
 		destination.delete();
+		archive.delete();
 		try {
+			LibraryDirectoryWriter libraryWriter = (libraryDirectory != null
+					? createLibraryWriter(libraryDirectory, toDistDir, archive) : null);
 			JarFile jarFileSource = new JarFile(workingSource);
 			try {
-				repackage(jarFileSource, destination, libraries, launchScript, allInOne);
-				if (distDir != null && distDir.isDirectory()) {
-					FileUtil.moveFileToDirectory(destination, distDir);
-					if (!allInOne) {
-						String targetPath = this.source.getParent();
-						File srcLibDir = new File((targetPath==null?".":targetPath) + File.separator + getLibraryDest());
-						File destLibDir = new File(distDir.getAbsolutePath() + File.separator + getLibraryDest());
-						if (destLibDir.exists()) {
-							FileUtil.cleanDirectory(destLibDir);
-						}
-						
-						FileUtil.copyDirectory(srcLibDir, destLibDir);
-						FileUtil.deleteDirectory(srcLibDir);
-					}
+				repackage(jarFileSource, archive, libraries, launchScript, allInOne,
+						libraryWriter);
+				if (libraryWriter != null) {
+					libraryWriter.finish();
 				}
 			}
 			finally {
 				jarFileSource.close();
+				if (libraryWriter != null) {
+					libraryWriter.close();
+				}
 			}
 		}
 		finally {
 			try {
 				if (!this.backupSource && !this.source.equals(workingSource)) {
 					deleteFile(workingSource);
-				}else if (distDir != null && distDir.isDirectory()) {
+				}else if (toDistDir) {
 					FileUtil.moveFileToDirectory(workingSource, distDir);
 				}
 			}catch(Exception e) {}
 		}
 	}
 
+	private LibraryDirectoryWriter createLibraryWriter(File libraryDirectory,
+			boolean toDistDir, File archive) throws IOException {
+		LibraryPool pool = (this.libraryPool != null
+				? new LibraryPool(this.libraryPool, archive.getParentFile(),
+						this.libraryLinkMode, this.checksumCache)
+				: null);
+		HashedLibraryDirectory hashedLibraries = (pool == null
+				&& this.keepLibraryBuilds > 0
+						? new HashedLibraryDirectory(libraryDirectory,
+								this.keepLibraryBuilds, this.libraryLinkMode,
+								this.checksumCache)
+						: null);
+		LibraryDirectorySync librarySync = null;
+		if (hashedLibraries != null) {
+			// Hashed libraries are never replaced and are kept for the previous builds
+			LibraryDirectorySync.getStateFile(libraryDirectory).delete();
+		}
+		else if (toDistDir) {
+			HashedLibraryDirectory.getHistoryFile(libraryDirectory).delete();
+			if (pool != null) {
+				// The libraries are in the pool, remove those of an earlier build
+				LibraryDirectorySync.getStateFile(libraryDirectory).delete();
+				if (libraryDirectory.exists()) {
+					FileUtil.deleteDirectory(libraryDirectory);
+				}
+			}
+			else if (this.syncLibraryDirectory) {
+				librarySync = new LibraryDirectorySync(libraryDirectory,
+						this.libraryLinkMode, this.checksumCache);
+			}
+			else {
+				LibraryDirectorySync.getStateFile(libraryDirectory).delete();
+				if (libraryDirectory.exists()) {
+					FileUtil.cleanDirectory(libraryDirectory);
+				}
+			}
+		}
+		return new LibraryDirectoryWriter(libraryDirectory, this.libraryLinkMode,
+				librarySync, pool, hashedLibraries, this.copyThreads);
+	}
+
+	private File getLibraryDirectory(File distDir) {
+		if (distDir != null && distDir.isDirectory()) {
+			return new File(distDir.getAbsoluteFile(), getLibraryDest());
+		}
+		String targetPath = this.source.getParent();
+		return new File((targetPath==null?".":targetPath) + File.separator + getLibraryDest());
+	}
+
 	private LayoutFactory getLayoutFactory() {
 		if (this.layoutFactory != null) {
 			return this.layoutFactory;
@@ -246,6 +700,16 @@ public class Repackager {
 		return new File(this.source.getParentFile(), this.source.getName() + ".original");
 	}
 
+	/**
+	 * Return why the libraries of the published release could not be linked into the
+	 * new release when it was last published, in which case all libraries were written
+	 * again.
+	 * @return the failure or {@code null}
+	 */
+	public IOException getLibrarySeedFailure() {
+		return this.librarySeedFailure;
+	}
+
 	private boolean alreadyRepackaged() throws IOException {
 		JarFile jarFile = new JarFile(this.source);
 		try {
@@ -259,28 +723,18 @@ public class Repackager {
 	}
 
 	private void repackage(JarFile sourceJar, File destination, Libraries libraries,
-			LaunchScript launchScript, boolean allInOne) throws IOException {
-		JarWriter writer = new JarWriter(destination, launchScript);
+			LaunchScript launchScript, boolean allInOne,
+			LibraryDirectoryWriter libraryWriter) throws IOException {
+		JarWriter writer = new JarWriter(destination, launchScript,
+				this.compressionThreads);
+		writer.setChecksumCache(this.checksumCache);
+		writer.setCompressionPolicy(this.compressionPolicy);
 		try {
-			final List<Library> unpackLibraries = new ArrayList<Library>();
-			final List<Library> standardLibraries = new ArrayList<Library>();
-			libraries.doWithLibraries(new LibraryCallback() {
-
-				@Override
-				public void library(Library library) throws IOException {
-					File file = library.getFile();
-					if (isZip(file)) {
-						if (library.isUnpackRequired()) {
-							unpackLibraries.add(library);
-						}
-						else {
-							standardLibraries.add(library);
-						}
-					}
-				}
-
-			});
-			repackage(sourceJar, writer, unpackLibraries, standardLibraries, allInOne);
+			List<Library> unpackLibraries = new ArrayList<Library>();
+			List<Library> standardLibraries = new ArrayList<Library>();
+			collectLibraries(libraries, unpackLibraries, standardLibraries);
+			repackage(sourceJar, writer, unpackLibraries, standardLibraries, allInOne,
+					libraryWriter);
 		}
 		finally {
 			try {
@@ -292,59 +746,167 @@ public class Repackager {
 		}
 	}
 
+	private void collectLibraries(Libraries libraries,
+			final List<Library> unpackLibraries, final List<Library> standardLibraries)
+					throws IOException {
+		libraries.doWithLibraries(new LibraryCallback() {
+
+			@Override
+			public void library(Library library) throws IOException {
+				File file = library.getFile();
+				if (isZip(file)) {
+					if (library.isUnpackRequired()) {
+						unpackLibraries.add(library);
+					}
+					else {
+						standardLibraries.add(library);
+					}
+				}
+			}
+
+		});
+	}
+
 	private void repackage(JarFile sourceJar, JarWriter writer,
-			final List<Library> unpackLibraries, final List<Library> standardLibraries, boolean allInOne)
-					throws IOException { 
+			final List<Library> unpackLibraries, final List<Library> standardLibraries, boolean allInOne,
+			LibraryDirectoryWriter libraryWriter) throws IOException { 
+		PackageIndex index = (this.packageIndex ? createPackageIndex(sourceJar) : null);
     	StringBuilder libJarStr = new StringBuilder();
     	String springBootVersion = null;
 	    if (!allInOne && (!unpackLibraries.isEmpty() || !standardLibraries.isEmpty())) {
 	    	libJarStr.append(" . ");
-	    	String prefix = getLibraryDest() + "/" +"spring-boot-";
+	    	String prefix = "spring-boot-";
 	    	for (Library library: unpackLibraries) {
-	    		String jar = getLibraryDest() + "/" + library.getName();
-	    		libJarStr.append(jar).append(" ");
+	    		String jar = library.getName();
+	    		libJarStr.append(libraryWriter.getPath(library.getFile())).append(" ");
 	    		if (springBootVersion == null && jar.startsWith(prefix)) {
 	    			springBootVersion = jar.substring(jar.lastIndexOf("-")+1, jar.lastIndexOf(".jar"));
 	    		}
 	    	}
 	    	
 	    	for (Library library: standardLibraries) {
-	    		String jar = getLibraryDest() + "/" + library.getName();
-	    		libJarStr.append(jar).append(" ");
+	    		String jar = library.getName();
+	    		libJarStr.append(libraryWriter.getPath(library.getFile())).append(" ");
 	    		if (springBootVersion == null && jar.startsWith(prefix)) {
 	    			springBootVersion = jar.substring(jar.lastIndexOf("-")+1, jar.lastIndexOf(".jar"));
 	    		}
 	    	} 
 	    }
+	    // With a package index the launcher builds the class path itself
+	    if (index != null) {
+	    	libJarStr.setLength(0);
+	    }
 	     
 		writer.writeManifest(buildManifest(sourceJar, libJarStr.toString(), springBootVersion));
 		 
+		if (allInOne && this.prefetchThreads > 0) {
+			prefetchNestedLibraries(unpackLibraries, standardLibraries, writer);
+		}
 		Set<String> seen = new HashSet<String>();
 		if (allInOne) {
-			writeNestedLibraries(unpackLibraries, seen, writer);
+			writeNestedLibraries(unpackLibraries, seen, writer, index);
 		}else {
-			copyNestedLibraries(unpackLibraries, this.source.getParent(), seen);
+			copyNestedLibraries(unpackLibraries, libraryWriter, seen, index);
 		}
 		
 		if (this.layout instanceof RepackagingLayout) {
-			writer.writeEntries(sourceJar, new RenamingEntryTransformer(
-					((RepackagingLayout) this.layout).getRepackagedClassesLocation()));
+			EntryTransformer transformer = new RenamingEntryTransformer(
+					((RepackagingLayout) this.layout).getRepackagedClassesLocation());
+			if (index != null) {
+				transformer = new IndexingEntryTransformer(transformer, index,
+						((RepackagingLayout) this.layout).getRepackagedClassesLocation());
+			}
+			writer.writeEntries(sourceJar, transformer);
 		} else {
 			writer.writeEntries(sourceJar);
 		}
 		
 		if (allInOne) {
-			writeNestedLibraries(standardLibraries, seen, writer);
+			writeNestedLibraries(standardLibraries, seen, writer, index);
 		}else {
-			copyNestedLibraries(standardLibraries, this.source.getParent(), seen);
+			copyNestedLibraries(standardLibraries, libraryWriter, seen, index);
 		}
 		 
+		if (index != null) {
+			writer.writeEntry(PackageIndexLauncher.INDEX_LOCATION,
+					new ByteArrayInputStream(index.toByteArray()));
+			if (index.getServiceIndex() != null) {
+				index.getServiceIndex().write(writer);
+			}
+		}
 		writeLoaderClasses(writer);
+		if (index != null) {
+			writeLauncherClasses(writer);
+		}
 		
 	}
 
+	private PackageIndex createPackageIndex(JarFile sourceJar) throws IOException {
+		if (!(this.layout instanceof Layouts.Jar)) {
+			throw new IllegalStateException(
+					"A package index requires the JAR layout, not " + this.layout);
+		}
+		PackageIndex index = new PackageIndex();
+		// The classes come first on the class path, ahead of the libraries
+		String classesLocation = ((RepackagingLayout) this.layout)
+				.getRepackagedClassesLocation();
+		index.addRoot(classesLocation);
+		if (this.serviceIndex) {
+			index.setServiceIndex(createServiceIndex(sourceJar, classesLocation));
+		}
+		return index;
+	}
+
+	private ServiceIndex createServiceIndex(JarFile sourceJar, String classesLocation)
+			throws IOException {
+		ServiceIndex serviceIndex = new ServiceIndex();
+		// Entries that stay in the META-INF of the archive are found by the parent class
+		// loader, only those moved to the classes are on the class path of the launcher
+		EntryTransformer transformer = new RenamingEntryTransformer(classesLocation);
+		Enumeration<JarEntry> entries = sourceJar.entries();
+		while (entries.hasMoreElements()) {
+			JarEntry entry = entries.nextElement();
+			JarEntry transformedEntry = transformer.transform(entry);
+			if (transformedEntry != null
+					&& transformedEntry.getName().startsWith(classesLocation)) {
+				serviceIndex.addEntry(sourceJar, entry, transformedEntry.getName()
+						.substring(classesLocation.length()));
+			}
+		}
+		return serviceIndex;
+	}
+
+	private void writeLauncherClasses(JarWriter writer) throws IOException {
+		for (String name : PackageIndex.LAUNCHER_CLASSES) {
+			InputStream inputStream = getClass().getClassLoader()
+					.getResourceAsStream(name);
+			if (inputStream == null) {
+				throw new IllegalStateException("Unable to find launcher class " + name);
+			}
+			writer.writeEntry(name, inputStream);
+		}
+	}
+
+	private void prefetchNestedLibraries(List<Library> unpackLibraries,
+			List<Library> standardLibraries, JarWriter writer) {
+		List<Library> libraries = new ArrayList<Library>();
+		for (Library library : unpackLibraries) {
+			if (this.layout.getLibraryDestination(library.getName(),
+					library.getScope()) != null) {
+				libraries.add(library);
+			}
+		}
+		for (Library library : standardLibraries) {
+			if (this.layout.getLibraryDestination(library.getName(),
+					library.getScope()) != null) {
+				libraries.add(library);
+			}
+		}
+		writer.prefetchNestedLibraries(libraries, this.prefetchThreads);
+	}
+
 	private void writeNestedLibraries(List<Library> libraries, Set<String> alreadySeen,
-			JarWriter writer) throws IOException {
+			JarWriter writer, PackageIndex index) throws IOException {
 		for (Library library : libraries) {
 			String destination = Repackager.this.layout
 					.getLibraryDestination(library.getName(), library.getScope());
@@ -354,19 +916,27 @@ public class Repackager {
 							"Duplicate library " + library.getName());
 				}
 				writer.writeNestedLibrary(destination, library);
+				if (index != null) {
+					index.addLibrary(destination + library.getName(), library.getFile());
+				}
 			}
 		}
 	}
 	
-	private void copyNestedLibraries(List<Library> libraries, String targetPath, Set<String> alreadySeen) throws IOException { 
-		File targetDir = new File((targetPath==null?".":targetPath) + File.separator + getLibraryDest());
+	private void copyNestedLibraries(List<Library> libraries,
+			LibraryDirectoryWriter libraryWriter, Set<String> alreadySeen,
+			PackageIndex index) throws IOException { 
 		for (Library library : libraries) {
 			if (!alreadySeen.add(getLibraryDest() + "/" + library.getName())) {
 				throw new IllegalStateException("Duplicate library " + library.getName());
 			}
 			 
-			//copy lib-jar to lib-dir
-			FileUtil.copyFileToDirectory(library.getFile(), targetDir);
+			//copy or link lib-jar to lib-dir, unless it is already there
+			libraryWriter.write(library.getFile());
+			if (index != null) {
+				index.addLibrary(libraryWriter.getPath(library.getFile()),
+						library.getFile());
+			}
 		}
 	}
 	
@@ -384,6 +954,20 @@ public class Repackager {
 	}
 
 	private boolean isZip(File file) {
+		if (this.checksumCache != null) {
+			return this.checksumCache.isZip(file, new LibraryChecksumCache.ZipCheck() {
+
+				@Override
+				public boolean isZip(File file) {
+					return hasZipHeader(file);
+				}
+
+			});
+		}
+		return hasZipHeader(file);
+	}
+
+	private boolean hasZipHeader(File file) {
 		try {
 			FileInputStream fileInputStream = new FileInputStream(file);
 			try {
@@ -414,14 +998,9 @@ public class Repackager {
 			manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
 		}
 		manifest = new Manifest(manifest);
-		String startClass = this.mainClass;
-		if (startClass == null) {
-			startClass = manifest.getMainAttributes().getValue(MAIN_CLASS_ATTRIBUTE);
-		}
-		if (startClass == null) {
-			startClass = findMainMethodWithTimeoutWarning(source);
-		}
-		String launcherClassName = this.layout.getLauncherClassName();
+		String startClass = getStartClass(source, manifest);
+		String launcherClassName = (this.packageIndex ? PackageIndex.LAUNCHER_CLASS_NAME
+				: this.layout.getLauncherClassName());
 		if (launcherClassName != null) {
 			manifest.getMainAttributes().putValue(MAIN_CLASS_ATTRIBUTE,
 					launcherClassName);
@@ -451,6 +1030,17 @@ public class Repackager {
 		return manifest;
 	}
 
+	private String getStartClass(JarFile source, Manifest manifest) throws IOException {
+		String startClass = this.mainClass;
+		if (startClass == null) {
+			startClass = manifest.getMainAttributes().getValue(MAIN_CLASS_ATTRIBUTE);
+		}
+		if (startClass == null) {
+			startClass = findMainMethodWithTimeoutWarning(source);
+		}
+		return startClass;
+	}
+
 	private String findMainMethodWithTimeoutWarning(JarFile source) throws IOException {
 		long startTime = System.currentTimeMillis();
 		String mainMethod = findMainMethod(source);
@@ -496,6 +1086,36 @@ public class Repackager {
 
 	}
 
+	/**
+	 * An {@code EntryTransformer} that adds the transformed entries in the classes
+	 * location to a {@link PackageIndex}.
+	 */
+	private static final class IndexingEntryTransformer implements EntryTransformer {
+
+		private final EntryTransformer delegate;
+
+		private final PackageIndex index;
+
+		private final String classesLocation;
+
+		private IndexingEntryTransformer(EntryTransformer delegate, PackageIndex index,
+				String classesLocation) {
+			this.delegate = delegate;
+			this.index = index;
+			this.classesLocation = classesLocation;
+		}
+
+		@Override
+		public JarEntry transform(JarEntry entry) {
+			JarEntry transformedEntry = this.delegate.transform(entry);
+			if (transformedEntry != null) {
+				this.index.addEntry(this.classesLocation, transformedEntry.getName());
+			}
+			return transformedEntry;
+		}
+
+	}
+
 	/**
 	 * An {@code EntryTransformer} that renames entries by applying a prefix.
 	 */
@@ -0,0 +1,170 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.jsecode.springboot.loader.PackageIndexClassLoader;
+import com.jsecode.springboot.loader.PackageIndexLauncher;
+
+/**
+ * Index of the {@code META-INF/spring.factories} and {@code META-INF/services} files of
+ * the classes directory and the libraries of a repackaged archive, merged at build time
+ * so that the {@link PackageIndexLauncher} can serve each of them as a single resource
+ * instead of searching every jar. The factories of a key are merged like the
+ * {@code PropertiesMergingResourceTransformer} does, in class path order, and the
+ * providers of a service are concatenated in class path order, both without duplicates.
+ */
+class ServiceIndex {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private final Map<String, Map<String, Set<String>>> factories = new LinkedHashMap<String, Map<String, Set<String>>>();
+
+	private final Map<String, Set<String>> services = new LinkedHashMap<String, Set<String>>();
+
+	/**
+	 * Add an entry of a root of the class path, which is added after the entries of the
+	 * roots that come before it on the class path. Entries other than
+	 * {@code META-INF/spring.factories} and {@code META-INF/services} files are ignored.
+	 * @param jarFile the jar file that contains the entry
+	 * @param entry the entry
+	 * @param name the name of the entry, relative to its root
+	 * @throws IOException if the entry cannot be read
+	 */
+	void addEntry(JarFile jarFile, JarEntry entry, String name) throws IOException {
+		if (entry.isDirectory() || !PackageIndexClassLoader.isServiceResource(name)) {
+			return;
+		}
+		InputStream inputStream = jarFile.getInputStream(entry);
+		try {
+			if (name.equals(PackageIndexClassLoader.SPRING_FACTORIES_LOCATION)) {
+				addFactories(name, inputStream);
+			}
+			else {
+				addProviders(name, inputStream);
+			}
+		}
+		catch (IOException ex) {
+			throw new IOException("Unable to read " + entry.getName() + " of "
+					+ jarFile.getName() + ": " + ex.getMessage(), ex);
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Write the merged resources and the list of their names to the given writer.
+	 * @param writer the writer of the archive
+	 * @throws IOException if an entry cannot be written
+	 */
+	void write(JarWriter writer) throws IOException {
+		StringBuilder index = new StringBuilder();
+		index.append(PackageIndexLauncher.SERVICE_INDEX_HEADER).append('\n');
+		for (Map.Entry<String, Map<String, Set<String>>> resource : this.factories
+				.entrySet()) {
+			StringBuilder content = new StringBuilder();
+			for (Map.Entry<String, Set<String>> factory : resource.getValue()
+					.entrySet()) {
+				content.append(escape(factory.getKey())).append('=')
+						.append(escape(join(factory.getValue(), ","))).append('\n');
+			}
+			writeResource(writer, resource.getKey(),
+					content.toString().getBytes(ISO_8859_1));
+			index.append(resource.getKey()).append('\n');
+		}
+		for (Map.Entry<String, Set<String>> resource : this.services.entrySet()) {
+			String content = join(resource.getValue(), "\n");
+			writeResource(writer, resource.getKey(),
+					(content.length() > 0 ? content + "\n" : content).getBytes(UTF_8));
+			index.append(resource.getKey()).append('\n');
+		}
+		writer.writeEntry(PackageIndexLauncher.SERVICE_INDEX_LOCATION,
+				new ByteArrayInputStream(index.toString().getBytes(UTF_8)));
+	}
+
+	private void addFactories(String name, InputStream inputStream) throws IOException {
+		Properties properties = new Properties();
+		properties.load(inputStream);
+		Map<String, Set<String>> merged = this.factories.get(name);
+		if (merged == null) {
+			merged = new TreeMap<String, Set<String>>();
+			this.factories.put(name, merged);
+		}
+		for (String key : properties.stringPropertyNames()) {
+			Set<String> values = merged.get(key);
+			if (values == null) {
+				values = new LinkedHashSet<String>();
+				merged.put(key, values);
+			}
+			for (String value : properties.getProperty(key).split(",")) {
+				if (value.trim().length() > 0) {
+					values.add(value.trim());
+				}
+			}
+		}
+	}
+
+	private void addProviders(String name, InputStream inputStream) throws IOException {
+		Set<String> providers = this.services.get(name);
+		if (providers == null) {
+			providers = new LinkedHashSet<String>();
+			this.services.put(name, providers);
+		}
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(inputStream, UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int comment = line.indexOf('#');
+			String provider = (comment != -1 ? line.substring(0, comment) : line).trim();
+			if (provider.length() > 0) {
+				providers.add(provider);
+			}
+		}
+	}
+
+	private void writeResource(JarWriter writer, String name, byte[] content)
+			throws IOException {
+		writer.writeEntry(PackageIndexLauncher.SERVICES_LOCATION + name,
+				new ByteArrayInputStream(content));
+	}
+
+	private String join(Set<String> values, String separator) {
+		StringBuilder joined = new StringBuilder();
+		for (String value : values) {
+			joined.append(joined.length() > 0 ? separator : "").append(value);
+		}
+		return joined.toString();
+	}
+
+	private String escape(String value) {
+		StringBuilder escaped = new StringBuilder();
+		for (char c : value.toCharArray()) {
+			if (c == '\\' || c == '=' || c == ':' || c == '#' || c == '!' || c == ' ') {
+				escaped.append('\\').append(c);
+			}
+			else if (c < 0x20 || c > 0x7e) {
+				escaped.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+}
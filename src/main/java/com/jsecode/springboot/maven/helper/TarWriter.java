@@ -0,0 +1,220 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes a reproducible tar archive. Every entry has the same owner, permissions and
+ * modification time, so the archive, and therefore its digest, only depends on the
+ * names and content of the entries and the order in which they are written. The parent
+ * directories of an entry are written ahead of it. Names that do not fit a ustar header
+ * are written in a pax extended header.
+ */
+class TarWriter implements Closeable {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int BLOCK_SIZE = 512;
+
+	private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+
+	private static final int NAME_LENGTH = 100;
+
+	private static final int PREFIX_LENGTH = 155;
+
+	private static final long MAX_SIZE = 077777777777L;
+
+	/**
+	 * The modification time of all entries, 1980-01-01T00:00:00Z.
+	 */
+	private static final long MODIFIED_TIME = 315532800L;
+
+	private static final byte FILE_TYPE = '0';
+
+	private static final byte DIRECTORY_TYPE = '5';
+
+	private static final byte PAX_HEADER_TYPE = 'x';
+
+	private final OutputStream outputStream;
+
+	private final Set<String> directories = new HashSet<String>();
+
+	private long written;
+
+	private boolean closed;
+
+	/**
+	 * Create a new {@link TarWriter} instance.
+	 * @param outputStream the stream to write the archive to
+	 */
+	TarWriter(OutputStream outputStream) {
+		this.outputStream = outputStream;
+	}
+
+	/**
+	 * Write a file entry.
+	 * @param name the name of the entry, using {@code /} as separator
+	 * @param size the size of the content
+	 * @param inputStream the content, which is read but not closed
+	 * @throws IOException if the entry cannot be written or the content does not have
+	 * the given size
+	 */
+	void writeEntry(String name, long size, InputStream inputStream) throws IOException {
+		writeParentDirectories(name);
+		writeHeader(name, size, FILE_TYPE, 0644);
+		byte[] buffer = new byte[32 * 1024];
+		long remaining = size;
+		while (remaining > 0) {
+			int bytesRead = inputStream.read(buffer, 0,
+					(int) Math.min(buffer.length, remaining));
+			if (bytesRead == -1) {
+				throw new IOException("Unexpected end of content of " + name);
+			}
+			write(buffer, 0, bytesRead);
+			remaining -= bytesRead;
+		}
+		if (inputStream.read() != -1) {
+			throw new IOException("Content of " + name + " is larger than " + size);
+		}
+		pad();
+	}
+
+	/**
+	 * Write the end of the archive and close the underlying stream.
+	 * @throws IOException if the archive cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			write(new byte[2 * BLOCK_SIZE], 0, 2 * BLOCK_SIZE);
+			int remainder = (int) (this.written % RECORD_SIZE);
+			if (remainder > 0) {
+				write(new byte[RECORD_SIZE - remainder], 0, RECORD_SIZE - remainder);
+			}
+		}
+		finally {
+			this.outputStream.close();
+		}
+	}
+
+	private void writeParentDirectories(String name) throws IOException {
+		int slash = name.indexOf('/');
+		while (slash != -1 && slash < name.length() - 1) {
+			String directory = name.substring(0, slash + 1);
+			if (this.directories.add(directory)) {
+				writeHeader(directory, 0, DIRECTORY_TYPE, 0755);
+			}
+			slash = name.indexOf('/', slash + 1);
+		}
+	}
+
+	private void writeHeader(String name, long size, byte type, int mode)
+			throws IOException {
+		if (size > MAX_SIZE) {
+			throw new IOException("Entry " + name + " is too large for a tar archive");
+		}
+		byte[] nameBytes = name.getBytes(UTF_8);
+		byte[] prefixBytes = new byte[0];
+		if (nameBytes.length > NAME_LENGTH) {
+			int slash = findPrefixSplit(name);
+			if (slash != -1) {
+				prefixBytes = name.substring(0, slash).getBytes(UTF_8);
+				nameBytes = name.substring(slash + 1).getBytes(UTF_8);
+			}
+			else {
+				writePaxHeader(name);
+				nameBytes = truncate(nameBytes, NAME_LENGTH);
+			}
+		}
+		byte[] header = new byte[BLOCK_SIZE];
+		System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+		putOctal(header, 100, 8, mode);
+		putOctal(header, 108, 8, 0);
+		putOctal(header, 116, 8, 0);
+		putOctal(header, 124, 12, size);
+		putOctal(header, 136, 12, MODIFIED_TIME);
+		header[156] = type;
+		putString(header, 257, "ustar\0");
+		putString(header, 263, "00");
+		System.arraycopy(prefixBytes, 0, header, 345, prefixBytes.length);
+		for (int i = 148; i < 156; i++) {
+			header[i] = ' ';
+		}
+		long checksum = 0;
+		for (byte b : header) {
+			checksum += b & 0xFF;
+		}
+		putOctal(header, 148, 7, checksum);
+		write(header, 0, header.length);
+	}
+
+	private int findPrefixSplit(String name) {
+		int slash = name.lastIndexOf('/', name.length() - 2);
+		while (slash > 0) {
+			if (name.substring(0, slash).getBytes(UTF_8).length <= PREFIX_LENGTH
+					&& name.substring(slash + 1).getBytes(UTF_8).length <= NAME_LENGTH) {
+				return slash;
+			}
+			slash = name.lastIndexOf('/', slash - 1);
+		}
+		return -1;
+	}
+
+	private void writePaxHeader(String name) throws IOException {
+		String record = " path=" + name + "\n";
+		int length = record.getBytes(UTF_8).length;
+		int digits = String.valueOf(length).length();
+		// The length of a record includes its own digits
+		while (String.valueOf(length + digits).length() != digits) {
+			digits++;
+		}
+		byte[] content = ((length + digits) + record).getBytes(UTF_8);
+		writeHeader("PaxHeaders/" + Math.abs(name.hashCode()), content.length,
+				PAX_HEADER_TYPE, 0644);
+		write(content, 0, content.length);
+		pad();
+	}
+
+	private byte[] truncate(byte[] bytes, int length) {
+		byte[] truncated = new byte[length];
+		System.arraycopy(bytes, 0, truncated, 0, length);
+		return truncated;
+	}
+
+	private void putOctal(byte[] header, int offset, int length, long value) {
+		String octal = Long.toOctalString(value);
+		StringBuilder field = new StringBuilder();
+		for (int i = octal.length(); i < length - 1; i++) {
+			field.append('0');
+		}
+		putString(header, offset, field.append(octal).toString());
+		header[offset + length - 1] = 0;
+	}
+
+	private void putString(byte[] header, int offset, String value) {
+		byte[] bytes = value.getBytes(UTF_8);
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+
+	private void pad() throws IOException {
+		int remainder = (int) (this.written % BLOCK_SIZE);
+		if (remainder > 0) {
+			write(new byte[BLOCK_SIZE - remainder], 0, BLOCK_SIZE - remainder);
+		}
+	}
+
+	private void write(byte[] bytes, int offset, int length) throws IOException {
+		this.outputStream.write(bytes, offset, length);
+		this.written += length;
+	}
+
+}
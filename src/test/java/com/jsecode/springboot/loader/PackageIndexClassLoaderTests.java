@@ -0,0 +1,224 @@
+package com.jsecode.springboot.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PackageIndexClassLoader}.
+ */
+public class PackageIndexClassLoaderTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void classIsLoadedFromIndexedRoot() throws Exception {
+		URL first = createJar("first.jar", "other/Other.class", createClass("other/Other"));
+		URL second = createJar("second.jar", "app/Application.class",
+				createClass("app/Application"));
+		Map<String, List<URL>> index = new LinkedHashMap<String, List<URL>>();
+		index.put("other", Arrays.asList(first));
+		index.put("app", Arrays.asList(second));
+		PackageIndexClassLoader classLoader = createClassLoader(index, first, second);
+		Class<?> type = classLoader.loadClass("app.Application");
+		assertEquals(classLoader, type.getClassLoader());
+		assertEquals(second, type.getProtectionDomain().getCodeSource().getLocation());
+		assertNotNull(type.getPackage());
+	}
+
+	@Test
+	public void classInPackageThatIsNotIndexedIsNotFound() throws Exception {
+		URL root = createJar("first.jar", "app/Application.class",
+				createClass("app/Application"));
+		Map<String, List<URL>> index = new LinkedHashMap<String, List<URL>>();
+		PackageIndexClassLoader classLoader = createClassLoader(index, root);
+		try {
+			classLoader.loadClass("app.Application");
+			fail("Class of a package that is not indexed loaded");
+		}
+		catch (ClassNotFoundException ex) {
+			// Expected
+		}
+		assertNull(classLoader.getResource("app/Application.class"));
+	}
+
+	@Test
+	public void resourceIsOnlyLookedUpInIndexedRoots() throws Exception {
+		URL first = createJar("first.jar", "app/message.txt", "first".getBytes());
+		URL second = createJar("second.jar", "app/message.txt", "second".getBytes());
+		Map<String, List<URL>> index = new LinkedHashMap<String, List<URL>>();
+		index.put("app", Arrays.asList(second));
+		PackageIndexClassLoader classLoader = createClassLoader(index, first, second);
+		assertEquals("second", read(classLoader.getResource("app/message.txt")));
+		assertNull(classLoader.getResource("app/missing.txt"));
+		assertNull(classLoader.getResource("other/message.txt"));
+	}
+
+	@Test
+	public void rootAndMetaInfResourcesAreLookedUpInAllRoots() throws Exception {
+		URL first = createJar("first.jar", "first.txt", "first".getBytes());
+		URL second = createJar("second.jar", "META-INF/second.txt",
+				"second".getBytes());
+		Map<String, List<URL>> index = new LinkedHashMap<String, List<URL>>();
+		PackageIndexClassLoader classLoader = createClassLoader(index, first, second);
+		assertEquals("first", read(classLoader.getResource("first.txt")));
+		assertEquals("second", read(classLoader.getResource("META-INF/second.txt")));
+	}
+
+	@Test
+	public void findResourcesFollowsIndexOrder() throws Exception {
+		URL first = createJar("first.jar", "app/message.txt", "first".getBytes());
+		URL second = createJar("second.jar", "app/message.txt", "second".getBytes());
+		URL third = createJar("third.jar", "app/message.txt", "third".getBytes());
+		Map<String, List<URL>> index = new LinkedHashMap<String, List<URL>>();
+		index.put("app", Arrays.asList(first, third));
+		PackageIndexClassLoader classLoader = createClassLoader(index, first, second,
+				third);
+		List<String> contents = new ArrayList<String>();
+		for (URL url : Collections.list(classLoader.findResources("app/message.txt"))) {
+			contents.add(read(url));
+		}
+		assertEquals(Arrays.asList("first", "third"), contents);
+	}
+
+	@Test
+	public void versionedEntriesOfMultiReleaseJarAreUsed() throws Exception {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("META-INF/MANIFEST.MF",
+				"Manifest-Version: 1.0\r\nMulti-Release: true\r\n\r\n".getBytes());
+		entries.put("app/message.txt", "base".getBytes());
+		entries.put("META-INF/versions/9/app/message.txt", "versioned".getBytes());
+		entries.put("META-INF/versions/9/app/Versioned.class",
+				createClass("app/Versioned"));
+		URL root = writeJar(new File(this.temporaryFolder.getRoot(), "release.jar"),
+				entries).toURI().toURL();
+		Map<String, List<URL>> index = new LinkedHashMap<String, List<URL>>();
+		index.put("app", Arrays.asList(root));
+		PackageIndexClassLoader classLoader = createClassLoader(index, root);
+		if (System.getProperty("java.specification.version").startsWith("1.")) {
+			assertEquals("base", read(classLoader.getResource("app/message.txt")));
+		}
+		else {
+			assertEquals("versioned", read(classLoader.getResource("app/message.txt")));
+			assertEquals("app.Versioned",
+					classLoader.loadClass("app.Versioned").getName());
+		}
+	}
+
+	@Test
+	public void serviceResourcesAreServedFromServiceIndex() throws Exception {
+		URL root = createJar("first.jar", "META-INF/services/app.Service",
+				"app.Implementation".getBytes());
+		URL merged = createJar("merged.jar", "META-INF/spring.factories",
+				"app.Factory=app.Implementation".getBytes());
+		Map<String, URL> services = new LinkedHashMap<String, URL>();
+		services.put(PackageIndexClassLoader.SPRING_FACTORIES_LOCATION,
+				new URL("jar:" + merged + "!/META-INF/spring.factories"));
+		PackageIndexClassLoader classLoader = new PackageIndexClassLoader(
+				new URL[] { root }, new LinkedHashMap<String, List<URL>>(), services,
+				null);
+		assertEquals("app.Factory=app.Implementation",
+				read(classLoader.getResource("META-INF/spring.factories")));
+		assertEquals(1, Collections
+				.list(classLoader.getResources("META-INF/spring.factories")).size());
+		// Not listed in the service index, so not searched for in the jars
+		assertNull(classLoader.getResource("META-INF/services/app.Service"));
+	}
+
+	private PackageIndexClassLoader createClassLoader(Map<String, List<URL>> index,
+			URL... urls) {
+		return new PackageIndexClassLoader(urls, index, null);
+	}
+
+	private URL createJar(String name, String entryName, byte[] content)
+			throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(entryName, content);
+		return writeJar(new File(this.temporaryFolder.getRoot(), name), entries).toURI()
+				.toURL();
+	}
+
+	static File writeJar(File file, Map<String, byte[]> entries) throws IOException {
+		JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(file));
+		try {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				outputStream.putNextEntry(new JarEntry(entry.getKey()));
+				outputStream.write(entry.getValue());
+				outputStream.closeEntry();
+			}
+		}
+		finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Create the class file of an empty public class.
+	 */
+	static byte[] createClass(String name) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(content);
+		output.writeInt(0xCAFEBABE);
+		output.writeShort(0);
+		output.writeShort(50);
+		output.writeShort(5);
+		output.writeByte(1);
+		output.writeUTF(name);
+		output.writeByte(1);
+		output.writeUTF("java/lang/Object");
+		output.writeByte(7);
+		output.writeShort(1);
+		output.writeByte(7);
+		output.writeShort(2);
+		output.writeShort(0x21);
+		output.writeShort(3);
+		output.writeShort(4);
+		output.writeShort(0);
+		output.writeShort(0);
+		output.writeShort(0);
+		output.writeShort(0);
+		output.close();
+		return content.toByteArray();
+	}
+
+	static String read(URL url) throws IOException {
+		assertNotNull(url);
+		InputStream inputStream = url.openStream();
+		try {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				content.write(buffer, 0, bytesRead);
+			}
+			return new String(content.toByteArray());
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+package com.jsecode.springboot.loader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PackageIndexLauncher}.
+ */
+public class PackageIndexLauncherTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void classLoaderHasRootsOfIndexInOrder() throws Exception {
+		File library = new File(this.temporaryFolder.getRoot(), "lib/library.jar");
+		library.getParentFile().mkdirs();
+		createJar(library, "app/Application.class",
+				PackageIndexClassLoaderTests.createClass("app/Application"));
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(PackageIndexLauncher.INDEX_LOCATION,
+				(PackageIndexLauncher.INDEX_HEADER + "\n\nBOOT-INF/classes/\nbase\n\n"
+						+ "lib/library.jar\napp\napp/sub\n\n"
+						+ "BOOT-INF/lib/nested.jar\napp\n").getBytes("UTF-8"));
+		entries.put("BOOT-INF/classes/", new byte[0]);
+		entries.put("BOOT-INF/lib/nested.jar", new byte[0]);
+		File archive = writeArchive(entries, null);
+		PackageIndexClassLoader classLoader = createClassLoader(archive);
+		URL archiveUrl = archive.toURI().toURL();
+		assertEquals(Arrays.asList(new URL("jar:" + archiveUrl + "!/BOOT-INF/classes!/"),
+				library.toURI().toURL(),
+				new URL("jar:" + archiveUrl + "!/BOOT-INF/lib/nested.jar!/")),
+				Arrays.asList(classLoader.getURLs()));
+		Class<?> type = classLoader.loadClass("app.Application");
+		assertEquals(library.toURI().toURL(),
+				type.getProtectionDomain().getCodeSource().getLocation());
+	}
+
+	@Test
+	public void nestedJarMarkedForUnpackingIsUnpacked() throws Exception {
+		File nested = new File(this.temporaryFolder.getRoot(), "nested.jar");
+		createJar(nested, "app/Application.class",
+				PackageIndexClassLoaderTests.createClass("app/Application"));
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(PackageIndexLauncher.INDEX_LOCATION,
+				(PackageIndexLauncher.INDEX_HEADER + "\n\nBOOT-INF/lib/nested.jar\napp\n")
+						.getBytes("UTF-8"));
+		entries.put("BOOT-INF/lib/nested.jar", read(nested));
+		String hash = "test-" + System.nanoTime();
+		File archive = writeArchive(entries, "UNPACK:" + hash);
+		File directory = new File(new File(System.getProperty("java.io.tmpdir"),
+				"spring-boot-libs"), hash);
+		try {
+			PackageIndexClassLoader classLoader = createClassLoader(archive);
+			File unpacked = new File(directory, "nested.jar");
+			assertTrue(unpacked.isFile());
+			assertEquals(Arrays.asList(unpacked.toURI().toURL()),
+					Arrays.asList(classLoader.getURLs()));
+			assertEquals(classLoader,
+					classLoader.loadClass("app.Application").getClassLoader());
+		}
+		finally {
+			new File(directory, "nested.jar").delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void serviceResourcesAreServedFromMergedDirectory() throws Exception {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(PackageIndexLauncher.INDEX_LOCATION,
+				(PackageIndexLauncher.INDEX_HEADER + "\n").getBytes("UTF-8"));
+		entries.put(PackageIndexLauncher.SERVICE_INDEX_LOCATION,
+				(PackageIndexLauncher.SERVICE_INDEX_HEADER
+						+ "\nMETA-INF/spring.factories\n").getBytes("UTF-8"));
+		entries.put(PackageIndexLauncher.SERVICES_LOCATION, new byte[0]);
+		entries.put(PackageIndexLauncher.SERVICES_LOCATION + "META-INF/spring.factories",
+				"app.Factory=app.Implementation".getBytes());
+		File archive = writeArchive(entries, null);
+		PackageIndexClassLoader classLoader = createClassLoader(archive);
+		assertEquals(
+				new URL("jar:" + archive.toURI().toURL()
+						+ "!/BOOT-INF/services!/META-INF/spring.factories"),
+				classLoader.findResource("META-INF/spring.factories"));
+		assertEquals(null, classLoader.findResource("META-INF/services/app.Service"));
+	}
+
+	@Test
+	public void archiveWithoutIndexIsRejected() throws Exception {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("BOOT-INF/classes/", new byte[0]);
+		assertRejected(writeArchive(entries, null), "No package index");
+	}
+
+	@Test
+	public void indexWithUnsupportedVersionIsRejected() throws Exception {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(PackageIndexLauncher.INDEX_LOCATION,
+				"PackageIndex-Version: 2.0\n".getBytes("UTF-8"));
+		assertRejected(writeArchive(entries, null), "Unsupported package index");
+	}
+
+	private void assertRejected(File archive, String message) throws IOException {
+		try {
+			createClassLoader(archive);
+			fail("Archive with an invalid index accepted");
+		}
+		catch (IllegalStateException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().startsWith(message));
+		}
+	}
+
+	private PackageIndexClassLoader createClassLoader(File archive) throws IOException {
+		JarFile jarFile = new JarFile(archive);
+		try {
+			return new PackageIndexLauncher().createClassLoader(archive, jarFile, null);
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	private void createJar(File file, String name, byte[] content) throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(name, content);
+		PackageIndexClassLoaderTests.writeJar(file, entries);
+	}
+
+	/**
+	 * Write an archive whose {@code .jar} entries have the given comment.
+	 */
+	private File writeArchive(Map<String, byte[]> entries, String libraryComment)
+			throws IOException {
+		File archive = new File(this.temporaryFolder.getRoot(), "app.jar");
+		JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(archive));
+		try {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				JarEntry jarEntry = new JarEntry(entry.getKey());
+				if (entry.getKey().endsWith(".jar")) {
+					jarEntry.setComment(libraryComment);
+				}
+				outputStream.putNextEntry(jarEntry);
+				outputStream.write(entry.getValue());
+				outputStream.closeEntry();
+			}
+		}
+		finally {
+			outputStream.close();
+		}
+		return archive;
+	}
+
+	private byte[] read(File file) throws IOException {
+		return Files.readAllBytes(file.toPath());
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ArchiveDelta}.
+ */
+public class ArchiveDeltaTests {
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void applyReproducesArchive() throws IOException {
+		Map<String, byte[]> entries = createEntries(10);
+		File base = writeJar(this.temporaryFolder.newFile("base.jar"), entries);
+		entries.put("entry-3", "changed".getBytes());
+		entries.remove("entry-5");
+		entries.put("added", "added".getBytes());
+		File archive = writeJar(this.temporaryFolder.newFile("archive.jar"), entries);
+		ArchiveDelta delta = ArchiveDelta.create(archive,
+				ArchiveDelta.getSegmentHashes(base));
+		assertNotNull(delta);
+		assertTrue(delta.getLiteralSize() < archive.length() / 2);
+		ByteArrayOutputStream literals = new ByteArrayOutputStream();
+		delta.writeLiterals(archive, literals);
+		assertEquals(delta.getLiteralSize(), literals.size());
+		File target = this.temporaryFolder.newFile("target.jar");
+		ArchiveDelta.apply(base, delta.getOperations(),
+				new ByteArrayInputStream(literals.toByteArray()), target);
+		assertArrayEquals(Files.readAllBytes(archive.toPath()),
+				Files.readAllBytes(target.toPath()));
+	}
+
+	@Test(expected = IOException.class)
+	public void applyToOtherBaseFails() throws IOException {
+		Map<String, byte[]> entries = createEntries(10);
+		File base = writeJar(this.temporaryFolder.newFile("base.jar"), entries);
+		entries.put("added", "added".getBytes());
+		File archive = writeJar(this.temporaryFolder.newFile("archive.jar"), entries);
+		ArchiveDelta delta = ArchiveDelta.create(archive,
+				ArchiveDelta.getSegmentHashes(base));
+		ByteArrayOutputStream literals = new ByteArrayOutputStream();
+		delta.writeLiterals(archive, literals);
+		File otherBase = writeJar(this.temporaryFolder.newFile("other.jar"),
+				createEntries(3));
+		ArchiveDelta.apply(otherBase, delta.getOperations(),
+				new ByteArrayInputStream(literals.toByteArray()),
+				this.temporaryFolder.newFile("target.jar"));
+	}
+
+	@Test
+	public void segmentsOfFileThatIsNotAnArchiveAreNotFound() throws IOException {
+		File file = this.temporaryFolder.newFile("file.txt");
+		Files.write(file.toPath(), "not an archive".getBytes());
+		assertNull(ArchiveDelta.getSegmentHashes(file));
+	}
+
+	@Test
+	public void segmentsIncludeLaunchScript() throws IOException {
+		File file = this.temporaryFolder.newFile("script.jar");
+		FileOutputStream outputStream = new FileOutputStream(file);
+		outputStream.write("#!/bin/sh\nexit 0\n".getBytes());
+		writeJar(outputStream, createEntries(2));
+		List<String> hashes = ArchiveDelta.getSegmentHashes(file);
+		// The launch script, two entries and the central directory
+		assertEquals(4, hashes.size());
+	}
+
+	static Map<String, byte[]> createEntries(int count) {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		Random random = new Random(count);
+		for (int i = 0; i < count; i++) {
+			byte[] content = new byte[4096];
+			random.nextBytes(content);
+			entries.put("entry-" + i, content);
+		}
+		return entries;
+	}
+
+	static File writeJar(File file, Map<String, byte[]> entries) throws IOException {
+		writeJar(new FileOutputStream(file), entries);
+		return file;
+	}
+
+	private static void writeJar(FileOutputStream fileOutputStream,
+			Map<String, byte[]> entries) throws IOException {
+		JarOutputStream outputStream = new JarOutputStream(fileOutputStream);
+		try {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				JarEntry jarEntry = new JarEntry(entry.getKey());
+				jarEntry.setTime(TIME);
+				outputStream.putNextEntry(jarEntry);
+				outputStream.write(entry.getValue());
+				outputStream.closeEntry();
+			}
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+}
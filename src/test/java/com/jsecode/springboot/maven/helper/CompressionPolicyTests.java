@@ -0,0 +1,95 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CompressionPolicy}.
+ */
+public class CompressionPolicyTests {
+
+	@Test
+	public void entryWithoutRuleHasDefaultLevel() {
+		CompressionPolicy policy = new CompressionPolicy(3, false);
+		policy.addRule("*.png", CompressionPolicy.STORED);
+		assertEquals(3, policy.getLevel("BOOT-INF/classes/application.properties"));
+		assertFalse(policy.hasRule("BOOT-INF/classes/application.properties"));
+		assertEquals(Deflater.DEFAULT_COMPRESSION,
+				new CompressionPolicy().getLevel("application.properties"));
+	}
+
+	@Test
+	public void patternWithoutSlashMatchesFileName() {
+		CompressionPolicy policy = new CompressionPolicy(9, false);
+		policy.addRule("*.png", CompressionPolicy.STORED);
+		policy.addRule("logo-?.gif", 1);
+		assertEquals(CompressionPolicy.STORED, policy.getLevel("logo.png"));
+		assertEquals(CompressionPolicy.STORED,
+				policy.getLevel("BOOT-INF/classes/static/logo.png"));
+		assertEquals(9, policy.getLevel("BOOT-INF/classes/logo.png.txt"));
+		assertEquals(1, policy.getLevel("static/logo-1.gif"));
+		assertEquals(9, policy.getLevel("static/logo-12.gif"));
+		assertTrue(policy.hasRule("static/logo-1.gif"));
+	}
+
+	@Test
+	public void patternWithSlashMatchesFullName() {
+		CompressionPolicy policy = new CompressionPolicy(9, false);
+		policy.addRule("BOOT-INF/lib/*.jar", CompressionPolicy.STORED);
+		policy.addRule("**/static/**", 1);
+		assertEquals(CompressionPolicy.STORED, policy.getLevel("BOOT-INF/lib/a.jar"));
+		assertEquals(9, policy.getLevel("BOOT-INF/lib/nested/a.jar"));
+		assertEquals(9, policy.getLevel("a.jar"));
+		assertEquals(1, policy.getLevel("static/css/site.css"));
+		assertEquals(1, policy.getLevel("BOOT-INF/classes/static/site.css"));
+		assertEquals(9, policy.getLevel("BOOT-INF/classes/statics/site.css"));
+	}
+
+	@Test
+	public void firstMatchingRuleWins() {
+		CompressionPolicy policy = new CompressionPolicy(9, false);
+		policy.addRule("static/*.min.js", 1);
+		policy.addRule("*.js", CompressionPolicy.STORED);
+		assertEquals(1, policy.getLevel("static/app.min.js"));
+		assertEquals(CompressionPolicy.STORED, policy.getLevel("static/app.js"));
+	}
+
+	@Test
+	public void patternCharactersAreMatchedLiterally() {
+		CompressionPolicy policy = new CompressionPolicy(9, false);
+		policy.addRule("a+b(1).txt", 1);
+		assertEquals(1, policy.getLevel("dir/a+b(1).txt"));
+		assertEquals(9, policy.getLevel("dir/aab(1).txt"));
+	}
+
+	@Test
+	public void directoryPatternMatchesFullNameOfDirectoryEntry() {
+		CompressionPolicy policy = new CompressionPolicy(9, false);
+		policy.addRule("static/", CompressionPolicy.STORED);
+		assertEquals(9, policy.getLevel("BOOT-INF/classes/static/"));
+		assertEquals(CompressionPolicy.STORED, policy.getLevel("static/"));
+	}
+
+	@Test
+	public void onlyAdaptivePolicyStoresIncompressibleEntries() {
+		assertTrue(new CompressionPolicy(9, true).isIncompressible(100, 96));
+		assertFalse(new CompressionPolicy(9, true).isIncompressible(100, 90));
+		assertFalse(new CompressionPolicy(9, false).isIncompressible(100, 120));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidLevelIsRejected() {
+		new CompressionPolicy(9, false).addRule("*.png", 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyPatternIsRejected() {
+		new CompressionPolicy(9, false).addRule("", CompressionPolicy.STORED);
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DistributionPublisher}.
+ */
+public class DistributionPublisherTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void publishReplacesExistingDirectoryWithLink() throws IOException {
+		File distDir = this.temporaryFolder.newFolder("dist");
+		write(new File(distDir, "app.jar"), "previous");
+		DistributionPublisher publisher = new DistributionPublisher(distDir, 2);
+		File staging = publisher.stage(null);
+		write(new File(staging, "app.jar"), "current");
+		File release = publisher.publish(staging);
+		assertTrue(Files.isSymbolicLink(distDir.toPath()));
+		assertEquals(release.getCanonicalFile(), publisher.getPublishedRelease()
+				.getCanonicalFile());
+		assertContent(new File(distDir, "app.jar"), "current");
+		File releasesDir = release.getParentFile();
+		assertEquals(2, releasesDir.list().length);
+		// No temporary link is left behind
+		assertArrayEquals(new String[] { "dist", "dist.releases" },
+				sorted(this.temporaryFolder.getRoot().list()));
+	}
+
+	@Test
+	public void stageSeedsGivenLibraryDirectory() throws IOException {
+		File distDir = new File(this.temporaryFolder.getRoot(), "dist");
+		DistributionPublisher publisher = new DistributionPublisher(distDir, 2);
+		File staging = publisher.stage("lib");
+		write(new File(staging, "lib/library.jar"), "library");
+		publisher.publish(staging);
+		staging = publisher.stage("lib");
+		assertContent(new File(staging, "lib/library.jar"), "library");
+	}
+
+	@Test
+	public void stageWithoutLibraryDirectoryDoesNotSeed() throws IOException {
+		File distDir = new File(this.temporaryFolder.getRoot(), "dist");
+		DistributionPublisher publisher = new DistributionPublisher(distDir, 2);
+		File staging = publisher.stage(null);
+		write(new File(staging, "lib/library.jar"), "library");
+		publisher.publish(staging);
+		staging = publisher.stage(null);
+		assertFalse(new File(staging, "lib").exists());
+	}
+
+	private String[] sorted(String[] names) {
+		Arrays.sort(names);
+		return names;
+	}
+
+	private void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes());
+	}
+
+	private void assertContent(File file, String content) throws IOException {
+		assertEquals(content, new String(Files.readAllBytes(file.toPath())));
+	}
+
+}
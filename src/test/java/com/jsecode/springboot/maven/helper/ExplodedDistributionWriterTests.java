@@ -0,0 +1,143 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ExplodedDistributionWriter}.
+ */
+public class ExplodedDistributionWriterTests {
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void entriesAreWrittenWithTheirTime() throws IOException {
+		File directory = this.temporaryFolder.newFolder("dist");
+		writeClasses(directory, "app/Application.class", "application",
+				"application.properties", "server.port=8080");
+		File file = new File(directory, "classes/app/Application.class");
+		assertEquals("application", read(file));
+		assertEquals(getEntryTime(), file.lastModified());
+		assertEquals("server.port=8080",
+				read(new File(directory, "classes/application.properties")));
+	}
+
+	@Test
+	public void filesWithoutEntryAreDeleted() throws IOException {
+		File directory = this.temporaryFolder.newFolder("dist");
+		writeClasses(directory, "app/Application.class", "application",
+				"app/removed/Removed.class", "removed", "removed.properties", "removed");
+		File classes = new File(directory, "classes");
+		Files.write(new File(classes, "app/other.txt").toPath(), new byte[1]);
+		writeClasses(directory, "app/Application.class", "application");
+		assertTrue(new File(classes, "app/Application.class").isFile());
+		assertFalse(new File(classes, "app/other.txt").exists());
+		assertFalse(new File(classes, "removed.properties").exists());
+		// Directories that are left empty are deleted as well
+		assertFalse(new File(classes, "app/removed").exists());
+		assertEquals(Arrays.asList("app"), Arrays.asList(classes.list()));
+	}
+
+	@Test
+	public void fileWithSameSizeAndTimeIsNotWrittenAgain() throws IOException {
+		File directory = this.temporaryFolder.newFolder("dist");
+		writeClasses(directory, "app/Application.class", "application");
+		File file = new File(directory, "classes/app/Application.class");
+		Files.write(file.toPath(), "APPLICATION".getBytes());
+		file.setLastModified(getEntryTime());
+		writeClasses(directory, "app/Application.class", "application");
+		assertEquals("APPLICATION", read(file));
+		file.setLastModified(getEntryTime() + 2000);
+		writeClasses(directory, "app/Application.class", "application");
+		assertEquals("application", read(file));
+	}
+
+	@Test
+	public void entryOutsideOfClassesDirectoryIsRejected() throws IOException {
+		File directory = this.temporaryFolder.newFolder("dist");
+		try {
+			writeClasses(directory, "../outside.txt", "outside");
+			fail("Entry outside of the classes directory written");
+		}
+		catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("../outside.txt"));
+		}
+		assertFalse(new File(directory, "outside.txt").exists());
+	}
+
+	@Test
+	public void launchFilesAreOnlyWrittenWhenChanged() throws IOException {
+		File directory = this.temporaryFolder.newFolder("dist");
+		ExplodedDistributionWriter writer = new ExplodedDistributionWriter(directory);
+		writer.writeLaunchFiles("app", Arrays.asList("classes", "lib/my library.jar"),
+				"app.Application");
+		File arguments = new File(directory, "app.args");
+		File script = new File(directory, "app.sh");
+		assertEquals("-cp\n\"classes:lib/my library.jar\"\napp.Application\n",
+				read(arguments));
+		assertTrue(read(script).contains(
+				" -cp 'classes:lib/my library.jar' app.Application \"$@\"\n"));
+		assertTrue(script.canExecute());
+		arguments.setLastModified(TIME);
+		script.setLastModified(TIME);
+		writer.writeLaunchFiles("app", Arrays.asList("classes", "lib/my library.jar"),
+				"app.Application");
+		assertEquals(TIME, arguments.lastModified());
+		assertEquals(TIME, script.lastModified());
+		writer.writeLaunchFiles("app", Arrays.asList("classes"), "app.Application");
+		assertEquals("-cp\nclasses\napp.Application\n", read(arguments));
+	}
+
+	private void writeClasses(File directory, String... namesAndContents)
+			throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		for (int i = 0; i < namesAndContents.length; i += 2) {
+			entries.put(namesAndContents[i], namesAndContents[i + 1].getBytes());
+		}
+		File jar = ArchiveDeltaTests.writeJar(
+				new File(this.temporaryFolder.getRoot(), "application.jar"), entries);
+		JarFile jarFile = new JarFile(jar);
+		try {
+			new ExplodedDistributionWriter(directory).writeClasses(jarFile);
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	private long getEntryTime() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("entry", new byte[0]);
+		File jar = ArchiveDeltaTests.writeJar(
+				new File(this.temporaryFolder.getRoot(), "time.jar"), entries);
+		JarFile jarFile = new JarFile(jar);
+		try {
+			return jarFile.getJarEntry("entry").getTime();
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	private String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link HashedLibraryDirectory}.
+ */
+public class HashedLibraryDirectoryTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void libraryIsPlacedUnderHashedName() throws IOException {
+		File library = createLibrary("library.jar", 3);
+		File directory = getDirectory();
+		HashedLibraryDirectory libraries = new HashedLibraryDirectory(directory, 2,
+				LibraryLinkMode.COPY, null);
+		String name = getHashedName(library);
+		assertEquals("lib/" + name, libraries.getPath(library));
+		assertTrue(libraries.place(library));
+		libraries.finish();
+		assertArrayEquals(new String[] { name }, directory.list());
+		assertArrayEquals(Files.readAllBytes(library.toPath()),
+				Files.readAllBytes(new File(directory, name).toPath()));
+		assertTrue(HashedLibraryDirectory.getHistoryFile(directory).isFile());
+	}
+
+	@Test
+	public void libraryWithoutExtensionIsPlacedUnderHashedName() throws IOException {
+		File library = createLibrary("library", 3);
+		HashedLibraryDirectory libraries = new HashedLibraryDirectory(getDirectory(), 2,
+				LibraryLinkMode.COPY, null);
+		assertEquals("lib/library-" + getSha1(library).substring(0, 8),
+				libraries.getPath(library));
+	}
+
+	@Test
+	public void placedLibraryIsNotPlacedAgain() throws IOException {
+		File library = createLibrary("library.jar", 3);
+		assertEquals(set(getHashedName(library)), build(2, library));
+		HashedLibraryDirectory libraries = new HashedLibraryDirectory(getDirectory(), 2,
+				LibraryLinkMode.COPY, null);
+		assertFalse(libraries.place(library));
+	}
+
+	@Test
+	public void librariesOfKeptBuildsAreKept() throws IOException {
+		File first = createLibrary("first.jar", 3);
+		File second = createLibrary("second.jar", 4);
+		File third = createLibrary("third.jar", 5);
+		build(2, first, second);
+		assertEquals(set(getHashedName(first), getHashedName(second),
+				getHashedName(third)), build(2, second, third));
+		// The first build is no longer kept
+		assertEquals(set(getHashedName(second), getHashedName(third)),
+				build(2, third, second));
+		assertEquals(set(getHashedName(third)), build(1, third));
+	}
+
+	@Test
+	public void changedLibraryIsPlacedNextToPreviousVersion() throws IOException {
+		File library = createLibrary("library.jar", 3);
+		String previous = getHashedName(library);
+		build(2, library);
+		ArchiveDeltaTests.writeJar(library, ArchiveDeltaTests.createEntries(4));
+		String current = getHashedName(library);
+		assertFalse(previous.equals(current));
+		assertEquals(set(previous, current), build(2, library));
+	}
+
+	@Test
+	public void filesAreNotDeletedWithoutHistory() throws IOException {
+		File directory = getDirectory();
+		directory.mkdirs();
+		Files.write(new File(directory, "other.jar").toPath(), new byte[10]);
+		File library = createLibrary("library.jar", 3);
+		assertEquals(set(getHashedName(library), "other.jar"), build(2, library));
+		// Files that no kept build refers to are deleted once there is a history
+		assertEquals(set(getHashedName(library)), build(2, library));
+	}
+
+	private Set<String> build(int keepBuilds, File... libraries) throws IOException {
+		File directory = getDirectory();
+		HashedLibraryDirectory libraryDirectory = new HashedLibraryDirectory(directory,
+				keepBuilds, LibraryLinkMode.COPY, null);
+		for (File library : libraries) {
+			libraryDirectory.place(library);
+		}
+		libraryDirectory.finish();
+		return set(directory.list());
+	}
+
+	private File getDirectory() {
+		return new File(this.temporaryFolder.getRoot(), "target/lib");
+	}
+
+	private File createLibrary(String name, int entries) throws IOException {
+		File file = new File(this.temporaryFolder.getRoot(), "repository/" + name);
+		file.getParentFile().mkdirs();
+		return ArchiveDeltaTests.writeJar(file, ArchiveDeltaTests.createEntries(entries));
+	}
+
+	private String getHashedName(File library) throws IOException {
+		String name = library.getName();
+		int extension = name.lastIndexOf('.');
+		return name.substring(0, extension) + "-" + getSha1(library).substring(0, 8)
+				+ name.substring(extension);
+	}
+
+	private String getSha1(File library) throws IOException {
+		return NestedLibraryContent.getSha1(library, null);
+	}
+
+	private Set<String> set(String... names) {
+		return new TreeSet<String>(Arrays.asList(names));
+	}
+
+}
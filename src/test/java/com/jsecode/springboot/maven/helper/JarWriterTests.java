@@ -0,0 +1,199 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.boot.loader.tools.LaunchScript;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests for {@link JarWriter}.
+ */
+public class JarWriterTests {
+
+	private static final byte[] SCRIPT = "#!/bin/bash\nexec java -jar \"$0\" \"$@\"\n"
+			.getBytes();
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void writtenJarCanBeReadWithJarFile() throws IOException {
+		File source = createSourceJar();
+		File target = this.temporaryFolder.newFile("target.jar");
+		write(source, target, null);
+		assertSameEntries(source, target);
+	}
+
+	@Test
+	public void writtenJarWithLaunchScriptCanBeReadWithJarFile() throws IOException {
+		File source = createSourceJar();
+		File target = this.temporaryFolder.newFile("target.jar");
+		write(source, target, new TestLaunchScript());
+		assertSameEntries(source, target);
+		byte[] script = new byte[SCRIPT.length];
+		RandomAccessFile randomAccessFile = new RandomAccessFile(target, "r");
+		try {
+			randomAccessFile.readFully(script);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+		assertArrayEquals(SCRIPT, script);
+	}
+
+	@Test
+	public void deflatedEntriesAreCopiedRaw() throws IOException {
+		File source = createSourceJar();
+		File target = this.temporaryFolder.newFile("target.jar");
+		write(source, target, new TestLaunchScript());
+		RawZipFile sourceZip = RawZipFile.open(source);
+		RawZipFile targetZip = RawZipFile.open(target);
+		try {
+			for (int i = 0; i < 10; i++) {
+				String name = "com/example/Entry" + i + ".class";
+				RawZipFile.RawEntry sourceEntry = sourceZip.getEntry(name);
+				RawZipFile.RawEntry targetEntry = targetZip.getEntry(name);
+				assertNotNull(targetEntry);
+				assertEquals(ZipEntry.DEFLATED, targetEntry.getMethod());
+				assertArrayEquals(
+						RawJarOutputStreamTests
+								.read(sourceZip.getRawInputStream(sourceEntry)),
+						RawJarOutputStreamTests
+								.read(targetZip.getRawInputStream(targetEntry)));
+			}
+		}
+		finally {
+			sourceZip.close();
+			targetZip.close();
+		}
+	}
+
+	static File createSourceJar(File file, int entries) throws IOException {
+		JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(file));
+		try {
+			for (String name : new String[] { "com/", "com/example/" }) {
+				JarEntry directory = new JarEntry(name);
+				directory.setTime(TIME);
+				outputStream.putNextEntry(directory);
+				outputStream.closeEntry();
+			}
+			for (int i = 0; i < entries; i++) {
+				JarEntry entry = new JarEntry("com/example/Entry" + i + ".class");
+				entry.setTime(TIME);
+				outputStream.putNextEntry(entry);
+				outputStream.write(
+						RawJarOutputStreamTests.repeat("entry " + i + " ", i * 10));
+				outputStream.closeEntry();
+			}
+			byte[] content = RawJarOutputStreamTests.repeat("stored", 20);
+			JarEntry stored = new JarEntry("com/example/stored.txt");
+			stored.setTime(TIME);
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(content.length);
+			stored.setCrc(RawJarOutputStreamTests.crc(content));
+			outputStream.putNextEntry(stored);
+			outputStream.write(content);
+			outputStream.closeEntry();
+		}
+		finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+	static void write(File source, File target, LaunchScript launchScript,
+			int compressionThreads, CompressionPolicy compressionPolicy)
+					throws IOException {
+		JarWriter writer = new JarWriter(target, launchScript, compressionThreads);
+		try {
+			writer.setCompressionPolicy(compressionPolicy);
+			writeEntries(writer, source);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private static void writeEntries(JarWriter writer, File source) throws IOException {
+		JarFile jarFile = new JarFile(source);
+		try {
+			writer.writeEntries(jarFile);
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	private void write(File source, File target, LaunchScript launchScript)
+			throws IOException {
+		JarWriter writer = new JarWriter(target, launchScript);
+		try {
+			writeEntries(writer, source);
+			writer.writeEntry("com/example/written.txt", new ByteArrayInputStream(
+					RawJarOutputStreamTests.repeat("written", 50)));
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private File createSourceJar() throws IOException {
+		return createSourceJar(this.temporaryFolder.newFile("source.jar"), 10);
+	}
+
+	private void assertSameEntries(File source, File target) throws IOException {
+		JarFile sourceJar = new JarFile(source);
+		JarFile targetJar = new JarFile(target);
+		try {
+			assertEquals(sourceJar.size() + 1, targetJar.size());
+			Enumeration<JarEntry> entries = sourceJar.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				JarEntry written = targetJar.getJarEntry(entry.getName());
+				assertNotNull("Missing entry " + entry.getName(), written);
+				assertEquals(entry.getMethod(), written.getMethod());
+				assertEquals(entry.getCrc(), written.getCrc());
+				assertArrayEquals(RawJarOutputStreamTests.read(sourceJar, entry),
+						RawJarOutputStreamTests.read(targetJar, written));
+			}
+			assertArrayEquals(RawJarOutputStreamTests.repeat("written", 50),
+					RawJarOutputStreamTests.read(targetJar,
+							targetJar.getEntry("com/example/written.txt")));
+		}
+		finally {
+			sourceJar.close();
+			targetJar.close();
+		}
+	}
+
+	/**
+	 * {@link LaunchScript} with a fixed content.
+	 */
+	static final class TestLaunchScript implements LaunchScript {
+
+		@Override
+		public byte[] toByteArray() {
+			return SCRIPT.clone();
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LayeredDistributionWriter}.
+ */
+public class LayeredDistributionWriterTests {
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void entriesAreAssignedToTheirLayer() throws IOException {
+		File layers = new File(this.temporaryFolder.getRoot(), "layers");
+		createWriter(layers, false).write(createArchive("application"));
+		assertEquals(set("BOOT-INF/lib/library.jar"), getFiles(layers, "dependencies"));
+		assertEquals(set("BOOT-INF/lib/custom.jar"), getFiles(layers, "custom"));
+		assertEquals(set("BOOT-INF/lib/library-SNAPSHOT.jar"),
+				getFiles(layers, "snapshot-dependencies"));
+		assertEquals(set("com/jsecode/springboot/loader/PackageIndexLauncher.class",
+				"org/springframework/boot/loader/JarLauncher.class"),
+				getFiles(layers, "spring-boot-loader"));
+		assertEquals(set("BOOT-INF/classes/application.properties"),
+				getFiles(layers, "resources"));
+		assertEquals(set("BOOT-INF/classes/app/Application.class",
+				"META-INF/MANIFEST.MF"), getFiles(layers, "application"));
+		String index = new String(
+				Files.readAllBytes(new File(layers, "layers.idx").toPath()), "UTF-8");
+		assertTrue(index, index.startsWith("- \"dependencies\":\n"
+				+ "  - \"BOOT-INF/lib/library.jar\"\n" + "- \"custom\":\n"
+				+ "  - \"BOOT-INF/lib/custom.jar\"\n" + "- \"snapshot-dependencies\":\n"));
+	}
+
+	@Test
+	public void unchangedLayerIsNotWrittenAgainAndKeepsDigest() throws IOException {
+		File layers = new File(this.temporaryFolder.getRoot(), "layers");
+		createWriter(layers, true).write(createArchive("application"));
+		Properties state = loadState(layers);
+		File dependencies = new File(layers, "dependencies.tar");
+		File application = new File(layers, "application.tar");
+		dependencies.setLastModified(TIME);
+		application.setLastModified(TIME);
+		createWriter(layers, true).write(createArchive("changed application"));
+		Properties changedState = loadState(layers);
+		assertEquals(TIME, dependencies.lastModified());
+		assertEquals(state.getProperty("dependencies.digest"),
+				changedState.getProperty("dependencies.digest"));
+		assertFalse(application.lastModified() == TIME);
+		assertFalse(state.getProperty("application.digest")
+				.equals(changedState.getProperty("application.digest")));
+	}
+
+	@Test
+	public void rewrittenLayerHasSameDigest() throws IOException {
+		File layers = new File(this.temporaryFolder.getRoot(), "layers");
+		createWriter(layers, true).write(createArchive("application"));
+		Properties state = loadState(layers);
+		assertNotNull(state.getProperty("dependencies.digest"));
+		assertTrue(new File(layers, ".layers.state").delete());
+		createWriter(layers, true).write(createArchive("application"));
+		assertEquals(state, loadState(layers));
+	}
+
+	@Test
+	public void outputsThatAreNotLayersAreDeleted() throws IOException {
+		File layers = new File(this.temporaryFolder.getRoot(), "layers");
+		createWriter(layers, false).write(createArchive("application"));
+		assertTrue(new File(layers, "dependencies").isDirectory());
+		Files.write(new File(layers, "other.txt").toPath(), new byte[1]);
+		createWriter(layers, true).write(createArchive("application"));
+		assertEquals(set(".layers.state", "application.tar", "custom.tar",
+				"dependencies.tar", "layers.idx", "resources.tar",
+				"snapshot-dependencies.tar", "spring-boot-loader.tar"),
+				set(layers.list()));
+	}
+
+	private LayeredDistributionWriter createWriter(File directory, boolean tar) {
+		LibraryLayers layers = new LibraryLayers();
+		layers.addLayer("custom");
+		Map<String, String> libraryLayers = new HashMap<String, String>();
+		libraryLayers.put("BOOT-INF/lib/library.jar", LibraryLayers.DEPENDENCIES);
+		libraryLayers.put("BOOT-INF/lib/custom.jar", "custom");
+		libraryLayers.put("BOOT-INF/lib/library-SNAPSHOT.jar",
+				LibraryLayers.SNAPSHOT_DEPENDENCIES);
+		return new LayeredDistributionWriter(directory, tar, layers, libraryLayers,
+				"BOOT-INF/classes/");
+	}
+
+	private File createArchive(String application) throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes());
+		entries.put("org/springframework/boot/loader/JarLauncher.class",
+				"launcher".getBytes());
+		entries.put("com/jsecode/springboot/loader/PackageIndexLauncher.class",
+				"index launcher".getBytes());
+		entries.put("BOOT-INF/classes/", new byte[0]);
+		entries.put("BOOT-INF/classes/app/Application.class", application.getBytes());
+		entries.put("BOOT-INF/classes/application.properties",
+				"server.port=8080".getBytes());
+		entries.put("BOOT-INF/lib/library.jar", "library".getBytes());
+		entries.put("BOOT-INF/lib/custom.jar", "custom".getBytes());
+		entries.put("BOOT-INF/lib/library-SNAPSHOT.jar", "snapshot".getBytes());
+		return ArchiveDeltaTests.writeJar(
+				new File(this.temporaryFolder.getRoot(), "app.jar"), entries);
+	}
+
+	private Set<String> getFiles(File layers, String layer) {
+		File root = new File(layers, layer);
+		Set<String> files = new TreeSet<String>();
+		addFiles(root, "", files);
+		return files;
+	}
+
+	private void addFiles(File directory, String prefix, Set<String> files) {
+		for (File file : directory.listFiles()) {
+			if (file.isDirectory()) {
+				addFiles(file, prefix + file.getName() + "/", files);
+			}
+			else {
+				files.add(prefix + file.getName());
+			}
+		}
+	}
+
+	private Properties loadState(File layers) throws IOException {
+		Properties state = new Properties();
+		InputStream inputStream = new FileInputStream(new File(layers, ".layers.state"));
+		try {
+			state.load(inputStream);
+		}
+		finally {
+			inputStream.close();
+		}
+		return state;
+	}
+
+	private Set<String> set(String... names) {
+		return new TreeSet<String>(Arrays.asList(names));
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jsecode.springboot.maven.helper.LibraryChecksumCache.Checksums;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LibraryChecksumCache}.
+ */
+public class LibraryChecksumCacheTests {
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void checksumsAreReadFromSavedCache() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		File cacheFile = new File(this.temporaryFolder.getRoot(), "checksums.properties");
+		LibraryChecksumCache cache = new LibraryChecksumCache(cacheFile, false);
+		cache.load();
+		cache.put(library, 123, "sha1", TIME);
+		cache.save();
+		cache = new LibraryChecksumCache(cacheFile, false);
+		cache.load();
+		Checksums checksums = cache.get(library);
+		assertTrue(checksums.hasContentChecksums());
+		assertEquals(123, checksums.getCrc());
+		assertEquals("sha1", checksums.getSha1());
+		assertEquals(TIME, checksums.getTime());
+		assertEquals(library.length(), checksums.getSize());
+		assertTrue(checksums.isZip());
+	}
+
+	@Test
+	public void libraryWithChangedSizeIsNotCached() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		LibraryChecksumCache cache = createCache(false);
+		cache.put(library, 123, "sha1", TIME);
+		write(library, "changed content");
+		assertNull(cache.get(library));
+	}
+
+	@Test
+	public void libraryWithChangedTimeIsNotCached() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		LibraryChecksumCache cache = createCache(false);
+		cache.put(library, 123, "sha1", TIME);
+		library.setLastModified(TIME + 1000);
+		assertNull(cache.get(library));
+	}
+
+	@Test
+	public void libraryWithChangedContentIsOnlyNotCachedWhenVerified()
+			throws IOException {
+		File library = createLibrary("library.jar", "content");
+		LibraryChecksumCache cache = createCache(false);
+		cache.put(library, 123, "sha1", TIME);
+		LibraryChecksumCache verified = createCache(true);
+		verified.put(library, 123, "sha1", TIME);
+		// Same size and time
+		write(library, "CONTENT");
+		assertNotNull(cache.get(library));
+		assertNull(verified.get(library));
+	}
+
+	@Test
+	public void zipCheckIsCached() throws IOException {
+		File library = createLibrary("library.txt", "content");
+		LibraryChecksumCache cache = createCache(false);
+		CountingZipCheck zipCheck = new CountingZipCheck();
+		assertFalse(cache.isZip(library, zipCheck));
+		assertFalse(cache.isZip(library, zipCheck));
+		assertEquals(1, zipCheck.count);
+		assertFalse(cache.get(library).hasContentChecksums());
+	}
+
+	@Test
+	public void entriesThatAreNotUsedAreNotSaved() throws IOException {
+		File used = createLibrary("used.jar", "used");
+		File unused = createLibrary("unused.jar", "unused");
+		File deleted = createLibrary("deleted.jar", "deleted");
+		File cacheFile = new File(this.temporaryFolder.getRoot(), "checksums.properties");
+		LibraryChecksumCache cache = new LibraryChecksumCache(cacheFile, false);
+		cache.load();
+		cache.put(used, 1, "used", TIME);
+		cache.put(unused, 2, "unused", TIME);
+		cache.put(deleted, 3, "deleted", TIME);
+		cache.save();
+		cache = new LibraryChecksumCache(cacheFile, false);
+		cache.load();
+		assertNotNull(cache.get(used));
+		assertNotNull(cache.get(deleted));
+		Files.delete(deleted.toPath());
+		cache.save();
+		cache = new LibraryChecksumCache(cacheFile, false);
+		cache.load();
+		assertNotNull(cache.get(used));
+		assertNull(cache.get(unused));
+		assertNull(cache.get(deleted));
+	}
+
+	@Test
+	public void invalidCacheFileIsIgnored() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		File cacheFile = new File(this.temporaryFolder.getRoot(), "checksums.properties");
+		write(cacheFile, library.getAbsolutePath().replace("\\", "\\\\")
+				+ "=not,a,checksum\n");
+		LibraryChecksumCache cache = new LibraryChecksumCache(cacheFile, false);
+		cache.load();
+		assertNull(cache.get(library));
+	}
+
+	private LibraryChecksumCache createCache(boolean verify) {
+		LibraryChecksumCache cache = new LibraryChecksumCache(
+				new File(this.temporaryFolder.getRoot(), "checksums.properties"),
+				verify);
+		cache.load();
+		return cache;
+	}
+
+	private File createLibrary(String name, String content) throws IOException {
+		File library = new File(this.temporaryFolder.getRoot(), name);
+		write(library, content);
+		return library;
+	}
+
+	private void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes());
+		file.setLastModified(TIME);
+	}
+
+	/**
+	 * {@link LibraryChecksumCache.ZipCheck} that counts its calls.
+	 */
+	private static final class CountingZipCheck implements LibraryChecksumCache.ZipCheck {
+
+		private int count;
+
+		@Override
+		public boolean isZip(File file) {
+			this.count++;
+			return false;
+		}
+
+	}
+
+}
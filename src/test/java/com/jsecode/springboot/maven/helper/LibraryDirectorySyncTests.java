@@ -0,0 +1,131 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LibraryDirectorySync}.
+ */
+public class LibraryDirectorySyncTests {
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void unchangedLibraryIsNotPlacedAgain() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		File directory = new File(this.temporaryFolder.getRoot(), "lib");
+		assertTrue(sync(directory, LibraryLinkMode.COPY, library));
+		assertFalse(sync(directory, LibraryLinkMode.COPY, library));
+		assertContent(new File(directory, "library.jar"), "content");
+	}
+
+	@Test
+	public void libraryWithUnchangedFileIsNotHashed() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		File directory = new File(this.temporaryFolder.getRoot(), "lib");
+		sync(directory, LibraryLinkMode.COPY, library);
+		// Same size and time, so the changed content is not noticed
+		write(library, "CONTENT");
+		assertFalse(sync(directory, LibraryLinkMode.COPY, library));
+		assertContent(new File(directory, "library.jar"), "content");
+	}
+
+	@Test
+	public void libraryWithChangedContentIsPlacedAgain() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		File directory = new File(this.temporaryFolder.getRoot(), "lib");
+		sync(directory, LibraryLinkMode.COPY, library);
+		write(library, "changed content");
+		library.setLastModified(TIME + 1000);
+		assertTrue(sync(directory, LibraryLinkMode.COPY, library));
+		assertContent(new File(directory, "library.jar"), "changed content");
+	}
+
+	@Test
+	public void libraryWithChangedTimeButSameContentIsNotPlacedAgain()
+			throws IOException {
+		File library = createLibrary("library.jar", "content");
+		File directory = new File(this.temporaryFolder.getRoot(), "lib");
+		sync(directory, LibraryLinkMode.COPY, library);
+		library.setLastModified(TIME + 1000);
+		assertFalse(sync(directory, LibraryLinkMode.COPY, library));
+		// The new time is recorded, so the library is not hashed the next time
+		write(library, "CONTENT");
+		library.setLastModified(TIME + 1000);
+		assertFalse(sync(directory, LibraryLinkMode.COPY, library));
+	}
+
+	@Test
+	public void modifiedDestinationIsPlacedAgain() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		File directory = new File(this.temporaryFolder.getRoot(), "lib");
+		sync(directory, LibraryLinkMode.COPY, library);
+		File destination = new File(directory, "library.jar");
+		write(destination, "modified");
+		assertTrue(sync(directory, LibraryLinkMode.COPY, library));
+		assertContent(destination, "content");
+	}
+
+	@Test
+	public void libraryPlacedWithOtherModeIsPlacedAgain() throws IOException {
+		File library = createLibrary("library.jar", "content");
+		File directory = new File(this.temporaryFolder.getRoot(), "lib");
+		sync(directory, LibraryLinkMode.COPY, library);
+		assertTrue(sync(directory, LibraryLinkMode.HARDLINK, library));
+		assertFalse(sync(directory, LibraryLinkMode.HARDLINK, library));
+	}
+
+	@Test
+	public void filesThatAreNotLibrariesAreRemoved() throws IOException {
+		File first = createLibrary("first.jar", "first");
+		File second = createLibrary("second.jar", "second");
+		File directory = new File(this.temporaryFolder.getRoot(), "lib");
+		sync(directory, LibraryLinkMode.COPY, first, second);
+		write(new File(directory, "other.txt"), "other");
+		sync(directory, LibraryLinkMode.COPY, second);
+		assertArrayEquals(new String[] { "second.jar" }, directory.list());
+		assertTrue(LibraryDirectorySync.getStateFile(directory).isFile());
+	}
+
+	private boolean sync(File directory, LibraryLinkMode linkMode, File... libraries)
+			throws IOException {
+		directory.mkdirs();
+		LibraryDirectorySync sync = new LibraryDirectorySync(directory, linkMode, null);
+		boolean placed = false;
+		for (File library : libraries) {
+			placed |= sync.place(library);
+		}
+		sync.finish();
+		return placed;
+	}
+
+	private File createLibrary(String name, String content) throws IOException {
+		File library = new File(this.temporaryFolder.newFolder(), name);
+		write(library, content);
+		return library;
+	}
+
+	private void write(File file, String content) throws IOException {
+		long lastModified = file.lastModified();
+		Files.write(file.toPath(), content.getBytes());
+		file.setLastModified(lastModified != 0 ? lastModified : TIME);
+	}
+
+	private void assertContent(File file, String content) throws IOException {
+		assertEquals(content, new String(Files.readAllBytes(file.toPath())));
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LibraryPool}.
+ */
+public class LibraryPoolTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void libraryIsPlacedUnderItsHash() throws IOException {
+		File library = createLibrary("first", "library.jar", 3);
+		LibraryPool pool = createPool("module/target");
+		assertTrue(pool.place(library));
+		String sha1 = NestedLibraryContent.getSha1(library, null);
+		File placed = new File(getPoolDirectory(), sha1 + "/library.jar");
+		assertArrayEquals(Files.readAllBytes(library.toPath()),
+				Files.readAllBytes(placed.toPath()));
+		assertEquals("../../pool/" + sha1 + "/library.jar", pool.getPath(library));
+		// Only the placed library is left, no temporary file
+		assertArrayEquals(new String[] { "library.jar" }, placed.getParentFile().list());
+	}
+
+	@Test
+	public void libraryWithSameContentIsPlacedOnce() throws IOException {
+		File first = createLibrary("first", "library.jar", 3);
+		File second = createLibrary("second", "library.jar", 3);
+		assertTrue(createPool("first/target").place(first));
+		LibraryPool pool = createPool("second/target");
+		assertFalse(pool.place(second));
+		assertFalse(pool.place(second));
+		assertEquals(1, getPoolDirectory().list().length);
+	}
+
+	@Test
+	public void librariesWithSameNameAndOtherContentAreBothPlaced() throws IOException {
+		File first = createLibrary("first", "library.jar", 3);
+		File second = createLibrary("second", "library.jar", 4);
+		LibraryPool pool = createPool("module/target");
+		assertTrue(pool.place(first));
+		assertTrue(pool.place(second));
+		assertEquals(2, getPoolDirectory().list().length);
+		assertFalse(pool.getPath(first).equals(pool.getPath(second)));
+	}
+
+	@Test
+	public void incompleteLibraryIsPlacedAgain() throws IOException {
+		File library = createLibrary("first", "library.jar", 3);
+		LibraryPool pool = createPool("module/target");
+		pool.place(library);
+		File placed = new File(getPoolDirectory(),
+				NestedLibraryContent.getSha1(library, null) + "/library.jar");
+		Files.write(placed.toPath(), new byte[10]);
+		assertTrue(createPool("module/target").place(library));
+		assertEquals(library.length(), placed.length());
+	}
+
+	private LibraryPool createPool(String baseDirectory) {
+		File base = new File(this.temporaryFolder.getRoot(), baseDirectory);
+		base.mkdirs();
+		return new LibraryPool(getPoolDirectory(), base, LibraryLinkMode.COPY, null);
+	}
+
+	private File getPoolDirectory() {
+		return new File(this.temporaryFolder.getRoot(), "pool");
+	}
+
+	private File createLibrary(String directory, String name, int entries)
+			throws IOException {
+		File file = new File(this.temporaryFolder.getRoot(),
+				"repository/" + directory + "/" + name);
+		file.getParentFile().mkdirs();
+		return ArchiveDeltaTests.writeJar(file, ArchiveDeltaTests.createEntries(entries));
+	}
+
+}
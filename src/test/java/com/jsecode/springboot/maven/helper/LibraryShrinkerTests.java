@@ -0,0 +1,278 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.Library;
+import org.springframework.boot.loader.tools.LibraryCallback;
+import org.springframework.boot.loader.tools.LibraryScope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LibraryShrinker}.
+ */
+public class LibraryShrinkerTests {
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void classesThatAreNotReachableAreRemoved() throws IOException {
+		File application = createApplication("com/example/App", "lib/Used");
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("lib/Used.class", createClass("lib/Used", "lib/Transitive"));
+		entries.put("lib/Transitive.class", createClass("lib/Transitive"));
+		entries.put("lib/Unused.class", createClass("lib/Unused", "lib/Used"));
+		entries.put("lib/messages.txt", "hello".getBytes());
+		Library library = createLibrary("library.jar", entries);
+		LibraryShrinker shrinker = createShrinker();
+		File shrunk = shrinkOne(shrinker, application, library);
+		assertEquals(set("lib/Transitive.class", "lib/Used.class", "lib/messages.txt"),
+				getEntries(shrunk));
+		assertEquals(1, shrinker.getShrunkLibraries());
+		assertEquals(1, shrinker.getRemovedClasses());
+		assertSame(library.getFile(), shrinker.getOriginal(shrunk));
+	}
+
+	@Test
+	public void classesMatchingKeepRulesAreKept() throws IOException {
+		File application = createApplication("com/example/App");
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		for (String name : new String[] { "lib/Foo", "lib/Bar", "lib/pkg/A",
+				"lib/pkg/sub/B", "lib/deep/C", "lib/deep/sub/D" }) {
+			entries.put(name + ".class", createClass(name));
+		}
+		Library library = createLibrary("library.jar", entries);
+		LibraryShrinker shrinker = createShrinker();
+		shrinker.addKeepRule("lib.Foo");
+		shrinker.addKeepRule("lib.pkg.*");
+		shrinker.addKeepRule(" lib.deep.** ");
+		File shrunk = shrinkOne(shrinker, application, library);
+		assertEquals(set("lib/Foo.class", "lib/deep/C.class", "lib/deep/sub/D.class",
+				"lib/pkg/A.class"), getEntries(shrunk));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidKeepRuleIsRejected() {
+		createShrinker().addKeepRule("lib.*.Foo");
+	}
+
+	@Test
+	public void classesNamedInSpringFactoriesAreKept() throws IOException {
+		File application = createApplication("com/example/App");
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("META-INF/spring.factories",
+				("org.springframework.boot.autoconfigure.EnableAutoConfiguration=\\\n"
+						+ "  lib.AutoConfiguration\n").getBytes());
+		entries.put("lib/AutoConfiguration.class",
+				createClass("lib/AutoConfiguration", "lib/Helper"));
+		entries.put("lib/Helper.class", createClass("lib/Helper"));
+		entries.put("lib/Unused.class", createClass("lib/Unused"));
+		Library library = createLibrary("library.jar", entries);
+		File shrunk = shrinkOne(createShrinker(), application, library);
+		assertEquals(set("META-INF/spring.factories", "lib/AutoConfiguration.class",
+				"lib/Helper.class"), getEntries(shrunk));
+	}
+
+	@Test
+	public void classesNamedInStringConstantsAreKept() throws IOException {
+		// As in Class.forName("lib.Dynamic")
+		File application = createApplication("com/example/App", "lib.Dynamic");
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("lib/Dynamic.class", createClass("lib/Dynamic"));
+		entries.put("lib/Unused.class", createClass("lib/Unused"));
+		Library library = createLibrary("library.jar", entries);
+		File shrunk = shrinkOne(createShrinker(), application, library);
+		assertEquals(set("lib/Dynamic.class"), getEntries(shrunk));
+	}
+
+	@Test
+	public void signedLibrariesAreNotShrunk() throws IOException {
+		File application = createApplication("com/example/App");
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("META-INF/SIGNER.SF", "Signature-Version: 1.0\n".getBytes());
+		entries.put("signed/Signed.class", createClass("signed/Signed", "lib/Used"));
+		entries.put("signed/Unused.class", createClass("signed/Unused"));
+		Library signed = createLibrary("signed.jar", entries);
+		entries = new LinkedHashMap<String, byte[]>();
+		entries.put("lib/Used.class", createClass("lib/Used"));
+		entries.put("lib/Unused.class", createClass("lib/Unused"));
+		Library library = createLibrary("library.jar", entries);
+		LibraryShrinker shrinker = createShrinker();
+		List<Library> result = getLibraries(shrinker.shrink(application,
+				new TestLibraries(signed, library)));
+		assertSame(signed, result.get(0));
+		// The classes of the signed library are reachable
+		assertEquals(set("lib/Used.class"), getEntries(result.get(1).getFile()));
+		assertEquals(1, shrinker.getShrunkLibraries());
+	}
+
+	@Test
+	public void unchangedShrunkLibraryIsNotWrittenAgain() throws IOException {
+		File application = createApplication("com/example/App", "lib/Used");
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("lib/Used.class", createClass("lib/Used"));
+		entries.put("lib/Unused.class", createClass("lib/Unused"));
+		Library library = createLibrary("library.jar", entries);
+		LibraryShrinker shrinker = createShrinker();
+		File shrunk = shrinkOne(shrinker, application, library);
+		shrunk.setLastModified(TIME);
+		assertEquals(shrunk, shrinkOne(shrinker, application, library));
+		assertEquals(TIME, shrunk.lastModified());
+		entries.put("lib/Other.class", createClass("lib/Other"));
+		application = createApplication("com/example/App", "lib/Used", "lib/Other");
+		library = createLibrary("library.jar", entries);
+		shrinkOne(shrinker, application, library);
+		assertTrue(shrunk.lastModified() != TIME);
+		assertEquals(set("lib/Other.class", "lib/Used.class"), getEntries(shrunk));
+	}
+
+	@Test
+	public void libraryThatLosesNoClassesIsNotReplaced() throws IOException {
+		File application = createApplication("com/example/App", "lib/Used");
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("lib/Used.class", createClass("lib/Used"));
+		Library library = createLibrary("library.jar", entries);
+		LibraryShrinker shrinker = createShrinker();
+		assertEquals(library.getFile(), shrinkOne(shrinker, application, library));
+		assertEquals(0, shrinker.getShrunkLibraries());
+	}
+
+	private LibraryShrinker createShrinker() {
+		return new LibraryShrinker(new File(this.temporaryFolder.getRoot(), "shrunk"));
+	}
+
+	private File shrinkOne(LibraryShrinker shrinker, File application, Library library)
+			throws IOException {
+		List<Library> result = getLibraries(
+				shrinker.shrink(application, new TestLibraries(library)));
+		assertEquals(1, result.size());
+		return result.get(0).getFile();
+	}
+
+	private File createApplication(String name, String... references)
+			throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(name + ".class", createClass(name, references));
+		File application = new File(this.temporaryFolder.getRoot(), "application.jar");
+		return ArchiveDeltaTests.writeJar(application, entries);
+	}
+
+	private Library createLibrary(String name, Map<String, byte[]> entries)
+			throws IOException {
+		File directory = new File(this.temporaryFolder.getRoot(), "repository");
+		directory.mkdirs();
+		File file = ArchiveDeltaTests.writeJar(new File(directory, name), entries);
+		return new Library(name, file, LibraryScope.COMPILE, false);
+	}
+
+	/**
+	 * Create a class file of which the constant pool contains the given name and
+	 * references, which is all that is read of a class.
+	 */
+	static byte[] createClass(String name, String... references) throws IOException {
+		List<String> constants = new ArrayList<String>();
+		constants.add(name);
+		constants.add("java/lang/Object");
+		constants.addAll(Arrays.asList(references));
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(content);
+		output.writeInt(0xCAFEBABE);
+		output.writeShort(0);
+		output.writeShort(50);
+		output.writeShort(constants.size() + 3);
+		for (String constant : constants) {
+			output.writeByte(1);
+			output.writeUTF(constant);
+		}
+		// The class and its super class
+		output.writeByte(7);
+		output.writeShort(1);
+		output.writeByte(7);
+		output.writeShort(2);
+		output.writeShort(0x21);
+		output.writeShort(constants.size() + 1);
+		output.writeShort(constants.size() + 2);
+		output.writeShort(0);
+		output.writeShort(0);
+		output.writeShort(0);
+		output.writeShort(0);
+		output.close();
+		return content.toByteArray();
+	}
+
+	private Set<String> getEntries(File file) throws IOException {
+		Set<String> names = new TreeSet<String>();
+		JarFile jarFile = new JarFile(file);
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				names.add(entries.nextElement().getName());
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+		return names;
+	}
+
+	private List<Library> getLibraries(Libraries libraries) throws IOException {
+		final List<Library> result = new ArrayList<Library>();
+		libraries.doWithLibraries(new LibraryCallback() {
+
+			@Override
+			public void library(Library library) throws IOException {
+				result.add(library);
+			}
+
+		});
+		return result;
+	}
+
+	private Set<String> set(String... names) {
+		return new TreeSet<String>(Arrays.asList(names));
+	}
+
+	/**
+	 * {@link Libraries} backed by a list.
+	 */
+	static final class TestLibraries implements Libraries {
+
+		private final List<Library> libraries;
+
+		TestLibraries(Library... libraries) {
+			this.libraries = Arrays.asList(libraries);
+		}
+
+		@Override
+		public void doWithLibraries(LibraryCallback callback) throws IOException {
+			for (Library library : this.libraries) {
+				callback.library(library);
+			}
+		}
+
+	}
+
+}
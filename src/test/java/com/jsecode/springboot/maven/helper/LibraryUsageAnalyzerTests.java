@@ -0,0 +1,159 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.Library;
+import org.springframework.boot.loader.tools.LibraryCallback;
+import org.springframework.boot.loader.tools.LibraryScope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LibraryUsageAnalyzer}.
+ */
+public class LibraryUsageAnalyzerTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void librariesReachableFromApplicationAreUsed() throws IOException {
+		File application = createApplication("app/Application", "direct/Direct");
+		Library direct = createLibrary("direct.jar", "direct/Direct",
+				"transitive/Transitive");
+		Library transitive = createLibrary("transitive.jar", "transitive/Transitive");
+		Library unused = createLibrary("unused.jar", "unused/Unused", "direct/Direct");
+		LibraryUsageAnalyzer analyzer = new LibraryUsageAnalyzer();
+		Libraries libraries = new LibraryShrinkerTests.TestLibraries(direct, transitive,
+				unused);
+		assertSame(libraries, analyzer.analyze(application, libraries));
+		assertEquals(Arrays.asList(unused), analyzer.getUnusedLibraries());
+	}
+
+	@Test
+	public void unusedLibrariesAreExcluded() throws IOException {
+		File application = createApplication("app/Application", "direct/Direct");
+		Library direct = createLibrary("direct.jar", "direct/Direct");
+		Library unused = createLibrary("unused.jar", "unused/Unused");
+		LibraryUsageAnalyzer analyzer = new LibraryUsageAnalyzer();
+		analyzer.setExcludeUnused(true);
+		assertEquals(Arrays.asList(direct), getLibraries(analyzer.analyze(application,
+				new LibraryShrinkerTests.TestLibraries(direct, unused))));
+	}
+
+	@Test
+	public void classNamedInResourceIsUsed() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("app/Application.class",
+				LibraryShrinkerTests.createClass("app/Application"));
+		entries.put("app/context.xml",
+				"<bean class=\"resource.Referenced\"/>".getBytes());
+		File application = ArchiveDeltaTests.writeJar(
+				this.temporaryFolder.newFile("application.jar"), entries);
+		Library referenced = createLibrary("referenced.jar", "resource/Referenced");
+		LibraryUsageAnalyzer analyzer = new LibraryUsageAnalyzer();
+		analyzer.analyze(application, new LibraryShrinkerTests.TestLibraries(referenced));
+		assertEquals(0, analyzer.getUnusedLibraries().size());
+	}
+
+	@Test
+	public void selfRegisteringKeptAndClasslessLibrariesAreUsed() throws IOException {
+		File application = createApplication("app/Application");
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("registering/Registering.class",
+				LibraryShrinkerTests.createClass("registering/Registering",
+						"reached/Reached"));
+		entries.put("META-INF/services/app.Service",
+				"registering.Registering\n".getBytes());
+		Library registering = createLibrary("registering.jar", entries);
+		Library reached = createLibrary("reached.jar", "reached/Reached");
+		Library kept = createLibrary("kept.jar", "kept/Kept");
+		entries = new LinkedHashMap<String, byte[]>();
+		entries.put("messages.properties", "greeting=hello".getBytes());
+		Library classless = createLibrary("classless.jar", entries);
+		Library unused = createLibrary("unused.jar", "unused/Unused");
+		LibraryUsageAnalyzer analyzer = new LibraryUsageAnalyzer();
+		analyzer.setKeptLibraries(Arrays.asList(kept.getFile()));
+		analyzer.analyze(application, new LibraryShrinkerTests.TestLibraries(registering,
+				reached, kept, classless, unused));
+		assertEquals(Arrays.asList(unused), analyzer.getUnusedLibraries());
+	}
+
+	@Test
+	public void reportListsUnusedLibrariesAndUsages() throws IOException {
+		File application = createApplication("app/Application", "direct/Direct");
+		Library direct = createLibrary("direct.jar", "direct/Direct");
+		Library unused = createLibrary("unused.jar", "unused/Unused");
+		LibraryUsageAnalyzer analyzer = new LibraryUsageAnalyzer();
+		analyzer.analyze(application,
+				new LibraryShrinkerTests.TestLibraries(direct, unused));
+		File report = new File(this.temporaryFolder.getRoot(), "report/usage.txt");
+		analyzer.writeReport(report);
+		String content = new String(Files.readAllBytes(report.toPath()), "UTF-8");
+		assertEquals("# Unused libraries: 1\nunused.jar\tunused\n"
+				+ "direct.jar\tused: referenced by application (direct.Direct)\n",
+				content);
+	}
+
+	@Test
+	public void libraryThatIsNotAJarIsUsed() throws IOException {
+		File application = createApplication("app/Application");
+		File file = this.temporaryFolder.newFile("native.so");
+		Files.write(file.toPath(), "native".getBytes());
+		Library library = new Library("native.so", file, LibraryScope.COMPILE, false);
+		LibraryUsageAnalyzer analyzer = new LibraryUsageAnalyzer();
+		analyzer.analyze(application, new LibraryShrinkerTests.TestLibraries(library));
+		assertTrue(analyzer.getUnusedLibraries().isEmpty());
+	}
+
+	private File createApplication(String name, String... references)
+			throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(name + ".class", LibraryShrinkerTests.createClass(name, references));
+		return ArchiveDeltaTests.writeJar(
+				this.temporaryFolder.newFile("application.jar"), entries);
+	}
+
+	private Library createLibrary(String name, String className, String... references)
+			throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(className + ".class",
+				LibraryShrinkerTests.createClass(className, references));
+		return createLibrary(name, entries);
+	}
+
+	private Library createLibrary(String name, Map<String, byte[]> entries)
+			throws IOException {
+		File file = ArchiveDeltaTests.writeJar(this.temporaryFolder.newFile(name),
+				entries);
+		return new Library(name, file, LibraryScope.COMPILE, false);
+	}
+
+	private List<Library> getLibraries(Libraries libraries) throws IOException {
+		final List<Library> result = new ArrayList<Library>();
+		libraries.doWithLibraries(new LibraryCallback() {
+
+			@Override
+			public void library(Library library) throws IOException {
+				result.add(library);
+			}
+
+		});
+		return result;
+	}
+
+}
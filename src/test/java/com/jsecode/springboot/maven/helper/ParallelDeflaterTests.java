@@ -0,0 +1,159 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link ParallelDeflater}.
+ */
+public class ParallelDeflaterTests {
+
+	private static final int ENTRIES = 200;
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void parallelOutputIsIdenticalToSequentialOutput() throws IOException {
+		CompressionPolicy policy = new CompressionPolicy(Deflater.DEFAULT_COMPRESSION,
+				true);
+		File sequential = writeSequential(policy);
+		for (int threads = 2; threads <= 8; threads *= 2) {
+			assertArrayEquals("Output of " + threads + " threads",
+					Files.readAllBytes(sequential.toPath()),
+					Files.readAllBytes(writeParallel(threads, policy).toPath()));
+		}
+	}
+
+	@Test
+	public void entriesAreWrittenInSubmissionOrder() throws IOException {
+		File file = writeParallel(4, new CompressionPolicy());
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			for (int i = 0; i < ENTRIES; i++) {
+				ZipEntry entry = entries.nextElement();
+				assertEquals("entry-" + i, entry.getName());
+				assertArrayEquals(getContent(i),
+						RawJarOutputStreamTests.read(zipFile, entry));
+			}
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	@Test
+	public void jarWriterOutputDoesNotDependOnCompressionThreads() throws IOException {
+		File source = JarWriterTests.createSourceJar(
+				this.temporaryFolder.newFile("source.jar"), 100);
+		// Recompress every entry so that none of them is copied raw
+		CompressionPolicy policy = new CompressionPolicy(Deflater.BEST_COMPRESSION,
+				true);
+		policy.addRule("*.txt", CompressionPolicy.STORED);
+		byte[] expected = null;
+		for (int threads = 1; threads <= 4; threads++) {
+			File target = this.temporaryFolder.newFile("target-" + threads + ".jar");
+			JarWriterTests.write(source, target, new JarWriterTests.TestLaunchScript(),
+					threads, policy);
+			byte[] content = Files.readAllBytes(target.toPath());
+			if (expected == null) {
+				expected = content;
+			}
+			assertArrayEquals("Output of " + threads + " threads", expected, content);
+		}
+	}
+
+	@Test
+	public void jarWriterOutputWithRawEntriesDoesNotDependOnCompressionThreads()
+			throws IOException {
+		File source = JarWriterTests.createSourceJar(
+				this.temporaryFolder.newFile("source.jar"), 100);
+		// Recompress some entries, the others are copied raw in between them
+		CompressionPolicy policy = new CompressionPolicy();
+		policy.addRule("*1.class", Deflater.BEST_COMPRESSION);
+		policy.addRule("*.txt", Deflater.BEST_SPEED);
+		File expected = this.temporaryFolder.newFile("expected.jar");
+		JarWriterTests.write(source, expected, null, 1, policy);
+		File target = this.temporaryFolder.newFile("target.jar");
+		JarWriterTests.write(source, target, null, 4, policy);
+		assertArrayEquals(Files.readAllBytes(expected.toPath()),
+				Files.readAllBytes(target.toPath()));
+		ZipFile zipFile = new ZipFile(target);
+		try {
+			assertEquals(ZipEntry.DEFLATED,
+					zipFile.getEntry("com/example/stored.txt").getMethod());
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	private File writeSequential(CompressionPolicy policy) throws IOException {
+		File file = this.temporaryFolder.newFile();
+		RawJarOutputStream outputStream = new RawJarOutputStream(file);
+		try {
+			for (int i = 0; i < ENTRIES; i++) {
+				new DeflatedEntry(createEntry(i), getContent(i),
+						Deflater.DEFAULT_COMPRESSION, policy).writeTo(outputStream);
+			}
+		}
+		finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+	private File writeParallel(int threads, CompressionPolicy policy)
+			throws IOException {
+		File file = this.temporaryFolder.newFile();
+		RawJarOutputStream outputStream = new RawJarOutputStream(file);
+		try {
+			ParallelDeflater deflater = new ParallelDeflater(outputStream, threads);
+			for (int i = 0; i < ENTRIES; i++) {
+				deflater.submit(createEntry(i), getContent(i),
+						Deflater.DEFAULT_COMPRESSION, policy);
+			}
+			deflater.close();
+		}
+		finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+	private ZipEntry createEntry(int i) {
+		ZipEntry entry = new ZipEntry("entry-" + i);
+		entry.setTime(TIME);
+		return entry;
+	}
+
+	/**
+	 * Return the content of an entry: text that deflates well for most entries and
+	 * random bytes, which are stored by an adaptive policy, for every fifth entry.
+	 */
+	private byte[] getContent(int i) {
+		if (i % 5 == 0) {
+			byte[] content = new byte[1000 + i * 100];
+			new Random(i).nextBytes(content);
+			return content;
+		}
+		return RawJarOutputStreamTests.repeat("entry " + i, i * 5);
+	}
+
+}
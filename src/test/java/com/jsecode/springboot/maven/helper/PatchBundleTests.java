@@ -0,0 +1,186 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PatchBundle}.
+ */
+public class PatchBundleTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void applyReproducesTargetDirectory() throws IOException {
+		File base = createBase();
+		File target = createTarget(base);
+		File bundle = new File(this.temporaryFolder.getRoot(), "patch.zip");
+		PatchBundle.Summary created = PatchBundle.create(DistributionManifest.scan(base),
+				DistributionManifest.scan(target), target, bundle);
+		assertEquals(1, created.getAdded());
+		assertEquals(2, created.getChanged());
+		assertEquals(1, created.getRemoved());
+		assertEquals(1, created.getDeltas());
+		File directory = copy(base, "directory");
+		write(new File(directory, "config/application.properties"), "server.port=9090");
+		PatchBundle.Summary applied = PatchBundle.apply(bundle, directory);
+		assertEquals(1, applied.getAdded());
+		assertEquals(2, applied.getChanged());
+		assertEquals(1, applied.getRemoved());
+		Set<String> paths = getPaths(directory);
+		assertTrue(paths.remove("config/application.properties"));
+		assertEquals(getPaths(target), paths);
+		for (String path : paths) {
+			assertArrayEquals("Content of " + path,
+					Files.readAllBytes(new File(target, path).toPath()),
+					Files.readAllBytes(new File(directory, path).toPath()));
+		}
+	}
+
+	@Test
+	public void applyToChangedLibraryIsRejected() throws IOException {
+		assertRejected("lib/unchanged.jar");
+	}
+
+	@Test
+	public void applyToChangedDeltaBaseIsRejected() throws IOException {
+		assertRejected("app.jar");
+	}
+
+	@Test
+	public void applyWithPathOutsideOfDirectoryIsRejected() throws IOException {
+		File directory = createBase();
+		File content = this.temporaryFolder.newFile("content.txt");
+		write(content, "outside");
+		Properties properties = new Properties();
+		properties.setProperty("format", "1");
+		properties.setProperty("target.../outside.txt",
+				DistributionManifest.getChecksum(content));
+		File bundle = new File(this.temporaryFolder.getRoot(), "patch.zip");
+		ZipOutputStream outputStream = new ZipOutputStream(new FileOutputStream(bundle));
+		try {
+			outputStream.putNextEntry(new ZipEntry("patch.properties"));
+			properties.store(outputStream, null);
+			outputStream.putNextEntry(new ZipEntry("files/../outside.txt"));
+			outputStream.write(Files.readAllBytes(content.toPath()));
+		}
+		finally {
+			outputStream.close();
+		}
+		Map<String, String> before = getChecksums(directory);
+		try {
+			PatchBundle.apply(bundle, directory);
+			fail("Patch with a path outside of the directory applied");
+		}
+		catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("../outside.txt"));
+		}
+		assertFalse(new File(this.temporaryFolder.getRoot(), "outside.txt").exists());
+		assertFalse(new File(this.temporaryFolder.getRoot(), ".outside.txt.patch").exists());
+		assertEquals(before, getChecksums(directory));
+	}
+
+	private void assertRejected(String changedPath) throws IOException {
+		File base = createBase();
+		File target = createTarget(base);
+		File bundle = new File(this.temporaryFolder.getRoot(), "patch.zip");
+		PatchBundle.create(DistributionManifest.scan(base),
+				DistributionManifest.scan(target), target, bundle);
+		File directory = copy(base, "directory");
+		File changed = new File(directory, changedPath);
+		ArchiveDeltaTests.writeJar(changed, ArchiveDeltaTests.createEntries(2));
+		Map<String, String> before = getChecksums(directory);
+		try {
+			PatchBundle.apply(bundle, directory);
+			fail("Patch applied to a directory that does not match its base");
+		}
+		catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains(changed.getName()));
+		}
+		assertEquals(before, getChecksums(directory));
+	}
+
+	private File createBase() throws IOException {
+		File base = this.temporaryFolder.newFolder("base");
+		Map<String, byte[]> entries = ArchiveDeltaTests.createEntries(20);
+		ArchiveDeltaTests.writeJar(new File(base, "app.jar"), entries);
+		new File(base, "lib").mkdir();
+		ArchiveDeltaTests.writeJar(new File(base, "lib/unchanged.jar"),
+				ArchiveDeltaTests.createEntries(3));
+		ArchiveDeltaTests.writeJar(new File(base, "lib/changed.jar"),
+				ArchiveDeltaTests.createEntries(4));
+		ArchiveDeltaTests.writeJar(new File(base, "lib/removed.jar"),
+				ArchiveDeltaTests.createEntries(5));
+		write(new File(base, ".app.jar.fingerprint"), "state");
+		return base;
+	}
+
+	private File createTarget(File base) throws IOException {
+		File target = copy(base, "target");
+		Map<String, byte[]> entries = ArchiveDeltaTests.createEntries(20);
+		entries.put("entry-7", "changed".getBytes());
+		ArchiveDeltaTests.writeJar(new File(target, "app.jar"), entries);
+		ArchiveDeltaTests.writeJar(new File(target, "lib/changed.jar"),
+				ArchiveDeltaTests.createEntries(6));
+		Files.delete(new File(target, "lib/removed.jar").toPath());
+		ArchiveDeltaTests.writeJar(new File(target, "lib/added.jar"),
+				ArchiveDeltaTests.createEntries(7));
+		return target;
+	}
+
+	private File copy(File source, String name) throws IOException {
+		File destination = new File(this.temporaryFolder.getRoot(), name);
+		FileUtil.copyDirectory(source, destination);
+		return destination;
+	}
+
+	private Set<String> getPaths(File directory) throws IOException {
+		return new TreeSet<String>(DistributionManifest.scan(directory).getPaths());
+	}
+
+	private Map<String, String> getChecksums(File directory) throws IOException {
+		Map<String, String> checksums = new TreeMap<String, String>();
+		for (File file : listFiles(directory, new TreeSet<File>())) {
+			checksums.put(file.getPath(), DistributionManifest.getChecksum(file));
+		}
+		return checksums;
+	}
+
+	private Set<File> listFiles(File directory, Set<File> files) {
+		for (File file : directory.listFiles()) {
+			if (file.isDirectory()) {
+				listFiles(file, files);
+			}
+			else {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	private void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes());
+	}
+
+}
@@ -0,0 +1,308 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RawJarOutputStream}.
+ */
+public class RawJarOutputStreamTests {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte[] PREFIX = "#!/bin/bash\necho launch script\nexit 0\n"
+			.getBytes(UTF_8);
+
+	private static final byte[] DEFLATED_CONTENT = repeat("deflated content ", 200);
+
+	private static final byte[] STORED_CONTENT = repeat("stored content ", 10);
+
+	private static final byte[] RAW_CONTENT = repeat("raw content ", 100);
+
+	private static final int ZIP64_ENDSIG = 0x06064b50;
+
+	private static final long TIME = 1500000000000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void entriesCanBeReadWithZipFile() throws IOException {
+		File file = this.temporaryFolder.newFile("test.jar");
+		writeEntries(new RawJarOutputStream(file));
+		assertEntries(file);
+	}
+
+	@Test
+	public void entriesAfterLaunchScriptCanBeReadWithZipFile() throws IOException {
+		File file = this.temporaryFolder.newFile("test.jar");
+		FileOutputStream outputStream = new FileOutputStream(file);
+		outputStream.write(PREFIX);
+		writeEntries(new RawJarOutputStream(outputStream));
+		assertEntries(file);
+		byte[] prefix = new byte[PREFIX.length];
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			randomAccessFile.readFully(prefix);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+		assertArrayEquals(PREFIX, prefix);
+		RawZipFile rawZipFile = RawZipFile.open(file);
+		assertNotNull(rawZipFile);
+		try {
+			assertEquals(PREFIX.length, rawZipFile.getRecordBoundaries()[0]);
+		}
+		finally {
+			rawZipFile.close();
+		}
+	}
+
+	@Test(expected = ZipException.class)
+	public void storedEntryWithoutCrcIsRejected() throws IOException {
+		RawJarOutputStream outputStream = new RawJarOutputStream(
+				this.temporaryFolder.newFile("test.jar"));
+		try {
+			ZipEntry entry = new ZipEntry("stored.txt");
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(STORED_CONTENT.length);
+			outputStream.putNextEntry(entry);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	@Test(expected = ZipException.class)
+	public void rawEntryWithWrongCompressedSizeIsRejected() throws IOException {
+		RawJarOutputStream outputStream = new RawJarOutputStream(
+				this.temporaryFolder.newFile("test.jar"));
+		try {
+			ZipEntry entry = createRawEntry("raw.txt", RAW_CONTENT);
+			outputStream.putNextRawEntry(entry);
+			outputStream.write(deflate(RAW_CONTENT), 1,
+					(int) entry.getCompressedSize() - 1);
+			outputStream.closeEntry();
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	@Test
+	public void entryCountBelowZip64Limit() throws IOException {
+		File file = writeEmptyEntries(0xFFFE);
+		assertFalse(hasZip64EndRecord(file));
+		assertEntryCount(file, 0xFFFE);
+	}
+
+	@Test
+	public void entryCountAtZip64Limit() throws IOException {
+		File file = writeEmptyEntries(0xFFFF);
+		assertTrue(hasZip64EndRecord(file));
+		assertEntryCount(file, 0xFFFF);
+	}
+
+	@Test
+	public void entryCountAboveZip64Limit() throws IOException {
+		File file = writeEmptyEntries(0x10010);
+		assertTrue(hasZip64EndRecord(file));
+		assertEntryCount(file, 0x10010);
+	}
+
+	private void writeEntries(RawJarOutputStream outputStream) throws IOException {
+		try {
+			ZipEntry deflated = new ZipEntry("deflated.txt");
+			deflated.setTime(TIME);
+			outputStream.putNextEntry(deflated);
+			outputStream.write(DEFLATED_CONTENT);
+			outputStream.closeEntry();
+			ZipEntry stored = new ZipEntry("dir/stored.txt");
+			stored.setTime(TIME);
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(STORED_CONTENT.length);
+			stored.setCrc(crc(STORED_CONTENT));
+			outputStream.putNextEntry(stored);
+			outputStream.write(STORED_CONTENT);
+			outputStream.closeEntry();
+			ZipEntry raw = createRawEntry("dir/raw.txt", RAW_CONTENT);
+			outputStream.putNextRawEntry(raw);
+			outputStream.write(deflate(RAW_CONTENT));
+			outputStream.closeEntry();
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private void assertEntries(File file) throws IOException {
+		JarFile jarFile = new JarFile(file);
+		try {
+			assertEquals(3, jarFile.size());
+			assertEntry(jarFile, "deflated.txt", ZipEntry.DEFLATED, DEFLATED_CONTENT);
+			assertEntry(jarFile, "dir/stored.txt", ZipEntry.STORED, STORED_CONTENT);
+			assertEntry(jarFile, "dir/raw.txt", ZipEntry.DEFLATED, RAW_CONTENT);
+			assertEquals(RawJarOutputStream.javaToDosTime(TIME),
+					RawJarOutputStream.javaToDosTime(
+							jarFile.getEntry("deflated.txt").getTime()));
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	private void assertEntry(ZipFile zipFile, String name, int method, byte[] content)
+			throws IOException {
+		ZipEntry entry = zipFile.getEntry(name);
+		assertNotNull("Missing entry " + name, entry);
+		assertEquals(method, entry.getMethod());
+		assertEquals(content.length, entry.getSize());
+		assertEquals(crc(content), entry.getCrc());
+		assertArrayEquals(content, read(zipFile, entry));
+	}
+
+	private File writeEmptyEntries(int count) throws IOException {
+		File file = this.temporaryFolder.newFile("entries.jar");
+		RawJarOutputStream outputStream = new RawJarOutputStream(file);
+		try {
+			for (int i = 0; i < count; i++) {
+				ZipEntry entry = new ZipEntry("entry-" + i);
+				entry.setTime(TIME);
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(0);
+				entry.setCrc(0);
+				outputStream.putNextEntry(entry);
+				outputStream.closeEntry();
+			}
+		}
+		finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+	private void assertEntryCount(File file, int count) throws IOException {
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			assertEquals(count, zipFile.size());
+			int read = 0;
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				assertEquals("entry-" + read++, entries.nextElement().getName());
+			}
+			assertEquals(count, read);
+		}
+		finally {
+			zipFile.close();
+		}
+		RawZipFile rawZipFile = RawZipFile.open(file);
+		assertNotNull(rawZipFile);
+		try {
+			assertNotNull(rawZipFile.getEntry("entry-" + (count - 1)));
+			assertEquals(count + 1, rawZipFile.getRecordBoundaries().length);
+		}
+		finally {
+			rawZipFile.close();
+		}
+	}
+
+	/**
+	 * Return if the file ends with a zip64 end of central directory record, followed by
+	 * its locator and the end of central directory record without a comment.
+	 */
+	private boolean hasZip64EndRecord(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			randomAccessFile.seek(randomAccessFile.length() - 22 - 20 - 56);
+			return Integer.reverseBytes(randomAccessFile.readInt()) == ZIP64_ENDSIG;
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	static ZipEntry createRawEntry(String name, byte[] content) {
+		JarEntry entry = new JarEntry(name);
+		entry.setTime(TIME);
+		entry.setMethod(ZipEntry.DEFLATED);
+		entry.setSize(content.length);
+		entry.setCompressedSize(deflate(content).length);
+		entry.setCrc(crc(content));
+		return entry;
+	}
+
+	static byte[] deflate(byte[] content) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(content);
+			deflater.finish();
+			ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				deflated.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return deflated.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	static long crc(byte[] content) {
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		return crc.getValue();
+	}
+
+	static byte[] read(ZipFile zipFile, ZipEntry entry) throws IOException {
+		return read(zipFile.getInputStream(entry));
+	}
+
+	static byte[] read(InputStream inputStream) throws IOException {
+		try {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				content.write(buffer, 0, bytesRead);
+			}
+			return content.toByteArray();
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+	static byte[] repeat(String value, int count) {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			result.append(value).append(i).append('\n');
+		}
+		return result.toString().getBytes(UTF_8);
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link RawZipFile}.
+ */
+public class RawZipFileTests {
+
+	private static final byte[] PREFIX = "#!/bin/sh\nexit 0\n".getBytes();
+
+	private static final byte[] CONTENT = RawJarOutputStreamTests.repeat("content ", 100);
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void readsEntriesWrittenWithDataDescriptors() throws IOException {
+		File file = this.temporaryFolder.newFile("test.zip");
+		writeZip(new FileOutputStream(file), 3, ZipEntry.DEFLATED);
+		assertRawEntries(file, 3);
+	}
+
+	@Test
+	public void readsEntriesAfterLaunchScript() throws IOException {
+		File file = this.temporaryFolder.newFile("test.zip");
+		FileOutputStream outputStream = new FileOutputStream(file);
+		outputStream.write(PREFIX);
+		writeZip(outputStream, 3, ZipEntry.DEFLATED);
+		assertRawEntries(file, 3);
+		RawZipFile rawZipFile = RawZipFile.open(file);
+		try {
+			long[] boundaries = rawZipFile.getRecordBoundaries();
+			assertEquals(4, boundaries.length);
+			assertEquals(PREFIX.length, boundaries[0]);
+		}
+		finally {
+			rawZipFile.close();
+		}
+	}
+
+	@Test
+	public void readsZip64CentralDirectory() throws IOException {
+		File file = this.temporaryFolder.newFile("test.zip");
+		writeZip(new FileOutputStream(file), 0x10000, ZipEntry.STORED);
+		assertRawEntries(file, 0x10000);
+	}
+
+	@Test
+	public void fileThatIsNotAZipIsNotOpened() throws IOException {
+		File file = this.temporaryFolder.newFile("test.txt");
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(CONTENT);
+		}
+		finally {
+			outputStream.close();
+		}
+		assertNull(RawZipFile.open(file));
+	}
+
+	private void writeZip(FileOutputStream fileOutputStream, int count, int method)
+			throws IOException {
+		ZipOutputStream outputStream = new ZipOutputStream(fileOutputStream);
+		try {
+			for (int i = 0; i < count; i++) {
+				ZipEntry entry = new ZipEntry("entry-" + i + ".txt");
+				entry.setMethod(method);
+				if (method == ZipEntry.STORED) {
+					entry.setSize(CONTENT.length);
+					entry.setCrc(RawJarOutputStreamTests.crc(CONTENT));
+				}
+				outputStream.putNextEntry(entry);
+				outputStream.write(CONTENT);
+				outputStream.closeEntry();
+			}
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private void assertRawEntries(File file, int count) throws IOException {
+		ZipFile zipFile = new ZipFile(file);
+		RawZipFile rawZipFile = RawZipFile.open(file);
+		assertNotNull(rawZipFile);
+		try {
+			assertEquals(count + 1, rawZipFile.getRecordBoundaries().length);
+			for (int i = 0; i < count; i += Math.max(count / 16, 1)) {
+				String name = "entry-" + i + ".txt";
+				ZipEntry entry = zipFile.getEntry(name);
+				RawZipFile.RawEntry rawEntry = rawZipFile.getEntry(name);
+				assertNotNull(rawEntry);
+				assertEquals(entry.getMethod(), rawEntry.getMethod());
+				assertEquals(entry.getCrc(), rawEntry.getCrc());
+				assertEquals(entry.getSize(), rawEntry.getSize());
+				assertEquals(entry.getCompressedSize(), rawEntry.getCompressedSize());
+				InputStream inputStream = rawZipFile.getRawInputStream(rawEntry);
+				if (rawEntry.getMethod() == ZipEntry.DEFLATED) {
+					inputStream = new InflaterInputStream(inputStream,
+							new Inflater(true));
+				}
+				assertArrayEquals(CONTENT, RawJarOutputStreamTests.read(inputStream));
+			}
+		}
+		finally {
+			rawZipFile.close();
+			zipFile.close();
+		}
+	}
+
+}
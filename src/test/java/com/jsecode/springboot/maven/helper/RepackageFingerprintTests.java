@@ -0,0 +1,101 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.LibraryCallback;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RepackageFingerprint}.
+ */
+public class RepackageFingerprintTests {
+
+	private static final Libraries NO_LIBRARIES = new Libraries() {
+
+		@Override
+		public void doWithLibraries(LibraryCallback callback) throws IOException {
+		}
+
+	};
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void sameInputsAreUpToDate() throws IOException {
+		File source = createSource(ArchiveDeltaTests.createEntries(3));
+		List<File> outputs = createOutputs();
+		File stateFile = save(source, outputs, true, 3);
+		assertTrue(create(source, true, 3).isUpToDate(stateFile, outputs));
+	}
+
+	@Test
+	public void toggledOptionIsNotUpToDate() throws IOException {
+		File source = createSource(ArchiveDeltaTests.createEntries(3));
+		List<File> outputs = createOutputs();
+		File stateFile = save(source, outputs, true, 3);
+		assertFalse(create(source, false, 3).isUpToDate(stateFile, outputs));
+		assertFalse(create(source, true, 5).isUpToDate(stateFile, outputs));
+	}
+
+	@Test
+	public void changedSourceJarIsNotUpToDate() throws IOException {
+		File source = createSource(ArchiveDeltaTests.createEntries(3));
+		List<File> outputs = createOutputs();
+		File stateFile = save(source, outputs, true, 3);
+		Map<String, byte[]> entries = ArchiveDeltaTests.createEntries(3);
+		entries.put("added", "added".getBytes());
+		ArchiveDeltaTests.writeJar(source, entries);
+		assertFalse(create(source, true, 3).isUpToDate(stateFile, outputs));
+	}
+
+	@Test
+	public void changedOutputIsNotUpToDate() throws IOException {
+		File source = createSource(ArchiveDeltaTests.createEntries(3));
+		List<File> outputs = createOutputs();
+		File stateFile = save(source, outputs, true, 3);
+		new File(outputs.get(1), "added.jar").createNewFile();
+		assertFalse(create(source, true, 3).isUpToDate(stateFile, outputs));
+	}
+
+	private File save(File source, List<File> outputs, boolean atomicPublish,
+			int keepReleases) throws IOException {
+		File stateFile = new File(outputs.get(1), ".app.jar.fingerprint");
+		create(source, atomicPublish, keepReleases).save(stateFile, outputs);
+		return stateFile;
+	}
+
+	private RepackageFingerprint create(File source, boolean atomicPublish,
+			int keepReleases) throws IOException {
+		RepackageFingerprint fingerprint = new RepackageFingerprint(null);
+		fingerprint.addValue("atomicPublish", atomicPublish);
+		fingerprint.addValue("keepReleases", keepReleases);
+		fingerprint.addLibraries(NO_LIBRARIES);
+		fingerprint.addSourceJar(source);
+		return fingerprint;
+	}
+
+	private File createSource(Map<String, byte[]> entries) throws IOException {
+		return ArchiveDeltaTests.writeJar(this.temporaryFolder.newFile("source.jar"),
+				entries);
+	}
+
+	private List<File> createOutputs() throws IOException {
+		File distDir = this.temporaryFolder.newFolder("dist");
+		File archive = new File(distDir, "app.jar");
+		ArchiveDeltaTests.writeJar(archive, ArchiveDeltaTests.createEntries(2));
+		return Arrays.asList(archive, distDir);
+	}
+
+}
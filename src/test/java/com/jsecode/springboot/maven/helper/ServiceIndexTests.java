@@ -0,0 +1,146 @@
+package com.jsecode.springboot.maven.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jsecode.springboot.loader.PackageIndexLauncher;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link ServiceIndex}.
+ */
+public class ServiceIndexTests {
+
+	private static final String FACTORIES = "META-INF/spring.factories";
+
+	private static final String SERVICE = "META-INF/services/app.Service";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void factoriesAreMergedInClassPathOrderWithoutDuplicates()
+			throws IOException {
+		ServiceIndex serviceIndex = new ServiceIndex();
+		addJar(serviceIndex, "first.jar", FACTORIES,
+				"b.Key=first.B\na.Key=first.One,\\\n  first.Two\n");
+		addJar(serviceIndex, "second.jar", FACTORIES,
+				"a.Key=second.Three, first.One\nc\\:Key=second.C\n");
+		File archive = write(serviceIndex);
+		assertEquals("a.Key=first.One,first.Two,second.Three\nb.Key=first.B\n"
+				+ "c\\:Key=second.C\n", read(archive, FACTORIES));
+		Properties properties = new Properties();
+		properties.load(new ByteArrayInputStream(read(archive, FACTORIES).getBytes()));
+		assertEquals("second.C", properties.getProperty("c:Key"));
+	}
+
+	@Test
+	public void providersAreConcatenatedInClassPathOrderWithoutDuplicates()
+			throws IOException {
+		ServiceIndex serviceIndex = new ServiceIndex();
+		addJar(serviceIndex, "first.jar", SERVICE,
+				"# Providers\nfirst.Provider # the first\n\n");
+		addJar(serviceIndex, "second.jar", SERVICE,
+				"second.Provider\nfirst.Provider\n");
+		File archive = write(serviceIndex);
+		assertEquals("first.Provider\nsecond.Provider\n", read(archive, SERVICE));
+	}
+
+	@Test
+	public void indexListsMergedResources() throws IOException {
+		ServiceIndex serviceIndex = new ServiceIndex();
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(SERVICE, "app.Provider\n".getBytes());
+		entries.put("META-INF/services/nested/app.Other", "app.Other\n".getBytes());
+		entries.put("META-INF/other.factories", "a.Key=app.Other\n".getBytes());
+		entries.put(FACTORIES, "a.Key=app.Factory\n".getBytes());
+		addJar(serviceIndex, "first.jar", entries);
+		File archive = write(serviceIndex);
+		assertEquals(PackageIndexLauncher.SERVICE_INDEX_HEADER + "\n" + FACTORIES + "\n"
+				+ SERVICE + "\n",
+				readEntry(archive, PackageIndexLauncher.SERVICE_INDEX_LOCATION));
+		assertEquals(3, getEntryCount(archive));
+	}
+
+	private void addJar(ServiceIndex serviceIndex, String name, String entryName,
+			String content) throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put(entryName, content.getBytes());
+		addJar(serviceIndex, name, entries);
+	}
+
+	private void addJar(ServiceIndex serviceIndex, String name,
+			Map<String, byte[]> entries) throws IOException {
+		File file = ArchiveDeltaTests.writeJar(this.temporaryFolder.newFile(name),
+				entries);
+		JarFile jarFile = new JarFile(file);
+		try {
+			Enumeration<JarEntry> jarEntries = jarFile.entries();
+			while (jarEntries.hasMoreElements()) {
+				JarEntry entry = jarEntries.nextElement();
+				serviceIndex.addEntry(jarFile, entry, entry.getName());
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	private File write(ServiceIndex serviceIndex) throws IOException {
+		File archive = new File(this.temporaryFolder.getRoot(), "app.jar");
+		JarWriter writer = new JarWriter(archive);
+		try {
+			serviceIndex.write(writer);
+		}
+		finally {
+			writer.close();
+		}
+		return archive;
+	}
+
+	private String read(File archive, String name) throws IOException {
+		return readEntry(archive, PackageIndexLauncher.SERVICES_LOCATION + name);
+	}
+
+	private String readEntry(File archive, String name) throws IOException {
+		JarFile jarFile = new JarFile(archive);
+		try {
+			return new String(
+					RawJarOutputStreamTests.read(jarFile, jarFile.getJarEntry(name)),
+					"UTF-8");
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	private int getEntryCount(File archive) throws IOException {
+		JarFile jarFile = new JarFile(archive);
+		try {
+			int count = 0;
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				if (!entries.nextElement().isDirectory()) {
+					count++;
+				}
+			}
+			return count;
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+}